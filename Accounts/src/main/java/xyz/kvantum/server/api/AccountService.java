@@ -54,4 +54,11 @@ public final class AccountService {
         this.setAccountManager(INTERNAL_CONTEXT, manager);
     }
 
+    /**
+     * Close all account managers, see {@link IAccountManager#close()}
+     */
+    public void closeAccountManagers() {
+        this.accountManagerMap.values().stream().distinct().forEach(IAccountManager::close);
+    }
+
 }
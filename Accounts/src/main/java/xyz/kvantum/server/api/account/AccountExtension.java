@@ -26,16 +26,21 @@ import java.lang.reflect.Modifier;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A stateful data extension to {@link IAccount}.
  * Preferably registered using {@link AccountDecorator account decorators}
+ * <p>
+ * Extensions that override {@link #tracksChanges()} call {@link #markDirty()} whenever their state changes,
+ * and are then only saved when they have changed. Other extensions are saved every time the account is saved
  */
 @SuppressWarnings({"unused", "WeakerAccess"}) public abstract class AccountExtension {
 
     private static final Map<Class<? extends AccountExtension>, Constructor<? extends AccountExtension>>
         CONSTRUCTOR_CACHE = new ConcurrentHashMap<>();
 
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
     private IAccount account;
 
     public static <T extends AccountExtension> T createInstance(final Class<T> clazz) {
@@ -93,6 +98,50 @@ import java.util.concurrent.ConcurrentHashMap;
      */
     public abstract void saveState();
 
+    /**
+     * Whether or not the extension calls {@link #markDirty()} when its state changes. Extensions that don't
+     * track their changes are always considered to be dirty
+     *
+     * @return True if changes are tracked
+     */
+    protected boolean tracksChanges() {
+        return false;
+    }
+
+    /**
+     * Mark the state of the extension as changed, so that it is saved with the account
+     */
+    protected final void markDirty() {
+        this.dirty.set(true);
+    }
+
+    /**
+     * Check whether or not the extension has changes that have not been saved
+     *
+     * @return True if the extension has to be saved
+     */
+    public final boolean isDirty() {
+        return !this.tracksChanges() || this.dirty.get();
+    }
+
+    /**
+     * Save the state of the extension, if it has changed
+     *
+     * @return True if the extension was saved
+     */
+    public final boolean saveIfDirty() {
+        if (this.tracksChanges() && !this.dirty.compareAndSet(true, false)) {
+            return false;
+        }
+        try {
+            this.saveState();
+        } catch (final RuntimeException e) {
+            this.markDirty();
+            throw e;
+        }
+        return true;
+    }
+
     public Optional<IAccount> getAccount() {
         return Optional.ofNullable(this.account);
     }
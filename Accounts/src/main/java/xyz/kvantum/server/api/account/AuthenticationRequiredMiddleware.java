@@ -26,8 +26,9 @@ import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.request.AbstractRequest;
 import xyz.kvantum.server.api.views.requesthandler.Middleware;
 import xyz.kvantum.server.api.views.requesthandler.MiddlewareQueue;
+import xyz.kvantum.server.api.views.requesthandler.Stateless;
 
-public final class AuthenticationRequiredMiddleware extends Middleware {
+@Stateless public final class AuthenticationRequiredMiddleware extends Middleware {
 
     @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
         final IAccountManager accountManager = AccountService.getInstance().getGlobalAccountManager();
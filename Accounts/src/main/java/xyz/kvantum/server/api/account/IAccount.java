@@ -28,6 +28,7 @@ import xyz.kvantum.server.api.pojo.KvantumPojo;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Account interface that is used throughout Kvantum, This is suitable for use throughout web applications as well. See
@@ -51,13 +52,28 @@ import java.util.Optional;
     void internalMetaUpdate(String key, String value);
 
     /**
-     * Check if a provided password matches the account password
+     * Check if a provided password matches the account password. Checks that are rejected because too many
+     * checks are pending (see {@link PasswordHashingService}) count as failed checks
      *
      * @param password Password to test
      * @return boolean indicating whether or not the provided password matches
      */
     boolean passwordMatches(String password);
 
+    /**
+     * Check if a provided password matches the account password, without blocking the calling thread. The
+     * check runs on the {@link PasswordHashingService} threads, and the returned future fails with a {@link
+     * java.util.concurrent.RejectedExecutionException} if too many checks are pending. The default
+     * implementation runs {@link #passwordMatches(String)} there, so implementations whose {@link
+     * #passwordMatches(String)} waits for the service must override this
+     *
+     * @param password Password to test
+     * @return Future that completes with whether or not the provided password matches
+     */
+    default CompletableFuture<Boolean> passwordMatchesAsync(final String password) {
+        return PasswordHashingService.getInstance().verify(() -> passwordMatches(password));
+    }
+
     /**
      * Get account data for a specified key, if it exists
      *
@@ -67,7 +83,7 @@ import java.util.Optional;
     Optional<String> getData(String key);
 
     /**
-     * Update account data
+     * Update account data. The change is written through the account manager immediately
      *
      * @param key   Data key
      * @param value Data value
@@ -75,7 +91,7 @@ import java.util.Optional;
     void setData(String key, String value);
 
     /**
-     * Remove a data value from the account
+     * Remove a data value from the account. The change is written through the account manager immediately
      *
      * @param key Data key
      */
@@ -175,8 +191,18 @@ import java.util.Optional;
     <T extends AccountExtension> Optional<T> getExtension(Class<T> extension);
 
     /**
-     * Save the state of the account
+     * Save the state of the account. Only extensions that have changed are saved, and data that was changed before
+     * the account had a manager
      */
     void saveState();
 
+    /**
+     * Check whether or not the account has changes that have not been saved by {@link #saveState()}
+     *
+     * @return True if there are unsaved changes
+     */
+    default boolean isDirty() {
+        return true;
+    }
+
 }
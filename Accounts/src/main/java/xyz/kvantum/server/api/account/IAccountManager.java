@@ -21,9 +21,9 @@
  */
 package xyz.kvantum.server.api.account;
 
-import org.mindrot.jbcrypt.BCrypt;
 import xyz.kvantum.server.api.AccountService;
 import xyz.kvantum.server.api.account.roles.AccountRole;
+import xyz.kvantum.server.api.account.roles.Permissions;
 import xyz.kvantum.server.api.account.roles.defaults.Administrator;
 import xyz.kvantum.server.api.config.Message;
 import xyz.kvantum.server.api.core.Kvantum;
@@ -51,14 +51,16 @@ import java.util.concurrent.ConcurrentHashMap;
     Map<String, AccountRole> ROLE_MAP = new ConcurrentHashMap<>();
 
     /**
-     * Check if a given password matches the real password
+     * Check if a given password matches the real password. The check runs on the {@link
+     * PasswordHashingService} threads, and the calling thread waits for it
      *
      * @param candidate Candidate password
      * @param password  Real password
      * @return true if the passwords are matching
+     * @throws java.util.concurrent.RejectedExecutionException If too many verifications are pending
      */
     static boolean checkPassword(final String candidate, final String password) {
-        return BCrypt.checkpw(candidate, password);
+        return PasswordHashingService.join(PasswordHashingService.getInstance().verify(candidate, password));
     }
 
     /**
@@ -82,6 +84,13 @@ import java.util.concurrent.ConcurrentHashMap;
      */
     void setup() throws Exception;
 
+    /**
+     * Save the cached accounts that have unsaved changes, and release the cache. This is called when the server
+     * stops, before the databases are closed. The manager can't be used afterwards
+     */
+    default void close() {
+    }
+
     /**
      * Create an {@link IAccount}
      *
@@ -164,6 +173,52 @@ import java.util.concurrent.ConcurrentHashMap;
      */
     void setData(IAccount account, String key, String value);
 
+    /**
+     * Set the same data value for several accounts, as a single bulk operation. Database backed managers
+     * write all values in one batch, in one transaction. The default implementation calls {@link
+     * #setData(IAccount, String, String)} for every account
+     *
+     * @param accounts Accounts
+     * @param key      Data key
+     * @param value    Data value
+     */
+    default void setDataBulk(final Collection<? extends IAccount> accounts, final String key,
+        final String value) {
+        for (final IAccount account : accounts) {
+            account.internalMetaUpdate(key, value);
+            setData(account, key, value);
+        }
+    }
+
+    /**
+     * Save changed data values of an account. Database backed managers write all changes in one batch,
+     * in one transaction. The default implementation calls {@link #setData(IAccount, String, String)} and
+     * {@link #removeData(IAccount, String)} for every key
+     *
+     * @param account Account
+     * @param changed Changed keys, and their new values
+     * @param removed Removed keys
+     * @return True if the changes were saved
+     */
+    default boolean saveData(final IAccount account, final Map<String, String> changed,
+        final Collection<String> removed) {
+        changed.forEach((key, value) -> setData(account, key, value));
+        removed.forEach(key -> removeData(account, key));
+        return true;
+    }
+
+    /**
+     * Replace the stored password hash of an account, without changing the password. This is used to
+     * upgrade hashes that were created with an outdated work factor
+     *
+     * @param account Account
+     * @param hash    New password hash
+     * @return True if the hash was stored
+     */
+    default boolean updatePasswordHash(final IAccount account, final String hash) {
+        return false;
+    }
+
     /**
      * Remove a data value from an account
      *
@@ -204,6 +259,7 @@ import java.util.concurrent.ConcurrentHashMap;
                 Message.ACCOUNT_ADMIN_CREATED.log("admin");
                 adminAccount.get().setData("administrator", "true");
                 adminAccount.get().addRole(Administrator.instance);
+                adminAccount.get().saveState();
             }
         }
     }
@@ -215,6 +271,7 @@ import java.util.concurrent.ConcurrentHashMap;
      */
     default void registerAccountRole(final AccountRole role) {
         this.ROLE_MAP.put(role.getRoleIdentifier(), role);
+        Permissions.roleChanged();
     }
 
     /**
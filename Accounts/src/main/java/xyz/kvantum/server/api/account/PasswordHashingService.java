@@ -0,0 +1,248 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.account;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import org.mindrot.jbcrypt.BCrypt;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.core.ServerImplementation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Hashes and verifies passwords (using bcrypt) on a dedicated, bounded thread pool, so that password work
+ * never occupies the request threads.
+ * <p>
+ * Verifications are subject to admission control: once {@code maxPendingVerifications} verifications are
+ * queued or running, further verifications fail immediately with a {@link RejectedExecutionException}
+ * instead of queueing up behind the others. Hashing (account creation) is not limited.
+ * <p>
+ * Hashes that were created with another work factor than the configured one can be detected with {@link
+ * #needsRehash(String)}, and are upgraded by {@link IAccount#passwordMatchesAsync(String)}.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"}) public final class PasswordHashingService {
+
+    private static PasswordHashingService instance;
+
+    @Getter private final int workFactor;
+    private final ExecutorService executor;
+    private final Semaphore verificationPermits;
+    private final Counter rejected;
+
+    /**
+     * @param workFactor              Bcrypt work factor (log2 of the number of rounds), between 4 and 31
+     * @param threads                 Number of hashing threads. Defaults to half of the available processors
+     * @param maxPendingVerifications Maximum number of queued or running verifications
+     */
+    @Builder private PasswordHashingService(final int workFactor, final int threads,
+        final int maxPendingVerifications) {
+        if (workFactor < 4 || workFactor > 31) {
+            throw new IllegalArgumentException("The work factor must be between 4 and 31");
+        }
+        this.workFactor = workFactor;
+        final int threadCount =
+            threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        final AtomicInteger number = new AtomicInteger(1);
+        final ThreadPoolExecutor executor =
+            new ThreadPoolExecutor(threadCount, threadCount, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                final Thread thread = new Thread(runnable,
+                    String.format("kvantum-passwords-%s", number.getAndIncrement()));
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+        this.verificationPermits = new Semaphore(Math.max(1, maxPendingVerifications));
+        if (ServerImplementation.getImplementation() != null) {
+            this.rejected = ServerImplementation.getImplementation().getMetrics().getRegistry()
+                .counter(MetricRegistry.name(PasswordHashingService.class, "rejectedVerifications"));
+        } else {
+            this.rejected = new Counter();
+        }
+    }
+
+    /**
+     * Get the service configured in {@link CoreConfig.Passwords}
+     *
+     * @return Password hashing service
+     */
+    public static synchronized PasswordHashingService getInstance() {
+        if (instance == null) {
+            instance = builder().workFactor(CoreConfig.Passwords.workFactor)
+                .threads(CoreConfig.Passwords.threads)
+                .maxPendingVerifications(CoreConfig.Passwords.maxPendingVerifications).build();
+        }
+        return instance;
+    }
+
+    /**
+     * Replace the global service. The previous service is shut down once its pending work is done
+     *
+     * @param service New service
+     */
+    public static synchronized void setInstance(@NonNull final PasswordHashingService service) {
+        if (instance != null && instance != service) {
+            instance.shutdown();
+        }
+        instance = service;
+    }
+
+    /**
+     * Get the work factor that a bcrypt hash was created with
+     *
+     * @param hash Bcrypt hash
+     * @return Work factor, or -1 if the hash isn't a bcrypt hash
+     */
+    public static int getWorkFactor(final String hash) {
+        // $2a$10$...
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(1) != '2') {
+            return -1;
+        }
+        final int offset = hash.charAt(2) == '$' ? 3 : 4;
+        if (hash.length() < offset + 3 || hash.charAt(offset + 2) != '$') {
+            return -1;
+        }
+        final char tens = hash.charAt(offset);
+        final char ones = hash.charAt(offset + 1);
+        if (tens < '0' || tens > '9' || ones < '0' || ones > '9') {
+            return -1;
+        }
+        return (tens - '0') * 10 + (ones - '0');
+    }
+
+    /**
+     * Wait for a password future, for callers that can't continue asynchronously. Failures are rethrown
+     * without the {@link CompletionException} wrapper, so that a rejection surfaces as a {@link
+     * RejectedExecutionException}
+     *
+     * @param future Future returned by this service
+     * @param <T>    Result type
+     * @return Result
+     */
+    public static <T> T join(@NonNull final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Hash a password with the configured work factor
+     *
+     * @param password Password
+     * @return Future that completes with the hash
+     */
+    public CompletableFuture<String> hash(@NonNull final String password) {
+        return CompletableFuture
+            .supplyAsync(() -> BCrypt.hashpw(password, BCrypt.gensalt(this.workFactor)), this.executor);
+    }
+
+    /**
+     * Verify a password against a hash. If too many verifications are pending, the returned future fails
+     * immediately with a {@link RejectedExecutionException}
+     *
+     * @param candidate Password to verify
+     * @param hash      Stored hash
+     * @return Future that completes with true if the password matches the hash
+     */
+    public CompletableFuture<Boolean> verify(@NonNull final String candidate, @NonNull final String hash) {
+        return this.verify(() -> {
+            try {
+                return BCrypt.checkpw(candidate, hash);
+            } catch (final IllegalArgumentException e) {
+                return false; // Invalid hash
+            }
+        });
+    }
+
+    /**
+     * Run a password check on the service threads, subject to the same admission control as {@link
+     * #verify(String, String)}. The check must not wait for other work on this service
+     *
+     * @param check Password check
+     * @return Future that completes with the result of the check
+     */
+    public CompletableFuture<Boolean> verify(@NonNull final BooleanSupplier check) {
+        if (!this.verificationPermits.tryAcquire()) {
+            this.rejected.inc();
+            return CompletableFuture.failedFuture(
+                new RejectedExecutionException("Too many pending password verifications"));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return check.getAsBoolean();
+                } finally {
+                    this.verificationPermits.release();
+                }
+            }, this.executor);
+        } catch (final RejectedExecutionException e) {
+            this.verificationPermits.release();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Check whether or not a hash was created with another work factor than the configured one
+     *
+     * @param hash Stored hash
+     * @return True if the hash should be replaced
+     */
+    public boolean needsRehash(final String hash) {
+        return getWorkFactor(hash) != this.workFactor;
+    }
+
+    /**
+     * Get the number of verifications that were rejected by the admission control
+     *
+     * @return Rejected verification count
+     */
+    public long getRejectedVerifications() {
+        return this.rejected.getCount();
+    }
+
+    /**
+     * Stop accepting work. Pending work is still completed
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+}
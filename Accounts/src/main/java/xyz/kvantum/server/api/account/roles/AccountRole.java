@@ -26,6 +26,8 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
+import java.util.BitSet;
+
 /**
  * Roles are attached to accounts and may be used to check whether or not an user is permitted to perform certain
  * actions
@@ -59,4 +61,16 @@ import lombok.RequiredArgsConstructor;
      */
     public abstract boolean removePermission(String permissionKey);
 
+    /**
+     * Add the ids of all permissions granted by the role (see {@link Permissions#resolve(String)}) to a
+     * bitset. Roles that can be compiled must call {@link Permissions#roleChanged()} whenever their
+     * permissions change. Roles that return false are asked through {@link #hasPermission(String)} instead
+     *
+     * @param permissions Bitset to add the permission ids to
+     * @return True if the role was compiled
+     */
+    public boolean compilePermissions(final BitSet permissions) {
+        return false;
+    }
+
 }
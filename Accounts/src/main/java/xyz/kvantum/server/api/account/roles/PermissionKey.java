@@ -0,0 +1,75 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.account.roles;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.BitSet;
+
+/**
+ * A permission key that has been resolved by {@link Permissions#resolve(String)} or interned by {@link
+ * Permissions#intern(String)}
+ */
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE) public final class PermissionKey {
+
+    /**
+     * Id of keys that have not been interned
+     */
+    public static final int NOT_INTERNED = -1;
+
+    @Getter private final String key;
+    @Getter private final int id;
+    // The id of the key itself if it is interned, followed by the ids of all wildcards that grant it
+    private final int[] grantedBy;
+
+    /**
+     * Check whether or not the permission is granted by a set of permission ids, either directly or through a
+     * wildcard
+     *
+     * @param permissions Permission ids
+     * @return True if the permission is granted
+     */
+    public boolean isGrantedBy(final BitSet permissions) {
+        for (final int permission : this.grantedBy) {
+            if (permissions.get(permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether or not this key is a wildcard
+     *
+     * @return True if the key is a wildcard
+     */
+    public boolean isWildcard() {
+        return this.key.equals(Permissions.WILDCARD) || this.key.endsWith(".*");
+    }
+
+    @Override public String toString() {
+        return this.key;
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.account.roles;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The effective permissions of a collection of roles, compiled into a bitset of permission ids. Roles that
+ * cannot be compiled (see {@link AccountRole#compilePermissions(BitSet)}) are asked directly.
+ * <p>
+ * A compiled set is a snapshot: once the permissions of any role change, {@link #isCurrent()} returns false
+ * and the set should be compiled again.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE) public final class PermissionSet {
+
+    @Getter private final long version;
+    private final BitSet permissions;
+    private final AccountRole[] uncompiledRoles;
+
+    /**
+     * Compile the permissions of a collection of roles
+     *
+     * @param roles Roles
+     * @return Compiled permissions
+     */
+    public static PermissionSet compile(@NonNull final Collection<? extends AccountRole> roles) {
+        // Read the version first, so that changes made while compiling invalidate the set
+        final long version = Permissions.getRoleVersion();
+        final BitSet permissions = new BitSet();
+        final List<AccountRole> uncompiledRoles = new ArrayList<>();
+        for (final AccountRole role : roles) {
+            if (!role.compilePermissions(permissions)) {
+                uncompiledRoles.add(role);
+            }
+        }
+        return new PermissionSet(version, permissions,
+            uncompiledRoles.toArray(new AccountRole[0]));
+    }
+
+    /**
+     * Check whether or not the set was compiled with the current role version
+     *
+     * @return True if no role has changed since the set was compiled
+     */
+    public boolean isCurrent() {
+        return this.version == Permissions.getRoleVersion();
+    }
+
+    /**
+     * Check whether or not a permission is granted by any of the roles
+     *
+     * @param permissionKey Permission key
+     * @return True if the permission is granted
+     */
+    public boolean isPermitted(@NonNull final String permissionKey) {
+        if (Permissions.resolve(permissionKey).isGrantedBy(this.permissions)) {
+            return true;
+        }
+        for (final AccountRole role : this.uncompiledRoles) {
+            if (role.hasPermission(permissionKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.account.roles;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.UtilityClass;
+import xyz.kvantum.server.api.config.CoreConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Interns permission keys to integer ids, so that sets of permissions can be stored as bitsets (see {@link
+ * PermissionSet}), and keeps track of the global role version.
+ * <p>
+ * Permission keys are case insensitive. A key ending in {@code .*} is a wildcard that grants every key below it
+ * ({@code account.*} grants {@code account.edit} and {@code account.edit.password}, but not {@code account}),
+ * and {@code *} grants everything.
+ * <p>
+ * Only keys that are granted to roles are interned (see {@link #intern(String)}). Other keys, such as the keys
+ * that requests are checked against, are resolved to a key without an id and kept in a bounded cache.
+ */
+@UtilityClass public final class Permissions {
+
+    /**
+     * Wildcard that grants every permission
+     */
+    public static final String WILDCARD = "*";
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+    private static final AtomicLong roleVersion = new AtomicLong();
+    // Incremented after every key that is interned, so that cached lookups can tell whether they may be stale
+    private static final AtomicLong internVersion = new AtomicLong();
+    // Interned keys, by normalized key
+    private static final Map<String, PermissionKey> keys = new ConcurrentHashMap<>();
+    // Keys that have not been interned, by normalized key
+    private static final Cache<String, CachedLookup> lookups =
+        Caffeine.newBuilder().maximumSize(CoreConfig.Cache.cachedPermissionLookupsMaxItems).build();
+
+    /**
+     * Resolve a key, without interning it. Keys that are not interned have the id {@link
+     * PermissionKey#NOT_INTERNED}, and can only be granted through wildcards
+     *
+     * @param key Permission key, in any case
+     * @return Resolved permission
+     */
+    public static PermissionKey resolve(@NonNull final String key) {
+        final String normalized = normalize(key);
+        final PermissionKey interned = keys.get(normalized);
+        if (interned != null) {
+            return interned;
+        }
+        // The version is read before the interned keys are. If a key is interned while the lookup is being built,
+        // the version will have changed by the time the lookup is read again, and it is rebuilt
+        final long version = internVersion.get();
+        final CachedLookup cached = lookups.getIfPresent(normalized);
+        if (cached != null && cached.version == version) {
+            return cached.key;
+        }
+        final PermissionKey lookup = lookup(normalized);
+        lookups.put(normalized, new CachedLookup(version, lookup));
+        return lookup;
+    }
+
+    /**
+     * Get the interned permission for a key. Keys have to be interned before they can be granted
+     *
+     * @param key Permission key, in any case
+     * @return Interned permission
+     */
+    public static PermissionKey intern(@NonNull final String key) {
+        return internNormalized(normalize(key));
+    }
+
+    private static String normalize(final String key) {
+        return key.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    private static PermissionKey lookup(final String normalized) {
+        final List<PermissionKey> wildcards = new ArrayList<>();
+        for (final String wildcard : wildcards(normalized)) {
+            final PermissionKey interned = keys.get(wildcard);
+            if (interned != null) {
+                wildcards.add(interned);
+            }
+        }
+        final int[] grantedBy = new int[wildcards.size()];
+        for (int i = 0; i < grantedBy.length; i++) {
+            grantedBy[i] = wildcards.get(i).getId();
+        }
+        return new PermissionKey(normalized, PermissionKey.NOT_INTERNED, grantedBy);
+    }
+
+    // Wildcards that grant the key, from the most to the least specific
+    private static List<String> wildcards(final String normalized) {
+        final List<String> wildcards = new ArrayList<>();
+        if (!WILDCARD.equals(normalized)) {
+            final String base =
+                normalized.endsWith(".*") ? normalized.substring(0, normalized.length() - 2) : normalized;
+            for (int i = base.lastIndexOf('.'); i > 0; i = base.lastIndexOf('.', i - 1)) {
+                wildcards.add(base.substring(0, i) + ".*");
+            }
+            wildcards.add(WILDCARD);
+        }
+        return wildcards;
+    }
+
+    private static PermissionKey internNormalized(final String normalized) {
+        final PermissionKey existing = keys.get(normalized);
+        if (existing != null) {
+            return existing;
+        }
+        final List<PermissionKey> wildcards = new ArrayList<>();
+        for (final String wildcard : wildcards(normalized)) {
+            wildcards.add(internNormalized(wildcard));
+        }
+        final PermissionKey interned = keys.computeIfAbsent(normalized, k -> {
+            final int id = nextId.getAndIncrement();
+            final int[] grantedBy = new int[wildcards.size() + 1];
+            grantedBy[0] = id;
+            for (int i = 0; i < wildcards.size(); i++) {
+                grantedBy[i + 1] = wildcards.get(i).getId();
+            }
+            return new PermissionKey(normalized, id, grantedBy);
+        });
+        // Cached lookups may be granted by the new key. This must happen after the key has been added
+        internVersion.incrementAndGet();
+        return interned;
+    }
+
+    /**
+     * Get the current role version. The version changes whenever the permissions of any role change, which
+     * invalidates all compiled {@link PermissionSet permission sets}
+     *
+     * @return Role version
+     */
+    public static long getRoleVersion() {
+        return roleVersion.get();
+    }
+
+    /**
+     * Signal that the permissions of a role have changed
+     */
+    public static void roleChanged() {
+        roleVersion.incrementAndGet();
+    }
+
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE) private static final class CachedLookup {
+
+        private final long version;
+        private final PermissionKey key;
+    }
+
+}
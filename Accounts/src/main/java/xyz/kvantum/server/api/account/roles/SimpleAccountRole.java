@@ -21,17 +21,17 @@
  */
 package xyz.kvantum.server.api.account.roles;
 
-import java.util.HashSet;
-import java.util.Locale;
-import java.util.Set;
+import java.util.BitSet;
 
 /**
- * HashSet implementation of {@link AccountRole}
+ * Bitset implementation of {@link AccountRole}. Permission keys are interned by {@link Permissions}, and may be
+ * wildcards
  * {@inheritDoc}
  */
 public class SimpleAccountRole extends AccountRole {
 
-    private final Set<String> permissionSet = new HashSet<>();
+    // Replaced on every change, so that it can be read without locking
+    private volatile BitSet permissionIds = new BitSet();
 
     /**
      * Construct a new account role
@@ -43,14 +43,33 @@ public class SimpleAccountRole extends AccountRole {
     }
 
     @Override public boolean hasPermission(final String permissionKey) {
-        return this.permissionSet.contains(permissionKey.toLowerCase(Locale.ENGLISH));
+        return Permissions.resolve(permissionKey).isGrantedBy(this.permissionIds);
     }
 
-    @Override public boolean addPermission(final String permissionKey) {
-        return !this.hasPermission(permissionKey) && this.permissionSet.add(permissionKey);
+    @Override public synchronized boolean addPermission(final String permissionKey) {
+        return this.updatePermission(permissionKey, true);
     }
 
-    @Override public boolean removePermission(final String permissionKey) {
-        return this.hasPermission(permissionKey) && this.permissionSet.remove(permissionKey);
+    @Override public synchronized boolean removePermission(final String permissionKey) {
+        return this.updatePermission(permissionKey, false);
+    }
+
+    private boolean updatePermission(final String permissionKey, final boolean value) {
+        final int id = value ?
+            Permissions.intern(permissionKey).getId() :
+            Permissions.resolve(permissionKey).getId();
+        if (id == PermissionKey.NOT_INTERNED || this.permissionIds.get(id) == value) {
+            return false;
+        }
+        final BitSet permissionIds = (BitSet) this.permissionIds.clone();
+        permissionIds.set(id, value);
+        this.permissionIds = permissionIds;
+        Permissions.roleChanged();
+        return true;
+    }
+
+    @Override public boolean compilePermissions(final BitSet permissions) {
+        permissions.or(this.permissionIds);
+        return true;
     }
 }
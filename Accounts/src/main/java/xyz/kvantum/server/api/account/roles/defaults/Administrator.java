@@ -21,8 +21,11 @@
  */
 package xyz.kvantum.server.api.account.roles.defaults;
 
+import xyz.kvantum.server.api.account.roles.Permissions;
 import xyz.kvantum.server.api.account.roles.SimpleAccountRole;
 
+import java.util.BitSet;
+
 /**
  * Default account role that is permitted to do everything
  * {@inheritDoc}
@@ -40,6 +43,11 @@ import xyz.kvantum.server.api.account.roles.SimpleAccountRole;
         return true;
     }
 
+    @Override public boolean compilePermissions(final BitSet permissions) {
+        permissions.set(Permissions.intern(Permissions.WILDCARD).getId());
+        return true;
+    }
+
     @Override public boolean addPermission(final String permissionKey) {
         // Cannot add administrator permission
         return false;
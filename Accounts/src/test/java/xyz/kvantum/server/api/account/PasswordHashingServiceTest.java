@@ -0,0 +1,99 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.account;
+
+import org.junit.jupiter.api.Test;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordHashingServiceTest {
+
+    private static PasswordHashingService service(final int workFactor, final int maxPending) {
+        return PasswordHashingService.builder().workFactor(workFactor).threads(1)
+            .maxPendingVerifications(maxPending).build();
+    }
+
+    @Test void hashAndVerify() {
+        final PasswordHashingService service = service(4, 16);
+        final String hash = service.hash("hunter2").join();
+        assertEquals(4, PasswordHashingService.getWorkFactor(hash));
+        assertTrue(service.verify("hunter2", hash).join());
+        assertFalse(service.verify("hunter3", hash).join());
+        assertFalse(service.verify("hunter2", "not a hash").join());
+        assertThrows(IllegalArgumentException.class, () -> service(3, 1));
+        service.shutdown();
+    }
+
+    @Test void hashUpgrade() {
+        final PasswordHashingService old = service(4, 16);
+        final PasswordHashingService current = service(5, 16);
+        final String oldHash = old.hash("password").join();
+        assertFalse(old.needsRehash(oldHash));
+        assertTrue(current.needsRehash(oldHash));
+        // Old hashes stay valid after the work factor has changed
+        assertTrue(current.verify("password", oldHash).join());
+        final String upgraded = current.hash("password").join();
+        assertEquals(5, PasswordHashingService.getWorkFactor(upgraded));
+        assertFalse(current.needsRehash(upgraded));
+        assertTrue(current.verify("password", upgraded).join());
+        assertEquals(-1, PasswordHashingService.getWorkFactor("plain"));
+        assertEquals(12, PasswordHashingService.getWorkFactor("$2y$12$abc"));
+        old.shutdown();
+        current.shutdown();
+    }
+
+    @Test void excessVerificationsAreRejected() {
+        final PasswordHashingService service = service(8, 2);
+        final String hash = BCrypt.hashpw("password", BCrypt.gensalt(8));
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(service.verify("password", hash));
+        }
+        int accepted = 0;
+        for (final CompletableFuture<Boolean> future : futures) {
+            try {
+                assertTrue(future.join());
+                accepted++;
+            } catch (final CompletionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        assertEquals(2, accepted);
+        assertEquals(8, service.getRejectedVerifications());
+        assertThrows(RejectedExecutionException.class, () -> PasswordHashingService
+            .join(CompletableFuture.failedFuture(new RejectedExecutionException())));
+        // Permits are returned once the verifications are done
+        assertTrue(service.verify("password", hash).join());
+        service.shutdown();
+    }
+
+}
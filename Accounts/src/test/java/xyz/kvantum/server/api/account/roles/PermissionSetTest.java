@@ -0,0 +1,195 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.account.roles;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.account.roles.defaults.Administrator;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PermissionSetTest {
+
+    private static SimpleAccountRole role(final String identifier, final String... permissions) {
+        final SimpleAccountRole role = new SimpleAccountRole(identifier);
+        for (final String permission : permissions) {
+            role.addPermission(permission);
+        }
+        return role;
+    }
+
+    @Test void keysAreInterned() {
+        final PermissionKey key = Permissions.intern("Interned.Key");
+        assertSame(key, Permissions.intern("interned.key"));
+        assertSame(key, Permissions.resolve(" Interned.Key"));
+        assertEquals("interned.key", key.getKey());
+        assertNotEquals(key.getId(), Permissions.intern("interned.other").getId());
+        assertTrue(Permissions.intern("interned.*").isWildcard());
+        assertFalse(key.isWildcard());
+    }
+
+    @Test void lookupsAreNotInterned() {
+        final PermissionKey lookup = Permissions.resolve("Lookup.Key");
+        assertEquals("lookup.key", lookup.getKey());
+        assertEquals(PermissionKey.NOT_INTERNED, lookup.getId());
+        assertEquals(PermissionKey.NOT_INTERNED, Permissions.resolve("lookup.other").getId());
+        // Removing a key that was never granted is not a change
+        final SimpleAccountRole role = role("lookup");
+        assertFalse(role.removePermission("lookup.key"));
+        assertFalse(role.hasPermission("lookup.key"));
+        // Wildcards that are interned later grant cached lookups
+        role.addPermission("lookup.*");
+        assertTrue(role.hasPermission("Lookup.Key"));
+        role.addPermission("lookup.key");
+        assertSame(Permissions.intern("lookup.key"), Permissions.resolve("LOOKUP.KEY"));
+    }
+
+    /**
+     * Lookups that are resolved while a wildcard is being interned must not be cached without the wildcard
+     */
+    @Test void concurrentlyInternedWildcardsGrantLookups() throws Exception {
+        final BitSet wildcard = new BitSet();
+        for (int i = 0; i < 200; i++) {
+            final String key = "concurrent" + i + ".key";
+            final AtomicBoolean interned = new AtomicBoolean();
+            final Thread resolver = new Thread(() -> {
+                while (!interned.get()) {
+                    Permissions.resolve(key);
+                }
+            });
+            resolver.start();
+            wildcard.clear();
+            wildcard.set(Permissions.intern("concurrent" + i + ".*").getId());
+            interned.set(true);
+            resolver.join();
+            assertTrue(Permissions.resolve(key).isGrantedBy(wildcard), key);
+        }
+    }
+
+    @Test void keysAreCaseInsensitive() {
+        final SimpleAccountRole role = role("case", "Case.Edit");
+        assertTrue(role.hasPermission("case.edit"));
+        assertTrue(role.hasPermission("CASE.EDIT"));
+        assertFalse(role.addPermission("case.edit"));
+        assertTrue(role.removePermission("CASE.edit"));
+        assertFalse(role.hasPermission("Case.Edit"));
+    }
+
+    @Test void wildcards() {
+        final PermissionSet permissions =
+            PermissionSet.compile(Collections.singleton(role("wildcard", "wildcard.account.*")));
+        assertTrue(permissions.isPermitted("wildcard.account.edit"));
+        assertTrue(permissions.isPermitted("wildcard.account.edit.password"));
+        assertFalse(permissions.isPermitted("wildcard.account"));
+        assertFalse(permissions.isPermitted("wildcard.other"));
+        assertTrue(PermissionSet.compile(Collections.singleton(Administrator.instance))
+            .isPermitted("anything.at.all"));
+        assertTrue(PermissionSet.compile(Collections.singleton(role("everything", "*")))
+            .isPermitted("wildcard.other"));
+    }
+
+    @Test void roleChangesInvalidateCompiledSets() {
+        final SimpleAccountRole role = role("mutable", "mutable.read");
+        final PermissionSet compiled = PermissionSet.compile(Collections.singleton(role));
+        assertTrue(compiled.isCurrent());
+        assertFalse(compiled.isPermitted("mutable.write"));
+        role.addPermission("mutable.write");
+        assertFalse(compiled.isCurrent());
+        final PermissionSet recompiled = PermissionSet.compile(Collections.singleton(role));
+        assertTrue(recompiled.isPermitted("mutable.write"));
+        role.removePermission("mutable.read");
+        assertFalse(recompiled.isCurrent());
+        assertFalse(PermissionSet.compile(Collections.singleton(role)).isPermitted("mutable.read"));
+        // Adding a permission that is already present is not a change
+        final PermissionSet current = PermissionSet.compile(Collections.singleton(role));
+        role.addPermission("mutable.write");
+        assertTrue(current.isCurrent());
+    }
+
+    @Test void uncompiledRolesAreAskedDirectly() {
+        final Set<String> granted = new HashSet<>(Arrays.asList("custom.read"));
+        final AccountRole custom = new AccountRole("custom") {
+            @Override public boolean hasPermission(final String permissionKey) {
+                return granted.contains(permissionKey);
+            }
+
+            @Override public boolean addPermission(final String permissionKey) {
+                return granted.add(permissionKey);
+            }
+
+            @Override public boolean removePermission(final String permissionKey) {
+                return granted.remove(permissionKey);
+            }
+        };
+        final PermissionSet permissions =
+            PermissionSet.compile(Arrays.asList(custom, role("compiled", "compiled.read")));
+        assertTrue(permissions.isPermitted("custom.read"));
+        assertTrue(permissions.isPermitted("compiled.read"));
+        granted.add("custom.write");
+        assertTrue(permissions.isPermitted("custom.write"));
+    }
+
+    @Tag("benchmark") @Test void compiledSetsAreFaster() {
+        final SimpleAccountRole[] roles = new SimpleAccountRole[8];
+        for (int i = 0; i < roles.length; i++) {
+            roles[i] = role("benchmark" + i, "benchmark." + i + ".read", "benchmark." + i + ".write");
+        }
+        final PermissionSet permissions = PermissionSet.compile(Arrays.asList(roles));
+        final int iterations = 1_000_000;
+        long looped = 0L, compiled = 0L;
+        int hits = 0;
+        for (int round = 0; round < 2; round++) { // The first round is a warm-up
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                for (final SimpleAccountRole role : roles) {
+                    if (role.hasPermission("benchmark.7.write")) {
+                        hits++;
+                        break;
+                    }
+                }
+            }
+            looped = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                if (permissions.isPermitted("benchmark.7.write")) {
+                    hits++;
+                }
+            }
+            compiled = System.nanoTime() - start;
+        }
+        assertEquals(4 * iterations, hits);
+        assertTrue(compiled < looped, String
+            .format("Role loop: %d ns/op, compiled set: %d ns/op", looped / iterations, compiled / iterations));
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.service;
+
+import com.github.rutledgepaulv.qbuilders.visitors.PredicateVisitor;
+import com.github.rutledgepaulv.rqe.pipes.QueryConversionPipeline;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.repository.InMemoryRepository;
+import xyz.kvantum.server.api.repository.Matcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RSQLSearchServiceTest {
+
+    private static final int ITEMS = 100;
+    private static final int REQUESTS = 10_000;
+    private static final String[] QUERIES =
+        {"name==item7", "price=gt=50;name!=item60", "name=in=(item1,item2,item3)", "price=le=10",
+            "name==item7 or (price=le=10)"};
+
+    private static InMemoryRepository<Item, String> repository() {
+        final InMemoryRepository<Item, String> repository = new InMemoryRepository<>(Item.class, Item::getName);
+        final List<Item> items = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            items.add(new Item("item" + i, i));
+        }
+        repository.save(items);
+        return repository;
+    }
+
+    private static RSQLSearchService<Item> service(final InMemoryRepository<Item, String> repository) {
+        return RSQLSearchService.<Item>builder().filter("search").queryKey("q").resultProvider(repository).build();
+    }
+
+    /**
+     * Answers the queries the way the service does, with predicates from the shared cache
+     */
+    private static int runCached(final RSQLSearchService<Item> service) {
+        int results = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            results += service.getResultProvider()
+                .findAllByQuery(service.getMatcher().createMatcher(QUERIES[i % QUERIES.length])).size();
+        }
+        return results;
+    }
+
+    /**
+     * Answers the queries by compiling every query again, which is what {@code RSQLMatcher} used to do
+     */
+    private static int runCompiled(final RSQLSearchService<Item> service, final QueryConversionPipeline pipeline) {
+        int results = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            results += service.getResultProvider()
+                .findAllByQuery(new CompilingMatcher(pipeline, QUERIES[i % QUERIES.length])).size();
+        }
+        return results;
+    }
+
+    private static List<String> names(final Collection<? extends Item> items) {
+        return items.stream().map(Item::getName).sorted().collect(Collectors.toList());
+    }
+
+    @Test void cachedPredicatesMatchCompiledQueries() {
+        final RSQLSearchService<Item> service = service(repository());
+        final QueryConversionPipeline pipeline = QueryConversionPipeline.defaultPipeline();
+        for (final String query : QUERIES) {
+            assertEquals(names(service.getResultProvider().findAllByQuery(new CompilingMatcher(pipeline, query))),
+                names(service.getResultProvider().findAllByQuery(service.getMatcher().createMatcher(query))),
+                query);
+        }
+    }
+
+    /**
+     * Compares the cost of repeated queries with predicates from the shared cache, and with every query compiled
+     * again
+     */
+    @Tag("benchmark") @Test void repeatedQueriesAreFaster() {
+        final RSQLSearchService<Item> service = service(repository());
+        final QueryConversionPipeline pipeline = QueryConversionPipeline.defaultPipeline();
+        long cachedTime = 0L, compiledTime = 0L;
+        int cachedResults = 0, compiledResults = 0;
+        for (int round = 0; round < 2; round++) { // The first round is a warm-up
+            long start = System.nanoTime();
+            cachedResults = runCached(service);
+            cachedTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            compiledResults = runCompiled(service, pipeline);
+            compiledTime = System.nanoTime() - start;
+        }
+        assertEquals(compiledResults, cachedResults);
+        assertTrue(cachedTime < compiledTime, String
+            .format("%d requests: %d ms with cached predicates, %d ms compiling every query", REQUESTS,
+                cachedTime / 1_000_000L, compiledTime / 1_000_000L));
+    }
+
+    private static final class CompilingMatcher extends Matcher<String, Item> {
+
+        private final QueryConversionPipeline pipeline;
+        private Predicate<Item> predicate;
+
+        private CompilingMatcher(final QueryConversionPipeline pipeline, final String query) {
+            super(query);
+            this.pipeline = pipeline;
+        }
+
+        @Override protected boolean matches(final String query, final Item value) {
+            if (this.predicate == null) {
+                this.predicate = this.pipeline.apply(query, Item.class).query(new PredicateVisitor<>());
+            }
+            return this.predicate.test(value);
+        }
+    }
+
+    public static final class Item {
+
+        private final String name;
+        private final int price;
+
+        private Item(final String name, final int price) {
+            this.name = name;
+            this.price = price;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public int getPrice() {
+            return this.price;
+        }
+    }
+
+}
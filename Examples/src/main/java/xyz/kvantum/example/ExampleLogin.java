@@ -30,11 +30,16 @@ import xyz.kvantum.server.api.orm.KvantumObjectFactory;
 import xyz.kvantum.server.api.orm.KvantumObjectParserResult;
 import xyz.kvantum.server.api.request.AbstractRequest;
 import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.response.Header;
 import xyz.kvantum.server.api.response.Response;
 import xyz.kvantum.server.api.util.ParameterScope;
 import xyz.kvantum.server.api.views.annotatedviews.ViewMatcher;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Send a POST request to "/login", required fields: username, password <p> Default admin account is Username: admin
@@ -52,18 +57,18 @@ import java.util.Optional;
     }
 
     //
-    // Match POST requests to /login
+    // Match POST requests to /login. The method returns a stage, so the request thread is released
+    // while the password is being verified
     //
-    @ViewMatcher(filter = "login", httpMethod = HttpMethod.POST) public final void debugAccounts(
-        final AbstractRequest request, final Response response) {
+    @ViewMatcher(filter = "login", httpMethod = HttpMethod.POST) public final CompletionStage<Response> debugAccounts(
+        final AbstractRequest request) {
         //
         // Get the account manager implementation. This is also an account repository, and is
         // responsible for account retrieving, creation and alike.
         //
         final IAccountManager accountManager = AccountService.getInstance().getGlobalAccountManager();
         if (accountManager.getAccount(request.getSession()).isPresent()) {
-            response.setResponse("You are already logged in...");
-            return;
+            return respond("You are already logged in...");
         }
 
         //
@@ -78,8 +83,7 @@ import java.util.Optional;
             factory.build(ParameterScope.POST).parseRequest(request);
 
         if (!result.isSuccess()) {
-            response.setResponse("Error: " + result.getError().getCause());
-            return;
+            return respond("Error: " + result.getError().getCause());
         }
 
         //
@@ -88,17 +92,40 @@ import java.util.Optional;
         final Optional<IAccount> accountOptional =
             accountManager.getAccount(result.getParsedObject().getUsername());
         if (!accountOptional.isPresent()) {
-            response.setResponse("No such account...");
-            return;
+            return respond("No such account...");
         }
 
+        //
+        // Verify the password on the password hashing threads, and continue on the server
+        // executor once it is done
+        //
         final IAccount account = accountOptional.get();
-        if (account.passwordMatches(result.getParsedObject().getPassword())) {
-            accountManager.bindAccount(account, request.getSession());
-            response.setResponse("Success!");
-        } else {
-            response.setResponse("Password is wrong!");
-        }
+        return account.passwordMatchesAsync(result.getParsedObject().getPassword())
+            .handleAsync((matches, throwable) -> {
+                final Response response = new Response();
+                if (throwable != null) {
+                    final Throwable cause =
+                        throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (!(cause instanceof RejectedExecutionException)) {
+                        throw new CompletionException(cause);
+                    }
+                    // Too many logins are being verified right now
+                    response.getHeader().setStatus(Header.STATUS_SERVICE_UNAVAILABLE);
+                    response.setResponse("Please try again later...");
+                } else if (matches) {
+                    accountManager.bindAccount(account, request.getSession());
+                    response.setResponse("Success!");
+                } else {
+                    response.setResponse("Password is wrong!");
+                }
+                return response;
+            }, ServerImplementation.getImplementation().getExecutorService());
+    }
+
+    private static CompletionStage<Response> respond(final String message) {
+        final Response response = new Response();
+        response.setResponse(message);
+        return CompletableFuture.completedFuture(response);
     }
 
 }
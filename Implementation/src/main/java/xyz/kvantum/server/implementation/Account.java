@@ -33,7 +33,10 @@ import org.mongodb.morphia.annotations.Transient;
 import xyz.kvantum.server.api.account.AccountExtension;
 import xyz.kvantum.server.api.account.IAccount;
 import xyz.kvantum.server.api.account.IAccountManager;
+import xyz.kvantum.server.api.account.PasswordHashingService;
 import xyz.kvantum.server.api.account.roles.AccountRole;
+import xyz.kvantum.server.api.account.roles.PermissionSet;
+import xyz.kvantum.server.api.account.roles.Permissions;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.orm.KvantumObjectFactory;
 import xyz.kvantum.server.api.orm.annotations.KvantumConstructor;
@@ -47,12 +50,17 @@ import xyz.kvantum.server.api.util.Assert;
 import xyz.kvantum.server.api.util.AutoCloseable;
 import xyz.kvantum.server.api.util.StringList;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Implementation of {@link IAccount} that also fully supports {@link KvantumObjectFactory} and {@link
@@ -75,11 +83,15 @@ import java.util.concurrent.ConcurrentHashMap;
         new ConcurrentHashMap<>();
     @Min(-1) @KvantumField @Id @Getter private int id;
     @NotEmpty @KvantumField @Getter private String username;
-    @KvantumField private String password;
+    // Replaced by the hashing threads when the hash is upgraded
+    @KvantumField private volatile String password;
     private Map<String, String> data;
+    // Data keys that were set or removed before the account had a manager to write them to
+    @Transient private final transient Set<String> changedKeys = ConcurrentHashMap.newKeySet();
     @Setter @Transient private transient IAccountManager manager;
     private StringList rawRoleList;
     private Collection<AccountRole> roleList;
+    @Transient private transient volatile PermissionSet permissions;
 
     public Account(final int id, final String username, final String password,
         final Map<String, String> data) {
@@ -111,7 +123,32 @@ import java.util.concurrent.ConcurrentHashMap;
     }
 
     @Override public boolean passwordMatches(final String password) {
-        return IAccountManager.checkPassword(password, this.password);
+        try {
+            return PasswordHashingService.join(this.passwordMatchesAsync(password));
+        } catch (final RejectedExecutionException e) {
+            Logger.warn("Rejected a password check for {}: {}", this.username, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override public CompletableFuture<Boolean> passwordMatchesAsync(final String password) {
+        final PasswordHashingService service = PasswordHashingService.getInstance();
+        final String hash = this.password;
+        return service.verify(password, hash).thenCompose(matches -> {
+            if (!matches || !service.needsRehash(hash)) {
+                return CompletableFuture.completedFuture(matches);
+            }
+            // The hash was created with another work factor, replace it while the password is known
+            return service.hash(password).handle((upgraded, throwable) -> {
+                if (throwable != null) {
+                    Logger.warn("Failed to upgrade the password hash of {}: {}", this.username,
+                        throwable.getMessage());
+                } else if (this.manager != null && this.manager.updatePasswordHash(this, upgraded)) {
+                    this.password = upgraded;
+                }
+                return true;
+            });
+        });
     }
 
     @Override public Optional<String> getData(final String key) {
@@ -124,21 +161,27 @@ import java.util.concurrent.ConcurrentHashMap;
         Assert.notEmpty(key);
         Assert.notEmpty(value);
 
-        if (data.containsKey(key)) {
-            removeData(key);
+        if (value.equals(this.data.put(key, value))) {
+            return;
+        }
+        if (this.manager == null) {
+            this.changedKeys.add(key);
+        } else {
+            this.manager.setData(this, key, value);
         }
-        this.data.put(key, value);
-        this.manager.setData(this, key, value);
     }
 
     @Override public void removeData(final String key) {
         Assert.notEmpty(key);
 
-        if (!data.containsKey(key)) {
+        if (this.data.remove(key) == null) {
             return;
         }
-        this.data.remove(key);
-        this.manager.removeData(this, key);
+        if (this.manager == null) {
+            this.changedKeys.add(key);
+        } else {
+            this.manager.removeData(this, key);
+        }
     }
 
     @Override @Ignore public Collection<AccountRole> getAccountRoles() {
@@ -167,6 +210,7 @@ import java.util.concurrent.ConcurrentHashMap;
             return;
         }
         this.roleList.add(role);
+        Permissions.roleChanged();
         this.rawRoleList.add(role.getRoleIdentifier());
         this.setData(KEY_ROLE_LIST, rawRoleList.toString());
     }
@@ -177,8 +221,14 @@ import java.util.concurrent.ConcurrentHashMap;
         }
         if (this.roleList.contains(role)) {
             this.roleList.remove(role);
+            Permissions.roleChanged();
             this.rawRoleList.remove(role.getRoleIdentifier());
-            this.setData(KEY_ROLE_LIST, rawRoleList.toString());
+            if (this.rawRoleList.isEmpty()) {
+                // Data values may not be empty
+                this.removeData(KEY_ROLE_LIST);
+            } else {
+                this.setData(KEY_ROLE_LIST, rawRoleList.toString());
+            }
         }
     }
 
@@ -211,26 +261,54 @@ import java.util.concurrent.ConcurrentHashMap;
 
     @Override public void saveState() {
         for (final AccountExtension extension : this.extensions.values()) {
-            extension.saveState();
+            extension.saveIfDirty();
+        }
+        if (this.changedKeys.isEmpty() || this.manager == null) {
+            return;
+        }
+        final Map<String, String> changed = new HashMap<>();
+        final Collection<String> removed = new ArrayList<>();
+        for (final Iterator<String> iterator = this.changedKeys.iterator(); iterator.hasNext(); ) {
+            final String key = iterator.next();
+            iterator.remove();
+            final String value = this.data.get(key);
+            if (value == null) {
+                removed.add(key);
+            } else {
+                changed.put(key, value);
+            }
+        }
+        if (!this.manager.saveData(this, changed, removed)) {
+            // Try again next time
+            this.changedKeys.addAll(changed.keySet());
+            this.changedKeys.addAll(removed);
         }
     }
 
-    @Override public boolean isPermitted(final String permissionKey) {
-        if (this.roleList == null) {
-            this.getAccountRoles();
+    @Override public boolean isDirty() {
+        if (!this.changedKeys.isEmpty()) {
+            return true;
         }
-        //
-        // Loop through every role, and return on first match.
-        // We do not cache the results, as roles are hot-swappable
-        //
-        for (final AccountRole role : this.getAccountRoles()) {
-            if (role.hasPermission(permissionKey)) {
+        for (final AccountExtension extension : this.extensions.values()) {
+            if (extension.isDirty()) {
                 return true;
             }
         }
         return false;
     }
 
+    @Override public boolean isPermitted(final String permissionKey) {
+        //
+        // Roles are hot-swappable, so the compiled permissions are replaced as soon as
+        // any role has changed
+        //
+        PermissionSet permissions = this.permissions;
+        if (permissions == null || !permissions.isCurrent()) {
+            this.permissions = permissions = PermissionSet.compile(this.getAccountRoles());
+        }
+        return permissions.isPermitted(permissionKey);
+    }
+
     @Override public KvantumPojo<IAccount> toKvantumPojo() {
         return kvantumPojoFactory.of(this);
     }
@@ -0,0 +1,123 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.Getter;
+import xyz.kvantum.server.api.account.IAccount;
+import xyz.kvantum.server.api.core.ServerImplementation;
+import xyz.kvantum.server.api.logging.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves accounts when they are removed from an account cache. Only accounts with unsaved changes (see {@link
+ * IAccount#isDirty()}) are saved, so evicting accounts that were only read does not cause any writes.
+ * <p>
+ * The cache should notify the listener using {@link #getExecutor()}, so that {@link #close(Cache)} can wait for the
+ * accounts to be saved
+ */
+public final class AccountRemovalListener implements RemovalListener<Integer, IAccount> {
+
+    private static final long CLOSE_TIMEOUT = 30L;
+
+    private final Counter saved;
+    private final Counter skipped;
+    /**
+     * Executor that runs the maintenance and the removal notifications of the cache
+     */
+    @Getter private final ExecutorService executor =
+        Executors.newSingleThreadExecutor(new DefaultThreadFactory("account-cache", true));
+
+    /**
+     * @param owner Class that owns the cache, used to name the metrics
+     */
+    public AccountRemovalListener(final Class<?> owner) {
+        if (ServerImplementation.hasImplementation()) {
+            final MetricRegistry registry =
+                ServerImplementation.getImplementation().getMetrics().getRegistry();
+            this.saved = registry.counter(MetricRegistry.name(owner, "savedEvictions"));
+            this.skipped = registry.counter(MetricRegistry.name(owner, "skippedEvictions"));
+        } else {
+            this.saved = new Counter();
+            this.skipped = new Counter();
+        }
+    }
+
+    @Override
+    public void onRemoval(final Integer key, final IAccount account, final RemovalCause cause) {
+        if (account == null) {
+            return;
+        }
+        if (account.isDirty()) {
+            account.saveState();
+            this.saved.inc();
+        } else {
+            this.skipped.inc();
+        }
+    }
+
+    /**
+     * Remove all accounts from a cache that notifies this listener, and wait until the accounts with unsaved
+     * changes have been saved. Neither the cache nor the listener can be used afterwards
+     *
+     * @param cache Account cache
+     */
+    public void close(final Cache<Integer, IAccount> cache) {
+        cache.invalidateAll();
+        cache.cleanUp();
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS)) {
+                Logger.warn("Timed out saving cached accounts");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the number of removed accounts that had to be saved
+     *
+     * @return Saved account count
+     */
+    public long getSaved() {
+        return this.saved.getCount();
+    }
+
+    /**
+     * Get the number of removed accounts that had no changes to save
+     *
+     * @return Skipped account count
+     */
+    public long getSkipped() {
+        return this.skipped.getCount();
+    }
+
+}
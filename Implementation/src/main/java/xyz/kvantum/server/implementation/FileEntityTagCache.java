@@ -0,0 +1,117 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import xyz.kvantum.server.api.core.ServerImplementation;
+import xyz.kvantum.server.api.response.EntityTag;
+import xyz.kvantum.server.api.util.ObjectPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Cache of strong entity tags for static files. The tags are derived from the size, modification time and
+ * MD5 checksum of the files. The checksum is computed when a file is first requested, and whenever its size or
+ * modification time changes. It is computed outside of the cache, so that hashing a large file doesn't block
+ * lookups of other files; threads that request a new version at the same time may both compute it
+ */
+final class FileEntityTagCache {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Cache<Path, Validators> validators;
+    private final ObjectPool<Md5Handler> md5Handlers;
+
+    FileEntityTagCache(final int maximumSize, @NonNull final ObjectPool<Md5Handler> md5Handlers) {
+        this.validators = Caffeine.newBuilder().maximumSize(maximumSize).build();
+        this.md5Handlers = md5Handlers;
+    }
+
+    /**
+     * Get the validators of the current version of a file
+     *
+     * @param file File
+     * @return Validators, or null if the file cannot be read
+     */
+    Validators getValidators(@NonNull final Path file) {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (final IOException e) {
+            return null;
+        }
+        final long size = attributes.size();
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        final Validators current = this.validators.getIfPresent(file);
+        if (current != null && current.size == size && current.lastModified == lastModified) {
+            return current;
+        }
+        final EntityTag entityTag = this.generateEntityTag(file, size, lastModified);
+        if (entityTag == null) {
+            return null;
+        }
+        final Validators created = new Validators(size, lastModified, entityTag);
+        // Never replace a newer version that was stored by another thread in the meantime
+        this.validators.asMap().merge(file, created,
+            (stored, added) -> stored.lastModified > added.lastModified ? stored : added);
+        return created;
+    }
+
+    private EntityTag generateEntityTag(final Path file, final long size, final long lastModified) {
+        final StringBuilder tag = new StringBuilder(Long.toHexString(size)).append('-')
+            .append(Long.toHexString(lastModified));
+        final Md5Handler md5Handler = this.md5Handlers.acquire();
+        try {
+            if (md5Handler.isAvailable()) {
+                try (final InputStream inputStream = Files.newInputStream(file)) {
+                    tag.append('-').append(md5Handler.generateChecksum(inputStream, new byte[BUFFER_SIZE]));
+                }
+            }
+        } catch (final IOException e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+            return null;
+        } finally {
+            this.md5Handlers.release(md5Handler);
+        }
+        return EntityTag.strong(tag.toString());
+    }
+
+    /**
+     * Validators of a version of a file
+     */
+    @Getter @RequiredArgsConstructor static final class Validators {
+
+        private final long size;
+        private final long lastModified;
+        private final EntityTag entityTag;
+
+    }
+
+}
@@ -21,37 +21,39 @@
  */
 package xyz.kvantum.server.implementation;
 
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import lombok.SneakyThrows;
+import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.util.Assert;
-import xyz.kvantum.server.api.util.AutoCloseable;
 import xyz.kvantum.server.implementation.cache.ThreadCache;
 import xyz.kvantum.server.implementation.compression.ParallelGZIPOutputStream;
 import xyz.kvantum.server.implementation.compression.ReusableByteArrayOutputStream;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 /**
- * Handler for Gzip compression
+ * Handler for Gzip compression of responses with a known length. Streamed responses use a {@link
+ * xyz.kvantum.server.implementation.compression.StreamingGzipEncoder} instead. Handlers are pooled, and they are
+ * closed by the pool once they are dropped, or once the pool is closed
  */
-final class GzipHandler extends AutoCloseable {
+final class GzipHandler {
 
-    private final ParallelGZIPOutputStream reusablePGzipOutputStream; // parallel
     private final ReusableGzipOutputStream reusableGzipOutputStream;
 
     private final ReusableByteArrayOutputStream buffer;
 
     @SneakyThrows GzipHandler() {
-        this.buffer = new ReusableByteArrayOutputStream(ThreadCache.COMPRESS_BUFFER.get());
-        this.reusablePGzipOutputStream = new ParallelGZIPOutputStream(buffer);
+        // Handlers are shared between threads, so they can't use a thread local buffer
+        this.buffer = new ReusableByteArrayOutputStream(ThreadCache.newCompressBuffer());
         this.reusableGzipOutputStream = new ReusableGzipOutputStream(buffer);
     }
 
-    @Override protected void handleClose() {
+    /**
+     * Release the deflater of the handler. The handler can't be used afterwards
+     */
+    void close() {
         try {
-            this.reusablePGzipOutputStream.close();
             this.reusableGzipOutputStream.close();
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
@@ -59,19 +61,27 @@ final class GzipHandler extends AutoCloseable {
     }
 
     /**
-     * Compress bytes using gzip
-     * <p>
-     * TODO optimize (though not super important since it's only used for fixed getCount)
+     * Compress bytes using gzip. Bodies of at least {@link CoreConfig.Compression#parallelMinimumSize} bytes
+     * are compressed in parallel, using {@link ParallelGZIPOutputStream}, unless there is only one processor (or
+     * compression thread) to compress them on
      *
-     * @param data Bytes to compress
+     * @param data  Bytes to compress
+     * @param level Compression level
      * @return GZIP compressed data
      * @throws IOException If compression fails
      */
-    byte[] compress(final byte[] data) throws IOException {
+    byte[] compress(final byte[] data, final int level) throws IOException {
         Assert.notNull(data);
 
+        final int parallelMinimumSize = CoreConfig.Compression.parallelMinimumSize;
+        if (parallelMinimumSize > 0 && data.length >= parallelMinimumSize
+            && ParallelGZIPOutputStream.getParallelism() > 1) {
+            return compressParallel(data, level);
+        }
+
         buffer.reset();
         reusableGzipOutputStream.reset();
+        reusableGzipOutputStream.setLevel(level);
         reusableGzipOutputStream.write(data);
         reusableGzipOutputStream.finish();
         reusableGzipOutputStream.flush();
@@ -83,21 +93,11 @@ final class GzipHandler extends AutoCloseable {
         return compressed;
     }
 
-    /**
-     * Compresses the input bytes into the buffer and returns the new length
-     *
-     * @param input       Input data
-     * @param inputLength length of input to compress
-     * @return compressed length (in buffer)
-     */
-    ByteBuf compress(final byte[] input, final int inputLength) throws IOException {
-        Assert.notNull(input);
-
-        buffer.reset();
-        reusablePGzipOutputStream.reset();
-        reusablePGzipOutputStream.write(input, 0, inputLength);
-        reusablePGzipOutputStream.close();
-
-        return Unpooled.wrappedBuffer(buffer.getBuffer(), 0, buffer.getCount());
+    private static byte[] compressParallel(final byte[] data, final int level) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(data.length >> 2);
+        try (final ParallelGZIPOutputStream gzipOutputStream = new ParallelGZIPOutputStream(output, level)) {
+            gzipOutputStream.write(data);
+        }
+        return output.toByteArray();
     }
 }
@@ -39,6 +39,7 @@ import xyz.kvantum.server.api.util.AsciiString;
 import xyz.kvantum.server.api.util.ProtocolType;
 
 import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 /**
@@ -56,9 +57,9 @@ import java.util.function.Supplier;
     static final byte[] SPACE = AsciiString.of(" ").getValue();
     static final byte[] CRLF = AsciiString.of("\r\n").getValue();
     static final byte[] END_CHUNK = AsciiString.of("0\r\n\r\n").getValue();
-    static final AsciiString KEEP_ALIVE = AsciiString.of("keep-alive");
-    static final AsciiString CLOSE = AsciiString.of("close");
-    static final AsciiString CONNECTION = AsciiString.of("connection");
+    static final AsciiString KEEP_ALIVE = AsciiString.of("keep-alive", true);
+    static final AsciiString CLOSE = AsciiString.of("close", true);
+    static final AsciiString CONNECTION = AsciiString.of("connection", true);
     static final int MAX_LENGTH =
         AsciiString.of(Integer.toHexString(Integer.MAX_VALUE)).length() + (2 * CRLF.length);
 
@@ -93,6 +94,13 @@ import java.util.function.Supplier;
     RequestReader requestReader;
     boolean reused = false;
 
+    /**
+     * Worker context that has been recycled, and that will be used for the next request on this connection. As the
+     * response may be sent from another thread, there may be two contexts per connection: the one that is currently
+     * being read into, and the one that is being responded to
+     */
+    private final AtomicReference<WorkerContext> recycledContext = new AtomicReference<>();
+
     @Override public void handlerAdded(final ChannelHandlerContext context) {
         //
         // Prepare request
@@ -109,12 +117,34 @@ import java.util.function.Supplier;
     }
 
     void createNew(final SocketContext socketContext) {
+        final WorkerContext recycled = this.recycledContext.getAndSet(null);
+        if (recycled != null) {
+            recycled.reuse();
+            this.workerContext = recycled;
+            this.requestReader = recycled.getRequestReader();
+            return;
+        }
         this.workerContext = new WorkerContext(ServerImplementation.getImplementation(),
             ServerImplementation.getImplementation().getProcedure().getInstance(), this);
         this.workerContext.setSocketContext(socketContext);
         final Request request = new Request(socketContext);
         this.workerContext.setRequest(request);
         this.requestReader = new RequestReader(request, this.workerContext);
+        this.workerContext.setRequestReader(this.requestReader);
+    }
+
+    /**
+     * Recycle a worker context once its response has been sent on a kept-alive connection, so that it can be
+     * reused for a later request instead of being reallocated
+     *
+     * @param context Context that will no longer be used
+     */
+    void recycle(final WorkerContext context) {
+        if (!CoreConfig.Pools.recycleRequests) {
+            return;
+        }
+        context.recycle();
+        this.recycledContext.set(context);
     }
 
     @Override public void channelActive(final ChannelHandlerContext ctx) throws Exception {
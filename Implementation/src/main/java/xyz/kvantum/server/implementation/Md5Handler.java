@@ -24,6 +24,8 @@ package xyz.kvantum.server.implementation;
 import xyz.kvantum.server.api.config.Message;
 import xyz.kvantum.server.api.util.Assert;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
@@ -44,6 +46,15 @@ final class Md5Handler {
         digest = temporary;
     }
 
+    /**
+     * Check whether or not the MD5 digest is available
+     *
+     * @return True if the digest is available
+     */
+    boolean isAvailable() {
+        return this.digest != null;
+    }
+
     /**
      * MD5-ify the input
      *
@@ -61,4 +72,23 @@ final class Md5Handler {
         return new String(encoder.encode(digest.digest()));
     }
 
+    /**
+     * MD5-ify the contents of a stream. The stream is read until its end, but isn't closed
+     *
+     * @param inputStream Stream to be digested
+     * @param buffer      Buffer used to read the stream
+     * @return md5-ified digested content
+     * @throws IOException If the stream cannot be read
+     */
+    String generateChecksum(final InputStream inputStream, final byte[] buffer) throws IOException {
+        Assert.notNull(inputStream, buffer);
+
+        digest.reset();
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return new String(encoder.encode(digest.digest()));
+    }
+
 }
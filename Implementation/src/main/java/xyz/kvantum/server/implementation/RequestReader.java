@@ -41,10 +41,14 @@ import xyz.kvantum.server.api.request.post.UrlEncodedPostRequest;
 import xyz.kvantum.server.api.response.Header;
 import xyz.kvantum.server.api.util.AsciiString;
 import xyz.kvantum.server.api.util.AutoCloseable;
+import xyz.kvantum.server.api.util.Recyclable;
+import xyz.kvantum.server.api.util.SharedBuffer;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -52,16 +56,21 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Read a HTTP request until the first clear line. Does not read the HTTP message. The reader uses {@link
  * java.nio.charset.StandardCharsets#US_ASCII} as the charset, as defined by the HTTP protocol.
  */
-@SuppressWarnings({"unused", "WeakerAccess"}) final class RequestReader {
+@SuppressWarnings({"unused", "WeakerAccess"}) final class RequestReader implements Recyclable {
 
-    private static final AsciiString CONTENT_TYPE = AsciiString.of("content-type");
-    private static final AsciiString CONTENT_LENGTH = AsciiString.of("content-length");
+    private static final AsciiString CONTENT_TYPE = AsciiString.of("content-type", true);
+    private static final AsciiString CONTENT_LENGTH = AsciiString.of("content-length", true);
     private static final AsciiString CONTENT_TYPE_URL_ENCODED =
-        AsciiString.of("application/x-www-form-urlencoded");
-    private static final AsciiString CONTENT_TYPE_MULTIPART = AsciiString.of("multipart");
+        AsciiString.of("application/x-www-form-urlencoded", true);
+    private static final AsciiString CONTENT_TYPE_MULTIPART = AsciiString.of("multipart", true);
 
     private final Object lock = new Object();
-    @Getter private final StringBuilder builder;
+    /**
+     * Bytes of the line that is currently being read. Header lines are compiled directly from this
+     * array, through {@link SharedBuffer slices} that are released before the array is reused
+     */
+    private byte[] line;
+    private int lineLength = 0;
     private final AbstractRequest abstractRequest;
     private char lastCharacter = ' ';
     private AtomicBoolean done = new AtomicBoolean(false);
@@ -76,10 +85,51 @@ import java.util.concurrent.atomic.AtomicBoolean;
     private RequestOutputStream overflowStream;
     private RequestEntityReader requestEntityReader;
 
+    private volatile boolean poisoned = false;
+
     RequestReader(final AbstractRequest abstractRequest, final WorkerContext workerContext) {
         this.abstractRequest = abstractRequest;
         this.context = workerContext;
-        this.builder = new StringBuilder(CoreConfig.Limits.limitRequestLineSize);
+        this.line = new byte[CoreConfig.Limits.limitRequestLineSize];
+    }
+
+    /**
+     * Reset the parser state. The line buffer is kept, unless it has grown past the configured line size limit
+     */
+    @Override public void recycle() {
+        synchronized (this.lock) {
+            if (this.line.length > CoreConfig.Limits.limitRequestLineSize) {
+                this.line = new byte[CoreConfig.Limits.limitRequestLineSize];
+            }
+            this.lineLength = 0;
+            this.lastCharacter = ' ';
+            this.done.set(false);
+            this.begunLastLine = false;
+            this.hasQuery.set(false);
+            this.contentLength = -1;
+            this.readTargetz = ReadTarget.REQUEST_HEADERS;
+            this.cleared = true;
+            this.overflowStream = null;
+            if (this.requestEntityReader != null) {
+                this.requestEntityReader.close();
+                this.requestEntityReader = null;
+            }
+            this.poisoned = CoreConfig.Pools.poisonRecycled;
+        }
+    }
+
+    @Override public void reuse() {
+        this.poisoned = false;
+    }
+
+    /**
+     * Get the request that the reader compiles into. This is owned by the connection, and is not
+     * replaced by internal redirects
+     *
+     * @return Request
+     */
+    AbstractRequest getRequest() {
+        return this.abstractRequest;
     }
 
     ReadTarget getReadTarget() {
@@ -165,29 +215,44 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
         if (lastCharacter == '\r') {
             if (character == '\n') {
-                if (builder.length() != 0) {
-                    final String line = builder.toString();
+                if (lineLength != 0) {
                     if (!this.hasQuery.get()) {
-                        RequestCompiler.compileQuery(this.abstractRequest, line);
+                        RequestCompiler.compileQuery(this.abstractRequest,
+                            new String(this.line, 0, this.lineLength, StandardCharsets.US_ASCII));
                         hasQuery.set(true);
                     } else {
-                        final Optional<RequestCompiler.HeaderPair> headerPair =
-                            RequestCompiler.compileHeader(line);
-                        if (headerPair.isPresent()) {
-                            final RequestCompiler.HeaderPair pair = headerPair.get();
-                            this.abstractRequest.getHeaders().put(pair.getKey(), pair.getValue());
-                        } else {
-                            Logger.warn("Failed to read post request line: '{}'", line);
+                        final SharedBuffer lineBuffer = new SharedBuffer(this.line, 0, this.lineLength);
+                        try {
+                            final Optional<RequestCompiler.HeaderPair> headerPair =
+                                RequestCompiler.compileHeader(lineBuffer.slice());
+                            if (headerPair.isPresent()) {
+                                final RequestCompiler.HeaderPair pair = headerPair.get();
+                                this.abstractRequest.getHeaders().add(pair.getKey(), pair.getValue());
+                            } else {
+                                Logger.warn("Failed to read post request line: '{}'",
+                                    lineBuffer.slice().toString());
+                            }
+                        } finally {
+                            lineBuffer.release();
                         }
                     }
                 }
-                builder.setLength(0);
+                lineLength = 0;
             }
         } else {
             if (lastCharacter == '\n' && character == '\r') {
                 begunLastLine = true;
             } else if (character != '\n' && character != '\r') {
-                builder.append(character);
+                if (lineLength >= CoreConfig.Limits.limitRequestLineSize) {
+                    throw new ReturnStatus(this.hasQuery.get() ?
+                        Header.STATUS_REQUEST_HEADER_FIELDS_TOO_LARGE :
+                        Header.STATUS_URI_TOO_LONG, null);
+                }
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line,
+                        Math.min(CoreConfig.Limits.limitRequestLineSize, Math.max(16, line.length << 1)));
+                }
+                line[lineLength++] = b;
             }
         }
         lastCharacter = character;
@@ -210,6 +275,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
     void readBytes(final ByteBuf byteBuf) throws Throwable {
         synchronized (this.lock) {
+            Recyclable.checkPoison(this.poisoned, this);
             if (this.getReadTarget() == ReadTarget.REQUEST_BODY && !this.overflowStream.canWrite()) {
                 return; // Read nothing, we need to wait!
             }
@@ -29,6 +29,7 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import lombok.RequiredArgsConstructor;
+import xyz.kvantum.files.Path;
 import xyz.kvantum.server.api.cache.CacheApplicable;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.config.CoreConfig.Buffer;
@@ -38,8 +39,12 @@ import xyz.kvantum.server.api.core.WorkerProcedure;
 import xyz.kvantum.server.api.io.KvantumOutputStream;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.CompressionPolicy;
+import xyz.kvantum.server.api.response.ConditionalRequest;
+import xyz.kvantum.server.api.response.EntityTag;
 import xyz.kvantum.server.api.response.FinalizedResponse;
 import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.response.HeaderMap;
 import xyz.kvantum.server.api.response.HeaderOption;
 import xyz.kvantum.server.api.response.KnownLengthStream;
 import xyz.kvantum.server.api.response.Response;
@@ -50,16 +55,23 @@ import xyz.kvantum.server.api.util.DebugTree;
 import xyz.kvantum.server.api.util.ProtocolType;
 import xyz.kvantum.server.api.util.TimeUtil;
 import xyz.kvantum.server.api.views.RequestHandler;
+import xyz.kvantum.server.api.views.StaticFileView;
 import xyz.kvantum.server.api.views.errors.ViewException;
 import xyz.kvantum.server.api.views.requesthandler.HTTPSRedirectHandler;
 import xyz.kvantum.server.implementation.cache.ThreadCache;
+import xyz.kvantum.server.implementation.compression.StreamingGzipEncoder;
 import xyz.kvantum.server.implementation.error.KvantumException;
 
 import javax.net.ssl.SSLException;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
+import java.util.Date;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static xyz.kvantum.server.implementation.KvantumServerHandler.CLOSE;
 import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
@@ -67,12 +79,29 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
 @RequiredArgsConstructor final class ResponseTask implements Runnable {
 
     private static final String HIDDEN_IP = "127.0.0.1";
+    private static final AsciiString IF_NONE_MATCH = AsciiString.of("if-none-match", true);
+    private static final AsciiString IF_MODIFIED_SINCE = AsciiString.of("if-modified-since", true);
+    /**
+     * Headers that are copied from the full response to a 304 response
+     */
+    private static final HeaderOption[] NOT_MODIFIED_HEADERS =
+        new HeaderOption[] {Header.HEADER_ETAG, Header.HEADER_LAST_MODIFIED, Header.HEADER_CACHE_CONTROL,
+            Header.HEADER_EXPIRES};
 
     final ChannelHandlerContext context;
     final WorkerContext workerContext;
 
+    //
+    // State shared between the phase that generates the response, and the phase that
+    // completes it. The phases run on different threads if the response is generated asynchronously
+    //
+    private boolean cache, shouldCache;
+    private EntityTag fileEntityTag;
+    private Timer.Context totalTimer;
+
     @Override public void run() {
-        try (Timer.Context ignored = KvantumServerHandler.TIMER_TOTAL_SEND.time()) {
+        this.totalTimer = KvantumServerHandler.TIMER_TOTAL_SEND.time();
+        this.proceed(() -> {
             //
             // Attempt to find a handler for the request, or create
             // the appropriate error handler
@@ -81,22 +110,92 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
             //
             // Generate the response
             //
-            writeResponse();
+            return writeResponse();
+        });
+    }
+
+    /**
+     * Run a step of the response generation. If the step returns a pending response, the task is
+     * suspended until the response is available, otherwise the response is sent to the client
+     *
+     * @param step Step to run
+     */
+    private void proceed(final Step step) {
+        boolean keepAlive = false;
+        try {
+            final CompletableFuture<? extends ResponseBody> pending = step.run();
+            if (pending != null) {
+                this.suspend(pending);
+                return;
+            }
             //
             // Send the response to the client
             //
-            sendResponse(context);
+            keepAlive = sendResponse(context);
         } catch (final Throwable throwable) {
             handleThrowable(throwable, context);
         }
+        this.totalTimer.stop();
+        //
+        // The connection is kept alive, so the context can be reused
+        // for the next request. Failed requests always close the connection
+        //
+        if (keepAlive) {
+            workerContext.getKvantumServerHandler().recycle(workerContext);
+        }
+    }
+
+    /**
+     * Release the current thread until the response is available. The response is cancelled if the
+     * client disconnects, and fails with a 503 status if it isn't available within {@link
+     * CoreConfig.Async#timeout}
+     *
+     * @param pending Pending response
+     */
+    private void suspend(final CompletableFuture<? extends ResponseBody> pending) {
+        final ChannelFuture closeFuture = context.channel().closeFuture();
+        final ChannelFutureListener cancel = future -> pending.cancel(false);
+        closeFuture.addListener(cancel);
+        pending.orTimeout(CoreConfig.Async.timeout, TimeUnit.MILLISECONDS)
+            .whenCompleteAsync((body, throwable) -> {
+                closeFuture.removeListener(cancel);
+                this.resume(body, throwable);
+            }, ServerImplementation.getImplementation().getExecutorService());
+    }
+
+    private void resume(final ResponseBody body, final Throwable throwable) {
+        if (!context.channel().isActive()) {
+            // The client has disconnected, so there's no one to respond to
+            this.totalTimer.stop();
+            return;
+        }
+        if (throwable == null) {
+            this.proceed(() -> completeResponse(body));
+            return;
+        }
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ?
+            throwable.getCause() :
+            throwable;
+        if (cause instanceof CancellationException) {
+            this.totalTimer.stop();
+            return;
+        }
+        this.proceed(() -> {
+            if (cause instanceof ReturnStatus) {
+                throw cause;
+            } else if (cause instanceof TimeoutException) {
+                throw new ReturnStatus(Header.STATUS_SERVICE_UNAVAILABLE, workerContext, cause);
+            }
+            throw new ReturnStatus(Header.STATUS_INTERNAL_ERROR, workerContext, cause);
+        });
     }
 
     private void determineRequestHandler() throws Throwable {
-        try (Timer.Context timer = KvantumServerHandler.TIMER_ROUTING.time()) {
+        final Timer.Context timer = KvantumServerHandler.TIMER_ROUTING.time();
+        try {
             workerContext.setRequestHandler(ServerImplementation.getImplementation().getRouter()
                 .match(workerContext.getRequest()));
             if (workerContext.getRequestHandler() == null) {
-                timer.close();
                 throw new ReturnStatus(Header.STATUS_NOT_FOUND, workerContext);
             }
             if (workerContext.getRequest().getProtocolType() != ProtocolType.HTTPS && workerContext
@@ -106,7 +205,6 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
                         workerContext.getRequest(), workerContext.getRequestHandler());
                 }
                 if (!CoreConfig.SSL.enable) {
-                    timer.close();
                     throw new ReturnStatus(Header.STATUS_INTERNAL_ERROR, workerContext,
                         new SSLException(String
                             .format("Request handler %s forced HTTPS but SSL runner not enabled",
@@ -114,6 +212,8 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
                 }
                 workerContext.setRequestHandler(HTTPSRedirectHandler.getInstance());
             }
+        } finally {
+            timer.stop();
         }
     }
 
@@ -160,17 +260,22 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
         }
     }
 
-    private void writeResponse() throws Throwable {
-        final Timer.Context timer = KvantumServerHandler.TIMER_WRITE_RESPONSE.time();
-        //
-        // Scope variables
-        //
-        RequestHandler requestHandler = workerContext.getRequestHandler();
-        AbstractRequest request = workerContext.getRequest();
-        ResponseBody body;
-        KvantumOutputStream responseStream;
-        boolean cache = false, shouldCache = false;
+    /**
+     * Generate the response. If the response is generated asynchronously, the pending response is returned,
+     * and {@link #completeResponse(ResponseBody)} has to be called once it is available
+     *
+     * @return Pending response, or null if the response is ready to be sent
+     */
+    private CompletableFuture<? extends ResponseBody> writeResponse() throws Throwable {
+        final RequestHandler requestHandler = workerContext.getRequestHandler();
+        final AbstractRequest request = workerContext.getRequest();
+        final CompletableFuture<? extends ResponseBody> generated;
+
+        this.cache = false;
+        this.shouldCache = false;
+        this.fileEntityTag = null;
 
+        final Timer.Context timer = KvantumServerHandler.TIMER_WRITE_RESPONSE.time();
         try {
             //
             // Validate the request, if there are
@@ -194,20 +299,57 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
             //
             if (!cache
                 || shouldCache) { // Either it's a non-cached view, or there is no cache stored
-                body = requestHandler.handle(request);
+                generated = requestHandler.handleAsync(request, this::answerFromFileValidators)
+                    .toCompletableFuture();
                 if (CoreConfig.debug) {
                     Logger.debug("Did not find cache for request handler: {}",
                         requestHandler.getName());
                 }
             } else {
                 // Just read from memory
-                body = ServerImplementation.getImplementation().getCacheManager()
-                    .getCache(requestHandler);
+                generated = CompletableFuture.completedFuture(ServerImplementation.getImplementation()
+                    .getCacheManager().getCache(requestHandler));
                 if (CoreConfig.debug) {
                     Logger.debug("Found request handler in cache: {}", requestHandler.getName());
                 }
             }
+        } catch (final Exception e) {
+            throw new ReturnStatus(Header.STATUS_INTERNAL_ERROR, workerContext, e);
+        } finally {
+            timer.stop();
+        }
+
+        //
+        // Synchronous handlers complete immediately, in which case the response is completed
+        // on this thread
+        //
+        if (!generated.isDone()) {
+            return generated;
+        }
+        final ResponseBody body;
+        try {
+            body = generated.join();
+        } catch (final CompletionException e) {
+            throw new ReturnStatus(Header.STATUS_INTERNAL_ERROR, workerContext, e.getCause());
+        }
+        return this.completeResponse(body);
+    }
 
+    /**
+     * Complete a generated response, and prepare it for sending
+     *
+     * @param body Generated response
+     * @return Pending response, if the request was redirected internally to an asynchronous handler, or null if
+     * the response is ready to be sent
+     */
+    private CompletableFuture<? extends ResponseBody> completeResponse(final ResponseBody body)
+        throws Throwable {
+        final RequestHandler requestHandler = workerContext.getRequestHandler();
+        final AbstractRequest request = workerContext.getRequest();
+        final KvantumOutputStream responseStream;
+
+        final Timer.Context timer = KvantumServerHandler.TIMER_WRITE_RESPONSE.time();
+        try {
             //
             // If the body is null, it is either marked for an internal redirect
             // or something went wrong. In any case, abort.
@@ -225,13 +367,13 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
                         Logger.debug("Redirect is to " + redirectRequest.getQuery().getResource());
                     }
                     this.determineRequestHandler();
-                    this.writeResponse();
+                    return this.writeResponse();
                 }
-                return;
+                return null;
             }
 
             final AsciiString expected;
-            if (!(expected = request.getHeader(AsciiString.of("expect"))).isEmpty()) {
+            if (!(expected = request.getHeader(AsciiString.of("expect", true))).isEmpty()) {
                 if (body.getHeader().getStatus().startsWith("200") && expected.startsWith("100")) { // it was okay, so we conform :P
                     body.getHeader().setStatus(Header.STATUS_CONTINUE);
                 }
@@ -239,6 +381,25 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
 
             responseStream = body.getResponseStream();
 
+            //
+            // Static files get a strong entity tag. Cacheable responses get a weak entity tag
+            // generated from the body, which is stored along with the cached response
+            //
+            if (fileEntityTag != null) {
+                body.getHeader().set(Header.HEADER_ETAG, fileEntityTag.toString());
+            } else if (cache && responseStream instanceof KnownLengthStream && Header.STATUS_OK
+                .equals(body.getHeader().getStatus()) && !body.getHeader().hasHeader(Header.HEADER_ETAG)) {
+                final Md5Handler md5Handler = SimpleServer.md5HandlerPool.acquire();
+                try {
+                    if (md5Handler.isAvailable()) {
+                        body.getHeader().set(Header.HEADER_ETAG, EntityTag.weak(md5Handler
+                            .generateChecksum(((KnownLengthStream) responseStream).getAll())).toString());
+                    }
+                } finally {
+                    SimpleServer.md5HandlerPool.release(md5Handler);
+                }
+            }
+
             //
             // Store cache
             //
@@ -247,9 +408,25 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
                     .setCache(requestHandler, body);
             }
 
+            //
+            // Evaluate conditional requests against the validators set by the view, or the
+            // cached response. Static files have already been evaluated
+            //
+            if (fileEntityTag == null && Header.STATUS_OK.equals(body.getHeader().getStatus())) {
+                final EntityTag entityTag = body.getHeader().get(Header.HEADER_ETAG).map(EntityTag::parseList)
+                    .filter(tags -> !tags.isEmpty()).map(tags -> tags.get(0)).orElse(null);
+                final long lastModified = body.getHeader().get(Header.HEADER_LAST_MODIFIED)
+                    .map(TimeUtil::parseHTTPTimeStamp).orElse(-1L);
+                if (isNotModified(request, entityTag, lastModified)) {
+                    this.setNotModified(request, body.getHeader(), null, -1L);
+                    return null;
+                }
+            }
+
             //
             // Post-generation procedures
             //
+            ServerImplementation.getImplementation().getSessionManager().finalizeSession(request);
             request.postponedCookies.forEach(body.getHeader()::setCookie);
 
             //
@@ -282,44 +459,23 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
                 knownLengthStream.replaceBytes(text.getBytes(StandardCharsets.UTF_8));
             }
         } catch (final Exception e) {
-			/*
-			Message.WORKER_FAILED_HANDLING.log( e.getMessage() );
-			if ( CoreConfig.verbose )
-			{
-				e.printStackTrace();
-			}
-
-			if ( CoreConfig.debug )
-			{
-				body = new ViewException( e ).generate( request );
-				responseStream = body.getResponseStream();
-			} else
-			{
-				body = null;
-			}
-			*/
-            timer.stop();
             throw new ReturnStatus(Header.STATUS_INTERNAL_ERROR, workerContext, e);
+        } finally {
+            timer.stop();
         }
 
         if (responseStream == null) {
-            timer.stop();
             throw new ReturnStatus(Header.STATUS_INTERNAL_ERROR, workerContext);
         }
 
         workerContext.setBody(body);
         workerContext.setResponseStream(responseStream);
-        timer.stop();
+        return null;
     }
 
-    @SuppressWarnings("ALL") private void sendResponse(final ChannelHandlerContext context) {
+    @SuppressWarnings("ALL") private boolean sendResponse(final ChannelHandlerContext context) {
         final Timer.Context timer = KvantumServerHandler.TIMER_SEND_RESPONSE.time();
 
-        //
-        // Determine whether or not the response should be compressed
-        //
-        workerContext.determineGzipStatus();
-
         //
         // Get the generated body
         //
@@ -329,21 +485,24 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
         Assert.notNull(body);
         Assert.notNull(body.getHeader());
 
-        // Retrieve an Md5Handler from the handler pool
-        // final Md5Handler md5Handler = SimpleServer.md5HandlerPool.getNullable();
-        // Generate the md5 checksum
-        // TODO: Re-enable this final String checksum = md5Handler.generateChecksum( bytes );
-        // Update the headers to include the md5 checksum
-        // body.getHeader().set( Header.HEADER_CONTENT_MD5, checksum );
-        // body.getHeader().set( Header.HEADER_ETAG, checksum );
-        // Return the md5 handler to the pool
-        // SimpleServer.md5HandlerPool.add( md5Handler );
-
         //
-        // Add a Last-Modified if it isn't already present in the response
+        // 304 responses never have a body
         //
-        if (!body.getHeader().get(Header.HEADER_LAST_MODIFIED).isPresent()) {
-            body.getHeader().set(Header.HEADER_LAST_MODIFIED, TimeUtil.getHTTPTimeStamp());
+        final boolean notModified = Header.STATUS_NOT_MODIFIED.equals(body.getHeader().getStatus());
+
+        if (!notModified) {
+            //
+            // Determine whether or not the response should be compressed
+            //
+            workerContext.determineGzipStatus();
+            this.weakenEntityTag(body.getHeader());
+
+            //
+            // Add a Last-Modified if it isn't already present in the response
+            //
+            if (!body.getHeader().get(Header.HEADER_LAST_MODIFIED).isPresent()) {
+                body.getHeader().set(Header.HEADER_LAST_MODIFIED, TimeUtil.getHTTPTimeStamp());
+            }
         }
 
         //
@@ -364,17 +523,30 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
         final boolean hasKnownLength = responseStream instanceof KnownLengthStream;
 
         //
-        // Fetch the GZIP handler, if applicable
+        // Fetch the GZIP handler, if applicable. Streamed responses are compressed
+        // using a single encoder for the entire response instead
         //
         final GzipHandler gzipHandler;
-        if (workerContext.isGzip()) {
-            gzipHandler = SimpleServer.gzipHandlerPool.getNullable();
+        final StreamingGzipEncoder gzipEncoder;
+        if (workerContext.isGzip() && hasKnownLength) {
+            gzipHandler = SimpleServer.gzipHandlerPool.acquire();
+            gzipEncoder = null;
+        } else if (workerContext.isGzip()) {
+            gzipHandler = null;
+            gzipEncoder = new StreamingGzipEncoder(SimpleServer.deflaterPool, Buffer.out);
+            gzipEncoder.setLevel(workerContext.getGzipLevel());
         } else {
             gzipHandler = null;
+            gzipEncoder = null;
         }
 
         boolean shouldWriteBody;
-        if (workerContext.getRequest().getQuery().getMethod().hasBody()) {
+        if (notModified) {
+            shouldWriteBody = false;
+        } else if (workerContext.getRequest().getQuery() == null) {
+            // The request was rejected before its request line was read
+            shouldWriteBody = true;
+        } else if (workerContext.getRequest().getQuery().getMethod().hasBody()) {
             shouldWriteBody = true;
         } else {
             shouldWriteBody = false;
@@ -391,7 +563,11 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
             if (workerContext.isGzip()) {
                 byte[] bytes = ((KnownLengthStream) responseStream).getAll();
                 try {
-                    bytes = gzipHandler.compress(bytes);
+                    final int uncompressed = bytes.length;
+                    bytes = gzipHandler.compress(bytes, workerContext.getGzipLevel());
+                    CompressionPolicy.getInstance()
+                        .record(body.getHeader().get(Header.HEADER_CONTENT_TYPE).orElse(null),
+                            uncompressed, bytes.length);
                 } catch (final IOException e) {
                     ServerImplementation.getImplementation().getErrorDigest()
                         .digest(new KvantumException("( GZIP ) Failed to compress the bytes"));
@@ -400,7 +576,7 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
             }
             body.getHeader().set(Header.HEADER_CONTENT_LENGTH,
                 AsciiString.of(((KnownLengthStream) responseStream).getLength()));
-        } else {
+        } else if (!notModified) {
             body.getHeader().set(Header.HEADER_TRANSFER_ENCODING, "chunked");
         }
 
@@ -439,11 +615,11 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
         buf.writeBytes(KvantumServerHandler.SPACE);
         buf.writeBytes(body.getHeader().getStatus().getValue());
         buf.writeBytes(KvantumServerHandler.NEW_LINE);
-        for (final Map.Entry<HeaderOption, AsciiString> entry : body.getHeader().getHeaders()
-            .entries()) {
-            buf.writeBytes(entry.getKey().getBytes());
+        final HeaderMap headers = body.getHeader().getHeaders();
+        for (int i = 0; i < headers.size(); i++) {
+            buf.writeBytes(headers.getName(i).getValue());
             buf.writeBytes(KvantumServerHandler.COLON_SPACE);
-            buf.writeBytes(entry.getValue().getValue());
+            buf.writeBytes(headers.getValue(i).getValue());
             buf.writeBytes(KvantumServerHandler.NEW_LINE);
         }
         // Print one empty line to indicate that the header sending is finished, this is important as the content
@@ -457,82 +633,81 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
 
         long actualLength = 0L;
 
-        if (shouldWriteBody) {
-            if (CoreConfig.debug) {
-                Logger.debug("Using direct write from memory: {}", hasKnownLength);
-            }
+        try {
+            if (shouldWriteBody) {
+                if (CoreConfig.debug) {
+                    Logger.debug("Using direct write from memory: {}", hasKnownLength);
+                }
 
-            //
-            // Write the response
-            //
-            byte[] buffer = ThreadCache.CHUNK_BUFFER.get();
-            while (!responseStream.isFinished()) {
                 //
-                // Read as much data as possible from the respone stream
+                // Write the response
                 //
-                int read = responseStream.read(buffer);
-                if (read != -1) {
+                byte[] buffer = ThreadCache.CHUNK_BUFFER.get();
+                while (!responseStream.isFinished()) {
                     //
-                    // If the length is known, write data directly
+                    // Read as much data as possible from the respone stream
                     //
-                    if (hasKnownLength) {
-                        context.write(Unpooled.wrappedBuffer(buffer, 0, read));
-                        context.flush().newSucceededFuture().awaitUninterruptibly();
-                        actualLength += read;
-                    } else {
+                    int read = responseStream.read(buffer);
+                    if (read != -1) {
                         //
-                        // If the length isn't known, we first compress (if applicable) and then write using
-                        // the chunked transfer encoding format
+                        // If the length is known, write data directly
                         //
-                        final ByteBuf result;
-
-                        if (workerContext.isGzip()) {
-                            try {
-                                result = gzipHandler.compress(buffer, read);
-                                actualLength += result.readableBytes();
-                            } catch (final IOException e) {
-                                ServerImplementation.getImplementation().getErrorDigest()
-                                    .digest(new KvantumException("( GZIP ) Failed to compress the bytes"));
-                                continue;
-                            }
+                        if (hasKnownLength) {
+                            // The buffer is reused by the next read, so wait for it to be written
+                            context.writeAndFlush(Unpooled.wrappedBuffer(buffer, 0, read))
+                                .awaitUninterruptibly();
+                            actualLength += read;
                         } else {
-                            result = Unpooled.wrappedBuffer(buffer, 0, read);
-                        }
+                            //
+                            // If the length isn't known, we first compress (if applicable) and then write using
+                            // the chunked transfer encoding format
+                            //
+                            final ByteBuf result;
+
+                            if (gzipEncoder != null) {
+                                final int encoded = gzipEncoder.encode(buffer, 0, read);
+                                result = Unpooled.wrappedBuffer(gzipEncoder.getBuffer(), 0, encoded);
+                            } else {
+                                result = Unpooled.wrappedBuffer(buffer, 0, read);
+                            }
 
-                        actualLength += read;
+                            actualLength += writeChunk(context, result);
+                        }
+                    }
+                }
 
-                        context.write(AsciiString.integerToHexStringWithoutPrefix(read).getValue());
-                        context.write(KvantumServerHandler.CRLF);
-                        context.write(result);
-                        context.write(KvantumServerHandler.CRLF);
-                        //
-                        // When using this mode we need to make sure that everything is written, so the
-                        // client doesn't time out
-                        //
-                        context.flush().newSucceededFuture().awaitUninterruptibly();
+                //
+                // If we're using the chunked encoding format
+                // write the end chunk
+                //
+                if (!hasKnownLength) {
+                    if (gzipEncoder != null) {
+                        final int encoded = gzipEncoder.finish();
+                        actualLength += writeChunk(context,
+                            Unpooled.wrappedBuffer(gzipEncoder.getBuffer(), 0, encoded));
+                        CompressionPolicy.getInstance()
+                            .record(body.getHeader().get(Header.HEADER_CONTENT_TYPE).orElse(null),
+                                gzipEncoder.getInputLength(), actualLength);
                     }
+                    context.write(KvantumServerHandler.END_CHUNK);
                 }
+            } /* shouldWriteToClient */ else if (CoreConfig.debug) {
+                Logger.debug("Skipping body, because method {} does not require body",
+                    workerContext.getRequest().getQuery().getMethod());
             }
 
+            timerWriteToClient.stop();
+        } finally {
             //
-            // If we're using the chunked encoding format
-            // write the end chunk
+            // Return the GZIP handler to the pool, and the deflater of the encoder, even if the
+            // response stream failed
             //
-            if (!hasKnownLength) {
-                context.write(KvantumServerHandler.END_CHUNK);
+            if (gzipHandler != null) {
+                SimpleServer.gzipHandlerPool.release(gzipHandler);
+            }
+            if (gzipEncoder != null) {
+                gzipEncoder.close();
             }
-        } /* shouldWriteToClient */ else if (CoreConfig.debug) {
-            Logger.debug("Skipping body, because method {} does not require body",
-                workerContext.getRequest().getQuery().getMethod());
-        }
-
-        timerWriteToClient.stop();
-
-        //
-        // Return the GZIP handler to the pool
-        //
-        if (gzipHandler != null) {
-            SimpleServer.gzipHandlerPool.add(gzipHandler);
         }
 
         //
@@ -575,6 +750,127 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
         }
 
         timer.stop();
+        return keepAlive;
+    }
+
+    /**
+     * Static files are validated before they are read, so that conditional requests can be answered without
+     * reading the file. This runs after the middleware of the view, so that it can't be used to bypass it
+     *
+     * @param request Request that has passed the middleware
+     * @return True if the request was answered with a 304 response
+     */
+    private boolean answerFromFileValidators(final AbstractRequest request) {
+        if (!(workerContext.getRequestHandler() instanceof StaticFileView) || !(request
+            .getMeta("file") instanceof Path)) {
+            return false;
+        }
+        final FileEntityTagCache.Validators validators =
+            SimpleServer.fileEntityTagCache.getValidators(((Path) request.getMeta("file")).getJavaPath());
+        if (validators == null) {
+            return false;
+        }
+        fileEntityTag = validators.getEntityTag();
+        if (isNotModified(request, fileEntityTag, validators.getLastModified())) {
+            this.setNotModified(request, null, fileEntityTag, validators.getLastModified());
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isNotModified(final AbstractRequest request, final EntityTag entityTag,
+        final long lastModified) {
+        return ConditionalRequest.isNotModified(request.getQuery().getMethod(), request.getHeader(IF_NONE_MATCH),
+            request.getHeader(IF_MODIFIED_SINCE), entityTag, lastModified);
+    }
+
+    /**
+     * Replace the response with a 304 response, which only contains the validators and
+     * caching headers of the full response
+     *
+     * @param request      Request
+     * @param source       Headers of the full response, may be null
+     * @param entityTag    Entity tag, may be null if it is included in the source headers
+     * @param lastModified Last modification time, or -1 if it is included in the source headers
+     */
+    private void setNotModified(final AbstractRequest request, final Header source, final EntityTag entityTag,
+        final long lastModified) {
+        final Response response = new Response(workerContext.getRequestHandler());
+        final Header header = response.getHeader();
+        header.clear();
+        header.setStatus(Header.STATUS_NOT_MODIFIED);
+        header.set(Header.HEADER_SERVER, Header.POWERED_BY);
+        header.set(Header.HEADER_DATE, TimeUtil.getHTTPTimeStamp());
+        if (source != null) {
+            for (final HeaderOption option : NOT_MODIFIED_HEADERS) {
+                source.get(option).ifPresent(value -> header.set(option, value));
+            }
+        }
+        if (entityTag != null) {
+            header.set(Header.HEADER_ETAG, entityTag.toString());
+        }
+        if (lastModified >= 0) {
+            header.set(Header.HEADER_LAST_MODIFIED, TimeUtil.getHTTPTimeStamp(new Date(lastModified)));
+        }
+        this.weakenEntityTag(header);
+        ServerImplementation.getImplementation().getSessionManager().finalizeSession(request);
+        request.postponedCookies.forEach(header::setCookie);
+        if (CoreConfig.debug) {
+            Logger.debug("Request {} has not been modified", request);
+        }
+        workerContext.setBody(response);
+        workerContext.setResponseStream(response.getResponseStream());
+    }
+
+    /**
+     * The compressed representation isn't byte-for-byte equal to the uncompressed representation, so a strong
+     * entity tag is weakened if the response may be compressed. The compression policy depends on the load of
+     * the server, so this is done for every client that accepts compression, and a 304 response sends the same
+     * tag as the full response would have
+     *
+     * @param header Response headers
+     */
+    private void weakenEntityTag(final Header header) {
+        if (!workerContext.acceptsGzip()) {
+            return;
+        }
+        final Optional<AsciiString> entityTag = header.get(Header.HEADER_ETAG);
+        if (entityTag.isPresent() && entityTag.get().startsWith("\"")) {
+            header.set(Header.HEADER_ETAG, "W/" + entityTag.get());
+        }
+    }
+
+    /**
+     * Write a chunk using the chunked transfer encoding format, and wait for it to be written. The chunk may wrap
+     * a buffer that is overwritten once this returns (the read buffer, or the output buffer of the GZIP encoder),
+     * and waiting also keeps slow clients from making the response pile up in memory. This is only called from
+     * the executor, never from the event loop, so waiting can't deadlock
+     *
+     * @param context Channel context
+     * @param chunk   Chunk content
+     * @return Chunk length
+     */
+    private static int writeChunk(final ChannelHandlerContext context, final ByteBuf chunk) {
+        final int length = chunk.readableBytes();
+        if (length == 0) {
+            // An empty chunk would terminate the body
+            chunk.release();
+            return 0;
+        }
+        context.write(AsciiString.integerToHexStringWithoutPrefix(length).getValue());
+        context.write(KvantumServerHandler.CRLF);
+        context.write(chunk);
+        //
+        // Writes complete in order, so once the last one has been written, the chunk has been written too
+        //
+        context.writeAndFlush(KvantumServerHandler.CRLF).awaitUninterruptibly();
+        return length;
+    }
+
+    @FunctionalInterface private interface Step {
+
+        CompletableFuture<? extends ResponseBody> run() throws Throwable;
+
     }
 
 }
@@ -104,6 +104,10 @@ class ReusableGzipOutputStream extends DeflaterOutputStream {
         }
     }
 
+    void setLevel(final int level) {
+        this.def.setLevel(level);
+    }
+
     byte[] getData() {
         return this.bufferStream.toByteArray();
     }
@@ -33,14 +33,29 @@ public final class SQLiteApplicationStructure extends ApplicationStructure {
     @Getter private final SQLiteManager databaseManager;
 
     SQLiteApplicationStructure(final String applicationName) {
+        this(applicationName, openDatabase(applicationName));
+        new SQLiteAccountManager(this); // Initialize
+        Logger.info("Initialized SQLiteApplicationStructure: {}", this.applicationName);
+    }
+
+    /**
+     * Create an application structure that uses an existing database. Unlike the structure that is created by the
+     * server, this doesn't create an account manager
+     *
+     * @param applicationName Application name
+     * @param databaseManager Database
+     */
+    public SQLiteApplicationStructure(final String applicationName, final SQLiteManager databaseManager) {
         super(applicationName);
+        this.databaseManager = databaseManager;
+    }
+
+    private static SQLiteManager openDatabase(final String applicationName) {
         try {
-            this.databaseManager = new SQLiteManager(this.applicationName);
+            return new SQLiteManager(applicationName);
         } catch (final Exception e) {
             throw new KvantumException(e);
         }
-        new SQLiteAccountManager(this); // Initialize
-        Logger.info("Initialized SQLiteApplicationStructure: {}", this.applicationName);
     }
 
 }
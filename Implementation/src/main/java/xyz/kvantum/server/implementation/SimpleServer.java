@@ -21,6 +21,8 @@
  */
 package xyz.kvantum.server.implementation;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.github.sauilitired.loggbok.ColorLogger;
 import com.github.sauilitired.loggbok.ColorStripper;
 import com.github.sauilitired.loggbok.ErrorDigest;
@@ -46,6 +48,7 @@ import lombok.SneakyThrows;
 import lombok.Synchronized;
 import xyz.kvantum.files.FileSystem;
 import xyz.kvantum.files.FileWatcher;
+import xyz.kvantum.server.api.AccountService;
 import xyz.kvantum.server.api.cache.ICacheManager;
 import xyz.kvantum.server.api.config.ConfigVariableProvider;
 import xyz.kvantum.server.api.config.CoreConfig;
@@ -69,19 +72,24 @@ import xyz.kvantum.server.api.request.PostProviderFactory;
 import xyz.kvantum.server.api.response.Response;
 import xyz.kvantum.server.api.session.ISessionDatabase;
 import xyz.kvantum.server.api.session.SessionManager;
+import xyz.kvantum.server.api.session.SignedSessionDatabase;
 import xyz.kvantum.server.api.templates.TemplateManager;
 import xyz.kvantum.server.api.util.ApplicationContext;
 import xyz.kvantum.server.api.util.ApplicationStructure;
 import xyz.kvantum.server.api.util.ApplicationStructureFactory;
 import xyz.kvantum.server.api.util.Assert;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.AsciiStringPool;
 import xyz.kvantum.server.api.util.AutoCloseable;
 import xyz.kvantum.server.api.util.FileUtils;
 import xyz.kvantum.server.api.util.ITempFileManagerFactory;
 import xyz.kvantum.server.api.util.MetaProvider;
 import xyz.kvantum.server.api.util.Metrics;
+import xyz.kvantum.server.api.util.ObjectPool;
 import xyz.kvantum.server.api.util.TimeUtil;
 import xyz.kvantum.server.api.views.RequestHandler;
 import xyz.kvantum.server.api.views.requesthandler.SimpleRequestHandler;
+import xyz.kvantum.server.implementation.compression.DeflaterPool;
 import xyz.kvantum.server.implementation.config.TranslationFile;
 import xyz.kvantum.server.implementation.error.KvantumException;
 import xyz.kvantum.server.implementation.error.KvantumInitializationException;
@@ -107,6 +115,7 @@ import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
+import java.util.zip.Deflater;
 
 /**
  * Main {@link Kvantum} implementation.
@@ -114,7 +123,9 @@ import java.util.function.BiConsumer;
 public class SimpleServer implements Kvantum {
 
     static ObjectPool<GzipHandler> gzipHandlerPool;
-    // static ObjectPool<Md5Handler> md5HandlerPool;
+    static DeflaterPool deflaterPool;
+    static ObjectPool<Md5Handler> md5HandlerPool;
+    static FileEntityTagCache fileEntityTagCache;
 
     //region Instance fields
     @Getter private final WorkerProcedure procedure = new WorkerProcedure();
@@ -268,6 +279,19 @@ public class SimpleServer implements Kvantum {
         log("Starting memory guard!");
         MemoryGuard.getInstance().start();
 
+        //
+        // Expose the ascii string interning statistics
+        //
+        final AsciiStringPool asciiStringPool = AsciiString.getPool();
+        this.metrics.registerMetric(MetricRegistry.name(AsciiStringPool.class, "hitRate"),
+            (Gauge<Double>) asciiStringPool::getHitRate);
+        this.metrics.registerMetric(MetricRegistry.name(AsciiStringPool.class, "size"),
+            (Gauge<Integer>) asciiStringPool::size);
+        this.metrics.registerMetric(MetricRegistry.name(AsciiStringPool.class, "bytes"),
+            (Gauge<Long>) asciiStringPool::getUsedBytes);
+        this.metrics.registerMetric(MetricRegistry.name(AsciiStringPool.class, "rejections"),
+            (Gauge<Long>) asciiStringPool::getRejections);
+
         //
         // Setup the cache manager
         //
@@ -279,8 +303,7 @@ public class SimpleServer implements Kvantum {
         if (serverContext.isStandalone()) {
             // Makes the application closable in the terminal
             // Removed post Java 8: Signal.handle( new Signal( "INT" ), new ExitSignalHandler() );
-            final Thread exitThread =
-                new Thread(() -> ServerImplementation.getImplementation().stopServer());
+            final Thread exitThread = new Thread(this::stopServer);
             exitThread.setName("Shutdown Handler");
             exitThread.setDaemon(true);
             Runtime.getRuntime().addShutdownHook(exitThread);
@@ -299,7 +322,9 @@ public class SimpleServer implements Kvantum {
         // Load the session database
         //
         final ISessionDatabase sessionDatabase;
-        if (CoreConfig.Sessions.enableDb) {
+        if ("signed".equalsIgnoreCase(CoreConfig.Sessions.backend)) {
+            sessionDatabase = SignedSessionDatabase.fromConfig();
+        } else if (CoreConfig.Sessions.enableDb) {
             switch (CoreConfig.Application.databaseImplementation.toLowerCase(Locale.ENGLISH)) {
                 case "sqlite":
                     sessionDatabase = new SQLiteSessionDatabase(
@@ -405,9 +430,13 @@ public class SimpleServer implements Kvantum {
 
     @Override @Synchronized public final boolean start() {
         if (CoreConfig.gzip) {
-            gzipHandlerPool = new ObjectPool<>(CoreConfig.Pools.gzipHandlers, GzipHandler::new);
+            gzipHandlerPool = ObjectPool.<GzipHandler>builder().capacity(CoreConfig.Pools.gzipHandlers)
+                .supplier(GzipHandler::new).disposer(GzipHandler::close).build();
+            deflaterPool = new DeflaterPool(CoreConfig.Pools.deflaters, Deflater.BEST_SPEED);
         }
-        // md5HandlerPool = new ObjectPool<>(CoreConfig.Pools.md5Handlers, Md5Handler::new);
+        md5HandlerPool = ObjectPool.<Md5Handler>builder().capacity(CoreConfig.Pools.md5Handlers)
+            .supplier(Md5Handler::new).validator(Md5Handler::isAvailable).build();
+        fileEntityTagCache = new FileEntityTagCache(CoreConfig.Cache.cachedEntityTagsMaxItems, md5HandlerPool);
 
         try {
             Assert.equals(this.started, false,
@@ -527,10 +556,21 @@ public class SimpleServer implements Kvantum {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
 
+        //
+        // Save the cached accounts, while the databases are still open
+        //
+        AccountService.getInstance().closeAccountManagers();
+
         //
         // Shutdown utilities
         //
         AutoCloseable.closeAll();
+        if (gzipHandlerPool != null) {
+            gzipHandlerPool.close();
+        }
+        if (deflaterPool != null) {
+            deflaterPool.close();
+        }
 
         //
         // Close the log stream
@@ -33,24 +33,29 @@ import xyz.kvantum.server.api.core.WorkerProcedure;
 import xyz.kvantum.server.api.io.KvantumOutputStream;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.CompressionMode;
+import xyz.kvantum.server.api.response.CompressionPolicy;
 import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.response.KnownLengthStream;
 import xyz.kvantum.server.api.response.ResponseBody;
 import xyz.kvantum.server.api.socket.SocketContext;
 import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.Recyclable;
 import xyz.kvantum.server.api.views.RequestHandler;
 
 import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
 
 import static xyz.kvantum.server.implementation.KvantumServerHandler.CLOSE;
 import static xyz.kvantum.server.implementation.KvantumServerHandler.CONNECTION;
 import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
 
-@Getter @Setter @RequiredArgsConstructor final class WorkerContext {
+@Getter @Setter @RequiredArgsConstructor final class WorkerContext implements Recyclable {
 
     private static final String CONTENT_TYPE = "content_type";
     private static final byte[] EMPTY = "NULL".getBytes(StandardCharsets.UTF_8);
-    private static final AsciiString ACCEPT_ENCODING = AsciiString.of("Accept-Encoding");
-    private static final AsciiString GZIP = AsciiString.of("gzip");
+    private static final AsciiString ACCEPT_ENCODING = AsciiString.of("Accept-Encoding", true);
+    private static final AsciiString GZIP = AsciiString.of("gzip", true);
     private static final AsciiString NULL = null;
 
     private final Kvantum server;
@@ -61,13 +66,50 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
     private final Object lock = new Object();
     private RequestHandler requestHandler;
     private AbstractRequest request;
+    private RequestReader requestReader;
     private ResponseBody body;
     private KvantumOutputStream responseStream;
     private boolean gzip = false;
+    private int gzipLevel = Deflater.BEST_SPEED;
     private SocketContext socketContext;
     private ChannelHandlerContext lastContext;
 
     private volatile boolean finished;
+    private volatile boolean poisoned;
+
+    AbstractRequest getRequest() {
+        Recyclable.checkPoison(this.poisoned, this);
+        return this.request;
+    }
+
+    /**
+     * Clear the state of the previous exchange, and recycle the request and request reader. The socket context is
+     * kept, as the worker context is owned by the connection. An internal redirect replaces the request of the
+     * context, so the request that is recycled (and restored) is always the one that the reader writes into
+     */
+    @Override public void recycle() {
+        synchronized (this.lock) {
+            this.requestHandler = null;
+            this.body = null;
+            this.responseStream = null;
+            this.gzip = false;
+            this.gzipLevel = Deflater.BEST_SPEED;
+            this.lastContext = null;
+            this.request = this.requestReader.getRequest();
+            this.request.recycle();
+            this.requestReader.recycle();
+            this.finished = false;
+            this.poisoned = CoreConfig.Pools.poisonRecycled;
+        }
+    }
+
+    @Override public void reuse() {
+        synchronized (this.lock) {
+            this.request.reuse();
+            this.requestReader.reuse();
+            this.poisoned = false;
+        }
+    }
 
     void handleReadCompletion() {
         synchronized (this.lock) {
@@ -80,8 +122,12 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
                 if (CoreConfig.debug) {
                     this.getRequest().dumpRequest();
                 }
+                // This has to be determined before the response is handled, as the
+                // context may be recycled as soon as the response has been sent
+                final boolean keepAlive = getRequest().getHeaders().getOrDefault(CONNECTION, CLOSE)
+                    .equalsIgnoreCase(KEEP_ALIVE);
                 this.handleResponse(this.lastContext);
-                if (getRequest().getHeaders().getOrDefault(CONNECTION, CLOSE).equalsIgnoreCase(KEEP_ALIVE)) {
+                if (keepAlive) {
                     this.kvantumServerHandler.reused = true;
                     this.kvantumServerHandler.createNew(getSocketContext());
                 }
@@ -102,11 +148,20 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
     }
 
     /**
-     * TODO: I am fairly confident this would be better somewhere else
+     * Check whether the response may be compressed. The {@link CompressionPolicy} decides whether it is, based
+     * on the load of the server, so validators that depend on the encoding have to use this instead
      *
-     * <p> Determine whether or not GZIP compression should be used. This depends on two things: <ol> <li>If GZIP
+     * @return True if compression is enabled and the client accepts GZIP encoding
+     */
+    boolean acceptsGzip() {
+        return CoreConfig.gzip && request.getHeader(ACCEPT_ENCODING).contains("gzip");
+    }
+
+    /**
+     * <p> Determine whether or not GZIP compression should be used. This depends on three things: <ol> <li>If GZIP
      * compression is enabled in {@link CoreConfig}</li> <li>If the client has sent a "Accept-Encoding" header</li>
-     * </ol> </p> <p> The value can be fetched using {@link #isGzip()} </p>
+     * <li>If the {@link CompressionPolicy} accepts the response</li> </ol> </p> <p> The value can be fetched using
+     * {@link #isGzip()}, and the level using {@link #getGzipLevel()} </p>
      */
     void determineGzipStatus() {
         if (CoreConfig.gzip) {
@@ -115,8 +170,20 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
                     Logger.debug("Response does not support GZIP encoding");
                 }
             } else if (request.getHeader(ACCEPT_ENCODING).contains("gzip")) {
-                this.gzip = true;
-                body.getHeader().set(Header.HEADER_CONTENT_ENCODING, GZIP);
+                final CompressionPolicy policy = CompressionPolicy.getInstance();
+                final CompressionMode mode = requestHandler == null ? CompressionMode.DEFAULT :
+                    requestHandler.getCompression();
+                final long length = responseStream instanceof KnownLengthStream ?
+                    ((KnownLengthStream) responseStream).getLength() : -1;
+                if (policy.shouldCompress(mode,
+                    body.getHeader().get(Header.HEADER_CONTENT_TYPE).orElse(null), length)) {
+                    this.gzip = true;
+                    this.gzipLevel = policy.selectLevel();
+                    body.getHeader().set(Header.HEADER_CONTENT_ENCODING, GZIP);
+                } else if (CoreConfig.debug) {
+                    Logger.debug("Compression policy rejected response (mode: {}, length: {})", mode,
+                        length);
+                }
             } else if (CoreConfig.debug) {
                 Message.CLIENT_NOT_ACCEPTING_GZIP.log(request.getHeaders());
                 body.getHeader().set(Header.HEADER_CONTENT_ENCODING, NULL);
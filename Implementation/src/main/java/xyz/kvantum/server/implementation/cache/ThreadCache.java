@@ -59,15 +59,13 @@ public class ThreadCache {
 
     public static final IterableThreadLocal<byte[]> COMPRESS_BUFFER = new IterableThreadLocal<byte[]>() {
         @Override public byte[] init() {
-            return new byte[getMaxLen() + 1024]; // TODO is 1024 large enough to handle data that can't be compressed?
+            return newCompressBuffer();
         }
     };
 
-    public static final IterableThreadLocal<byte[]> BUFFER_8192 = new IterableThreadLocal<byte[]>() {
-        @Override public byte[] init() {
-            return new byte[8192];
-        }
-    };
+    public static byte[] newCompressBuffer() {
+        return new byte[getMaxLen() + 1024]; // TODO is 1024 large enough to handle data that can't be compressed?
+    }
 
     private static int getMaxLen() {
         int toRead = CoreConfig.Buffer.out - MAX_LENGTH;
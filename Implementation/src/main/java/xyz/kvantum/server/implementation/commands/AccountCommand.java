@@ -27,6 +27,7 @@ import com.intellectualsites.commands.CommandInstance;
 import com.intellectualsites.commands.parser.impl.StringParser;
 import xyz.kvantum.server.api.AccountService;
 import xyz.kvantum.server.api.account.IAccount;
+import xyz.kvantum.server.api.account.PasswordHashingService;
 import xyz.kvantum.server.api.account.verification.AccountVerifier;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.util.ApplicationStructure;
@@ -37,6 +38,7 @@ import xyz.kvantum.server.implementation.Account;
 
 import java.util.Collection;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @CommandDeclaration(command = "account", usage = "/account [subcommand]", description = "Manage accounts")
 public class AccountCommand extends Command {
@@ -78,6 +80,7 @@ public class AccountCommand extends Command {
                 send("There is no such account!");
             } else {
                 account.get().removeData(key);
+                account.get().saveState();
                 send("Data for account " + account.get().getId() + ": " + MapUtil
                     .join(account.get().getRawData(), ": ", ", "));
             }
@@ -103,6 +106,7 @@ public class AccountCommand extends Command {
                 send("There is no such account!");
             } else {
                 account.get().setData(key, value);
+                account.get().saveState();
                 send("Data for account " + account.get().getId() + ": " + MapUtil
                     .join(account.get().getRawData(), ": ", ", "));
             }
@@ -185,7 +189,12 @@ public class AccountCommand extends Command {
             if (!accountOptional.isPresent()) {
                 send("There is no such account!");
             } else {
-                send("Matches: " + accountOptional.get().passwordMatches(password));
+                try {
+                    send("Matches: " + PasswordHashingService
+                        .join(accountOptional.get().passwordMatchesAsync(password)));
+                } catch (final RejectedExecutionException e) {
+                    send("Too many passwords are being checked, try again later");
+                }
             }
             return true;
         }
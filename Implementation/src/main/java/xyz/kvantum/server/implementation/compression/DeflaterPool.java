@@ -0,0 +1,93 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation.compression;
+
+import lombok.Getter;
+import lombok.NonNull;
+import xyz.kvantum.server.api.util.ObjectPool;
+
+import java.util.zip.Deflater;
+
+/**
+ * Pool of raw (nowrap) {@link Deflater deflaters}, backed by an {@link ObjectPool}. The pool never blocks: if it is
+ * empty a new deflater is created, and if it is full a returned deflater is {@link Deflater#end() ended} rather than
+ * kept.
+ */
+public final class DeflaterPool {
+
+    private final ObjectPool<Deflater> deflaters;
+    @Getter private final int level;
+
+    /**
+     * @param capacity Maximum number of idle deflaters
+     * @param level    Compression level of created deflaters
+     */
+    public DeflaterPool(final int capacity, final int level) {
+        this.level = level;
+        this.deflaters = ObjectPool.<Deflater>builder().capacity(capacity)
+            .supplier(() -> new Deflater(level, true)).validator(this::reset).disposer(Deflater::end)
+            .build();
+    }
+
+    private boolean reset(final Deflater deflater) {
+        // Deflaters are only ended by the disposer, once they have left the pool
+        deflater.reset();
+        deflater.setLevel(this.level);
+        return true;
+    }
+
+    /**
+     * Get a deflater from the pool, or create a new one if none is available
+     *
+     * @return Deflater, must be returned using {@link #release(Deflater)}
+     */
+    public Deflater acquire() {
+        return this.deflaters.acquire();
+    }
+
+    /**
+     * Reset a deflater and return it to the pool
+     *
+     * @param deflater Deflater that was acquired from this pool. It must not have been ended
+     */
+    public void release(@NonNull final Deflater deflater) {
+        this.deflaters.release(deflater);
+    }
+
+    /**
+     * Close the pool, and {@link Deflater#end() end} all idle deflaters. Deflaters that are in use are ended once
+     * they are returned
+     */
+    public void close() {
+        this.deflaters.close();
+    }
+
+    /**
+     * Get the number of deflaters that have been created by the pool
+     *
+     * @return Created deflaters
+     */
+    public long getCreated() {
+        return this.deflaters.getCreated();
+    }
+
+}
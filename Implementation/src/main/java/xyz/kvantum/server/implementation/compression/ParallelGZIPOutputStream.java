@@ -43,9 +43,7 @@ package xyz.kvantum.server.implementation.compression;
 
 import lombok.NonNull;
 import xyz.kvantum.server.api.config.CoreConfig;
-import xyz.kvantum.server.api.core.ServerImplementation;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
@@ -53,19 +51,24 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 
 /**
- * A multi-threaded version of {@link GZIPOutputStream}.
+ * A multi-threaded version of {@link GZIPOutputStream}. Blocks are compressed on a dedicated {@link ForkJoinPool},
+ * sized by {@link CoreConfig.Pools#gzipParallelThreads}, so that large compressions don't occupy the threads that
+ * handle requests. Every block is primed with the last 32 KB of the previous block, so that the ratio is close to
+ * that of a single threaded stream.
  * <p>
  * Originally published at https://github.com/shevek/parallelgzip, under the Apache 2.0 license
  * by author shevek, and modified by boy0001.
@@ -76,12 +79,14 @@ import java.util.zip.GZIPOutputStream;
 
     private static final int GZIP_MAGIC = 0x8b1f;
     private static final int SIZE = 64 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
     /**
      * This ThreadLocal avoids the recycling of a lot of memory, causing lumpy performance.
      */
     private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
-    // TODO: Share, daemonize.
+    private static volatile ForkJoinPool pool;
     private final ExecutorService executor;
+    private final int level;
     private final CRC32 crc = new CRC32();
     private final int emitQueueSize;
     private final BlockingQueue<Future<Block>> emitQueue;
@@ -96,37 +101,68 @@ import java.util.zip.GZIPOutputStream;
     // Master thread only
     // Doesn't really use the given number of threads.
     private ParallelGZIPOutputStream(@NonNull OutputStream out, @NonNull ExecutorService executor,
-        int nthreads) throws IOException {
+        int nthreads, int level) throws IOException {
         super(out);
         this.executor = executor;
+        this.level = level;
+        this.block.level = level;
         // Some blocks compress faster than others; allow a long enough queue to keep all CPUs busy at least for a bit.
         this.emitQueueSize = nthreads * 3;
         this.emitQueue = new ArrayBlockingQueue<>(emitQueueSize);
         writeHeader();
     }
 
-    private ParallelGZIPOutputStream(@NonNull OutputStream out, @NonNull ExecutorService executor)
-        throws IOException {
-        this(out, executor, getThreadCount());
+    /**
+     * Creates a ParallelGZIPOutputStream
+     *
+     * @param out   the eventual output stream for the compressed data.
+     * @param level the compression level
+     * @throws IOException if it all goes wrong.
+     */
+    public ParallelGZIPOutputStream(@NonNull OutputStream out, int level) throws IOException {
+        this(out, getPool(), getThreadCount(), level);
     }
 
     /**
-     * Creates a ParallelGZIPOutputStream
+     * Creates a ParallelGZIPOutputStream using {@link Deflater#BEST_SPEED}
      *
      * @param out the eventual output stream for the compressed data.
      * @throws IOException if it all goes wrong.
      */
     public ParallelGZIPOutputStream(@NonNull OutputStream out) throws IOException {
-        this(out, ServerImplementation.getImplementation().getExecutorService());
+        this(out, Deflater.BEST_SPEED);
     }
 
-    private static Deflater newDeflater() {
-        return new Deflater(Deflater.BEST_SPEED, true);
+    /**
+     * Get the pool that blocks are compressed on. The pool is created on first use, and uses daemon threads
+     *
+     * @return Compression pool
+     */
+    static ForkJoinPool getPool() {
+        ForkJoinPool current = pool;
+        if (current == null) {
+            synchronized (ParallelGZIPOutputStream.class) {
+                if ((current = pool) == null) {
+                    pool = current = new ForkJoinPool(getThreadCount(), forkJoinPool -> {
+                        final ForkJoinWorkerThread thread =
+                            ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                        thread.setName("parallel-gzip-" + thread.getPoolIndex());
+                        return thread;
+                    }, null, false);
+                }
+            }
+        }
+        return current;
     }
 
-    private static DeflaterOutputStream newDeflaterOutputStream(@NonNull final OutputStream out,
-        @NonNull final Deflater deflater) {
-        return ParallelGZIPEnvironment.newDeflaterOutputStream(out, deflater);
+    /**
+     * Get the number of blocks that can be compressed at the same time. This is the number of compression threads,
+     * but never more than the number of processors. Compressing in parallel only pays off if this is more than one
+     *
+     * @return Parallelism
+     */
+    public static int getParallelism() {
+        return Math.min(getThreadCount(), Runtime.getRuntime().availableProcessors());
     }
 
     private static int getThreadCount() {
@@ -140,6 +176,7 @@ import java.util.zip.GZIPOutputStream;
     public void reset() throws IOException {
         crc.reset();
         bytesWritten = 0;
+        block.dictionary_length = 0;
         writeHeader();
     }
 
@@ -197,11 +234,14 @@ import java.util.zip.GZIPOutputStream;
     // Master thread only
     private void submit() throws IOException {
         emitUntil(emitQueueSize - 1);
-        emitQueue.add(executor.submit(block));
         Block b = freeBlocks.poll();
         if (b == null) {
             b = new Block();
         }
+        // Prime the next block with the end of this block, before it's replaced by the compressed data
+        b.prime(block);
+        b.level = level;
+        emitQueue.add(executor.submit(block));
         block = b;
     }
 
@@ -288,25 +328,11 @@ import java.util.zip.GZIPOutputStream;
     }
 
 
-    /* Allow write into byte[] directly */
-    @SuppressWarnings("SameParameterValue") private static class ByteArrayOutputStreamExposed
-        extends ByteArrayOutputStream {
-
-        ByteArrayOutputStreamExposed(int size) {
-            super(size);
-        }
-
-        void writeTo(@NonNull byte[] buf) {
-            System.arraycopy(this.buf, 0, buf, 0, count);
-        }
-    }
-
-
     private static class State {
 
-        private final Deflater def = newDeflater();
-        private final ByteArrayOutputStreamExposed buf = new ByteArrayOutputStreamExposed(SIZE + (SIZE >> 3));
-        private final DeflaterOutputStream str = newDeflaterOutputStream(buf, def);
+        private Deflater def = new Deflater(Deflater.BEST_SPEED, true);
+        private int level = Deflater.BEST_SPEED;
+        private byte[] out = new byte[SIZE + (SIZE >> 3)];
 
     }
 
@@ -316,34 +342,57 @@ import java.util.zip.GZIPOutputStream;
         // private final int index;
         private byte[] buf = new byte[SIZE + (SIZE >> 3)];
         private int buf_length = 0;
+        private final byte[] dictionary = new byte[DICTIONARY_SIZE];
+        private int dictionary_length = 0;
+        private int level = Deflater.BEST_SPEED;
 
         /*
          public Block( int index) {
          this.index = index;
          }
          */
+        // Master thread only
+        private void prime(@NonNull final Block previous) {
+            final int length = Math.min(DICTIONARY_SIZE, previous.buf_length);
+            System.arraycopy(previous.buf, previous.buf_length - length, dictionary, 0, length);
+            this.dictionary_length = length;
+        }
+
         // Only on worker thread
-        @Override public Block call() throws IOException {
+        @Override public Block call() {
             // LOG.info("Processing " + this + " on " + Thread.currentThread());
 
-            State state = STATE.get();
-            // ByteArrayOutputStream buf = new ByteArrayOutputStream(in.length);   // Overestimate output size required.
-            // DeflaterOutputStream def = newDeflaterOutputStream(buf);
-            state.def.reset();
-            state.buf.reset();
-            state.str.write(buf, 0, buf_length);
-            state.str.flush();
+            final State state = STATE.get();
+            if (state.level != level) {
+                // Changing the level of a primed deflater may emit an extra block, so it's simpler to replace it
+                state.def.end();
+                state.def = new Deflater(level, true);
+                state.level = level;
+            }
+            final Deflater def = state.def;
+            def.reset();
+            if (dictionary_length > 0) {
+                def.setDictionary(dictionary, 0, dictionary_length);
+            }
+            def.setInput(buf, 0, buf_length);
+
+            // Sync flush, so that the block ends on a byte boundary and can be concatenated with the next block.
+            // If the output fills up the available space, there may be pending output
+            byte[] out = state.out;
+            int out_length = 0;
+            do {
+                if (out_length == out.length) {
+                    out = state.out = Arrays.copyOf(out, out.length << 1);
+                }
+                out_length += def.deflate(out, out_length, out.length - out_length, Deflater.SYNC_FLUSH);
+            } while (out_length == out.length);
 
-            // int in_length = buf_length;
-            int out_length = state.buf.size();
             if (out_length > buf.length) {
                 this.buf = new byte[out_length];
             }
             // System.out.println("Compressed " + in_length + " to " + out_length + " bytes.");
             this.buf_length = out_length;
-            state.buf.writeTo(buf);
-
-            // return Arrays.copyOf(in, in_length);
+            System.arraycopy(out, 0, buf, 0, out_length);
             return this;
         }
 
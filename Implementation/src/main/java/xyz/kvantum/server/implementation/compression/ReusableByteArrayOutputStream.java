@@ -22,22 +22,33 @@
 package xyz.kvantum.server.implementation.compression;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
+import lombok.NonNull;
 
 import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 
-@RequiredArgsConstructor public final class ReusableByteArrayOutputStream
-    extends ByteArrayOutputStream {
+public final class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
 
-    @Getter private final byte[] buffer;
+    @Getter private byte[] buffer;
     @Getter private int count;
 
+    public ReusableByteArrayOutputStream(@NonNull final byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(capacity, this.buffer.length << 1));
+        }
+    }
+
     public void write(final int b) {
+        this.ensureCapacity(this.count + 1);
         this.buffer[this.count++] = (byte) b;
     }
 
     public void write(final byte[] b, final int off, final int len) {
+        this.ensureCapacity(this.count + len);
         System.arraycopy(b, off, this.buffer, this.count, len);
         this.count += len;
     }
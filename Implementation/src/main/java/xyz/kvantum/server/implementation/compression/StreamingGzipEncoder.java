@@ -0,0 +1,178 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation.compression;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * GZIP encoder for responses of unknown length. A single {@link Deflater} is used for the entire response, so the
+ * dictionary carries over between chunks. Every call to {@link #encode(byte[], int, int)} sync flushes the deflater,
+ * so that the produced bytes can be sent as a chunk immediately, and {@link #finish()} writes the final block and the
+ * (single) trailer. The deflater is returned to the pool once the encoder is finished or closed.
+ * <p>
+ * The encoded bytes are written into an internal buffer, which is overwritten on every call. Use {@link #getBuffer()}
+ * to access them.
+ */
+public final class StreamingGzipEncoder implements AutoCloseable {
+
+    private static final byte[] HEADER = new byte[] {(byte) 0x1F, (byte) 0x8b, // magic bytes
+        0x08,                   // compression format == DEFLATE
+        0x00,                   // flags
+        0x00, 0x00, 0x00, 0x00, // no modification time
+        0x00,                   // extra flags
+        (byte) 0xFF             // unknown OS
+    };
+    private static final int TRAILER_LENGTH = 8;
+
+    private final DeflaterPool pool;
+    private final CRC32 crc32 = new CRC32();
+    private Deflater deflater;
+    @Getter private byte[] buffer;
+    private int count;
+    private long inputLength;
+    private boolean headerWritten = false;
+
+    /**
+     * @param pool          Pool from which the deflater is borrowed
+     * @param initialBuffer Initial size of the output buffer, it grows if needed
+     */
+    public StreamingGzipEncoder(@NonNull final DeflaterPool pool, final int initialBuffer) {
+        this.pool = pool;
+        this.deflater = pool.acquire();
+        this.buffer = new byte[Math.max(initialBuffer, HEADER.length + TRAILER_LENGTH + 64)];
+    }
+
+    /**
+     * Change the compression level. This takes effect from the next encoded chunk
+     *
+     * @param level Compression level
+     */
+    public void setLevel(final int level) {
+        this.ensureOpen().setLevel(level);
+    }
+
+    /**
+     * Compress a chunk of data and sync flush the deflater
+     *
+     * @param input  Input bytes
+     * @param offset Offset of the first byte
+     * @param length Number of bytes
+     * @return Number of encoded bytes in {@link #getBuffer()}
+     */
+    public int encode(@NonNull final byte[] input, final int offset, final int length) {
+        final Deflater deflater = this.ensureOpen();
+        this.count = 0;
+        this.writeHeader();
+        if (length == 0) {
+            return this.count;
+        }
+        this.crc32.update(input, offset, length);
+        this.inputLength += length;
+        deflater.setInput(input, offset, length);
+        // If the output fills up the available space, there may be pending output
+        int available;
+        int written;
+        do {
+            this.ensureCapacity(1);
+            available = this.buffer.length - this.count;
+            written = deflater.deflate(this.buffer, this.count, available, Deflater.SYNC_FLUSH);
+            this.count += written;
+        } while (written == available);
+        return this.count;
+    }
+
+    /**
+     * Finish the stream, writing the final deflate block and the GZIP trailer. The deflater is returned to the pool
+     *
+     * @return Number of encoded bytes in {@link #getBuffer()}
+     */
+    public int finish() {
+        final Deflater deflater = this.ensureOpen();
+        this.count = 0;
+        this.writeHeader();
+        deflater.finish();
+        while (!deflater.finished()) {
+            this.ensureCapacity(1);
+            this.count += deflater.deflate(this.buffer, this.count, this.buffer.length - this.count);
+        }
+        this.ensureCapacity(TRAILER_LENGTH);
+        this.writeInt((int) this.crc32.getValue());
+        this.writeInt((int) this.inputLength); // ISIZE is the length modulo 2^32
+        this.close();
+        return this.count;
+    }
+
+    /**
+     * Get the number of uncompressed bytes that have been encoded
+     *
+     * @return Input length
+     */
+    public long getInputLength() {
+        return this.inputLength;
+    }
+
+    /**
+     * Return the deflater to the pool, without finishing the stream. Does nothing if the encoder is already closed
+     */
+    @Override public void close() {
+        if (this.deflater != null) {
+            this.pool.release(this.deflater);
+            this.deflater = null;
+        }
+    }
+
+    private Deflater ensureOpen() {
+        if (this.deflater == null) {
+            throw new IllegalStateException("The encoder has already been finished");
+        }
+        return this.deflater;
+    }
+
+    private void writeHeader() {
+        if (this.headerWritten) {
+            return;
+        }
+        this.ensureCapacity(HEADER.length);
+        System.arraycopy(HEADER, 0, this.buffer, this.count, HEADER.length);
+        this.count += HEADER.length;
+        this.headerWritten = true;
+    }
+
+    private void writeInt(final int value) {
+        this.buffer[this.count++] = (byte) value;
+        this.buffer[this.count++] = (byte) (value >>> 8);
+        this.buffer[this.count++] = (byte) (value >>> 16);
+        this.buffer[this.count++] = (byte) (value >>> 24);
+    }
+
+    private void ensureCapacity(final int required) {
+        if (this.buffer.length - this.count < required) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length << 1, this.count + required));
+        }
+    }
+
+}
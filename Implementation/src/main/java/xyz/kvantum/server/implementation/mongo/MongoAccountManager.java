@@ -23,21 +23,21 @@ package xyz.kvantum.server.implementation.mongo;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.RemovalListener;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import lombok.Getter;
-import org.mindrot.jbcrypt.BCrypt;
 import xyz.kvantum.server.api.AccountService;
 import xyz.kvantum.server.api.account.AccountDecorator;
 import xyz.kvantum.server.api.account.IAccount;
 import xyz.kvantum.server.api.account.IAccountManager;
+import xyz.kvantum.server.api.account.PasswordHashingService;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.util.Assert;
 import xyz.kvantum.server.implementation.Account;
+import xyz.kvantum.server.implementation.AccountRemovalListener;
 import xyz.kvantum.server.implementation.MongoApplicationStructure;
 import xyz.kvantum.server.implementation.commands.AccountCommand;
 
@@ -54,6 +54,7 @@ public final class MongoAccountManager implements IAccountManager {
         EMPTY_OPTIONAL = Optional.empty();
     @Getter private final MongoApplicationStructure applicationStructure;
     private final Collection<AccountDecorator> decorators = new ArrayList<>();
+    @Getter private final AccountRemovalListener removalListener;
     private final Cache<Integer, IAccount> cachedAccounts;
     private final Cache<String, Integer> cachedAccountIds;
     private DBCollection counters;
@@ -61,11 +62,11 @@ public final class MongoAccountManager implements IAccountManager {
     public MongoAccountManager(final MongoApplicationStructure applicationStructure) {
         AccountService.getInstance().setGlobalAccountManager(this);
         this.applicationStructure = applicationStructure;
+        this.removalListener = new AccountRemovalListener(getClass());
         this.cachedAccounts = Caffeine.newBuilder()
             .expireAfterWrite(CoreConfig.Cache.cachedAccountsExpiry, TimeUnit.SECONDS)
-            .maximumSize(CoreConfig.Cache.cachedAccountsMaxItems)
-            .removalListener(
-                (RemovalListener<Integer, IAccount>) (key, value, cause) -> value.saveState()).<Integer, IAccount>build();
+            .maximumSize(CoreConfig.Cache.cachedAccountsMaxItems).executor(this.removalListener.getExecutor())
+            .removalListener(this.removalListener).<Integer, IAccount>build();
         this.cachedAccountIds = Caffeine.newBuilder()
             .expireAfterWrite(CoreConfig.Cache.cachedAccountIdsExpiry, TimeUnit.SECONDS)
             .maximumSize(CoreConfig.Cache.cachedAccountIdsMaxItems).build();
@@ -80,12 +81,8 @@ public final class MongoAccountManager implements IAccountManager {
         }
     }
 
-    private static String getNewSalt() {
-        return BCrypt.gensalt();
-    }
-
-    private static String hashPassword(final String password, final String salt) {
-        return BCrypt.hashpw(password, salt);
+    private static String hashPassword(final String password) {
+        return PasswordHashingService.join(PasswordHashingService.getInstance().hash(password));
     }
 
     @Override public void setup() throws Exception {
@@ -118,7 +115,7 @@ public final class MongoAccountManager implements IAccountManager {
             return EMPTY_OPTIONAL;
         }
 
-        final String hashedPassword = hashPassword(password, getNewSalt());
+        final String hashedPassword = hashPassword(password);
         final Account account = new Account(getNextId(), username, hashedPassword);
         account.setManager(this);
         this.applicationStructure.getMorphiaDatastore().save(account);
@@ -184,6 +181,14 @@ public final class MongoAccountManager implements IAccountManager {
                 .removeFirst("data." + key));
     }
 
+    @Override public boolean updatePasswordHash(final IAccount account, final String hash) {
+        return applicationStructure.getMorphiaDatastore().update(
+            applicationStructure.getMorphiaDatastore().createQuery(Account.class).field("username")
+                .equal(account.getUsername()),
+            applicationStructure.getMorphiaDatastore().createUpdateOperations(Account.class)
+                .set("password", hash)).getUpdatedCount() > 0;
+    }
+
     @Override public void loadData(final IAccount account) {
         // Done automatically
     }
@@ -209,6 +214,12 @@ public final class MongoAccountManager implements IAccountManager {
         return Optional.ofNullable(cachedAccounts.getIfPresent(id));
     }
 
+    @Override public void close() {
+        // The removal listener saves the cached accounts that have unsaved changes
+        this.removalListener.close(this.cachedAccounts);
+        this.cachedAccountIds.invalidateAll();
+    }
+
     private Optional<Integer> getCachedId(final String username) {
         return Optional.ofNullable(cachedAccountIds.getIfPresent(username));
     }
@@ -23,19 +23,19 @@ package xyz.kvantum.server.implementation.mysql;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.RemovalListener;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import org.mindrot.jbcrypt.BCrypt;
 import xyz.kvantum.server.api.AccountService;
 import xyz.kvantum.server.api.account.AccountDecorator;
 import xyz.kvantum.server.api.account.IAccount;
 import xyz.kvantum.server.api.account.IAccountManager;
+import xyz.kvantum.server.api.account.PasswordHashingService;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.util.Assert;
 import xyz.kvantum.server.implementation.Account;
+import xyz.kvantum.server.implementation.AccountRemovalListener;
 import xyz.kvantum.server.implementation.MySQLApplicationStructure;
 import xyz.kvantum.server.implementation.commands.AccountCommand;
 
@@ -43,30 +43,38 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 @RequiredArgsConstructor public class MySQLAccountManager implements IAccountManager {
 
     @SuppressWarnings("OptionalUsedAsFieldOrParameterType") private static final Optional<IAccount>
         EMPTY_OPTIONAL = Optional.empty();
+    private static final String UPSERT_DATA =
+        "INSERT INTO account_data(account_id, `key`, `value`) VALUES(?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE `value` = VALUES(`value`)";
     @Getter private final MySQLApplicationStructure applicationStructure;
     private final Collection<AccountDecorator> decorators = new ArrayList<>();
+    @Getter private final AccountRemovalListener removalListener;
     private final Cache<Integer, IAccount> cachedAccounts;
     private final Cache<String, Integer> cachedAccountIds;
 
     public MySQLAccountManager(final MySQLApplicationStructure applicationStructure) {
         AccountService.getInstance().setGlobalAccountManager(this);
         this.applicationStructure = applicationStructure;
+        this.removalListener = new AccountRemovalListener(getClass());
         this.cachedAccounts = Caffeine.newBuilder()
             .expireAfterWrite(CoreConfig.Cache.cachedAccountsExpiry, TimeUnit.SECONDS)
-            .maximumSize(CoreConfig.Cache.cachedAccountsMaxItems)
-            .removalListener(
-                (RemovalListener<Integer, IAccount>) (key, value, cause) -> value.saveState()).<Integer, IAccount>build();
+            .maximumSize(CoreConfig.Cache.cachedAccountsMaxItems).executor(this.removalListener.getExecutor())
+            .removalListener(this.removalListener).<Integer, IAccount>build();
         this.cachedAccountIds = Caffeine.newBuilder()
             .expireAfterWrite(CoreConfig.Cache.cachedAccountIdsExpiry, TimeUnit.SECONDS)
             .maximumSize(CoreConfig.Cache.cachedAccountIdsMaxItems).build();
@@ -82,12 +90,8 @@ import java.util.concurrent.TimeUnit;
         }
     }
 
-    private static String getNewSalt() {
-        return BCrypt.gensalt();
-    }
-
-    private static String hashPassword(final String password, final String salt) {
-        return BCrypt.hashpw(password, salt);
+    private static String hashPassword(final String password) {
+        return PasswordHashingService.join(PasswordHashingService.getInstance().hash(password));
     }
 
     @Override public void setup() throws Exception {
@@ -124,7 +128,7 @@ import java.util.concurrent.TimeUnit;
             try (final PreparedStatement statement = connection.prepareStatement(
                 "INSERT INTO account(`username`, " + "`password`) VALUES(?, ?)")) {
                 statement.setString(1, username);
-                statement.setString(2, hashPassword(password, getNewSalt()));
+                statement.setString(2, hashPassword(password));
                 statement.executeUpdate();
             } catch (final Exception e) {
                 ServerImplementation.getImplementation().getErrorDigest().digest(e);
@@ -267,8 +271,7 @@ import java.util.concurrent.TimeUnit;
     @Override public void setData(final IAccount account, final String key, final String value) {
         try (final Connection connection = applicationStructure.getDatabaseManager()
             .getConnection()) {
-            try (final PreparedStatement statement = connection.prepareStatement(
-                "INSERT IGNORE INTO account_data(account_id, `key`, `value`) VALUES(?, ?, ?)")) {
+            try (final PreparedStatement statement = connection.prepareStatement(UPSERT_DATA)) {
                 statement.setInt(1, account.getId());
                 statement.setString(2, key);
                 statement.setString(3, value);
@@ -276,17 +279,153 @@ import java.util.concurrent.TimeUnit;
             } catch (final Exception e) {
                 ServerImplementation.getImplementation().getErrorDigest().digest(e);
             }
-            try (final PreparedStatement statement = connection.prepareStatement(
-                "UPDATE account_data SET `value` = ? " + "WHERE account_id = ? AND `key` = ?")) {
+        } catch (final Exception e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+        }
+    }
+
+    @Override public boolean updatePasswordHash(final IAccount account, final String hash) {
+        try (final Connection connection = applicationStructure.getDatabaseManager()
+            .getConnection()) {
+            try (final PreparedStatement statement = connection
+                .prepareStatement("UPDATE account SET `password` = ? WHERE id = ?")) {
+                statement.setString(1, hash);
                 statement.setInt(2, account.getId());
-                statement.setString(3, key);
-                statement.setString(1, value);
-                statement.executeUpdate();
-            } catch (final Exception e) {
-                ServerImplementation.getImplementation().getErrorDigest().digest(e);
+                return statement.executeUpdate() > 0;
+            }
+        } catch (final Exception e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+            return false;
+        }
+    }
+
+    @Override public boolean saveData(final IAccount account, final Map<String, String> changed,
+        final Collection<String> removed) {
+        try (final Connection connection = applicationStructure.getDatabaseManager()
+            .getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                if (!changed.isEmpty()) {
+                    try (final PreparedStatement statement = connection.prepareStatement(UPSERT_DATA)) {
+                        for (final Map.Entry<String, String> entry : changed.entrySet()) {
+                            statement.setInt(1, account.getId());
+                            statement.setString(2, entry.getKey());
+                            statement.setString(3, entry.getValue());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
+                if (!removed.isEmpty()) {
+                    try (final PreparedStatement statement = connection
+                        .prepareStatement("DELETE FROM account_data WHERE account_id = ? AND `key` = ?")) {
+                        for (final String key : removed) {
+                            statement.setInt(1, account.getId());
+                            statement.setString(2, key);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
+                connection.commit();
+            } catch (final SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
+            return false;
+        }
+        return true;
+    }
+
+    @Override public void setDataBulk(final Collection<? extends IAccount> accounts, final String key,
+        final String value) {
+        try {
+            applicationStructure.getDatabaseManager().batch(UPSERT_DATA, accounts, (statement, account) -> {
+                statement.setInt(1, account.getId());
+                statement.setString(2, key);
+                statement.setString(3, value);
+            });
+        } catch (final Exception e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+            return;
+        }
+        accounts.forEach(account -> account.internalMetaUpdate(key, value));
+    }
+
+    @Override
+    public Collection<? extends IAccount> saveAll(final Collection<? extends IAccount> collection) {
+        final List<CompletableFuture<String>> hashes = new ArrayList<>(collection.size());
+        for (final IAccount account : collection) {
+            Assert.notEmpty(account.getUsername());
+            Assert.notEmpty(account.getSuppliedPassword());
+            hashes.add(PasswordHashingService.getInstance().hash(account.getSuppliedPassword()));
+        }
+        // All hashes are computed in parallel on the hashing threads
+        final List<String[]> rows = new ArrayList<>(collection.size());
+        final Iterator<CompletableFuture<String>> hashIterator = hashes.iterator();
+        for (final IAccount account : collection) {
+            rows.add(new String[] {account.getUsername(),
+                PasswordHashingService.join(hashIterator.next())});
+        }
+        final List<String[]> inserted = new ArrayList<>(rows.size());
+        try {
+            final int[] updates = applicationStructure.getDatabaseManager()
+                .batch("INSERT IGNORE INTO account(`username`, `password`) VALUES(?, ?)", rows,
+                    (statement, row) -> {
+                        statement.setString(1, row[0]);
+                        statement.setString(2, row[1]);
+                    });
+            // Existing usernames are ignored, just like in createAccount. Rewritten batches
+            // may not report the individual counts, those rows are verified below
+            for (int i = 0; i < updates.length; i++) {
+                if (updates[i] > 0 || updates[i] == Statement.SUCCESS_NO_INFO) {
+                    inserted.add(rows.get(i));
+                }
+            }
+        } catch (final Exception e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+        }
+        if (inserted.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<IAccount> accounts = new ArrayList<>(inserted.size());
+        try (final Connection connection = applicationStructure.getDatabaseManager()
+            .getConnection(); final PreparedStatement statement = connection
+            .prepareStatement("SELECT * FROM `account` WHERE `username` = ?")) {
+            for (final String[] row : inserted) {
+                statement.setString(1, row[0]);
+                try (final ResultSet resultSet = statement.executeQuery()) {
+                    // Every hash is salted, so an account with a different hash already existed
+                    if (resultSet.next() && row[1].equals(resultSet.getString("password"))) {
+                        accounts.add(getAccount(resultSet));
+                    }
+                }
+            }
+        } catch (final Exception e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+        }
+        for (final IAccount account : accounts) {
+            this.setCachedAccount(account);
+            decorators.forEach(decorator -> decorator.decorateAccount(account));
+        }
+        return Collections.unmodifiableList(accounts);
+    }
+
+    @Override public void deleteAll(final Collection<IAccount> collection) {
+        try {
+            applicationStructure.getDatabaseManager()
+                .batch("DELETE FROM `account` WHERE `id` = ?", collection,
+                    (statement, account) -> statement.setInt(1, account.getId()));
+        } catch (final SQLException e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+        }
+        for (final IAccount account : collection) {
+            this.cachedAccounts.invalidate(account.getId());
+            this.cachedAccountIds.invalidate(account.getUsername());
         }
     }
 
@@ -319,6 +458,12 @@ import java.util.concurrent.TimeUnit;
         return Optional.ofNullable(cachedAccounts.getIfPresent(id));
     }
 
+    @Override public void close() {
+        // The removal listener saves the cached accounts that have unsaved changes
+        this.removalListener.close(this.cachedAccounts);
+        this.cachedAccountIds.invalidateAll();
+    }
+
     private Optional<Integer> getCachedId(final String username) {
         return Optional.ofNullable(cachedAccountIds.getIfPresent(username));
     }
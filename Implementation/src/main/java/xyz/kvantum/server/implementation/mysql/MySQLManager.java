@@ -27,13 +27,16 @@ import lombok.EqualsAndHashCode;
 import xyz.kvantum.files.Path;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.util.AutoCloseable;
+import xyz.kvantum.server.api.util.SQLBinder;
 
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collection;
 import java.util.Properties;
 
 /**
@@ -83,6 +86,41 @@ public class MySQLManager extends AutoCloseable {
         }
     }
 
+    /**
+     * Execute a statement once per item, as a single batch in a single transaction
+     *
+     * @param sql    SQL statement
+     * @param items  Items to bind
+     * @param binder Binds an item to the statement parameters
+     * @param <T>    Item type
+     * @return Update counts, one per item
+     * @throws SQLException If any of the statements fail, in which case none of them are applied
+     */
+    public <T> int[] batch(final String sql, final Collection<? extends T> items,
+        final SQLBinder<T> binder) throws SQLException {
+        if (items.isEmpty()) {
+            return new int[0];
+        }
+        try (final Connection connection = this.getConnection()) {
+            final boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (final PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (final T item : items) {
+                    binder.bind(statement, item);
+                    statement.addBatch();
+                }
+                final int[] updates = statement.executeBatch();
+                connection.commit();
+                return updates;
+            } catch (final Throwable throwable) {
+                connection.rollback();
+                throw throwable;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
     @Override protected void handleClose() {
         if (this.dataSource != null && this.dataSource.isRunning()) {
             this.dataSource.close();
@@ -23,19 +23,19 @@ package xyz.kvantum.server.implementation.sqlite;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.RemovalListener;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import org.mindrot.jbcrypt.BCrypt;
 import xyz.kvantum.server.api.AccountService;
 import xyz.kvantum.server.api.account.AccountDecorator;
 import xyz.kvantum.server.api.account.IAccount;
 import xyz.kvantum.server.api.account.IAccountManager;
+import xyz.kvantum.server.api.account.PasswordHashingService;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.util.Assert;
 import xyz.kvantum.server.implementation.Account;
+import xyz.kvantum.server.implementation.AccountRemovalListener;
 import xyz.kvantum.server.implementation.SQLiteApplicationStructure;
 import xyz.kvantum.server.implementation.commands.AccountCommand;
 
@@ -45,34 +45,42 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 @RequiredArgsConstructor final public class SQLiteAccountManager implements IAccountManager {
 
     @SuppressWarnings("OptionalUsedAsFieldOrParameterType") private static final Optional<IAccount>
         EMPTY_OPTIONAL = Optional.empty();
+    private static final String UPSERT_DATA =
+        "INSERT INTO account_data(account_id, `key`, `value`) VALUES(?, ?, ?) "
+            + "ON CONFLICT(account_id, `key`) DO UPDATE SET `value` = excluded.`value`";
 
     @Getter private final SQLiteApplicationStructure applicationStructure;
     private final Collection<AccountDecorator> decorators = new ArrayList<>();
+    @Getter private final AccountRemovalListener removalListener;
     private final Cache<Integer, IAccount> cachedAccounts;
     private final Cache<String, Integer> cachedAccountIds;
 
     public SQLiteAccountManager(final SQLiteApplicationStructure applicationStructure) {
         AccountService.getInstance().setGlobalAccountManager(this);
         this.applicationStructure = applicationStructure;
+        this.removalListener = new AccountRemovalListener(getClass());
         this.cachedAccounts = Caffeine.newBuilder()
             .expireAfterWrite(CoreConfig.Cache.cachedAccountsExpiry, TimeUnit.SECONDS)
-            .maximumSize(CoreConfig.Cache.cachedAccountsMaxItems)
-            .removalListener(
-                (RemovalListener<Integer, IAccount>) (key, value, cause) -> value.saveState()).<Integer, IAccount>build();
+            .maximumSize(CoreConfig.Cache.cachedAccountsMaxItems).executor(this.removalListener.getExecutor())
+            .removalListener(this.removalListener).<Integer, IAccount>build();
         this.cachedAccountIds = Caffeine.newBuilder()
             .expireAfterWrite(CoreConfig.Cache.cachedAccountIdsExpiry, TimeUnit.SECONDS)
             .maximumSize(CoreConfig.Cache.cachedAccountIdsMaxItems).build();
         try {
             this.setup();
-            if (ServerImplementation.getImplementation().getCommandManager() != null) {
+            if (ServerImplementation.hasImplementation()
+                && ServerImplementation.getImplementation().getCommandManager() != null) {
                 ServerImplementation.getImplementation().getCommandManager()
                     .createCommand(new AccountCommand(applicationStructure));
             }
@@ -81,12 +89,8 @@ import java.util.concurrent.TimeUnit;
         }
     }
 
-    private static String getNewSalt() {
-        return BCrypt.gensalt();
-    }
-
-    private static String hashPassword(final String password, final String salt) {
-        return BCrypt.hashpw(password, salt);
+    private static String hashPassword(final String password) {
+        return PasswordHashingService.join(PasswordHashingService.getInstance().hash(password));
     }
 
     @Override public void setup() throws Exception {
@@ -116,11 +120,16 @@ import java.util.concurrent.TimeUnit;
         if (getAccount(username).isPresent()) {
             return ret;
         }
-        try (final PreparedStatement statement = this.applicationStructure.getDatabaseManager()
-            .prepareStatement("INSERT INTO account(`username`, `password`) VALUES(?, ?)")) {
-            statement.setString(1, username);
-            statement.setString(2, hashPassword(password, getNewSalt()));
-            statement.executeUpdate();
+        // Hash before acquiring the writer, so that other writes don't have to wait for it
+        final String hashedPassword = hashPassword(password);
+        try {
+            this.applicationStructure.getDatabaseManager().write(connection -> {
+                final PreparedStatement statement =
+                    connection.prepare("INSERT INTO account(`username`, `password`) VALUES(?, ?)");
+                statement.setString(1, username);
+                statement.setString(2, hashedPassword);
+                return statement.executeUpdate();
+            });
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         } finally {
@@ -145,14 +154,15 @@ import java.util.concurrent.TimeUnit;
         if (ret.isPresent()) {
             return ret;
         }
-        try (final PreparedStatement statement = this.applicationStructure.getDatabaseManager()
-            .prepareStatement("SELECT * FROM `account` WHERE `username` = ?")) {
-            statement.setString(1, username);
-            try (final ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next()) {
-                    ret = Optional.of(getAccount(resultSet));
+        try {
+            ret = this.applicationStructure.getDatabaseManager().read(connection -> {
+                final PreparedStatement statement =
+                    connection.prepare("SELECT * FROM `account` WHERE `username` = ?");
+                statement.setString(1, username);
+                try (final ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? Optional.of(getAccount(resultSet)) : EMPTY_OPTIONAL;
                 }
-            }
+            });
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
@@ -168,14 +178,15 @@ import java.util.concurrent.TimeUnit;
         if (ret.isPresent()) {
             return ret;
         }
-        try (final PreparedStatement statement = this.applicationStructure.getDatabaseManager()
-            .prepareStatement("SELECT * FROM `account` WHERE `id` = ?")) {
-            statement.setInt(1, accountId);
-            try (final ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next()) {
-                    ret = Optional.of(getAccount(resultSet));
+        try {
+            ret = this.applicationStructure.getDatabaseManager().read(connection -> {
+                final PreparedStatement statement =
+                    connection.prepare("SELECT * FROM `account` WHERE `id` = ?");
+                statement.setInt(1, accountId);
+                try (final ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? Optional.of(getAccount(resultSet)) : EMPTY_OPTIONAL;
                 }
-            }
+            });
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
@@ -186,7 +197,7 @@ import java.util.concurrent.TimeUnit;
         return ret;
     }
 
-    private IAccount getAccount(final ResultSet resultSet) throws Exception {
+    private IAccount getAccount(final ResultSet resultSet) throws SQLException {
         final int id = resultSet.getInt("id");
         final String username = resultSet.getString("username");
         final String password = resultSet.getString("password");
@@ -196,24 +207,31 @@ import java.util.concurrent.TimeUnit;
     }
 
     @Override public void loadData(final IAccount account) {
-        try (final PreparedStatement statement = applicationStructure.getDatabaseManager()
-            .prepareStatement("SELECT * FROM account_data WHERE account_id = ?")) {
-            statement.setInt(1, account.getId());
-            final ResultSet set = statement.executeQuery();
-            while (set.next()) {
-                account.internalMetaUpdate(set.getString("key"), set.getString("value"));
-            }
-            set.close();
+        try {
+            applicationStructure.getDatabaseManager().read(connection -> {
+                final PreparedStatement statement =
+                    connection.prepare("SELECT * FROM account_data WHERE account_id = ?");
+                statement.setInt(1, account.getId());
+                try (final ResultSet set = statement.executeQuery()) {
+                    while (set.next()) {
+                        account.internalMetaUpdate(set.getString("key"), set.getString("value"));
+                    }
+                }
+                return null;
+            });
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
     }
 
     @Override public void deleteAccount(final IAccount account) {
-        try (final PreparedStatement statement = this.applicationStructure.getDatabaseManager()
-            .prepareStatement("DELETE FROM `account` WHERE `id` = ?")) {
-            statement.setInt(1, account.getId());
-            statement.executeUpdate();
+        try {
+            this.applicationStructure.getDatabaseManager().write(connection -> {
+                final PreparedStatement statement =
+                    connection.prepare("DELETE FROM `account` WHERE `id` = ?");
+                statement.setInt(1, account.getId());
+                return statement.executeUpdate();
+            });
         } catch (final SQLException e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
@@ -222,52 +240,193 @@ import java.util.concurrent.TimeUnit;
     }
 
     @Override public void removeData(final IAccount account, final String key) {
-        try (final PreparedStatement statement = applicationStructure.getDatabaseManager()
-            .prepareStatement("DELETE" + " FROM account_data WHERE account_id = ? AND `key` = ?")) {
-            statement.setInt(1, account.getId());
-            statement.setString(2, key);
-            statement.executeUpdate();
+        try {
+            applicationStructure.getDatabaseManager().write(connection -> {
+                final PreparedStatement statement = connection
+                    .prepare("DELETE FROM account_data WHERE account_id = ? AND `key` = ?");
+                statement.setInt(1, account.getId());
+                statement.setString(2, key);
+                return statement.executeUpdate();
+            });
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
     }
 
     @Override public void setData(final IAccount account, final String key, final String value) {
-        try (final PreparedStatement statement = applicationStructure.getDatabaseManager()
-            .prepareStatement(
-                "INSERT OR IGNORE INTO account_data(account_id, `key`, `value`) VALUES(?, ?, ?)")) {
-            statement.setInt(1, account.getId());
-            statement.setString(2, key);
-            statement.setString(3, value);
-            statement.executeUpdate();
+        try {
+            applicationStructure.getDatabaseManager().write(connection -> {
+                final PreparedStatement statement = connection.prepare(UPSERT_DATA);
+                statement.setInt(1, account.getId());
+                statement.setString(2, key);
+                statement.setString(3, value);
+                return statement.executeUpdate();
+            });
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
-        try (final PreparedStatement statement = applicationStructure.getDatabaseManager()
-            .prepareStatement(
-                "UPDATE account_data SET `value` = ? WHERE account_id = ? AND `key` = ?")) {
-            statement.setInt(2, account.getId());
-            statement.setString(3, key);
-            statement.setString(1, value);
-            statement.executeUpdate();
+    }
+
+    @Override public boolean updatePasswordHash(final IAccount account, final String hash) {
+        try {
+            return applicationStructure.getDatabaseManager().write(connection -> {
+                final PreparedStatement statement =
+                    connection.prepare("UPDATE account SET `password` = ? WHERE id = ?");
+                statement.setString(1, hash);
+                statement.setInt(2, account.getId());
+                return statement.executeUpdate() > 0;
+            });
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
+            return false;
         }
     }
 
-    @Override public List<? extends IAccount> findAll() {
-        final List<IAccount> builder = new ArrayList<>();
-        try (final PreparedStatement statement = this.applicationStructure.getDatabaseManager()
-            .prepareStatement("SELECT * FROM `account`")) {
-            try (final ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    builder.add(getAccount(resultSet));
+    @Override public boolean saveData(final IAccount account, final Map<String, String> changed,
+        final Collection<String> removed) {
+        try {
+            applicationStructure.getDatabaseManager().transaction(connection -> {
+                if (!changed.isEmpty()) {
+                    final PreparedStatement statement = connection.prepare(UPSERT_DATA);
+                    for (final Map.Entry<String, String> entry : changed.entrySet()) {
+                        statement.setInt(1, account.getId());
+                        statement.setString(2, entry.getKey());
+                        statement.setString(3, entry.getValue());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                if (!removed.isEmpty()) {
+                    final PreparedStatement statement = connection
+                        .prepare("DELETE FROM account_data WHERE account_id = ? AND `key` = ?");
+                    for (final String key : removed) {
+                        statement.setInt(1, account.getId());
+                        statement.setString(2, key);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                return null;
+            });
+        } catch (final Exception e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+            return false;
+        }
+        return true;
+    }
+
+    @Override public void setDataBulk(final Collection<? extends IAccount> accounts, final String key,
+        final String value) {
+        try {
+            applicationStructure.getDatabaseManager().batch(UPSERT_DATA, accounts, (statement, account) -> {
+                statement.setInt(1, account.getId());
+                statement.setString(2, key);
+                statement.setString(3, value);
+            });
+        } catch (final Exception e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+            return;
+        }
+        accounts.forEach(account -> account.internalMetaUpdate(key, value));
+    }
+
+    @Override
+    public Collection<? extends IAccount> saveAll(final Collection<? extends IAccount> collection) {
+        // Hash before acquiring the writer, so that other writes don't have to wait for it
+        final List<CompletableFuture<String>> hashes = new ArrayList<>(collection.size());
+        for (final IAccount account : collection) {
+            Assert.notEmpty(account.getUsername());
+            Assert.notEmpty(account.getSuppliedPassword());
+            hashes.add(PasswordHashingService.getInstance().hash(account.getSuppliedPassword()));
+        }
+        // All hashes are computed in parallel on the hashing threads
+        final List<String[]> rows = new ArrayList<>(collection.size());
+        final Iterator<CompletableFuture<String>> hashIterator = hashes.iterator();
+        for (final IAccount account : collection) {
+            rows.add(new String[] {account.getUsername(),
+                PasswordHashingService.join(hashIterator.next())});
+        }
+        final List<String> created = new ArrayList<>(rows.size());
+        try {
+            final int[] updates = this.applicationStructure.getDatabaseManager()
+                .batch("INSERT OR IGNORE INTO account(`username`, `password`) VALUES(?, ?)", rows,
+                    (statement, row) -> {
+                        statement.setString(1, row[0]);
+                        statement.setString(2, row[1]);
+                    });
+            // Existing usernames are ignored, just like in createAccount
+            for (int i = 0; i < updates.length; i++) {
+                if (updates[i] > 0) {
+                    created.add(rows.get(i)[0]);
                 }
             }
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
-        return Collections.unmodifiableList(builder);
+        if (created.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<IAccount> accounts = new ArrayList<>(created.size());
+        try {
+            this.applicationStructure.getDatabaseManager().read(connection -> {
+                final PreparedStatement statement =
+                    connection.prepare("SELECT * FROM `account` WHERE `username` = ?");
+                for (final String username : created) {
+                    statement.setString(1, username);
+                    try (final ResultSet resultSet = statement.executeQuery()) {
+                        if (resultSet.next()) {
+                            accounts.add(getAccount(resultSet));
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (final Exception e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+        }
+        for (final IAccount account : accounts) {
+            this.setCachedAccount(account);
+            decorators.forEach(decorator -> decorator.decorateAccount(account));
+        }
+        return Collections.unmodifiableList(accounts);
+    }
+
+    @Override public void deleteAll(final Collection<IAccount> collection) {
+        try {
+            this.applicationStructure.getDatabaseManager()
+                .batch("DELETE FROM `account` WHERE `id` = ?", collection,
+                    (statement, account) -> statement.setInt(1, account.getId()));
+        } catch (final SQLException e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+        }
+        for (final IAccount account : collection) {
+            this.cachedAccounts.invalidate(account.getId());
+            this.cachedAccountIds.invalidate(account.getUsername());
+        }
+    }
+
+    @Override public List<? extends IAccount> findAll() {
+        try {
+            return this.applicationStructure.getDatabaseManager().read(connection -> {
+                final List<IAccount> builder = new ArrayList<>();
+                try (final ResultSet resultSet = connection.prepare("SELECT * FROM `account`")
+                    .executeQuery()) {
+                    while (resultSet.next()) {
+                        builder.add(getAccount(resultSet));
+                    }
+                }
+                return Collections.unmodifiableList(builder);
+            });
+        } catch (final Exception e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+        }
+        return Collections.emptyList();
+    }
+
+    @Override public void close() {
+        // The removal listener saves the cached accounts that have unsaved changes
+        this.removalListener.close(this.cachedAccounts);
+        this.cachedAccountIds.invalidateAll();
     }
 
     private Optional<Integer> getCachedId(final String username) {
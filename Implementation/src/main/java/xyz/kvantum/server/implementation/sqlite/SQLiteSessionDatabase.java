@@ -45,55 +45,71 @@ import java.sql.ResultSet;
     }
 
     @Override public SessionLoad getSessionLoad(final AsciiString sessionID) {
-        SessionLoad sessionLoad = null;
-        try (final PreparedStatement statement = this.applicationStructure.getDatabaseManager()
-            .prepareStatement("SELECT * FROM sessions WHERE id = ?")) {
-            statement.setString(1, sessionID.toString());
-            try (final ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next()) {
-                    sessionLoad = new SessionLoad(resultSet.getString("session_key"),
-                        resultSet.getLong("last_active"));
+        try {
+            return this.applicationStructure.getDatabaseManager().read(connection -> {
+                final PreparedStatement statement =
+                    connection.prepare("SELECT * FROM sessions WHERE id = ?");
+                statement.setString(1, sessionID.toString());
+                try (final ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        return new SessionLoad(resultSet.getString("session_key"),
+                            resultSet.getLong("last_active"));
+                    }
                 }
-            }
+                return null;
+            });
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
-        return sessionLoad;
+        return null;
     }
 
     @Override public void storeSession(final ISession session) {
-        if (getSessionLoad((AsciiString) session.get("id")) != null) {
-            updateSession((AsciiString) session.get("id"));
-        } else {
-            try (final PreparedStatement statement = this.applicationStructure.getDatabaseManager()
-                .prepareStatement(
-                    "INSERT INTO sessions(`id`,`last_active`, `session_key`) VALUES(?, ?, ?)")) {
-                statement.setString(1, session.get("id").toString());
-                statement.setLong(2, System.currentTimeMillis());
-                statement.setString(3, session.getSessionKey().toString());
-                statement.executeUpdate();
-            } catch (final Exception e) {
-                ServerImplementation.getImplementation().getErrorDigest().digest(e);
-            }
+        final String id = session.get("id").toString();
+        try {
+            this.applicationStructure.getDatabaseManager().transaction(connection -> {
+                final PreparedStatement update =
+                    connection.prepare("UPDATE sessions SET last_active = ? WHERE id = ?");
+                update.setLong(1, System.currentTimeMillis());
+                update.setString(2, id);
+                if (update.executeUpdate() > 0) {
+                    return null;
+                }
+                final PreparedStatement insert = connection.prepare(
+                    "INSERT INTO sessions(`id`,`last_active`, `session_key`) VALUES(?, ?, ?)");
+                insert.setString(1, id);
+                insert.setLong(2, System.currentTimeMillis());
+                insert.setString(3, session.getSessionKey().toString());
+                insert.executeUpdate();
+                return null;
+            });
+        } catch (final Exception e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
     }
 
     @Override public void deleteSession(final AsciiString session) {
-        try (final PreparedStatement statement = this.applicationStructure.getDatabaseManager()
-            .prepareStatement("DELETE FROM sessions WHERE id = ?")) {
-            statement.setString(1, session.toString());
-            statement.executeUpdate();
+        try {
+            this.applicationStructure.getDatabaseManager().write(connection -> {
+                final PreparedStatement statement =
+                    connection.prepare("DELETE FROM sessions WHERE id = ?");
+                statement.setString(1, session.toString());
+                return statement.executeUpdate();
+            });
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
     }
 
     @Override public void updateSession(final AsciiString session) {
-        try (final PreparedStatement statement = this.applicationStructure.getDatabaseManager()
-            .prepareStatement("UPDATE sessions SET last_active = ? WHERE id = ?")) {
-            statement.setLong(1, System.currentTimeMillis());
-            statement.setString(2, session.toString());
-            statement.executeUpdate();
+        try {
+            this.applicationStructure.getDatabaseManager().write(connection -> {
+                final PreparedStatement statement =
+                    connection.prepare("UPDATE sessions SET last_active = ? WHERE id = ?");
+                statement.setLong(1, System.currentTimeMillis());
+                statement.setString(2, session.toString());
+                return statement.executeUpdate();
+            });
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
@@ -0,0 +1,216 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.account.AccountExtension;
+import xyz.kvantum.server.api.account.IAccount;
+import xyz.kvantum.server.api.account.PasswordHashingService;
+import xyz.kvantum.server.api.account.roles.SimpleAccountRole;
+import xyz.kvantum.server.api.account.roles.defaults.Administrator;
+import xyz.kvantum.server.api.config.CoreConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccountTest {
+
+    @Test void dataChangesMakeAccountDirty() {
+        final Account account = new Account(1, "dirty", "password");
+        assertFalse(account.isDirty());
+        account.internalMetaUpdate("loaded", "value");
+        account.getData("loaded");
+        account.getRawData();
+        assertFalse(account.isDirty());
+        // Setting the current value is not a change
+        account.setData("loaded", "value");
+        assertFalse(account.isDirty());
+        account.setData("loaded", "changed");
+        assertTrue(account.isDirty());
+        account.saveState();
+        account.removeData("missing");
+        assertTrue(account.isDirty());
+    }
+
+    @Test void onlyChangedExtensionsAreSaved() {
+        final Account account = new Account(1, "extensions", "password");
+        final TrackedExtension tracked = account.attachExtension(TrackedExtension.class);
+        assertFalse(account.isDirty());
+        account.saveState();
+        assertEquals(0, tracked.saves);
+        tracked.setValue("changed");
+        assertTrue(account.isDirty());
+        account.saveState();
+        assertEquals(1, tracked.saves);
+        assertFalse(account.isDirty());
+        account.saveState();
+        assertEquals(1, tracked.saves);
+
+        // Extensions that don't track their changes are saved every time
+        final UntrackedExtension untracked = account.attachExtension(UntrackedExtension.class);
+        assertTrue(account.isDirty());
+        account.saveState();
+        account.saveState();
+        assertEquals(2, untracked.saves);
+        assertEquals(1, tracked.saves);
+    }
+
+    @Test void roleMutationsAreVisible() {
+        final Account account = new Account(1, "roles", "password");
+        final SimpleAccountRole editor = new SimpleAccountRole("AccountTestEditor") {
+        };
+        assertFalse(account.isPermitted("article.edit"));
+        account.addRole(editor);
+        assertFalse(account.isPermitted("article.edit"));
+        editor.addPermission("article.*");
+        assertTrue(account.isPermitted("article.edit"));
+        assertTrue(account.isPermitted("Article.Publish"));
+        editor.removePermission("article.*");
+        editor.addPermission("article.edit");
+        assertTrue(account.isPermitted("article.edit"));
+        assertFalse(account.isPermitted("article.publish"));
+        account.addRole(Administrator.instance);
+        assertTrue(account.isPermitted("article.publish"));
+        account.removeRole(Administrator.instance);
+        account.removeRole(editor);
+        assertFalse(account.isPermitted("article.edit"));
+    }
+
+    @Tag("benchmark") @Test void loginFloodLatency() throws Exception {
+        final int logins = 48;
+        final PasswordHashingService service = PasswordHashingService.builder().workFactor(8).threads(1)
+            .maxPendingVerifications(logins).build();
+        PasswordHashingService.setInstance(service);
+        try {
+            final Account account = new Account(1, "flood", service.hash("password").join());
+            // Logins that wait for the verification on the request threads
+            final ExecutorService blockingWorkers = Executors.newFixedThreadPool(2);
+            for (int i = 0; i < logins; i++) {
+                blockingWorkers.submit(() -> account.passwordMatches("password"));
+            }
+            final long blocking = unrelatedRequestLatency(blockingWorkers);
+            blockingWorkers.shutdown();
+            assertTrue(blockingWorkers.awaitTermination(1, TimeUnit.MINUTES));
+            // Logins that continue once the verification is done
+            final ExecutorService asyncWorkers = Executors.newFixedThreadPool(2);
+            final List<Future<CompletableFuture<Boolean>>> submitted = new ArrayList<>();
+            for (int i = 0; i < logins; i++) {
+                submitted.add(asyncWorkers.submit(() -> account.passwordMatchesAsync("password")));
+            }
+            final long async = unrelatedRequestLatency(asyncWorkers);
+            for (final Future<CompletableFuture<Boolean>> future : submitted) {
+                assertTrue(future.get().join());
+            }
+            asyncWorkers.shutdown();
+            assertTrue(async < blocking, String
+                .format("Unrelated request latency during login flood: blocking %d µs, async %d µs", blocking,
+                    async));
+        } finally {
+            resetPasswordHashingService();
+        }
+    }
+
+    @Test void rejectedLoginsFail() throws Exception {
+        final PasswordHashingService service = PasswordHashingService.builder().workFactor(4).threads(1)
+            .maxPendingVerifications(1).build();
+        PasswordHashingService.setInstance(service);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final Account account = new Account(1, "rejected", service.hash("password").join());
+            // Occupy the only verification permit
+            final CompletableFuture<Boolean> pending = service.verify(() -> {
+                try {
+                    return release.await(1, TimeUnit.MINUTES);
+                } catch (final InterruptedException e) {
+                    return false;
+                }
+            });
+            assertFalse(account.passwordMatches("password"));
+            release.countDown();
+            assertTrue(pending.get(1, TimeUnit.MINUTES));
+            assertTrue(account.passwordMatches("password"));
+        } finally {
+            release.countDown();
+            resetPasswordHashingService();
+        }
+    }
+
+    private static void resetPasswordHashingService() {
+        PasswordHashingService.setInstance(PasswordHashingService.builder()
+            .workFactor(CoreConfig.Passwords.workFactor).threads(CoreConfig.Passwords.threads)
+            .maxPendingVerifications(CoreConfig.Passwords.maxPendingVerifications).build());
+    }
+
+    private static long unrelatedRequestLatency(final ExecutorService workers) throws Exception {
+        final long start = System.nanoTime();
+        final Future<Long> future = workers.submit(System::nanoTime);
+        final long end = future.get(1, TimeUnit.MINUTES);
+        return TimeUnit.NANOSECONDS.toMicros(end - start);
+    }
+
+    public static final class TrackedExtension extends AccountExtension {
+
+        private int saves;
+
+        void setValue(final String value) {
+            this.markDirty();
+        }
+
+        @Override protected void onAttach(final IAccount account) {
+        }
+
+        @Override public void saveState() {
+            this.saves++;
+        }
+
+        @Override protected boolean tracksChanges() {
+            return true;
+        }
+
+    }
+
+
+    public static final class UntrackedExtension extends AccountExtension {
+
+        private int saves;
+
+        @Override protected void onAttach(final IAccount account) {
+        }
+
+        @Override public void saveState() {
+            this.saves++;
+        }
+
+    }
+
+}
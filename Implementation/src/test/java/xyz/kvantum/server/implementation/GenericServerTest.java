@@ -83,11 +83,14 @@ import static org.junit.Assert.assertTrue;
     }
 
     @AfterAll void tearDownAll() {
+        this.serverInstance.stopServer();
         try {
             FileUtils.deleteDirectory(temporaryFolder);
         } catch (IOException e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
+        // A JVM can only host one server implementation at a time, so the next test class needs its own
+        ServerImplementation.unregisterServerImplementation(this.serverInstance);
     }
 
 }
@@ -0,0 +1,317 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.bytes.ByteArrayEncoder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.Response;
+import xyz.kvantum.server.api.socket.SocketContext;
+import xyz.kvantum.server.api.util.Allocations;
+import xyz.kvantum.server.api.util.ObjectPool;
+import xyz.kvantum.server.api.util.ProtocolType;
+import xyz.kvantum.server.api.views.CSSView;
+import xyz.kvantum.server.api.views.RequestHandler;
+import xyz.kvantum.server.api.views.requesthandler.Middleware;
+import xyz.kvantum.server.api.views.requesthandler.MiddlewareQueue;
+import xyz.kvantum.server.api.views.requesthandler.Stateless;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KvantumServerHandlerTest extends GenericServerTest {
+
+    private static final int PIPELINED_REQUESTS = 10_000;
+
+    private static final SocketAddress REMOTE_ADDRESS =
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 40000);
+
+    private static final PendingHandler PENDING_HANDLER = new PendingHandler();
+
+    @Stateless public static final class RedirectMiddleware extends Middleware {
+
+        @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
+            request.internalRedirect("handlertest/target");
+        }
+
+    }
+
+    /**
+     * Handler with asynchronous responses, that are completed by the test
+     */
+    private static final class PendingHandler extends RequestHandler {
+
+        private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+
+        @Override public boolean matches(final AbstractRequest request) {
+            return request.getQuery().getResource().endsWith("handlertest/pending");
+        }
+
+        @Override public Response generate(final AbstractRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public CompletionStage<Response> generateAsync(final AbstractRequest request) {
+            final CompletableFuture<Response> future = new CompletableFuture<>();
+            final Response response = new Response(this);
+            response.setResponse("pending");
+            this.completions.add(() -> future.complete(response));
+            return future;
+        }
+
+        @Override public String getName() {
+            return "pending";
+        }
+
+        @Override public boolean forceHTTPS() {
+            return false;
+        }
+
+    }
+
+    /**
+     * Channel with the same pipeline as {@link HTTPThread}. {@link SocketContext} expects an internet address,
+     * which embedded channels don't have
+     */
+    private static final class LoopbackChannel extends EmbeddedChannel {
+
+        private LoopbackChannel(final KvantumServerHandler handler) {
+            super(new ByteArrayEncoder(), handler);
+        }
+
+        @Override protected SocketAddress remoteAddress0() {
+            return REMOTE_ADDRESS;
+        }
+
+    }
+
+    private static String exchange(final EmbeddedChannel channel, final String path) {
+        return exchange(channel, path, "");
+    }
+
+    private static String exchange(final EmbeddedChannel channel, final String path, final String headers) {
+        channel.writeInbound(Unpooled.copiedBuffer("GET /" + path + " HTTP/1.1\r\nHost: localhost\r\n"
+            + headers + "Connection: keep-alive\r\n\r\n", StandardCharsets.US_ASCII));
+        return readResponse(channel);
+    }
+
+    private static String readResponse(final EmbeddedChannel channel) {
+        final StringBuilder response = new StringBuilder();
+        ByteBuf buffer;
+        while ((buffer = channel.readOutbound()) != null) {
+            response.append(buffer.toString(StandardCharsets.US_ASCII));
+            buffer.release();
+        }
+        return response.toString();
+    }
+
+    private static String body(final String response) {
+        return response.substring(response.lastIndexOf('\n') + 1);
+    }
+
+    /**
+     * Waits for a condition that is fulfilled by the executor. Channel futures can't be awaited, as embedded
+     * channels consider every thread to be their event loop
+     */
+    private static void await(final BooleanSupplier condition, final String message) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, message);
+            Thread.sleep(1L);
+        }
+    }
+
+    /**
+     * Runs the exchanges on a single connection, on a thread that is named like the server threads, so that
+     * responses are written inline, as they would be on a server connection
+     */
+    private static void onConnection(final Consumer<EmbeddedChannel> exchanges) throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "kvantum-handler-test"));
+        try {
+            executor.submit(() -> {
+                final EmbeddedChannel channel = new LoopbackChannel(new KvantumServerHandler(ProtocolType.HTTP));
+                exchanges.accept(channel);
+                channel.finishAndReleaseAll();
+            }).get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @BeforeAll void registerHandlers() throws IOException {
+        // The server is shared with other test classes, that may have left their own handlers
+        serverInstance.getRouter().clear();
+        // The server isn't started, as that would bind its ports, so the caches that are created on start are
+        // created here instead
+        if (SimpleServer.fileEntityTagCache == null) {
+            SimpleServer.md5HandlerPool = new ObjectPool<>(1, Md5Handler::new);
+            SimpleServer.fileEntityTagCache = new FileEntityTagCache(16, SimpleServer.md5HandlerPool);
+        }
+        final File stylesheets = new File(temporaryFolder, "assets/css");
+        assertTrue(stylesheets.isDirectory() || stylesheets.mkdirs());
+        Files.write(new File(stylesheets, "private.css").toPath(), "body {}".getBytes(StandardCharsets.UTF_8));
+        final CSSView privateView = new CSSView("handlertest/<file>.css", new HashMap<>());
+        privateView.getMiddlewareQueuePopulator().add(RedirectMiddleware.class);
+        serverInstance.getRouter().add(privateView);
+        serverInstance.getRouter().add(new CSSView("handlertest/public/<file>.css", new HashMap<>()));
+        serverInstance.createSimpleRequestHandler("handlertest/redirect",
+            (request, response) -> response.setResponse("redirect")).getMiddlewareQueuePopulator()
+            .add(RedirectMiddleware.class);
+        serverInstance.createSimpleRequestHandler("handlertest/target",
+            (request, response) -> response.setResponse("target"));
+        serverInstance.getRouter().add(PENDING_HANDLER);
+        serverInstance.createSimpleRequestHandler("handlertest/other",
+            (request, response) -> response.setResponse(
+                request.getQuery().getResource() + " " + request.getHeaders().size()));
+    }
+
+    @Test void redirectsDontLeakIntoRecycledRequests() throws Exception {
+        onConnection(channel -> {
+            final String first = exchange(channel, "handlertest/other");
+            assertTrue(first.startsWith("HTTP/1.1 200"), first);
+
+            final String redirected = exchange(channel, "handlertest/redirect");
+            assertTrue(redirected.startsWith("HTTP/1.1 200"), redirected);
+            assertEquals("target", body(redirected));
+
+            // The recycled context must read into, and respond to, the request that it owns
+            final String second = exchange(channel, "handlertest/other");
+            assertTrue(second.startsWith("HTTP/1.1 200"), second);
+            assertEquals(body(first), body(second));
+        });
+    }
+
+    @Test void conditionalRequestsDontBypassMiddleware() throws Exception {
+        final String ifModifiedSince = "If-Modified-Since: Fri, 01 Jan 2100 00:00:00 GMT\r\n";
+        onConnection(channel -> {
+            final String unprotected = exchange(channel, "handlertest/public/private.css", ifModifiedSince);
+            assertTrue(unprotected.startsWith("HTTP/1.1 304"), unprotected);
+
+            final String protectedResponse = exchange(channel, "handlertest/private.css", ifModifiedSince);
+            assertTrue(protectedResponse.startsWith("HTTP/1.1 200"), protectedResponse);
+            assertEquals("target", body(protectedResponse));
+        });
+    }
+
+    @Test void oversizedLinesAreRejected() throws Exception {
+        final String oversized = new String(new char[CoreConfig.Limits.limitRequestLineSize]).replace('\0', 'a');
+        onConnection(channel -> {
+            final String response = exchange(channel, "handlertest/other?" + oversized);
+            assertTrue(response.startsWith("HTTP/1.1 414"), response);
+        });
+        onConnection(channel -> {
+            final String response = exchange(channel, "handlertest/other", "X-Oversized: " + oversized + "\r\n");
+            assertTrue(response.startsWith("HTTP/1.1 431"), response);
+        });
+    }
+
+    /**
+     * Pending asynchronous responses suspend their response tasks, instead of holding on to an executor thread
+     * each, and resume on the executor once the response is available
+     */
+    @Test void pendingResponsesDontHoldThreads() throws Exception {
+        final int requests = 200;
+        final ThreadPoolExecutor executor = (ThreadPoolExecutor) serverInstance.getExecutorService();
+        final List<EmbeddedChannel> channels = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            final EmbeddedChannel channel = new LoopbackChannel(new KvantumServerHandler(ProtocolType.HTTP));
+            channels.add(channel);
+            // Requests aren't read on a server thread, so their response tasks run on the executor
+            channel.writeInbound(Unpooled.copiedBuffer(
+                "GET /handlertest/pending HTTP/1.1\r\nHost: localhost\r\n\r\n", StandardCharsets.US_ASCII));
+            final int generated = i + 1;
+            await(() -> PENDING_HANDLER.completions.size() == generated, "The response wasn't generated");
+            await(() -> executor.getActiveCount() == 0, "The pending response holds on to an executor thread");
+        }
+        Runnable completion;
+        while ((completion = PENDING_HANDLER.completions.poll()) != null) {
+            completion.run();
+        }
+        for (final EmbeddedChannel channel : channels) {
+            // The connection is closed once the response has been written
+            await(() -> channel.closeFuture().isDone(), "The response wasn't written");
+            final String response = readResponse(channel);
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertEquals("pending", body(response));
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    /**
+     * Compares the allocations of {@link #PIPELINED_REQUESTS} keep-alive requests on a single connection, with and
+     * without recycling of the worker context, request and request reader
+     */
+    @Tag("benchmark") @Test void recyclingReducesAllocations() throws Exception {
+        Allocations.assumeSupported();
+        final boolean recycleRequests = CoreConfig.Pools.recycleRequests;
+        final long[] fresh = new long[1], recycled = new long[1];
+        try {
+            for (int round = 0; round < 2; round++) { // The first round is a warm-up
+                CoreConfig.Pools.recycleRequests = false;
+                onConnection(channel -> fresh[0] = Allocations.allocatedBytes(() -> pipeline(channel)));
+                CoreConfig.Pools.recycleRequests = true;
+                onConnection(channel -> recycled[0] = Allocations.allocatedBytes(() -> pipeline(channel)));
+            }
+        } finally {
+            CoreConfig.Pools.recycleRequests = recycleRequests;
+        }
+        assertTrue(recycled[0] < fresh[0], String
+            .format("Expected recycling (%d bytes/request) to allocate less than fresh requests (%d bytes/request)",
+                recycled[0] / PIPELINED_REQUESTS, fresh[0] / PIPELINED_REQUESTS));
+    }
+
+    private static void pipeline(final EmbeddedChannel channel) {
+        for (int i = 0; i < PIPELINED_REQUESTS; i++) {
+            final String response = exchange(channel, "handlertest/other");
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+        }
+    }
+
+}
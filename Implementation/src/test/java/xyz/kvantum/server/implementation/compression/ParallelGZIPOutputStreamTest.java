@@ -0,0 +1,158 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation.compression;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ParallelGZIPOutputStreamTest {
+
+    private static byte[] generatePage(final int size) {
+        final StringBuilder builder = new StringBuilder(size + 128);
+        for (int i = 0; builder.length() < size; i++) {
+            builder.append("<tr class=\"row\"><td>").append(i).append("</td><td>Item number ")
+                .append(i * 31 % 977).append("</td><td><a href=\"/items/").append(i).append("\">View</a></td></tr>\n");
+        }
+        builder.setLength(size);
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] decode(final byte[] encoded) throws IOException {
+        try (final GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(encoded))) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private static byte[] encodeParallel(final byte[] input, final int level) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(input.length >> 2);
+        try (final ParallelGZIPOutputStream gzip = new ParallelGZIPOutputStream(outputStream, level)) {
+            gzip.write(input);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] encodeSerial(final byte[] input, final int level) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(input.length >> 2);
+        try (final GZIPOutputStream gzip = new GZIPOutputStream(outputStream) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(input);
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Test void decodesToInput() throws IOException {
+        final byte[] random = new byte[300_000];
+        new Random(42).nextBytes(random);
+        assertArrayEquals(random, decode(encodeParallel(random, Deflater.BEST_SPEED)));
+        assertArrayEquals(new byte[0], decode(encodeParallel(new byte[0], Deflater.BEST_SPEED)));
+        final byte[] page = generatePage(1024 * 1024 + 17);
+        assertArrayEquals(page, decode(encodeParallel(page, Deflater.DEFAULT_COMPRESSION)));
+    }
+
+    @Test void runsOnDedicatedPool() throws IOException {
+        encodeParallel(generatePage(512 * 1024), Deflater.BEST_SPEED);
+        assertTrue(Thread.getAllStackTraces().keySet().stream()
+            .anyMatch(thread -> thread.getName().startsWith("parallel-gzip-") && thread.isDaemon()));
+    }
+
+    private static void assertRatio(final byte[] page) throws IOException {
+        final byte[] parallel = encodeParallel(page, Deflater.BEST_SPEED);
+        final byte[] serial = encodeSerial(page, Deflater.BEST_SPEED);
+        assertArrayEquals(page, decode(parallel));
+        assertTrue(parallel.length <= serial.length * 1.02D,
+            String.format("Expected parallel (%d) to be within 2%% of serial (%d)", parallel.length,
+                serial.length));
+    }
+
+    private static long averageTime(final byte[] page, final Encoder encoder) throws IOException {
+        // Small pages are encoded more often, so that every measurement covers at least 64 MB
+        final int iterations = Math.max(4, (64 * 1024 * 1024) / page.length);
+        // Warm up
+        for (int i = 0; i < iterations; i++) {
+            encoder.encode(page, Deflater.BEST_SPEED);
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            encoder.encode(page, Deflater.BEST_SPEED);
+        }
+        return (System.nanoTime() - start) / iterations;
+    }
+
+    /**
+     * Because every block is primed with the end of the previous block, the output should be (almost) as small as
+     * the output of a single threaded {@link GZIPOutputStream}
+     */
+    @Test void ratio() throws IOException {
+        for (final int size : new int[] {64 * 1024, 1024 * 1024, 4 * 1024 * 1024}) {
+            assertRatio(generatePage(size));
+        }
+    }
+
+    /**
+     * Compares the latency of parallel and serial compression of 64 KB, 1 MB and 16 MB pages. Pages of at least
+     * {@link CoreConfig.Compression#parallelMinimumSize} bytes should be faster to compress in parallel when there's
+     * more than one processor to spread the blocks over. Smaller pages are compressed serially by the server, but
+     * handing them to the dedicated pool should still be cheap
+     */
+    @Tag("benchmark") @Test void latency() throws IOException {
+        assertRatio(generatePage(16 * 1024 * 1024));
+        assumeTrue(Runtime.getRuntime().availableProcessors() > 1,
+            "Latency can only improve with more than one processor");
+        for (final int size : new int[] {64 * 1024, 1024 * 1024, 16 * 1024 * 1024}) {
+            final byte[] page = generatePage(size);
+            final long parallelTime = averageTime(page, ParallelGZIPOutputStreamTest::encodeParallel);
+            final long serialTime = averageTime(page, ParallelGZIPOutputStreamTest::encodeSerial);
+            if (size >= CoreConfig.Compression.parallelMinimumSize) {
+                assertTrue(parallelTime < serialTime, String
+                    .format("Expected parallel (%dns) to be faster than serial (%dns) for %d bytes", parallelTime,
+                        serialTime, size));
+            } else {
+                assertTrue(parallelTime < serialTime * 2, String
+                    .format("Expected parallel (%dns) to be at most twice as slow as serial (%dns) for %d bytes",
+                        parallelTime, serialTime, size));
+            }
+        }
+    }
+
+    @FunctionalInterface private interface Encoder {
+
+        byte[] encode(byte[] input, int level) throws IOException;
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation.compression;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingGzipEncoderTest {
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private static byte[] generatePage(final int rows) {
+        final StringBuilder builder = new StringBuilder("<html><body><table>");
+        for (int i = 0; i < rows; i++) {
+            builder.append("<tr class=\"row\"><td>").append(i).append("</td><td>Item number ")
+                .append(i * 31 % 977).append("</td><td><a href=\"/items/").append(i).append("\">View</a></td></tr>\n");
+        }
+        return builder.append("</table></body></html>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] decode(final byte[] encoded) throws IOException {
+        try (final GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(encoded))) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private static byte[] encodeStreaming(final DeflaterPool pool, final byte[] input) {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final StreamingGzipEncoder encoder = new StreamingGzipEncoder(pool, CHUNK_SIZE);
+        for (int offset = 0; offset < input.length; offset += CHUNK_SIZE) {
+            final int length = encoder.encode(input, offset, Math.min(CHUNK_SIZE, input.length - offset));
+            outputStream.write(encoder.getBuffer(), 0, length);
+        }
+        final int length = encoder.finish();
+        outputStream.write(encoder.getBuffer(), 0, length);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * The previous behaviour: one complete gzip member per chunk
+     */
+    private static byte[] encodePerChunk(final byte[] input) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (int offset = 0; offset < input.length; offset += CHUNK_SIZE) {
+            try (final GZIPOutputStream gzip = new GZIPOutputStream(outputStream) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+                @Override public void close() throws IOException {
+                    finish();
+                }
+            }) {
+                gzip.write(input, offset, Math.min(CHUNK_SIZE, input.length - offset));
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Test void decodesToInput() throws IOException {
+        final DeflaterPool pool = new DeflaterPool(1, Deflater.BEST_SPEED);
+        final byte[] page = generatePage(5_000);
+        assertArrayEquals(page, decode(encodeStreaming(pool, page)));
+        // The second response reuses the pooled deflater
+        final byte[] small = generatePage(3);
+        assertArrayEquals(small, decode(encodeStreaming(pool, small)));
+        assertEquals(1, pool.getCreated());
+    }
+
+    @Test void emptyBody() throws IOException {
+        final DeflaterPool pool = new DeflaterPool(1, Deflater.BEST_SPEED);
+        final StreamingGzipEncoder encoder = new StreamingGzipEncoder(pool, 16);
+        final int length = encoder.finish();
+        final byte[] encoded = new byte[length];
+        System.arraycopy(encoder.getBuffer(), 0, encoded, 0, length);
+        assertEquals(0, decode(encoded).length);
+        assertThrows(IllegalStateException.class, () -> encoder.encode(new byte[1], 0, 1));
+        assertThrows(IllegalStateException.class, encoder::finish);
+        // Closing a finished encoder does nothing, so the deflater is only pooled once
+        encoder.close();
+        assertNotSame(pool.acquire(), pool.acquire());
+    }
+
+    @Test void incompressibleChunksGrowBuffer() throws IOException {
+        final byte[] random = new byte[CHUNK_SIZE * 8];
+        new Random(42).nextBytes(random);
+        final DeflaterPool pool = new DeflaterPool(1, Deflater.BEST_SPEED);
+        assertArrayEquals(random, decode(encodeStreaming(pool, random)));
+    }
+
+    /**
+     * A single deflate stream compresses better than the previous per-chunk gzip members, as the dictionary is
+     * kept between chunks
+     */
+    @Test void streamingImprovesRatio() throws IOException {
+        final DeflaterPool pool = new DeflaterPool(1, Deflater.BEST_SPEED);
+        final byte[] page = generatePage(20_000);
+        final byte[] streaming = encodeStreaming(pool, page);
+        final byte[] perChunk = encodePerChunk(page);
+        assertArrayEquals(page, decode(perChunk));
+        assertArrayEquals(page, decode(streaming));
+        assertTrue(streaming.length < perChunk.length,
+            String.format("Expected streaming (%d) to be smaller than per chunk (%d)", streaming.length,
+                perChunk.length));
+    }
+
+}
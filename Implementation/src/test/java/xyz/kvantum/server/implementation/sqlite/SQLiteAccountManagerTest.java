@@ -0,0 +1,317 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation.sqlite;
+
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.AccountService;
+import xyz.kvantum.server.api.account.AccountExtension;
+import xyz.kvantum.server.api.account.IAccount;
+import xyz.kvantum.server.api.account.IAccountManager;
+import xyz.kvantum.server.api.account.PasswordHashingService;
+import xyz.kvantum.server.api.util.SQLiteManager;
+import xyz.kvantum.server.implementation.Account;
+import xyz.kvantum.server.implementation.AccountRemovalListener;
+import xyz.kvantum.server.implementation.SQLiteApplicationStructure;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SQLiteAccountManagerTest {
+
+    private File directory;
+    private SQLiteManager database;
+    private SQLiteAccountManager accountManager;
+    private IAccountManager globalAccountManager;
+
+    @BeforeEach void openDatabase() throws Exception {
+        this.directory = Files.createTempDirectory("kvantum-accounts").toFile();
+        // The account manager registers itself as the global account manager
+        this.globalAccountManager = AccountService.getInstance().getGlobalAccountManager();
+        this.open();
+    }
+
+    @AfterEach void closeDatabase() {
+        if (this.globalAccountManager != null) {
+            AccountService.getInstance().setGlobalAccountManager(this.globalAccountManager);
+        }
+        this.close();
+        final File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.delete();
+    }
+
+    private void open() throws Exception {
+        this.database = SQLiteManager.builder().file(new File(this.directory, "accounts.db")).readConnections(2)
+            .synchronous("normal").busyTimeout(5000).statementCacheSize(16).build();
+        this.accountManager =
+            new SQLiteAccountManager(new SQLiteApplicationStructure("accounts", this.database));
+    }
+
+    private void close() {
+        this.accountManager.close();
+        this.database.close();
+    }
+
+    private IAccountManager accountManager() {
+        return this.accountManager;
+    }
+
+    private SQLiteManager database() {
+        return this.database;
+    }
+
+    private int count(final String sql, final Object... parameters) throws SQLException {
+        return database().read(connection -> {
+            final PreparedStatement statement = connection.prepare(sql);
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        });
+    }
+
+    private List<IAccount> insertAccounts(final String prefix, final int amount) throws SQLException {
+        // Inserted directly, so that the test doesn't spend its time hashing passwords
+        database().batch("INSERT INTO account(`username`, `password`) VALUES(?, ?)",
+            IntStream.range(0, amount).boxed().collect(Collectors.toList()), (statement, i) -> {
+                statement.setString(1, prefix + i);
+                statement.setString(2, "hash");
+            });
+        return accountManager().findAll().stream().filter(account -> account.getUsername().startsWith(prefix))
+            .collect(Collectors.toList());
+    }
+
+    @Test void loginUpgradesPasswordHash() throws Exception {
+        PasswordHashingService
+            .setInstance(PasswordHashingService.builder().workFactor(4).maxPendingVerifications(16).build());
+        final IAccount account = accountManager().createAccount("upgrade", "password").orElseThrow();
+        PasswordHashingService
+            .setInstance(PasswordHashingService.builder().workFactor(5).maxPendingVerifications(16).build());
+        assertEquals(1, count("SELECT COUNT(*) FROM account WHERE id = ? AND password LIKE '$2a$04$%'",
+            account.getId()));
+        assertFalse(account.passwordMatchesAsync("wrong").get());
+        assertTrue(account.passwordMatchesAsync("password").get());
+        assertEquals(1, count("SELECT COUNT(*) FROM account WHERE id = ? AND password LIKE '$2a$05$%'",
+            account.getId()));
+        // The upgraded hash is used from now on
+        assertTrue(account.passwordMatches("password"));
+    }
+
+    @Test void setDataUpserts() throws Exception {
+        final IAccount account = accountManager().createAccount("upsert", "password").orElseThrow();
+        accountManager().setData(account, "color", "red");
+        accountManager().setData(account, "color", "blue");
+        assertEquals(1,
+            count("SELECT COUNT(*) FROM account_data WHERE account_id = ? AND `key` = ?", account.getId(),
+                "color"));
+        assertEquals(1,
+            count("SELECT COUNT(*) FROM account_data WHERE account_id = ? AND `value` = ?", account.getId(),
+                "blue"));
+    }
+
+    @Test void saveAllSkipsExistingAccounts() throws Exception {
+        accountManager().createAccount("saveAll0", "password");
+        final List<IAccount> accounts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            accounts.add(new Account(-1, "saveAll" + i, "password"));
+        }
+        final Collection<? extends IAccount> created = accountManager().saveAll(accounts);
+        assertEquals(9, created.size());
+        assertFalse(created.stream().anyMatch(account -> account.getUsername().equals("saveAll0")));
+        assertTrue(created.stream().allMatch(account -> account.getId() > 0));
+        assertTrue(accountManager().saveAll(accounts).isEmpty());
+
+        final List<IAccount> saved = new ArrayList<>(created);
+        accountManager().deleteAll(saved);
+        // Only the account that existed before remains
+        assertEquals(1, count("SELECT COUNT(*) FROM account WHERE username LIKE 'saveAll_'"));
+        assertFalse(accountManager().getAccount("saveAll5").isPresent());
+    }
+
+    @Test void bulkData() throws Exception {
+        final int amount = 500;
+        final List<IAccount> accounts = insertAccounts("bulk", amount);
+        assertEquals(amount, accounts.size());
+
+        accountManager().setDataBulk(accounts, "bulk", "1");
+        // Updating existing values goes through the same upsert
+        accountManager().setDataBulk(accounts, "bulk", "2");
+
+        assertEquals(amount, count("SELECT COUNT(*) FROM account_data WHERE `key` = 'bulk' AND `value` = '2'"));
+        assertTrue(accounts.stream().allMatch(account -> account.getData("bulk").orElse("").equals("2")));
+
+        accountManager().deleteAll(accounts);
+        assertEquals(0, count("SELECT COUNT(*) FROM account WHERE username LIKE 'bulk%'"));
+    }
+
+    /**
+     * Bulk updates use a single batch in a single transaction, rather than one transaction per row
+     */
+    @Tag("benchmark") @Test void bulkDataIsFaster() throws Exception {
+        final int amount = 5_000;
+        final List<IAccount> accounts = insertAccounts("bulk", amount);
+
+        long start = System.nanoTime();
+        for (final IAccount account : accounts) {
+            accountManager().setData(account, "single", "1");
+        }
+        final long single = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        accountManager().setDataBulk(accounts, "bulk", "1");
+        final long bulk = System.nanoTime() - start;
+
+        assertEquals(amount, count("SELECT COUNT(*) FROM account_data WHERE `key` = 'single'"));
+        assertEquals(amount, count("SELECT COUNT(*) FROM account_data WHERE `key` = 'bulk'"));
+        assertTrue(bulk < single, String.format("Expected setDataBulk (%d rows/s) to be faster than setData "
+            + "(%d rows/s)", amount * 1_000_000_000L / bulk, amount * 1_000_000_000L / single));
+    }
+
+    private int totalChanges() throws SQLException {
+        return database().write(connection -> {
+            try (final ResultSet resultSet = connection.prepare("SELECT total_changes()").executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        });
+    }
+
+    @Test void dataIsWrittenThrough() throws Exception {
+        final IAccount account = insertAccounts("changed", 1).get(0);
+        account.setData("kept", "1");
+        account.setData("removed", "1");
+        assertEquals(2, count("SELECT COUNT(*) FROM account_data WHERE account_id = ?", account.getId()));
+
+        account.setData("kept", "2");
+        account.removeData("removed");
+        account.setData("added", "1");
+        assertFalse(account.isDirty());
+        assertEquals(1, count("SELECT COUNT(*) FROM account_data WHERE account_id = ? AND `key` = 'kept' "
+            + "AND `value` = '2'", account.getId()));
+        assertEquals(0, count("SELECT COUNT(*) FROM account_data WHERE account_id = ? AND `key` = 'removed'",
+            account.getId()));
+        assertEquals(2, count("SELECT COUNT(*) FROM account_data WHERE account_id = ?", account.getId()));
+
+        // Nothing is left to save
+        final int changes = totalChanges();
+        account.saveState();
+        account.setData("kept", "2");
+        assertEquals(changes, totalChanges());
+    }
+
+    @Test void closingSavesCachedAccounts() throws Exception {
+        final IAccount inserted = insertAccounts("restart", 1).get(0);
+        final IAccount account = accountManager().getAccount(inserted.getId()).orElseThrow();
+        account.attachExtension(ColorExtension.class).setColor("green");
+        assertTrue(account.isDirty());
+
+        // Restart the manager without saving the account
+        final long saved = this.accountManager.getRemovalListener().getSaved();
+        this.close();
+        assertEquals(saved + 1, this.accountManager.getRemovalListener().getSaved());
+        this.open();
+
+        final IAccount reloaded = accountManager().getAccount("restart0").orElseThrow();
+        accountManager().loadData(reloaded);
+        assertEquals("green", reloaded.getData("color").orElse(null));
+    }
+
+    @Test void evictingReadOnlyAccountsDoesNotWrite() throws Exception {
+        final List<IAccount> inserted = insertAccounts("readonly", 100);
+        final List<IAccount> accounts = new ArrayList<>();
+        for (final IAccount account : inserted) {
+            final IAccount cached = accountManager().getAccount(account.getUsername()).orElseThrow();
+            accountManager().loadData(cached);
+            cached.getData("created");
+            cached.getAccountRoles();
+            cached.isPermitted("some.permission");
+            accounts.add(cached);
+        }
+        final AccountRemovalListener listener = this.accountManager.getRemovalListener();
+        final long saved = listener.getSaved();
+        final long skipped = listener.getSkipped();
+        final int changes = totalChanges();
+        for (final IAccount account : accounts) {
+            listener.onRemoval(account.getId(), account, RemovalCause.SIZE);
+        }
+        assertEquals(changes, totalChanges());
+        assertEquals(saved, listener.getSaved());
+        assertEquals(skipped + accounts.size(), listener.getSkipped());
+
+        // Data is written through, only the extension has to be saved
+        final IAccount changed = accounts.get(0);
+        changed.setData("shape", "round");
+        assertFalse(changed.isDirty());
+        changed.attachExtension(ColorExtension.class).setColor("green");
+        listener.onRemoval(changed.getId(), changed, RemovalCause.EXPIRED);
+        assertEquals(saved + 1, listener.getSaved());
+        assertEquals(1, count("SELECT COUNT(*) FROM account_data WHERE account_id = ? AND `value` = 'green'",
+            changed.getId()));
+        assertFalse(changed.isDirty());
+    }
+
+    public static final class ColorExtension extends AccountExtension {
+
+        private IAccount account;
+        private String color;
+
+        void setColor(final String color) {
+            this.color = color;
+            this.markDirty();
+        }
+
+        @Override protected void onAttach(final IAccount account) {
+            this.account = account;
+        }
+
+        @Override public void saveState() {
+            this.account.setData("color", this.color);
+        }
+
+        @Override protected boolean tracksChanges() {
+            return true;
+        }
+
+    }
+
+}
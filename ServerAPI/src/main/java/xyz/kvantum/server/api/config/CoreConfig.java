@@ -26,6 +26,7 @@ import com.intellectualsites.configurable.annotations.ConfigSection;
 import com.intellectualsites.configurable.annotations.Configuration;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -99,6 +100,13 @@ public class CoreConfig {
     @ConfigSection(name = "sessions") public static class Sessions {
         public static boolean enableDb = true;
         public static int sessionTimeout = 86400;
+        // "database" keeps sessions in the session database, "signed" keeps them in signed cookies
+        public static String backend = "database";
+        // Base64 encoded secrets for signed sessions. New tokens are signed with the first secret,
+        // the other secrets are still accepted (key rotation)
+        public static List<String> signingKeys = new ArrayList<>();
+        public static boolean encryptTokens = false;
+        public static int maxTokenSize = 4000;
     }
 
 
@@ -112,8 +120,41 @@ public class CoreConfig {
 
         public static int gzipParallelThreads = -1;
 
-        public static int gzipHandlers = 2;
-        public static int md5Handlers = 2;
+        // Maximum number of idle instances that are shared between threads. The pools
+        // never block, so these do not limit the number of instances in use
+        public static int gzipHandlers = 16;
+        public static int md5Handlers = 16;
+        public static int deflaters = 16;
+        // Per registered middleware that overrides Middleware#reset()
+        public static int middlewareInstances = 16;
+
+        public static boolean recycleRequests = true;
+        public static boolean poisonRecycled = false;
+    }
+
+
+    @ConfigSection(name = "compression") public static class Compression {
+
+        // Responses smaller than this (in bytes) are not compressed, unless the view forces compression
+        public static int minimumSize = 860;
+        // Content type prefixes that may be compressed. An empty list allows all types
+        public static List<String> allowedTypes = Arrays
+            .asList("text/", "application/json", "application/javascript", "application/xml",
+                "application/xhtml+xml", "image/svg+xml");
+        // Content type prefixes that are never compressed. The most specific prefix wins when a type is both allowed and denied
+        public static List<String> deniedTypes = Arrays
+            .asList("image/", "audio/", "video/", "font/woff", "application/zip", "application/gzip",
+                "application/octet-stream");
+        public static int level = 6;
+        // Level used when the system load exceeds the saturation load
+        public static int saturatedLevel = 1;
+        // System CPU load (0 to 1), or the load average divided by the number of processors if it isn't available
+        public static double saturationLoad = 0.85;
+        public static long loadSampleMillis = 1000;
+        // Responses with a known length of at least this many bytes are compressed in parallel, using
+        // pools.gzipParallelThreads threads. Set to 0 to disable parallel compression. Systems with a single
+        // processor always compress serially
+        public static int parallelMinimumSize = 1024 * 1024;
     }
 
 
@@ -167,12 +208,42 @@ public class CoreConfig {
         public static int cachedBodiesMaxItems = 1000;
         public static int cachedFilesExpiry = 60 * 60 * 24;
         public static int cachedFilesMaxItems = 1000;
+        public static int cachedEntityTagsMaxItems = 1000; // Entity tags of static files
         public static int cachedSessionsMaxItems = 1000;
-        public static int cachedQueryMinimumAccesses = 10;
+        public static int cachedPermissionLookupsMaxItems = 1000; // Permission keys that no role grants
+        public static int cachedQueryPathsMaxWeight = 256 * 1024; // Characters
+        public static int cachedQueryParametersMaxWeight = 512 * 1024; // Characters
+        public static int cachedRSQLPredicatesMaxWeight = 256 * 1024; // Characters
         public static int cachedFilesMaxSize = 1024 * 1024; // Default max size is 1MB
     }
 
 
+    @ConfigSection(name = "sqlite") public static class SQLite {
+
+        // Connections used for reads. All writes go through a single writer connection
+        public static int readConnections = 4;
+        // PRAGMA synchronous: OFF, NORMAL, FULL or EXTRA. NORMAL is safe in WAL mode
+        public static String synchronous = "NORMAL";
+        // Bytes of the database that may be memory mapped, 0 disables memory mapping
+        public static long mmapSize = 64L * 1024 * 1024;
+        // Milliseconds to wait for a locked database, or for a free read connection
+        public static int busyTimeout = 5000;
+        // Prepared statements that are cached per connection
+        public static int statementCacheSize = 32;
+    }
+
+
+    @ConfigSection(name = "passwords") public static class Passwords {
+
+        // Bcrypt work factor. Stored hashes with another work factor are upgraded on login
+        public static int workFactor = 10;
+        // Password hashing threads, 0 uses half of the available processors
+        public static int threads = 0;
+        // Verifications that may be queued or running before further verifications are rejected
+        public static int maxPendingVerifications = 64;
+    }
+
+
     @ConfigSection(name = "mongodb") public static class MongoDB {
 
         public static String uri = "mongodb://localhost:27017";
@@ -195,4 +266,15 @@ public class CoreConfig {
 
     }
 
+
+    @ConfigSection(name = "async") public static class Async {
+
+        /**
+         * Time (in milliseconds) that an asynchronous response may take before
+         * the request fails with status 503
+         */
+        public static long timeout = 30_000L;
+
+    }
+
 }
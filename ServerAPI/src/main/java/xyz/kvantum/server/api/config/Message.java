@@ -23,6 +23,7 @@ package xyz.kvantum.server.api.config;
 
 import com.github.sauilitired.loggbok.LogLevels;
 import xyz.kvantum.server.api.core.ServerImplementation;
+import xyz.kvantum.server.api.logging.Logger;
 
 import java.util.Locale;
 
@@ -151,6 +152,11 @@ public enum Message {
     }
 
     public void log(Object... args) {
-        ServerImplementation.getImplementation().log(this, args);
+        if (ServerImplementation.hasImplementation()) {
+            ServerImplementation.getImplementation().log(this, args);
+        } else {
+            // Components that are used without a server, such as account managers in tests
+            Logger.log(this.toString(), this.getMode(), args);
+        }
     }
 }
@@ -44,6 +44,18 @@ public final class ServerImplementation {
         ServerImplementation.intellectualServer = intellectualServer;
     }
 
+    /**
+     * Unregister a stopped server implementation, so that another implementation can be registered. Nothing
+     * happens if the instance isn't the registered implementation
+     *
+     * @param intellectualServer Server instance
+     */
+    public static void unregisterServerImplementation(final Kvantum intellectualServer) {
+        if (ServerImplementation.intellectualServer == intellectualServer) {
+            ServerImplementation.intellectualServer = null;
+        }
+    }
+
     /**
      * Get the registered implementation
      *
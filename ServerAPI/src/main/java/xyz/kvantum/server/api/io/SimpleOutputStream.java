@@ -21,39 +21,86 @@
  */
 package xyz.kvantum.server.api.io;
 
-import lombok.Getter;
 import xyz.kvantum.server.api.response.KnownLengthStream;
 
+import java.util.Arrays;
+
 /**
  * Response stream with a single input write
  * {@inheritDoc}
  */
 public class SimpleOutputStream extends KvantumOutputStream implements KnownLengthStream {
 
-    @Getter private byte[] internalBytes;
+    private byte[] internalBytes;
+    private int length;
     private int read = 0;
 
     public SimpleOutputStream(final byte[] bytes) {
         this.internalBytes = new byte[bytes.length];
+        this.length = bytes.length;
         System.arraycopy(bytes, 0, this.internalBytes, 0, bytes.length);
     }
 
+    private SimpleOutputStream() {
+    }
+
+    /**
+     * Create a stream that reads from the given array directly, instead of from a copy. The array
+     * must not be modified after this
+     *
+     * @param bytes Bytes
+     * @return Created stream
+     */
+    public static SimpleOutputStream wrap(final byte[] bytes) {
+        return wrap(bytes, bytes.length);
+    }
+
+    /**
+     * Create a stream that reads the first bytes of the given array directly, instead of from a copy.
+     * The array must not be modified after this
+     *
+     * @param bytes  Bytes
+     * @param length Number of bytes to read, from the start of the array
+     * @return Created stream
+     */
+    public static SimpleOutputStream wrap(final byte[] bytes, final int length) {
+        if (length < 0 || length > bytes.length) {
+            throw new IllegalArgumentException("Length must be between 0 and " + bytes.length);
+        }
+        final SimpleOutputStream stream = new SimpleOutputStream();
+        stream.internalBytes = bytes;
+        stream.length = length;
+        return stream;
+    }
+
+    /**
+     * Get the bytes of the stream. If the stream only reads part of its array, the array is trimmed first
+     *
+     * @return Bytes
+     */
+    public byte[] getInternalBytes() {
+        if (this.internalBytes.length != this.length) {
+            this.internalBytes = Arrays.copyOf(this.internalBytes, this.length);
+        }
+        return this.internalBytes;
+    }
+
     @Override public int read(final byte[] buffer) {
         final int toRead = Math.min(this.getOffer(), buffer.length);
         System.arraycopy(this.internalBytes, read, buffer, 0, toRead);
         this.read += toRead;
-        if (this.internalBytes.length <= this.read) {
+        if (this.length <= this.read) {
             this.finish();
         }
         return toRead;
     }
 
     @Override public int getOffer() {
-        return this.internalBytes.length - read;
+        return this.length - read;
     }
 
     @Override public int getLength() {
-        return this.getInternalBytes().length;
+        return this.length;
     }
 
     @Override public byte[] getAll() {
@@ -62,6 +109,7 @@ public class SimpleOutputStream extends KvantumOutputStream implements KnownLeng
 
     @Override public void replaceBytes(final byte[] bytes) {
         this.internalBytes = bytes;
+        this.length = bytes.length;
         this.read = 0;
     }
 
@@ -22,7 +22,11 @@
 package xyz.kvantum.server.api.logging;
 
 import com.github.sauilitired.loggbok.LogLevels;
+import com.github.sauilitired.loggbok.PositionFormatter;
+import com.github.sauilitired.loggbok.PrintStreamLogger;
+import com.github.sauilitired.loggbok.SimpleLogger;
 import lombok.experimental.UtilityClass;
+import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.core.ServerImplementation;
 
 /**
@@ -32,6 +36,12 @@ import xyz.kvantum.server.api.core.ServerImplementation;
 
     public static final int LEVEL_ACCESS = 0x10;
 
+    /**
+     * Logger that is used when there is no server implementation, such as when components are used on their
+     * own in tests
+     */
+    private static volatile com.github.sauilitired.loggbok.Logger fallbackLogger;
+
     /**
      * Log an informational message to the server implementation logger <p> Replaces string arguments using the pattern
      * {num} from an array of objects, starting from index 0, as such: 0 &le; num &lt; args.length. If num &ge;
@@ -42,7 +52,7 @@ import xyz.kvantum.server.api.core.ServerImplementation;
      * @param args    Replacements
      */
     public static void info(final String message, final Object... args) {
-        ServerImplementation.getImplementation().log(message, LogLevels.LEVEL_INFO, args);
+        log(message, LogLevels.LEVEL_INFO, args);
     }
 
     /**
@@ -55,7 +65,7 @@ import xyz.kvantum.server.api.core.ServerImplementation;
      * @param args    Replacements
      */
     public static void warn(final String message, final Object... args) {
-        ServerImplementation.getImplementation().log(message, LogLevels.LEVEL_WARNING, args);
+        log(message, LogLevels.LEVEL_WARNING, args);
     }
 
     /**
@@ -69,7 +79,7 @@ import xyz.kvantum.server.api.core.ServerImplementation;
      * @param args    Replacements
      */
     public static void error(final String message, final Object... args) {
-        ServerImplementation.getImplementation().log(message, LogLevels.LEVEL_ERROR, args);
+        log(message, LogLevels.LEVEL_ERROR, args);
     }
 
     /**
@@ -83,7 +93,7 @@ import xyz.kvantum.server.api.core.ServerImplementation;
      * @param args    Replacements
      */
     public static void access(final String message, final Object... args) {
-        ServerImplementation.getImplementation().log(message, LEVEL_ACCESS, args);
+        log(message, LEVEL_ACCESS, args);
     }
 
     /**
@@ -97,7 +107,40 @@ import xyz.kvantum.server.api.core.ServerImplementation;
      * @param args    Replacements
      */
     public static void debug(final String message, final Object... args) {
-        ServerImplementation.getImplementation().log(message, LogLevels.LEVEL_DEBUG, args);
+        log(message, LogLevels.LEVEL_DEBUG, args);
+    }
+
+    /**
+     * Log a message to the server implementation logger, or to the standard output if there is no server
+     * implementation
+     *
+     * @param message message to be logged
+     * @param mode    Log level
+     * @param args    Replacements
+     */
+    public static void log(final String message, final int mode, final Object... args) {
+        if (ServerImplementation.hasImplementation()) {
+            ServerImplementation.getImplementation().log(message, mode, args);
+        } else {
+            getFallbackLogger().log(mode, message, args);
+        }
+    }
+
+    private static com.github.sauilitired.loggbok.Logger getFallbackLogger() {
+        if (fallbackLogger == null) {
+            synchronized (Logger.class) {
+                if (fallbackLogger == null) {
+                    final LogLevels logLevels = new LogLevels();
+                    logLevels.addLevel("ACCESS"); // will have level value 0x10
+                    logLevels.setEnabled(LogLevels.LEVEL_DEBUG, CoreConfig.debug);
+                    final SimpleLogger logger =
+                        new PrintStreamLogger(System.out, CoreConfig.Logging.logFormat, logLevels);
+                    logger.setLogFormatter(new PositionFormatter());
+                    fallbackLogger = logger;
+                }
+            }
+        }
+        return fallbackLogger;
     }
 
 }
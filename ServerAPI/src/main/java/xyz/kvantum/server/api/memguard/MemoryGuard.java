@@ -23,9 +23,7 @@ package xyz.kvantum.server.api.memguard;
 
 import lombok.Getter;
 import xyz.kvantum.server.api.config.CoreConfig;
-import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.logging.Logger;
-import xyz.kvantum.server.api.util.Assert;
 import xyz.kvantum.server.api.util.AutoCloseable;
 
 import java.util.ArrayList;
@@ -36,22 +34,28 @@ public final class MemoryGuard extends AutoCloseable implements Runnable {
     @Getter private static final MemoryGuard instance = new MemoryGuard();
 
     private final Collection<LeakageProne> leakagePrones;
-    private boolean started = false;
 
-    private final Thread thread;
+    private Thread thread;
 
     private MemoryGuard() {
         this.leakagePrones = new ArrayList<>();
-        thread = new Thread(this, "memory-guard");
     }
 
-    @Override protected void handleClose() {
-        this.thread.stop();
+    @Override protected synchronized void handleClose() {
+        if (this.thread != null) {
+            this.thread.interrupt();
+        }
     }
 
-    public void start() {
-        Assert.equals(started, false);
-        started = true;
+    /**
+     * Start the guard, unless it is already running. A guard that was closed by a server that stopped can be
+     * started again by the next server
+     */
+    public synchronized void start() {
+        if (thread != null && thread.isAlive()) {
+            return;
+        }
+        thread = new Thread(this, "memory-guard");
         thread.setDaemon(true);
         thread.start();
     }
@@ -64,7 +68,7 @@ public final class MemoryGuard extends AutoCloseable implements Runnable {
         try {
             Thread.sleep(CoreConfig.MemoryGuard.runEveryMillis);
         } catch (InterruptedException e) {
-            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+            return; // The guard was stopped
         }
         Logger.info("Running memory guard!");
         this.leakagePrones.forEach(LeakageProne::cleanUp);
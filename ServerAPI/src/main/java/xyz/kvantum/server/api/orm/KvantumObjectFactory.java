@@ -30,6 +30,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.val;
+import net.sf.oval.Check;
 import net.sf.oval.ConstraintViolation;
 import net.sf.oval.Validator;
 import xyz.kvantum.server.api.orm.annotations.KvantumConstructor;
@@ -41,11 +42,13 @@ import xyz.kvantum.server.api.util.ParameterScope;
 import xyz.kvantum.server.api.util.Parsers;
 import xyz.kvantum.server.api.views.rest.RequestRequirements;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -89,16 +92,26 @@ import java.util.concurrent.ConcurrentHashMap;
  * RequestedUser user = factory.build( ParameterScope.GET ).parseRequest( request ).getParsedObject();
  * }</pre>
  * </p>
+ * <p> The constructor and field setters are resolved to method handles once, when the factory is generated,
+ * so that binding a request doesn't require any reflective lookups. The request parameters are still looked up by
+ * name, once per field, as requests store them in maps. The parsed values are then bound by field index </p>
  */
 @RequiredArgsConstructor public final class KvantumObjectFactory<T> {
 
     private static final Map<Class<?>, KvantumObjectFactory<?>> factoryCache =
         new ConcurrentHashMap<>();
     private static final Validator validator = new Validator();
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+    private static final MethodType SETTER_TYPE =
+        MethodType.methodType(void.class, Object.class, Object.class);
 
-    private final KvantumObject kvantumObjectDeclaration;
     private final InternalKvantumConstructor<T> constructor;
-    private final Map<String, InternalKvantumField> fields;
+    private final InternalKvantumField[] fields;
+    /**
+     * Whether the object should be validated. This is false if the validator has no checks for the object, even if
+     * {@link KvantumObject#checkValidity()} is true
+     */
+    private final boolean validate;
 
     /**
      * Generate a new factory from a given class. The class must have a @KvantumObject annotation, and all fields used
@@ -171,7 +184,7 @@ import java.util.concurrent.ConcurrentHashMap;
                 }
                 clazzFields.put(kvantumName,
                     new InternalKvantumField(kvantumName, defaultValue, field, kvantumField,
-                        parser.get()));
+                        parser.get(), clazzFields.size()));
             }
         }
         if (clazzFields.isEmpty()) {
@@ -236,9 +249,19 @@ import java.util.concurrent.ConcurrentHashMap;
                 .format("Class [%s] does not have an appropriate constructor", clazz.getName()));
         }
 
-        final val factory = new KvantumObjectFactory<>(kvantumObject,
-            new InternalKvantumConstructor<>(kvantumConstructor, kvantumConstructorParameters),
-            clazzFields);
+        final InternalKvantumField[] fields = clazzFields.values().toArray(new InternalKvantumField[0]);
+        final InternalKvantumConstructor<T> constructor;
+        try {
+            constructor =
+                new InternalKvantumConstructor<>(kvantumConstructor, kvantumConstructorParameters, fields);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalArgumentException(String
+                .format("Class [%s] cannot be constructed by the factory: %s", clazz.getName(),
+                    e.getMessage()), e);
+        }
+
+        final val factory = new KvantumObjectFactory<>(constructor, fields,
+            kvantumObject.checkValidity() && hasChecks(clazz));
         factoryCache.put(clazz, factory);
         return factory;
     }
@@ -251,10 +274,107 @@ import java.util.concurrent.ConcurrentHashMap;
         }
     }
 
-    @Getter @AllArgsConstructor private static class InternalKvantumConstructor<T> {
+    /**
+     * Check whether the validator has any object, field or method checks for a class, or any of its super classes.
+     * The checks are read from the validator itself, so constraints are found however they are configured
+     *
+     * @param clazz Class
+     * @return True if there are checks to validate
+     */
+    private static boolean hasChecks(final Class<?> clazz) {
+        for (Class<?> current = clazz; current != null && current != Object.class;
+             current = current.getSuperclass()) {
+            if (isConstrained(validator.getChecks(current))) {
+                return true;
+            }
+            for (final Field field : current.getDeclaredFields()) {
+                if (isConstrained(validator.getChecks(field))) {
+                    return true;
+                }
+            }
+            for (final Method method : current.getDeclaredMethods()) {
+                if (isConstrained(validator.getChecks(method))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConstrained(final Check[] checks) {
+        return checks != null && checks.length > 0;
+    }
+
+    @Getter private static class InternalKvantumConstructor<T> {
 
         private final Constructor<T> javaConstructor;
         private final Set<InternalKvantumConstructorParameter> constructorParameters;
+        /**
+         * Constructor handle of type (Object[])Object, taking the constructor parameters as an array
+         */
+        private final MethodHandle handle;
+        /**
+         * Index of the field that is bound to each constructor parameter
+         */
+        private final int[] parameterFields;
+        private final Object[] parameterDefaults;
+        /**
+         * Setters of type (Object, Object)void for each field, if the constructor doesn't have any parameters
+         */
+        private final MethodHandle[] setters;
+
+        private InternalKvantumConstructor(final Constructor<T> javaConstructor,
+            final Set<InternalKvantumConstructorParameter> constructorParameters,
+            final InternalKvantumField[] fields) throws IllegalAccessException {
+            this.javaConstructor = javaConstructor;
+            this.constructorParameters = constructorParameters;
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            this.handle = lookup.unreflectConstructor(javaConstructor)
+                .asSpreader(Object[].class, constructorParameters.size()).asType(CONSTRUCTOR_TYPE);
+            this.parameterFields = new int[constructorParameters.size()];
+            this.parameterDefaults = new Object[constructorParameters.size()];
+            int index = 0;
+            for (final InternalKvantumConstructorParameter parameter : constructorParameters) {
+                this.parameterFields[index] = parameter.getInternalKvantumField().getIndex();
+                this.parameterDefaults[index++] = parameter.getDefaultValue();
+            }
+            if (constructorParameters.isEmpty()) {
+                this.setters = new MethodHandle[fields.length];
+                for (final InternalKvantumField field : fields) {
+                    this.setters[field.getIndex()] =
+                        lookup.unreflectSetter(field.getJavaField()).asType(SETTER_TYPE);
+                }
+            } else {
+                this.setters = null;
+            }
+        }
+
+        /**
+         * Create a new instance
+         *
+         * @param values Parsed values, indexed by field index. Null values are ignored
+         * @return Created instance
+         * @throws Throwable If the instance cannot be created
+         */
+        @SuppressWarnings("unchecked") private T newInstance(final Object[] values) throws Throwable {
+            if (this.setters != null) {
+                final Object instance = (Object) this.handle.invokeExact(new Object[0]);
+                for (int i = 0; i < this.setters.length; i++) {
+                    // We do not set null values, this is error prone and
+                    // is due to misconfiguration
+                    if (values[i] != null) {
+                        this.setters[i].invokeExact(instance, values[i]);
+                    }
+                }
+                return (T) instance;
+            }
+            final Object[] arguments = new Object[this.parameterFields.length];
+            for (int i = 0; i < arguments.length; i++) {
+                final Object value = values[this.parameterFields[i]];
+                arguments[i] = value != null ? value : this.parameterDefaults[i];
+            }
+            return (T) (Object) this.handle.invokeExact(arguments);
+        }
 
     }
 
@@ -267,6 +387,7 @@ import java.util.concurrent.ConcurrentHashMap;
         private final Field javaField;
         private final KvantumField kvantumField;
         private final Parser<?> parser;
+        private final int index;
 
     }
 
@@ -313,72 +434,39 @@ import java.util.concurrent.ConcurrentHashMap;
          */
         public KvantumObjectParserResult<T> parseRequest(final AbstractRequest request) {
             final Map<String, String> parameters = getParameters(request);
-            final Map<String, Object> parsed = new HashMap<>();
-            for (final Map.Entry<String, InternalKvantumField> field : fields.entrySet()) {
-                if (parameters.containsKey(field.getKey())) {
-                    final ParserResult<?> parserResult =
-                        field.getValue().parser.parse(parameters.get(field.getKey()));
+            final Object[] parsed = new Object[fields.length];
+            for (final InternalKvantumField field : fields) {
+                final String parameter = parameters.get(field.getKvantumName());
+                if (parameter != null) {
+                    final ParserResult<?> parserResult = field.getParser().parse(parameter);
                     if (!parserResult.isParsed()) {
                         return new KvantumObjectParserResult<>(null, false,
                             new KvantumObjectParserResult.KvantumObjectParserCouldNotParse(
-                                field.getValue().getKvantumField(), parserResult));
-                    }
-                    parsed.put(field.getKey(), parserResult.getResult());
-                } else {
-                    if (field.getValue().getDefaultValue() == null) {
-                        if (field.getValue().kvantumField.isRequired()) {
-                            return new KvantumObjectParserResult<>(null, false,
-                                new KvantumObjectParserResult.KvantumObjectParserMissingParameter(
-                                    field.getValue().kvantumField));
-                        }
-                    } else {
-                        parsed.put(field.getKey(), field.getValue().getDefaultValue());
+                                field.getKvantumField(), parserResult));
                     }
+                    parsed[field.getIndex()] = parserResult.getResult();
+                } else if (field.getDefaultValue() != null) {
+                    parsed[field.getIndex()] = field.getDefaultValue();
+                } else if (field.getKvantumField().isRequired()) {
+                    return new KvantumObjectParserResult<>(null, false,
+                        new KvantumObjectParserResult.KvantumObjectParserMissingParameter(
+                            field.getKvantumField()));
                 }
             }
             //
-            // Determine the creation strategy
+            // Create the object, using the strategy determined by the factory
             //
-            T instance;
-            if (constructor.getConstructorParameters().isEmpty()) {
-                try {
-                    instance = constructor.javaConstructor.newInstance();
-                    for (final Map.Entry<String, InternalKvantumField> field : fields.entrySet()) {
-                        final Object object = parsed.get(field.getKey());
-                        if (object == null) {
-                            // We do not set null values, this is error prone and
-                            // is due to misconfiguration
-                            continue;
-                        }
-                        field.getValue().javaField.set(instance, parsed.get(field.getKey()));
-                    }
-                } catch (final InstantiationException | IllegalAccessException | InvocationTargetException e) {
-                    return new KvantumObjectParserResult<>(null, false,
-                        new KvantumObjectParserResult.KvantumObjectParserInitializedFailed(e));
-                }
-            } else {
-                final Object[] constructorParameters =
-                    new Object[constructor.getConstructorParameters().size()];
-                int index = 0;
-                for (InternalKvantumConstructorParameter parameter : constructor
-                    .getConstructorParameters()) {
-                    Object value;
-                    if (parsed.containsKey(parameter.getParameterName())
-                        && (value = parsed.get(parameter.getParameterName())) != null) {
-                        constructorParameters[index++] = value;
-                    } else {
-                        constructorParameters[index++] = parameter.getDefaultValue();
-                    }
-                }
-                try {
-                    instance = constructor.javaConstructor.newInstance(constructorParameters);
-                } catch (final InstantiationException | IllegalAccessException | InvocationTargetException e) {
-                    return new KvantumObjectParserResult<>(null, false,
-                        new KvantumObjectParserResult.KvantumObjectParserInitializedFailed(e));
-                }
+            final T instance;
+            try {
+                instance = constructor.newInstance(parsed);
+            } catch (final Error error) {
+                throw error;
+            } catch (final Throwable throwable) {
+                return new KvantumObjectParserResult<>(null, false,
+                    new KvantumObjectParserResult.KvantumObjectParserInitializedFailed(throwable));
             }
 
-            if (kvantumObjectDeclaration.checkValidity()) {
+            if (validate) {
                 final List<ConstraintViolation> violations = validator.validate(instance);
                 if (!violations.isEmpty()) {
                     return new KvantumObjectParserResult<>(null, false,
@@ -25,10 +25,8 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import org.json.simple.JSONObject;
-import xyz.kvantum.server.api.util.MapBuilder;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -37,8 +35,8 @@ import java.util.Map;
 @RequiredArgsConstructor(access = AccessLevel.PACKAGE) @SuppressWarnings({"unused", "WeakerAccess"})
 public final class ImmutableKvantumPojo<Pojo> {
 
+    private final KvantumPojoFactory<Pojo> factory;
     private final Pojo instance;
-    private final Map<String, PojoGetter<Pojo>> fieldValues;
 
     /**
      * Get a specified value. Will throw exceptions if no such key is stored.
@@ -51,7 +49,27 @@ public final class ImmutableKvantumPojo<Pojo> {
         if (!this.containsGetter(key)) {
             throw new NoSuchMethodException("No such getter: " + key);
         }
-        return fieldValues.get(key).get(this.instance);
+        return factory.getGetters().get(key).get(this.instance);
+    }
+
+    /**
+     * Get the value of the getter with a given index
+     *
+     * @param index Getter index, see {@link KvantumPojoFactory#getGetterIndex(String)}
+     * @return Object
+     * @throws IndexOutOfBoundsException If there is no getter with the index
+     */
+    public Object get(final int index) {
+        return factory.getGetter(index).get(this.instance);
+    }
+
+    /**
+     * Get the factory that created this instance
+     *
+     * @return Factory
+     */
+    public KvantumPojoFactory<Pojo> getFactory() {
+        return this.factory;
     }
 
     /**
@@ -60,7 +78,7 @@ public final class ImmutableKvantumPojo<Pojo> {
      * @return Collection of field names
      */
     public Collection<String> getGetterNames() {
-        return this.fieldValues.keySet();
+        return this.factory.getGetters().keySet();
     }
 
     /**
@@ -70,20 +88,16 @@ public final class ImmutableKvantumPojo<Pojo> {
      * @return True if the key exists
      */
     public boolean containsGetter(final String key) {
-        return fieldValues.containsKey(key);
+        return factory.getGetters().containsKey(key);
     }
 
     /**
-     * Get the values for all getters in the POJO
+     * Get the values for all getters in the POJO. The values are read when they are first accessed
      *
      * @return Immutable map with all values
      */
     public Map<String, Object> getAll() {
-        final MapBuilder<String, Object> mapBuilder = MapBuilder.newUnmodifableMap(HashMap::new);
-        for (final Map.Entry<String, PojoGetter<Pojo>> getterEntry : this.fieldValues.entrySet()) {
-            mapBuilder.put(getterEntry.getKey(), getterEntry.getValue().get(instance));
-        }
-        return mapBuilder.get();
+        return new PojoValueMap<>(this.factory, this.instance);
     }
 
     /**
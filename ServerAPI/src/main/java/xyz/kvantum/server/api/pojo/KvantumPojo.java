@@ -26,11 +26,10 @@ import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import org.json.simple.JSONAware;
 import org.json.simple.JSONObject;
-import xyz.kvantum.server.api.util.MapBuilder;
+import xyz.kvantum.server.api.util.KvantumJsonWriter;
 import xyz.kvantum.server.api.util.VariableProvider;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -43,8 +42,6 @@ public final class KvantumPojo<Pojo> implements VariableProvider, JSONAware {
 
     private final KvantumPojoFactory<Pojo> factory;
     private final Pojo instance;
-    private final Map<String, PojoGetter<Pojo>> fieldValues;
-    private final Map<String, PojoSetter<Pojo>> fieldSetters;
 
     @Override public boolean contains(final String variable) {
         return this.containsGetter(variable);
@@ -61,7 +58,27 @@ public final class KvantumPojo<Pojo> implements VariableProvider, JSONAware {
         if (!this.containsGetter(key)) {
             throw new NoSuchMethodException("No such getter: " + key);
         }
-        return fieldValues.get(key).get(this.instance);
+        return factory.getGetters().get(key).get(this.instance);
+    }
+
+    /**
+     * Get the value of the getter with a given index
+     *
+     * @param index Getter index, see {@link KvantumPojoFactory#getGetterIndex(String)}
+     * @return Object
+     * @throws IndexOutOfBoundsException If there is no getter with the index
+     */
+    public Object get(final int index) {
+        return factory.getGetter(index).get(this.instance);
+    }
+
+    /**
+     * Get the factory that created this instance
+     *
+     * @return Factory
+     */
+    public KvantumPojoFactory<Pojo> getFactory() {
+        return this.factory;
     }
 
     /**
@@ -70,7 +87,7 @@ public final class KvantumPojo<Pojo> implements VariableProvider, JSONAware {
      * @return Collection of field names
      */
     public Collection<String> getSetterNames() {
-        return this.fieldSetters.keySet();
+        return this.factory.getSetters().keySet();
     }
 
     /**
@@ -79,7 +96,7 @@ public final class KvantumPojo<Pojo> implements VariableProvider, JSONAware {
      * @return Collection of field names
      */
     public Collection<String> getGetterNames() {
-        return this.fieldValues.keySet();
+        return this.factory.getGetters().keySet();
     }
 
     /**
@@ -89,7 +106,7 @@ public final class KvantumPojo<Pojo> implements VariableProvider, JSONAware {
      * @return True if the key exists
      */
     public boolean containsGetter(final String key) {
-        return fieldValues.containsKey(key);
+        return factory.getGetters().containsKey(key);
     }
 
     /**
@@ -99,20 +116,16 @@ public final class KvantumPojo<Pojo> implements VariableProvider, JSONAware {
      * @return True if the key exists
      */
     public boolean containsSetter(final String key) {
-        return fieldSetters.containsKey(key);
+        return factory.getSetters().containsKey(key);
     }
 
     /**
-     * Get the values for all getters in the POJO
+     * Get the values for all getters in the POJO. The values are read when they are first accessed
      *
      * @return Immutable map with all values
      */
     public Map<String, Object> getAll() {
-        final MapBuilder<String, Object> mapBuilder = MapBuilder.newUnmodifableMap(HashMap::new);
-        for (final Map.Entry<String, PojoGetter<Pojo>> getterEntry : this.fieldValues.entrySet()) {
-            mapBuilder.put(getterEntry.getKey(), getterEntry.getValue().get(instance));
-        }
-        return mapBuilder.get();
+        return new PojoValueMap<>(this.factory, this.instance);
     }
 
     /**
@@ -132,8 +145,8 @@ public final class KvantumPojo<Pojo> implements VariableProvider, JSONAware {
      */
     @SneakyThrows({IllegalArgumentException.class, NoSuchMethodException.class}) public void set(
         final String field, final Object value) {
-        if (this.fieldSetters.containsKey(field)) {
-            final PojoSetter<Pojo> setter = this.fieldSetters.get(field);
+        final PojoSetter<Pojo> setter = this.factory.getSetters().get(field);
+        if (setter != null) {
             if (!value.getClass().isAssignableFrom(setter.getParameterType())) {
                 throw new IllegalArgumentException(String
                     .format("Provided '%s', expected '%s'", value.getClass().getSimpleName(),
@@ -178,11 +191,11 @@ public final class KvantumPojo<Pojo> implements VariableProvider, JSONAware {
      * @return Immutable version
      */
     public ImmutableKvantumPojo<Pojo> toImmutable() {
-        return new ImmutableKvantumPojo<>(this.instance, this.fieldValues);
+        return new ImmutableKvantumPojo<>(this.factory, this.instance);
     }
 
     @Override public String toJSONString() {
-        return this.toJson().toString();
+        return KvantumJsonWriter.toString(this);
     }
 
 }
@@ -21,48 +21,76 @@
  */
 package xyz.kvantum.server.api.pojo;
 
-import com.esotericsoftware.reflectasm.MethodAccess;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.util.MapBuilder;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
- * Class responsible for constructing {@link KvantumPojo} instances
+ * Class responsible for constructing {@link KvantumPojo} instances. The getters and setters of a class are
+ * introspected once, and the factory is shared by everything that uses the class. Getters can be addressed
+ * by name, or by their index in the factory
  *
  * @param <Object> POJO class
  */
 @RequiredArgsConstructor(access = AccessLevel.PRIVATE) @SuppressWarnings("unused")
 public final class KvantumPojoFactory<Object> {
 
-    private final Map<String, PojoGetter<Object>> getters;
-    private final Map<String, PojoSetter<Object>> setters;
+    /**
+     * Factories are stored with their classes. A factory references its class through its method handles, so
+     * classes that have been introspected stay loaded
+     */
+    private static final ClassValue<KvantumPojoFactory<?>> factoryCache = new ClassValue<KvantumPojoFactory<?>>() {
+        @Override protected KvantumPojoFactory<?> computeValue(final Class<?> type) {
+            return KvantumPojoFactory.introspect(type);
+        }
+    };
+    private static final MethodType GETTER_TYPE =
+        MethodType.methodType(java.lang.Object.class, java.lang.Object.class);
+    private static final MethodType SETTER_TYPE =
+        MethodType.methodType(void.class, java.lang.Object.class, java.lang.Object.class);
+
+    @Getter(AccessLevel.PACKAGE) private final Map<String, PojoGetter<Object>> getters;
+    @Getter(AccessLevel.PACKAGE) private final Map<String, PojoSetter<Object>> setters;
+    private final PojoGetter<Object>[] indexedGetters;
+    private final Map<String, Integer> getterIndices;
 
     @Getter private final PojoJsonFactory<Object> jsonFactory = new PojoJsonFactory<>(this);
     @Getter private final Function<Object, KvantumPojo<? extends Object>> mapper = this::of;
 
     /**
-     * Construct a new {@link KvantumPojoFactory} for a given POJO class
+     * Get the {@link KvantumPojoFactory} for a given POJO class. The factory is constructed the first time
+     * the class is requested, and is then cached
      *
      * @param pojoClass Class containing Object
      * @param <Object>  Class Type
-     * @return Constructed Factory
+     * @return Factory
      */
-    public static <Object> KvantumPojoFactory<Object> forClass(final Class<Object> pojoClass) {
+    @SuppressWarnings("unchecked") public static <Object> KvantumPojoFactory<Object> forClass(
+        final Class<Object> pojoClass) {
+        return (KvantumPojoFactory<Object>) factoryCache.get(pojoClass);
+    }
+
+    private static <Object> KvantumPojoFactory<Object> introspect(
+        final Class<Object> pojoClass) {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
         final MapBuilder<String, PojoGetter<Object>> getterBuilder =
-            MapBuilder.newUnmodifableMap(HashMap::new);
+            MapBuilder.newUnmodifableMap(LinkedHashMap::new);
         final MapBuilder<String, PojoSetter<Object>> setterBuilder =
             MapBuilder.newUnmodifableMap(HashMap::new);
 
@@ -108,25 +136,79 @@ public final class KvantumPojoFactory<Object> {
             String firstChar = new String(new char[] {name.charAt(0)});
             name = firstChar.toLowerCase(Locale.ENGLISH) + name.substring(1);
 
-            final MethodAccess methodAccess = MethodAccess.get(pojoClass);
-            final int nameIndex = methodAccess.getIndex(method.getName());
-
             if (getter) {
                 try {
-                    getterBuilder.put(name, new PojoGetter<>(name, methodAccess, nameIndex));
+                    method.setAccessible(true);
+                    getterBuilder.put(name, new PojoGetter<>(name,
+                        lookup.unreflect(method).asType(GETTER_TYPE), method.getReturnType()));
                 } catch (final Throwable throwable) {
                     ServerImplementation.getImplementation().getErrorDigest().digest(throwable);
                 }
             } else {
                 try {
-                    setterBuilder.put(name, new PojoSetter<>(methodAccess, nameIndex,
+                    method.setAccessible(true);
+                    setterBuilder.put(name, new PojoSetter<>(lookup.unreflect(method).asType(SETTER_TYPE),
                         method.getParameters()[0].getType()));
                 } catch (final Throwable throwable) {
                     ServerImplementation.getImplementation().getErrorDigest().digest(throwable);
                 }
             }
         }
-        return new KvantumPojoFactory<>(getterBuilder.get(), setterBuilder.get());
+        final Map<String, PojoGetter<Object>> getters = getterBuilder.get();
+        @SuppressWarnings("unchecked") final PojoGetter<Object>[] indexedGetters =
+            getters.values().toArray((PojoGetter<Object>[]) new PojoGetter<?>[getters.size()]);
+        final Map<String, Integer> getterIndices = new HashMap<>();
+        for (int i = 0; i < indexedGetters.length; i++) {
+            getterIndices.put(indexedGetters[i].getName(), i);
+        }
+        return new KvantumPojoFactory<>(getters, setterBuilder.get(), indexedGetters,
+            Collections.unmodifiableMap(getterIndices));
+    }
+
+    /**
+     * Get the number of getters in the POJO class
+     *
+     * @return Number of getters
+     */
+    public int getGetterCount() {
+        return this.indexedGetters.length;
+    }
+
+    /**
+     * Get the index of a getter
+     *
+     * @param name Field name
+     * @return Index, or -1 if there is no such getter
+     */
+    public int getGetterIndex(final String name) {
+        final Integer index = this.getterIndices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Get the field name of a getter
+     *
+     * @param index Getter index
+     * @return Field name
+     * @throws IndexOutOfBoundsException If there is no getter with the index
+     */
+    public String getGetterName(final int index) {
+        return this.indexedGetters[index].getName();
+    }
+
+    /**
+     * Get the type returned by a getter
+     *
+     * @param index Getter index
+     * @return Return type
+     * @throws IndexOutOfBoundsException If there is no getter with the index
+     */
+    public Class<?> getGetterType(final int index) {
+        return this.indexedGetters[index].getType();
+    }
+
+    PojoGetter<Object> getGetter(final int index) {
+        return this.indexedGetters[index];
     }
 
     /**
@@ -136,7 +218,7 @@ public final class KvantumPojoFactory<Object> {
      * @return Instance
      */
     public KvantumPojo<Object> of(final Object instance) {
-        return new KvantumPojo<>(this, instance, getters, setters);
+        return new KvantumPojo<>(this, instance);
     }
 
     /**
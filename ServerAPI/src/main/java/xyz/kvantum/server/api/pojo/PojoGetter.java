@@ -21,20 +21,27 @@
  */
 package xyz.kvantum.server.api.pojo;
 
-import com.esotericsoftware.reflectasm.MethodAccess;
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.logging.Logger;
 
+import java.lang.invoke.MethodHandle;
+
 @RequiredArgsConstructor final class PojoGetter<Pojo> {
 
-    private final String name;
-    private final MethodAccess methodAccess;
-    private final int nameIndex;
+    @Getter(AccessLevel.PACKAGE) private final String name;
+    /**
+     * Getter handle of type (Object)Object
+     */
+    private final MethodHandle handle;
+    @Getter(AccessLevel.PACKAGE) private final Class<?> type;
 
-    public Object get(final Pojo instance) {
+    @SneakyThrows public Object get(final Pojo instance) {
         try {
-            return methodAccess.invoke(instance, nameIndex);
+            return (Object) handle.invokeExact((Object) instance);
         } catch (final AbstractMethodError e) {
             Logger.error("AbstractMethodError when getting field {}", name);
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
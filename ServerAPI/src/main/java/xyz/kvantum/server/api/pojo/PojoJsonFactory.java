@@ -24,6 +24,7 @@ package xyz.kvantum.server.api.pojo;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import org.json.simple.JSONObject;
+import xyz.kvantum.server.api.util.KvantumJsonWriter;
 
 @SuppressWarnings("WeakerAccess") @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
 public final class PojoJsonFactory<Pojo> {
@@ -38,4 +39,24 @@ public final class PojoJsonFactory<Pojo> {
         return this.toJson(kvantumPojoFactory.of(pojo));
     }
 
+    /**
+     * Serialize a POJO without constructing a {@link JSONObject}
+     *
+     * @param pojo POJO instance
+     * @return JSON string
+     */
+    public String toJsonString(final Pojo pojo) {
+        return KvantumJsonWriter.toString(kvantumPojoFactory.of(pojo));
+    }
+
+    /**
+     * Serialize a POJO into a writer
+     *
+     * @param pojo   POJO instance
+     * @param writer Writer
+     */
+    public void writeJson(final Pojo pojo, final KvantumJsonWriter writer) {
+        writer.write(kvantumPojoFactory.of(pojo));
+    }
+
 }
@@ -21,19 +21,23 @@
  */
 package xyz.kvantum.server.api.pojo;
 
-import com.esotericsoftware.reflectasm.MethodAccess;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+
+import java.lang.invoke.MethodHandle;
 
 @RequiredArgsConstructor final class PojoSetter<Pojo> {
 
-    private final MethodAccess methodAccess;
-    private final int nameIndex;
+    /**
+     * Setter handle of type (Object, Object)void
+     */
+    private final MethodHandle handle;
     @Getter(AccessLevel.PACKAGE) private final Class<?> parameterType;
 
-    public void set(final Pojo instance, final Object object) {
-        methodAccess.invoke(instance, nameIndex, object);
+    @SneakyThrows public void set(final Pojo instance, final Object object) {
+        handle.invokeExact((Object) instance, object);
     }
 
 }
@@ -0,0 +1,109 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.pojo;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable map view of the getter values of a POJO instance. Values are read from the
+ * instance the first time they are accessed, and are then kept by the map
+ *
+ * @param <Pojo> POJO type
+ */
+final class PojoValueMap<Pojo> extends AbstractMap<String, Object> {
+
+    private static final Object UNREAD = new Object();
+
+    private final KvantumPojoFactory<Pojo> factory;
+    private final Pojo instance;
+    private Object[] values;
+    private Set<Entry<String, Object>> entrySet;
+
+    PojoValueMap(final KvantumPojoFactory<Pojo> factory, final Pojo instance) {
+        this.factory = factory;
+        this.instance = instance;
+    }
+
+    private Object value(final int index) {
+        if (this.values == null) {
+            this.values = new Object[this.factory.getGetterCount()];
+            Arrays.fill(this.values, UNREAD);
+        }
+        Object value = this.values[index];
+        if (value == UNREAD) {
+            value = this.values[index] = this.factory.getGetter(index).get(this.instance);
+        }
+        return value;
+    }
+
+    @Override public int size() {
+        return this.factory.getGetterCount();
+    }
+
+    @Override public boolean containsKey(final Object key) {
+        return key instanceof String && this.factory.getGetterIndex((String) key) != -1;
+    }
+
+    @Override public Object get(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final int index = this.factory.getGetterIndex((String) key);
+        return index == -1 ? null : this.value(index);
+    }
+
+    @Override public Set<Entry<String, Object>> entrySet() {
+        if (this.entrySet == null) {
+            this.entrySet = new AbstractSet<>() {
+                @Override public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int index = 0;
+
+                        @Override public boolean hasNext() {
+                            return this.index < size();
+                        }
+
+                        @Override public Entry<String, Object> next() {
+                            if (!this.hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final int current = this.index++;
+                            return new SimpleImmutableEntry<>(factory.getGetterName(current),
+                                value(current));
+                        }
+                    };
+                }
+
+                @Override public int size() {
+                    return PojoValueMap.this.size();
+                }
+            };
+        }
+        return this.entrySet;
+    }
+
+}
@@ -21,22 +21,26 @@
  */
 package xyz.kvantum.server.api.repository;
 
+import lombok.AccessLevel;
+import lombok.Getter;
 import xyz.kvantum.server.api.pojo.KvantumPojo;
 import xyz.kvantum.server.api.pojo.KvantumPojoFactory;
 
-import java.util.Map;
-
 /**
  * Matcher that compares {@link KvantumPojo} values
  * {@inheritDoc}
  */
 @SuppressWarnings("unused") public final class FieldComparator<Q, V> extends Matcher<Q, V> {
 
-    private final KvantumPojo<Q> queryPojo;
-    private final boolean ignoreUnassigned;
-    private final boolean returnFirstMatch;
+    @Getter(AccessLevel.PACKAGE) private final KvantumPojo<Q> queryPojo;
+    @Getter(AccessLevel.PACKAGE) private final boolean ignoreUnassigned;
+    @Getter(AccessLevel.PACKAGE) private final boolean returnFirstMatch;
 
-    private KvantumPojoFactory<V> valueFactory;
+    /**
+     * Mapping for the value class that was matched last. Matchers may be shared between threads, so the mapping is
+     * replaced as a whole, never modified
+     */
+    private volatile ValueMapping<V> mapping;
 
     /**
      * Initialize the comparator using a query object
@@ -51,7 +55,7 @@ import java.util.Map;
         this.ignoreUnassigned = ignoreUnassigned;
         this.returnFirstMatch = returnFirstMatch;
         //
-        // Create the factory class
+        // Get the factory class
         //
         final KvantumPojoFactory<Q> queryFactory =
             KvantumPojoFactory.forClass(getClass(queryObject));
@@ -63,13 +67,19 @@ import java.util.Map;
     }
 
     @Override protected boolean matches(final Q query, final V value) {
-        if (valueFactory == null) {
-            valueFactory = KvantumPojoFactory.forClass(getClass(value));
+        ValueMapping<V> mapping = this.mapping;
+        if (mapping == null || value.getClass() != mapping.valueClass) {
+            mapping = new ValueMapping<>(value, this.queryPojo.getFactory());
+            this.mapping = mapping;
         }
+        final KvantumPojoFactory<V> valueFactory = mapping.valueFactory;
+        final int[] queryIndices = mapping.queryIndices;
         final KvantumPojo<V> valuePojo = valueFactory.of(value);
-        for (final Map.Entry<String, Object> entry : valuePojo.getAll().entrySet()) {
-            final Object entryValue = entry.getValue();
-            final Object queryValue = queryPojo.get(entry.getKey());
+        for (int i = 0; i < queryIndices.length; i++) {
+            final Object entryValue = valuePojo.get(i);
+            final Object queryValue = queryIndices[i] == -1 ?
+                queryPojo.get(valueFactory.getGetterName(i)) : // Throws, as the getter is missing
+                queryPojo.get(queryIndices[i]);
             if (ignoreUnassigned && (entryValue == null || queryValue == null)) {
                 continue;
             }
@@ -83,4 +93,27 @@ import java.util.Map;
         }
         return !returnFirstMatch;
     }
+
+    private static final class ValueMapping<V> {
+
+        private final Class<?> valueClass;
+        private final KvantumPojoFactory<V> valueFactory;
+        /**
+         * Index of the query getter that corresponds to each value getter, or -1 if the query object
+         * doesn't have a corresponding getter
+         */
+        private final int[] queryIndices;
+
+        /**
+         * Map the getters of the value class to the getters of the query class
+         */
+        private ValueMapping(final V value, final KvantumPojoFactory<?> queryFactory) {
+            this.valueClass = value.getClass();
+            this.valueFactory = KvantumPojoFactory.forClass(getClass(value));
+            this.queryIndices = new int[this.valueFactory.getGetterCount()];
+            for (int i = 0; i < this.queryIndices.length; i++) {
+                this.queryIndices[i] = queryFactory.getGetterIndex(this.valueFactory.getGetterName(i));
+            }
+        }
+    }
 }
@@ -0,0 +1,669 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.repository;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import xyz.kvantum.server.api.pojo.KvantumPojo;
+import xyz.kvantum.server.api.pojo.KvantumPojoFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * {@link KvantumRepository} that keeps all items in memory. Secondary indexes can be declared on the getters of
+ * the item class (see {@link KvantumPojoFactory}):
+ * <ul>
+ * <li>{@link #hashIndex(String)} answers equality and {@code =in=} comparisons</li>
+ * <li>{@link #sortedIndex(String)} answers equality, {@code =in=} and range comparisons</li>
+ * </ul>
+ * {@link #findAllByQuery(Matcher)} uses an index for {@link FieldComparator} matchers that require all fields
+ * to match, and for {@link RSQLMatcher} queries that are plain conjunctions ({@code a==1;b=gt=2}). All other
+ * matchers scan the repository. Index candidates are always tested against the matcher and matches are
+ * returned in the order that the items were saved, so an index never changes the result of a query, only the
+ * number of items that are tested. Use {@link #plan(Matcher)} to see how a query will be answered.
+ * <p>
+ * Indexed values are read when an item is saved. Items that are modified must be saved again for the indexes
+ * to be updated.
+ *
+ * @param <T>  Object type
+ * @param <ID> ID type
+ */
+@SuppressWarnings("unused") public final class InMemoryRepository<T, ID>
+    implements KvantumRepository<T, ID> {
+
+    private static final Comparator<Entry<?>> SAVE_ORDER = Comparator.comparingLong(entry -> entry.sequence);
+
+    private final Map<ID, Entry<T>> items = new LinkedHashMap<>();
+    private final List<Index<ID>> indexes = new ArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final KvantumPojoFactory<T> factory;
+    private final Function<? super T, ? extends ID> identifier;
+    /**
+     * Sequence number of the next saved item. Saved items are moved to the end of {@link #items}, so this
+     * follows its iteration order
+     */
+    private long sequence;
+
+    /**
+     * Create a new repository
+     *
+     * @param type       Item class
+     * @param identifier Function that maps items to their identifiers
+     */
+    public InMemoryRepository(@NonNull final Class<T> type,
+        @NonNull final Function<? super T, ? extends ID> identifier) {
+        this.factory = KvantumPojoFactory.forClass(type);
+        this.identifier = identifier;
+    }
+
+    private static Class<?> box(final Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        } else if (type == char.class) {
+            return Character.class;
+        }
+        return type;
+    }
+
+    /**
+     * Convert an RSQL argument to the type of a getter
+     *
+     * @return Converted value, or null if the argument can't be converted
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"}) private static Object convert(final String value,
+        final Class<?> type) {
+        try {
+            if (type == String.class) {
+                return value;
+            } else if (type == Integer.class) {
+                return Integer.valueOf(value);
+            } else if (type == Long.class) {
+                return Long.valueOf(value);
+            } else if (type == Double.class) {
+                return Double.valueOf(value);
+            } else if (type == Float.class) {
+                return Float.valueOf(value);
+            } else if (type == Short.class) {
+                return Short.valueOf(value);
+            } else if (type == Byte.class) {
+                return Byte.valueOf(value);
+            } else if (type == Boolean.class) {
+                if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+                    return Boolean.valueOf(value);
+                }
+            } else if (type.isEnum()) {
+                return Enum.valueOf((Class<Enum>) type, value);
+            }
+        } catch (final IllegalArgumentException ignored) {
+            // Not a valid value, the comparison can't use the index
+        }
+        return null;
+    }
+
+    /**
+     * Declare a hash index on a field. Existing items are indexed immediately
+     *
+     * @param field Getter name
+     * @return This repository
+     * @throws IllegalArgumentException If there is no getter with the name, or if the field is already indexed
+     */
+    public InMemoryRepository<T, ID> hashIndex(@NonNull final String field) {
+        return this.addIndex(new HashIndex<>(field, this.getterIndex(field)));
+    }
+
+    /**
+     * Declare a sorted index on a field. Existing items are indexed immediately
+     *
+     * @param field Getter name. The getter must return a {@link Comparable} type
+     * @return This repository
+     * @throws IllegalArgumentException If there is no getter with the name, if the getter type isn't
+     *                                  comparable or if the field is already indexed
+     */
+    public InMemoryRepository<T, ID> sortedIndex(@NonNull final String field) {
+        final int getterIndex = this.getterIndex(field);
+        if (!Comparable.class.isAssignableFrom(box(this.factory.getGetterType(getterIndex)))) {
+            throw new IllegalArgumentException(
+                String.format("Field '%s' is not comparable and can't be used in a sorted index", field));
+        }
+        return this.addIndex(new SortedIndex<>(field, getterIndex));
+    }
+
+    private int getterIndex(final String field) {
+        final int getterIndex = this.factory.getGetterIndex(field);
+        if (getterIndex == -1) {
+            throw new IllegalArgumentException(String.format("Unknown field: '%s'", field));
+        }
+        return getterIndex;
+    }
+
+    private InMemoryRepository<T, ID> addIndex(final Index<ID> index) {
+        final Lock writeLock = this.lock.writeLock();
+        writeLock.lock();
+        try {
+            for (final Index<ID> existing : this.indexes) {
+                if (existing.field.equals(index.field)) {
+                    throw new IllegalArgumentException(
+                        String.format("Field '%s' is already indexed", index.field));
+                }
+            }
+            final int position = this.indexes.size();
+            this.indexes.add(index);
+            for (final Map.Entry<ID, Entry<T>> entry : this.items.entrySet()) {
+                final Entry<T> item = entry.getValue();
+                final Object key = this.factory.of(item.item).get(index.getterIndex);
+                item.keys = Arrays.copyOf(item.keys, position + 1);
+                item.keys[position] = key;
+                index.add(key, entry.getKey());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Get the number of items in the repository
+     *
+     * @return Number of items
+     */
+    public int size() {
+        final Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            return this.items.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Get the plan that would be used to answer a query
+     *
+     * @param matcher Predicate
+     * @return Query plan
+     */
+    public QueryPlan plan(@NonNull final Matcher<?, ? super T> matcher) {
+        final Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            final Candidates<ID> candidates = this.findCandidates(matcher);
+            if (candidates == null) {
+                return new QueryPlan(null, QueryPlan.Type.SCAN, this.items.size());
+            }
+            return new QueryPlan(candidates.index.field, candidates.index.getType(),
+                candidates.ids.size());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override public Collection<? extends T> findAll() {
+        final Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            final List<T> builder = new ArrayList<>(this.items.size());
+            for (final Entry<T> entry : this.items.values()) {
+                builder.add(entry.item);
+            }
+            return Collections.unmodifiableList(builder);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override public Collection<? extends T> findAllById(@NonNull final Collection<ID> collection) {
+        final Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            final List<T> builder = new ArrayList<>(collection.size());
+            for (final ID id : collection) {
+                final Entry<T> entry = this.items.get(id);
+                if (entry != null) {
+                    builder.add(entry.item);
+                }
+            }
+            return Collections.unmodifiableList(builder);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override public Collection<? extends T> findAllByQuery(@NonNull final Matcher<?, ? super T> matcher) {
+        final Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            final List<T> builder = new ArrayList<>();
+            final Candidates<ID> candidates = this.findCandidates(matcher);
+            if (candidates == null) {
+                for (final Entry<T> entry : this.items.values()) {
+                    if (matcher.matches(entry.item)) {
+                        builder.add(entry.item);
+                    }
+                }
+            } else {
+                // Indexes return their items grouped by value, so matches are sorted to get the scan order
+                final List<Entry<T>> matches = new ArrayList<>();
+                for (final ID id : candidates.ids) {
+                    final Entry<T> entry = this.items.get(id);
+                    if (matcher.matches(entry.item)) {
+                        matches.add(entry);
+                    }
+                }
+                matches.sort(SAVE_ORDER);
+                for (final Entry<T> entry : matches) {
+                    builder.add(entry.item);
+                }
+            }
+            return Collections.unmodifiableList(builder);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override public Collection<? extends T> save(@NonNull final Collection<? extends T> collection) {
+        final List<T> builder = new ArrayList<>(collection.size());
+        final Lock writeLock = this.lock.writeLock();
+        writeLock.lock();
+        try {
+            for (final T item : collection) {
+                final ID id = this.identifier.apply(item);
+                if (id == null) {
+                    continue;
+                }
+                this.remove(id);
+                final KvantumPojo<T> pojo = this.factory.of(item);
+                final Object[] keys = new Object[this.indexes.size()];
+                for (int i = 0; i < keys.length; i++) {
+                    final Index<ID> index = this.indexes.get(i);
+                    keys[i] = pojo.get(index.getterIndex);
+                    index.add(keys[i], id);
+                }
+                this.items.put(id, new Entry<>(item, keys, this.sequence++));
+                builder.add(item);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return Collections.unmodifiableList(builder);
+    }
+
+    @Override public void delete(@NonNull final Collection<T> collection) {
+        final Lock writeLock = this.lock.writeLock();
+        writeLock.lock();
+        try {
+            for (final T item : collection) {
+                final ID id = this.identifier.apply(item);
+                if (id != null) {
+                    this.remove(id);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Remove an item and its index entries. The index entries are found using the values that were indexed
+     * when the item was saved, so that items that have been modified since are removed correctly
+     */
+    private void remove(final ID id) {
+        final Entry<T> entry = this.items.remove(id);
+        if (entry == null) {
+            return;
+        }
+        for (int i = 0; i < entry.keys.length; i++) {
+            this.indexes.get(i).remove(entry.keys[i], id);
+        }
+    }
+
+    @Override public Optional<? extends T> findSingle(@NonNull final ID identifier) {
+        final Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            final Entry<T> entry = this.items.get(identifier);
+            return entry == null ? Optional.empty() : Optional.of(entry.item);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override public Collection<? extends T> findAll(@NonNull final ID identifier) {
+        final Optional<? extends T> optional = this.findSingle(identifier);
+        if (optional.isPresent()) {
+            return Collections.singleton(optional.get());
+        }
+        return Collections.emptySet();
+    }
+
+    private Index<ID> getIndex(final String field) {
+        for (final Index<ID> index : this.indexes) {
+            if (index.field.equals(field)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the smallest set of candidates that an index can provide for a matcher
+     *
+     * @return Candidates, or null if the repository has to be scanned
+     */
+    private Candidates<ID> findCandidates(final Matcher<?, ? super T> matcher) {
+        if (this.indexes.isEmpty()) {
+            return null;
+        }
+        if (matcher instanceof FieldComparator) {
+            return this.findCandidates((FieldComparator<?, ?>) matcher);
+        } else if (matcher instanceof RSQLMatcher) {
+            return this.findCandidates((String) matcher.getQueryObject());
+        }
+        return null;
+    }
+
+    private Candidates<ID> findCandidates(final FieldComparator<?, ?> comparator) {
+        if (comparator.isReturnFirstMatch()) {
+            // Any matching field is a match, which no single index can answer
+            return null;
+        }
+        final KvantumPojo<?> queryPojo = comparator.getQueryPojo();
+        Candidates<ID> best = null;
+        for (final Index<ID> index : this.indexes) {
+            final int queryIndex = queryPojo.getFactory().getGetterIndex(index.field);
+            if (queryIndex == -1) {
+                continue;
+            }
+            final Object queryValue = queryPojo.get(queryIndex);
+            if (queryValue == null || !box(this.factory.getGetterType(index.getterIndex))
+                .isInstance(queryValue)) {
+                continue;
+            }
+            Collection<ID> ids = index.equal(queryValue);
+            if (comparator.isIgnoreUnassigned()) {
+                // Items without a value are ignored by the comparator, and so they match as well
+                final Collection<ID> unassigned = index.equal(null);
+                if (!unassigned.isEmpty()) {
+                    final Collection<ID> union = new ArrayList<>(ids.size() + unassigned.size());
+                    union.addAll(ids);
+                    union.addAll(unassigned);
+                    ids = union;
+                }
+            }
+            if (best == null || ids.size() < best.ids.size()) {
+                best = new Candidates<>(index, ids);
+            }
+        }
+        return best;
+    }
+
+    private Candidates<ID> findCandidates(final String query) {
+        final List<RSQLComparison> comparisons = RSQLComparison.parseConjunction(query);
+        if (comparisons == null) {
+            return null;
+        }
+        Candidates<ID> best = null;
+        // Range lookups are only used if there is no equality lookup, as they have to be flattened
+        // before their size is known
+        final List<RSQLComparison> ranges = new ArrayList<>();
+        for (final RSQLComparison comparison : comparisons) {
+            final Index<ID> index = this.getIndex(comparison.getField());
+            if (index == null) {
+                continue;
+            }
+            final Class<?> type = box(this.factory.getGetterType(index.getterIndex));
+            final Collection<ID> ids;
+            switch (comparison.getOperator()) {
+                case EQUAL: {
+                    final Object value = convert(comparison.getValues().get(0), type);
+                    if (value == null) {
+                        continue;
+                    }
+                    ids = index.equal(value);
+                }
+                break;
+                case IN: {
+                    final List<Object> values = new ArrayList<>(comparison.getValues().size());
+                    for (final String argument : comparison.getValues()) {
+                        values.add(convert(argument, type));
+                    }
+                    if (values.contains(null)) {
+                        continue;
+                    }
+                    final Collection<ID> union = new LinkedHashSet<>();
+                    for (final Object value : values) {
+                        union.addAll(index.equal(value));
+                    }
+                    ids = union;
+                }
+                break;
+                case GREATER_THAN:
+                case GREATER_THAN_OR_EQUAL:
+                case LESS_THAN:
+                case LESS_THAN_OR_EQUAL: {
+                    if (index instanceof SortedIndex) {
+                        ranges.add(comparison);
+                    }
+                    continue;
+                }
+                default:
+                    continue;
+            }
+            if (best == null || ids.size() < best.ids.size()) {
+                best = new Candidates<>(index, ids);
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        for (final RSQLComparison comparison : ranges) {
+            final SortedIndex<ID> index = (SortedIndex<ID>) this.getIndex(comparison.getField());
+            final Object value =
+                convert(comparison.getValues().get(0), box(this.factory.getGetterType(index.getterIndex)));
+            if (value == null) {
+                continue;
+            }
+            final Collection<ID> ids = index.range(comparison.getOperator(), value);
+            if (best == null || ids.size() < best.ids.size()) {
+                best = new Candidates<>(index, ids);
+            }
+        }
+        return best;
+    }
+
+    private static final class Entry<T> {
+
+        private final T item;
+        /**
+         * Indexed values, in the order of the indexes
+         */
+        private Object[] keys;
+        private final long sequence;
+
+        private Entry(final T item, final Object[] keys, final long sequence) {
+            this.item = item;
+            this.keys = keys;
+            this.sequence = sequence;
+        }
+    }
+
+
+    @RequiredArgsConstructor private static final class Candidates<ID> {
+
+        private final Index<ID> index;
+        private final Collection<ID> ids;
+    }
+
+
+    @RequiredArgsConstructor private abstract static class Index<ID> {
+
+        final String field;
+        final int getterIndex;
+
+        abstract void add(Object key, ID id);
+
+        abstract void remove(Object key, ID id);
+
+        /**
+         * Get the identifiers of all items with the value
+         *
+         * @param key Value, may be null
+         * @return Identifiers. This may be a view of the index
+         */
+        abstract Collection<ID> equal(Object key);
+
+        abstract QueryPlan.Type getType();
+    }
+
+
+    private static final class HashIndex<ID> extends Index<ID> {
+
+        // HashMap permits null keys, so unassigned values are indexed like any other value
+        private final Map<Object, Set<ID>> buckets = new HashMap<>();
+
+        private HashIndex(final String field, final int getterIndex) {
+            super(field, getterIndex);
+        }
+
+        @Override void add(final Object key, final ID id) {
+            this.buckets.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(id);
+        }
+
+        @Override void remove(final Object key, final ID id) {
+            final Set<ID> bucket = this.buckets.get(key);
+            if (bucket != null && bucket.remove(id) && bucket.isEmpty()) {
+                this.buckets.remove(key);
+            }
+        }
+
+        @Override Collection<ID> equal(final Object key) {
+            final Set<ID> bucket = this.buckets.get(key);
+            return bucket == null ? Collections.emptySet() : bucket;
+        }
+
+        @Override QueryPlan.Type getType() {
+            return QueryPlan.Type.HASH_INDEX;
+        }
+    }
+
+
+    private static final class SortedIndex<ID> extends Index<ID> {
+
+        private final NavigableMap<Object, Set<ID>> buckets = new TreeMap<>();
+        // TreeMap does not permit null keys
+        private final Set<ID> unassigned = new LinkedHashSet<>();
+
+        private SortedIndex(final String field, final int getterIndex) {
+            super(field, getterIndex);
+        }
+
+        @Override void add(final Object key, final ID id) {
+            if (key == null) {
+                this.unassigned.add(id);
+            } else {
+                this.buckets.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(id);
+            }
+        }
+
+        @Override void remove(final Object key, final ID id) {
+            if (key == null) {
+                this.unassigned.remove(id);
+                return;
+            }
+            final Set<ID> bucket = this.buckets.get(key);
+            if (bucket != null && bucket.remove(id) && bucket.isEmpty()) {
+                this.buckets.remove(key);
+            }
+        }
+
+        @Override Collection<ID> equal(final Object key) {
+            if (key == null) {
+                return this.unassigned;
+            }
+            final Set<ID> bucket = this.buckets.get(key);
+            return bucket == null ? Collections.emptySet() : bucket;
+        }
+
+        /**
+         * Get the identifiers of all items with values in a range. Unassigned values are never included
+         */
+        Collection<ID> range(final RSQLComparison.Operator operator, final Object key) {
+            final NavigableMap<Object, Set<ID>> range;
+            switch (operator) {
+                case GREATER_THAN:
+                    range = this.buckets.tailMap(key, false);
+                    break;
+                case GREATER_THAN_OR_EQUAL:
+                    range = this.buckets.tailMap(key, true);
+                    break;
+                case LESS_THAN:
+                    range = this.buckets.headMap(key, false);
+                    break;
+                case LESS_THAN_OR_EQUAL:
+                    range = this.buckets.headMap(key, true);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Not a range operator: " + operator);
+            }
+            final List<ID> ids = new ArrayList<>();
+            for (final Set<ID> bucket : range.values()) {
+                ids.addAll(bucket);
+            }
+            return ids;
+        }
+
+        @Override QueryPlan.Type getType() {
+            return QueryPlan.Type.SORTED_INDEX;
+        }
+    }
+
+}
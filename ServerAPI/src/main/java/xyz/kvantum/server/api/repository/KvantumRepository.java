@@ -116,6 +116,29 @@ import java.util.Optional;
      */
     void delete(Collection<T> collection);
 
+    /**
+     * Save all items in a given collection as a single bulk operation. Repositories that are backed by
+     * a database should override this to write all items in one batch, in one transaction. By default,
+     * this calls {@link #save(Collection)}
+     *
+     * @param collection Collection of items to save
+     * @return A collection of the items that were successfully saved
+     */
+    default Collection<? extends T> saveAll(final Collection<? extends T> collection) {
+        return save(collection);
+    }
+
+    /**
+     * Delete all items in a given collection as a single bulk operation. Repositories that are backed by
+     * a database should override this to delete all items in one batch, in one transaction. By default,
+     * this calls {@link #delete(Collection)}
+     *
+     * @param collection Collection of items that are to be deleted
+     */
+    default void deleteAll(final Collection<T> collection) {
+        delete(collection);
+    }
+
     /**
      * Delete a single item
      *
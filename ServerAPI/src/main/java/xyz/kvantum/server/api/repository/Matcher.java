@@ -21,6 +21,8 @@
  */
 package xyz.kvantum.server.api.repository;
 
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
 import java.util.function.Predicate;
@@ -34,7 +36,7 @@ import java.util.function.Predicate;
  */
 @RequiredArgsConstructor public abstract class Matcher<Q, V> implements Predicate<V> {
 
-    private final Q queryObject;
+    @Getter(AccessLevel.PACKAGE) private final Q queryObject;
 
     abstract protected boolean matches(Q query, V value);
 
@@ -0,0 +1,59 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.repository;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Describes how {@link InMemoryRepository} answers a query
+ */
+@Getter @ToString @RequiredArgsConstructor(access = AccessLevel.PACKAGE) public final class QueryPlan {
+
+    /**
+     * Field of the index that is used, or null if the repository is scanned
+     */
+    private final String field;
+    private final Type type;
+    /**
+     * Number of items that are tested against the matcher
+     */
+    private final int candidates;
+
+    public enum Type {
+        /**
+         * Candidates are looked up in a hash index
+         */
+        HASH_INDEX,
+        /**
+         * Candidates are looked up in a sorted index
+         */
+        SORTED_INDEX,
+        /**
+         * All items are tested
+         */
+        SCAN
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.repository;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A single comparison ({@code field=op=value}) of an RSQL query. This is only used to find the comparisons that an
+ * index can answer; the queries themselves are always evaluated by {@link RSQLMatcher}
+ */
+@Getter @RequiredArgsConstructor(access = AccessLevel.PRIVATE) final class RSQLComparison {
+
+    private static final Pattern COMPARISON = Pattern
+        .compile("^\\s*([A-Za-z0-9_]+)\\s*(==|!=|=gt=|=ge=|=lt=|=le=|=in=|=out=|>=|<=|>|<)\\s*(.*?)\\s*$");
+    private static final Pattern LOGICAL_KEYWORD = Pattern.compile("\\s(and|or)\\s");
+
+    private final String field;
+    private final Operator operator;
+    private final List<String> values;
+
+    /**
+     * Split a query into its comparisons, if the query is a plain conjunction ({@code a==1;b=gt=2}) of
+     * comparisons
+     *
+     * @param query RSQL query
+     * @return Comparisons that can be extracted. Conjuncts that can't be parsed are left out. Null if the query
+     * is not a plain conjunction
+     */
+    static List<RSQLComparison> parseConjunction(@NonNull final String query) {
+        final List<String> conjuncts = new ArrayList<>();
+        final StringBuilder current = new StringBuilder();
+        char quote = 0;
+        int depth = 0;
+        for (int i = 0; i < query.length(); i++) {
+            final char c = query.charAt(i);
+            if (quote != 0) {
+                if (c == '\\' && i + 1 < query.length()) {
+                    // Escaped characters never end the argument
+                    current.append(c).append(query.charAt(++i));
+                    continue;
+                }
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(') {
+                // Parentheses are only supported around argument lists
+                if (!endsWithOperator(current)) {
+                    return null;
+                }
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && c == ',') {
+                return null; // Disjunction
+            } else if (depth == 0 && c == ';') {
+                conjuncts.add(current.toString());
+                current.setLength(0);
+                continue;
+            }
+            current.append(c);
+        }
+        if (quote != 0 || depth != 0) {
+            return null;
+        }
+        conjuncts.add(current.toString());
+        final List<RSQLComparison> comparisons = new ArrayList<>(conjuncts.size());
+        for (final String conjunct : conjuncts) {
+            if (LOGICAL_KEYWORD.matcher(stripQuoted(conjunct)).find()) {
+                return null; // "and" and "or" keywords are not supported
+            }
+            final RSQLComparison comparison = parse(conjunct);
+            if (comparison != null) {
+                comparisons.add(comparison);
+            }
+        }
+        return comparisons;
+    }
+
+    private static boolean endsWithOperator(final CharSequence sequence) {
+        final String string = sequence.toString().trim();
+        return string.endsWith("=in=") || string.endsWith("=out=");
+    }
+
+    private static String stripQuoted(final String string) {
+        return string.replaceAll("'[^']*'|\"[^\"]*\"", "''");
+    }
+
+    private static RSQLComparison parse(final String conjunct) {
+        // Escaped values are left to the matcher, which unescapes them
+        if (conjunct.indexOf('\\') != -1) {
+            return null;
+        }
+        final Matcher matcher = COMPARISON.matcher(conjunct);
+        if (!matcher.matches()) {
+            return null;
+        }
+        final Operator operator = Operator.of(matcher.group(2));
+        final String argument = matcher.group(3);
+        final List<String> values = new ArrayList<>();
+        if (operator == Operator.IN || operator == Operator.OUT) {
+            if (!argument.startsWith("(") || !argument.endsWith(")")) {
+                return null;
+            }
+            char quote = 0;
+            final StringBuilder value = new StringBuilder();
+            for (int i = 1; i < argument.length() - 1; i++) {
+                final char c = argument.charAt(i);
+                if (quote == 0 && c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                    continue;
+                }
+                if (quote != 0 && c == quote) {
+                    quote = 0;
+                } else if (quote == 0 && (c == '\'' || c == '"')) {
+                    quote = c;
+                }
+                value.append(c);
+            }
+            values.add(value.toString());
+        } else {
+            values.add(argument);
+        }
+        final List<String> unquoted = new ArrayList<>(values.size());
+        for (final String value : values) {
+            final String trimmed = value.trim();
+            final String literal;
+            if (trimmed.length() >= 2 && (trimmed.charAt(0) == '\'' || trimmed.charAt(0) == '"')
+                && trimmed.charAt(trimmed.length() - 1) == trimmed.charAt(0)) {
+                literal = trimmed.substring(1, trimmed.length() - 1);
+            } else if (trimmed.isEmpty()) {
+                return null;
+            } else {
+                literal = trimmed;
+            }
+            // The matcher treats asterisks as wildcards, quoted or not, and those can't be answered by an index
+            if (literal.indexOf('*') != -1) {
+                return null;
+            }
+            unquoted.add(literal);
+        }
+        return new RSQLComparison(matcher.group(1), operator, Collections.unmodifiableList(unquoted));
+    }
+
+    enum Operator {
+        EQUAL, NOT_EQUAL, GREATER_THAN, GREATER_THAN_OR_EQUAL, LESS_THAN, LESS_THAN_OR_EQUAL, IN, OUT;
+
+        private static Operator of(final String symbol) {
+            switch (symbol) {
+                case "==":
+                    return EQUAL;
+                case "!=":
+                    return NOT_EQUAL;
+                case "=gt=":
+                case ">":
+                    return GREATER_THAN;
+                case "=ge=":
+                case ">=":
+                    return GREATER_THAN_OR_EQUAL;
+                case "=lt=":
+                case "<":
+                    return LESS_THAN;
+                case "=le=":
+                case "<=":
+                    return LESS_THAN_OR_EQUAL;
+                case "=in=":
+                    return IN;
+                default:
+                    return OUT;
+            }
+        }
+    }
+
+}
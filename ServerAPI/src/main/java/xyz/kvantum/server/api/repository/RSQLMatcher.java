@@ -21,20 +21,15 @@
  */
 package xyz.kvantum.server.api.repository;
 
-import com.github.rutledgepaulv.qbuilders.visitors.PredicateVisitor;
-import com.github.rutledgepaulv.rqe.pipes.QueryConversionPipeline;
-
 import java.util.function.Predicate;
 
 /**
- * Matcher that matches RSQL queries to objects. Build using {@link RSQLMatcherFactory}
+ * Matcher that matches RSQL queries to objects. Build using {@link RSQLMatcherFactory}. Compiled queries
+ * are shared through {@link RSQLPredicateCache}
  * {@inheritDoc}
  */
 public final class RSQLMatcher<V> extends Matcher<String, V> {
 
-    private static final QueryConversionPipeline pipeline =
-        QueryConversionPipeline.defaultPipeline();
-
     private Predicate<V> predicate;
 
     RSQLMatcher(final String queryObject) {
@@ -44,7 +39,7 @@ public final class RSQLMatcher<V> extends Matcher<String, V> {
     @Override protected boolean matches(final String queryObject, final V value) {
         if (this.predicate == null) {
             this.predicate =
-                pipeline.apply(queryObject, getClass(value)).query(new PredicateVisitor<>());
+                RSQLPredicateCache.getInstance().getPredicate(queryObject, getClass(value));
         }
         return this.predicate.test(value);
     }
@@ -0,0 +1,197 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.repository;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.rutledgepaulv.qbuilders.visitors.PredicateVisitor;
+import com.github.rutledgepaulv.rqe.pipes.QueryConversionPipeline;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.core.ServerImplementation;
+
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * Cache for compiled RSQL predicates, shared by all {@link RSQLMatcher} instances. Predicates are keyed by
+ * the normalized query (see {@link #normalize(String)}) and the class that they are compiled for. The cache
+ * is bounded by the total length of the cached queries.
+ * <p>
+ * The predicates that are compiled by rest-query-engine are immutable, and can be shared between threads.
+ */
+public final class RSQLPredicateCache {
+
+    @Getter private static final RSQLPredicateCache instance =
+        new RSQLPredicateCache(CoreConfig.Cache.cachedRSQLPredicatesMaxWeight, new QueryPipelineCompiler(), true);
+
+    private final Cache<Key, Predicate<?>> predicates;
+    private final BiFunction<String, Class<?>, Predicate<?>> compiler;
+    /**
+     * Time spent parsing and compiling queries, i.e. cache misses
+     */
+    @Getter private final Timer compileTimer = new Timer();
+    // Only the shared cache reports to the server metrics, as the metric names can only be registered once
+    private volatile boolean metricsPending;
+
+    RSQLPredicateCache(final long maxWeight,
+        @NonNull final BiFunction<String, Class<?>, Predicate<?>> compiler) {
+        this(maxWeight, compiler, false);
+    }
+
+    private RSQLPredicateCache(final long maxWeight,
+        @NonNull final BiFunction<String, Class<?>, Predicate<?>> compiler, final boolean registerMetrics) {
+        this.predicates = Caffeine.newBuilder().maximumWeight(maxWeight)
+            .weigher((Key key, Predicate<?> value) -> key.query.length() + 1).recordStats().build();
+        this.compiler = compiler;
+        this.metricsPending = registerMetrics;
+    }
+
+    /**
+     * Register the metrics of the cache, once a server is running. The shared cache may be created before the
+     * server, so this is checked whenever the cache is used
+     */
+    private synchronized void registerMetrics() {
+        if (!this.metricsPending || !ServerImplementation.hasImplementation()) {
+            return;
+        }
+        final MetricRegistry registry = ServerImplementation.getImplementation().getMetrics().getRegistry();
+        registry.register(MetricRegistry.name(RSQLPredicateCache.class, "compile"), this.compileTimer);
+        registry.register(MetricRegistry.name(RSQLPredicateCache.class, "hitRate"),
+            (Gauge<Double>) () -> this.predicates.stats().hitRate());
+        registry.register(MetricRegistry.name(RSQLPredicateCache.class, "hits"),
+            (Gauge<Long>) () -> this.predicates.stats().hitCount());
+        registry.register(MetricRegistry.name(RSQLPredicateCache.class, "evictions"),
+            (Gauge<Long>) () -> this.predicates.stats().evictionCount());
+        registry.register(MetricRegistry.name(RSQLPredicateCache.class, "size"),
+            (Gauge<Long>) this.predicates::estimatedSize);
+        this.metricsPending = false;
+    }
+
+    /**
+     * Normalize a query, so that queries that only differ in insignificant whitespace share their cache
+     * entry. Leading and trailing whitespace is removed, and all other runs of whitespace outside of quoted
+     * arguments are replaced by a single space. Whitespace is never removed between two tokens, as that could
+     * change how the query is parsed (i.e. {@code a==1 and (b==2)})
+     *
+     * @param query RSQL query
+     * @return Normalized query
+     */
+    static String normalize(@NonNull final String query) {
+        final String trimmed = query.trim();
+        final StringBuilder builder = new StringBuilder(trimmed.length());
+        char quote = 0;
+        for (int i = 0; i < trimmed.length(); i++) {
+            final char c = trimmed.charAt(i);
+            if (quote != 0) {
+                if (c == '\\' && i + 1 < trimmed.length()) {
+                    // Escaped characters never end the argument
+                    builder.append(c).append(trimmed.charAt(++i));
+                    continue;
+                }
+                if (c == quote) {
+                    quote = 0;
+                }
+                builder.append(c);
+            } else if (Character.isWhitespace(c)) {
+                while (Character.isWhitespace(trimmed.charAt(i + 1))) {
+                    i++; // The query is trimmed, so there is always a non whitespace character
+                }
+                builder.append(' ');
+            } else {
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                }
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Get the compiled predicate for a query, compiling it if it isn't cached
+     *
+     * @param query RSQL query
+     * @param type  Class of the objects that the predicate is evaluated for
+     * @param <V>   Object type
+     * @return Compiled predicate
+     */
+    @SuppressWarnings("unchecked") public <V> Predicate<V> getPredicate(@NonNull final String query,
+        @NonNull final Class<V> type) {
+        if (this.metricsPending) {
+            this.registerMetrics();
+        }
+        return (Predicate<V>) this.predicates.get(new Key(normalize(query), type), this::compile);
+    }
+
+    private Predicate<?> compile(final Key key) {
+        final Timer.Context context = this.compileTimer.time();
+        try {
+            return this.compiler.apply(key.query, key.type);
+        } finally {
+            context.stop();
+        }
+    }
+
+    /**
+     * Get the statistics of the cache
+     *
+     * @return Cache statistics
+     */
+    public CacheStats getStats() {
+        return this.predicates.stats();
+    }
+
+    /**
+     * Remove all cached predicates
+     */
+    public void invalidateAll() {
+        this.predicates.invalidateAll();
+    }
+
+
+    @EqualsAndHashCode @RequiredArgsConstructor private static final class Key {
+
+        private final String query;
+        private final Class<?> type;
+    }
+
+
+    private static final class QueryPipelineCompiler
+        implements BiFunction<String, Class<?>, Predicate<?>> {
+
+        private final QueryConversionPipeline pipeline = QueryConversionPipeline.defaultPipeline();
+
+        @SuppressWarnings({"unchecked", "rawtypes"}) @Override public Predicate<?> apply(
+            final String query, final Class<?> type) {
+            return this.pipeline.apply(query, (Class) type).query(new PredicateVisitor<>());
+        }
+    }
+
+}
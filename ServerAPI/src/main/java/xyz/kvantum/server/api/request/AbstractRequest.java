@@ -21,6 +21,11 @@
  */
 package xyz.kvantum.server.api.request;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -29,16 +34,15 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.ToString;
-import lombok.val;
 import org.apache.commons.lang3.StringUtils;
 import xyz.kvantum.server.api.config.CoreConfig;
-import xyz.kvantum.server.api.config.CoreConfig.Cache;
 import xyz.kvantum.server.api.config.Message;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.memguard.LeakageProne;
 import xyz.kvantum.server.api.memguard.MemoryGuard;
 import xyz.kvantum.server.api.request.post.RequestEntity;
+import xyz.kvantum.server.api.response.HeaderMap;
 import xyz.kvantum.server.api.response.ResponseCookie;
 import xyz.kvantum.server.api.session.ISession;
 import xyz.kvantum.server.api.socket.SocketContext;
@@ -49,25 +53,19 @@ import xyz.kvantum.server.api.util.ListMultiMap;
 import xyz.kvantum.server.api.util.MapUtil;
 import xyz.kvantum.server.api.util.ProtocolType;
 import xyz.kvantum.server.api.util.ProviderFactory;
+import xyz.kvantum.server.api.util.Recyclable;
 import xyz.kvantum.server.api.util.Validatable;
 import xyz.kvantum.server.api.util.VariableHolder;
 import xyz.kvantum.server.api.util.VariableProvider;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Base64;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The HTTP Request Class <p> This is generated when a client connects to the web server, and contains the information
@@ -78,7 +76,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 @SuppressWarnings("unused") @NoArgsConstructor(access = AccessLevel.PROTECTED)
 public abstract class AbstractRequest
     implements ProviderFactory<AbstractRequest>, VariableProvider, Validatable, RequestChild,
-    VariableHolder {
+    VariableHolder, Recyclable {
 
     @SuppressWarnings("ALL") public static final String INTERNAL_REDIRECT = "internalRedirect";
     public static final String ALTERNATE_OUTCOME = "alternateOutcome";
@@ -87,15 +85,16 @@ public abstract class AbstractRequest
     public Set<ResponseCookie> postponedCookies = new HashSet<>();
     @Setter(AccessLevel.PROTECTED) @Getter private ProtocolType protocolType;
     @Getter(AccessLevel.PROTECTED) private Map<String, Object> meta = new HashMap<>();
-    @Getter private Map<AsciiString, AsciiString> headers = new HashMap<>();
-    @Setter(AccessLevel.PROTECTED) @Getter private ListMultiMap<AsciiString, Cookie> cookies =
-        new ListMultiMap<>();
-    @Setter(AccessLevel.PROTECTED) @Getter private Query query;
+    private final HeaderMap headers = new HeaderMap();
+    private final ListMultiMap<AsciiString, Cookie> ownedCookies = new ListMultiMap<>();
+    @Setter(AccessLevel.PROTECTED) private ListMultiMap<AsciiString, Cookie> cookies = ownedCookies;
+    @Setter(AccessLevel.PROTECTED) private Query query;
     @Setter private RequestEntity postRequest;
     @Setter(AccessLevel.PROTECTED) @Getter private SocketContext socket;
     @Setter private ISession session;
     @Setter @Getter private boolean valid = true;
     @Setter(AccessLevel.PROTECTED) private Authorization authorization;
+    private volatile boolean poisoned = false;
 
     public ITempFileManager getTempFileManager() {
         return this.socket.getTempFileManager();
@@ -109,6 +108,49 @@ public abstract class AbstractRequest
         this.meta.remove(Assert.notEmpty(metaKey));
     }
 
+    /**
+     * Get the request headers. These are sent by the client, and are not to be confused with the response headers.
+     *
+     * @return Request headers
+     */
+    public HeaderMap getHeaders() {
+        Recyclable.checkPoison(this.poisoned, this);
+        return this.headers;
+    }
+
+    public ListMultiMap<AsciiString, Cookie> getCookies() {
+        Recyclable.checkPoison(this.poisoned, this);
+        return this.cookies;
+    }
+
+    public Query getQuery() {
+        Recyclable.checkPoison(this.poisoned, this);
+        return this.query;
+    }
+
+    /**
+     * Clear all state belonging to the current exchange, so that the request can be reused for the next request
+     * on the same connection. The socket and protocol type are kept, as they belong to the connection.
+     */
+    @Override public void recycle() {
+        this.models.clear();
+        this.postponedCookies.clear();
+        this.meta.clear();
+        this.headers.clear();
+        this.ownedCookies.clear();
+        this.cookies = this.ownedCookies;
+        this.query = null;
+        this.postRequest = null;
+        this.session = null;
+        this.valid = true;
+        this.authorization = null;
+        this.poisoned = CoreConfig.Pools.poisonRecycled;
+    }
+
+    @Override public void reuse() {
+        this.poisoned = false;
+    }
+
     public Optional<Authorization> getAuthorization() {
         return Optional.ofNullable(authorization);
     }
@@ -158,6 +200,7 @@ public abstract class AbstractRequest
      * @return PostRequest if exists, null if not
      */
     public RequestEntity getPostRequest() {
+        Recyclable.checkPoison(this.poisoned, this);
         return this.postRequest;
     }
 
@@ -169,16 +212,8 @@ public abstract class AbstractRequest
      * @param name Header Name
      * @return The header value, if the header exists. Otherwise an empty string will be returned.
      */
-    public AsciiString getHeader(final AsciiString name) {
-        if (this.headers.containsKey(name.toLowerCase())) {
-            return this.headers.get(name.toLowerCase());
-        }
-
-        return AsciiString.empty;
-    }
-
-    public AsciiString getHeader(final String name) {
-        return getHeader(AsciiString.of(name));
+    public AsciiString getHeader(final CharSequence name) {
+        return this.getHeaders().getOrDefault(name, AsciiString.empty);
     }
 
     /**
@@ -205,6 +240,7 @@ public abstract class AbstractRequest
      */
     public void addMeta(final String name, final Object var) {
         Assert.notNull(name);
+        Recyclable.checkPoison(this.poisoned, this);
         meta.put(name, var);
     }
 
@@ -221,6 +257,7 @@ public abstract class AbstractRequest
      * @see #addMeta(String, Object) To set a meta value
      */
     public Object getMeta(final String name) {
+        Recyclable.checkPoison(this.poisoned, this);
         if (!meta.containsKey(name)) {
             return null; // Nullable
         }
@@ -250,47 +287,104 @@ public abstract class AbstractRequest
     }
 
     public ISession getSession() {
+        Recyclable.checkPoison(this.poisoned, this);
         if (this.session == null) {
             this.requestSession();
         }
         return this.session;
     }
 
+    /**
+     * Get the session of the request, if it has been requested. Unlike {@link #getSession()}, this never
+     * requests the session
+     *
+     * @return Session, if it has been requested
+     */
+    public Optional<ISession> getRequestedSession() {
+        Recyclable.checkPoison(this.poisoned, this);
+        return Optional.ofNullable(this.session);
+    }
+
     public abstract void dumpRequest();
 
+    /**
+     * Two level cache for parsed queries. The first level maps the path of a query (method, protocol
+     * and resource, without the query string) to a {@link Query}, and the second level maps raw query
+     * strings to parsed parameters. Both levels are bounded by weight, and use frequency based admission,
+     * so that one-off query strings never displace frequently requested entries.
+     */
     public final static class QueryCache implements LeakageProne {
 
         @Getter private static final QueryCache instance = new QueryCache();
 
-        private final Map<QueryParameters, Query> cachedQueries = new ConcurrentHashMap<>();
+        private final Cache<QueryParameters, Query> paths;
+        private final Cache<String, Map<String, String>> parameters;
 
         private QueryCache() {
+            this.paths = Caffeine.newBuilder()
+                .maximumWeight(CoreConfig.Cache.cachedQueryPathsMaxWeight)
+                .weigher((QueryParameters key, Query value) -> key.resource.length() + 1)
+                .recordStats().build();
+            this.parameters = Caffeine.newBuilder()
+                .maximumWeight(CoreConfig.Cache.cachedQueryParametersMaxWeight)
+                .weigher((String key, Map<String, String> value) -> key.length() + 1)
+                .recordStats().build();
             MemoryGuard.getInstance().register(this);
+            if (ServerImplementation.getImplementation() != null) {
+                final MetricRegistry registry =
+                    ServerImplementation.getImplementation().getMetrics().getRegistry();
+                registerMetrics(registry, "paths", this.paths);
+                registerMetrics(registry, "parameters", this.parameters);
+            }
+        }
+
+        private static void registerMetrics(final MetricRegistry registry, final String name,
+            final Cache<?, ?> cache) {
+            registry.register(MetricRegistry.name(QueryCache.class, name, "hitRate"),
+                (Gauge<Double>) () -> cache.stats().hitRate());
+            registry.register(MetricRegistry.name(QueryCache.class, name, "evictions"),
+                (Gauge<Long>) () -> cache.stats().evictionCount());
+            registry.register(MetricRegistry.name(QueryCache.class, name, "size"),
+                (Gauge<Long>) cache::estimatedSize);
         }
 
         @Override public void cleanUp() {
-            final Collection<QueryParameters> toRemove = new ArrayList<>();
-            for (Entry<QueryParameters, Query> entry : cachedQueries.entrySet()) {
-                if (entry.getValue().accesses.get() < Cache.cachedQueryMinimumAccesses) {
-                    toRemove.add(entry.getKey());
-                }
-            }
-            toRemove.forEach(cachedQueries::remove);
-            Logger.info("Cleaned up {} stored queries!", toRemove.size());
+            final long size = this.parameters.estimatedSize();
+            this.parameters.invalidateAll();
+            Logger.info("Cleaned up {} stored query parameters!", size);
         }
 
         public Query getQuery(final QueryParameters parameters) {
-            final Query query;
-            if (this.cachedQueries.containsKey(parameters)) {
-                if (CoreConfig.debug) {
-                    Logger.debug("Query fetched from cache: " + parameters);
-                }
-                query = this.cachedQueries.get(parameters);
-            } else {
-                query = new Query(parameters);
-                this.cachedQueries.put(parameters, query);
+            final int separator = parameters.resource.indexOf('?');
+            if (separator == -1) {
+                return this.paths.get(parameters, Query::new);
+            }
+            final Query pathQuery = this.paths.get(new QueryParameters(parameters.method,
+                parameters.protocolType, parameters.resource.substring(0, separator)), Query::new);
+            final String queryString = parameters.resource.substring(separator + 1);
+            if (queryString.isEmpty()) {
+                return pathQuery;
             }
-            return query;
+            return new Query(pathQuery,
+                this.parameters.get(queryString, QueryParameterParser::parse));
+        }
+
+        /**
+         * Get the statistics of the path level cache
+         *
+         * @return Cache statistics
+         */
+        public CacheStats getPathStats() {
+            return this.paths.stats();
+        }
+
+        /**
+         * Get the statistics of the parameter cache
+         *
+         * @return Cache statistics
+         */
+        public CacheStats getParameterStats() {
+            return this.parameters.stats();
         }
 
     }
@@ -311,13 +405,14 @@ public abstract class AbstractRequest
      */
     public final static class Query {
 
-        @Getter private final AtomicInteger accesses = new AtomicInteger(0);
         @Getter private final HttpMethod method;
         @Getter private final String resource;
-        @Getter private final Map<String, String> parameters = new HashMap<>();
+        @Getter private final Map<String, String> parameters;
 
         /**
-         * The query constructor
+         * Create a query without any parameters
+         *
+         * @param parameters Query parameters, the resource may not contain a query string
          */
         private Query(final QueryParameters parameters) {
             String resourceName = parameters.resource;
@@ -336,29 +431,14 @@ public abstract class AbstractRequest
             }
 
             this.method = parameters.method;
-            if (resourceName.contains("?")) {
-                final String[] parts = parameters.resource.split("\\?");
-                if (parts.length > 1) {
-                    String params = parts[1];
-                    try {
-                        params = URLDecoder.decode(params, StandardCharsets.UTF_8.toString());
-                    } catch (final UnsupportedEncodingException e) {
-                        if (CoreConfig.debug) {
-                            ServerImplementation.getImplementation().getErrorDigest().digest(e);
-                        }
-                    }
-                    final String[] subParts = params.split("&");
-                    resourceName = parts[0];
-                    for (final String part : subParts) {
-                        final String[] subSubParts = StringUtils.split(part, "=", 2);
-                        this.parameters
-                            .put(subSubParts[0], subSubParts.length > 1 ? subSubParts[1] : "");
-                    }
-                } else {
-                    resourceName = resourceName.substring(0, resourceName.length() - 1);
-                }
-            }
             this.resource = resourceName;
+            this.parameters = Collections.emptyMap();
+        }
+
+        private Query(final Query pathQuery, final Map<String, String> parameters) {
+            this.method = pathQuery.method;
+            this.resource = pathQuery.resource;
+            this.parameters = parameters;
         }
 
         /**
@@ -388,9 +468,22 @@ public abstract class AbstractRequest
 
         Authorization(final AsciiString input) {
             final List<AsciiString> parts = input.split("\\s");
-            this.mechanism = parts.get(1);
-            final val auth =
-                AsciiString.of(Base64.getDecoder().decode(parts.get(2).getValue())).split(":");
+            if (parts.size() < 2) {
+                this.mechanism = null;
+                this.username = null;
+                this.password = null;
+                return;
+            }
+            // The header value is "<mechanism> <credentials>"
+            this.mechanism = parts.get(parts.size() - 2);
+            List<AsciiString> auth;
+            try {
+                auth = AsciiString.of(
+                    Base64.getDecoder().decode(parts.get(parts.size() - 1).getValue()))
+                    .split(":");
+            } catch (final IllegalArgumentException e) {
+                auth = Collections.emptyList();
+            }
             if (auth.size() < 2) {
                 this.username = null;
                 this.password = null;
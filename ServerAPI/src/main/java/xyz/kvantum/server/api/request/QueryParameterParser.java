@@ -0,0 +1,122 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.request;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single pass parser for URL encoded query strings ({@code key=value&key2=value2}). The parser works directly
+ * on the bytes of the query string: pairs are separated before they are percent decoded (so that encoded
+ * separators are kept in keys and values), and decoded bytes are interpreted as UTF-8.
+ */
+@UtilityClass public final class QueryParameterParser {
+
+    /**
+     * Parse a query string (the part after the "?")
+     *
+     * @param query Query string
+     * @return Immutable map of parameters. If a key occurs more than once, the last value is kept
+     */
+    public static Map<String, String> parse(@NonNull final String query) {
+        final byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parse a query string (the part after the "?") from a byte range
+     *
+     * @param bytes  Byte array
+     * @param offset Offset of the first byte of the query string
+     * @param length Length of the query string
+     * @return Immutable map of parameters. If a key occurs more than once, the last value is kept
+     */
+    public static Map<String, String> parse(@NonNull final byte[] bytes, final int offset,
+        final int length) {
+        if (length == 0) {
+            return Collections.emptyMap();
+        }
+        final Map<String, String> parameters = new HashMap<>();
+        // Decoded output is never longer than the input, so the scratch buffer can be reused for every part
+        final byte[] scratch = new byte[length];
+        final int end = offset + length;
+        int partStart = offset;
+        for (int i = offset; i <= end; i++) {
+            if (i != end && bytes[i] != '&') {
+                continue;
+            }
+            if (i > partStart) {
+                int separator = partStart;
+                while (separator < i && bytes[separator] != '=') {
+                    separator++;
+                }
+                final String key = decode(bytes, partStart, separator, scratch);
+                final String value =
+                    separator < i ? decode(bytes, separator + 1, i, scratch) : "";
+                parameters.put(key, value);
+            }
+            partStart = i + 1;
+        }
+        return Collections.unmodifiableMap(parameters);
+    }
+
+    private static String decode(final byte[] bytes, final int start, final int end,
+        final byte[] scratch) {
+        int written = 0;
+        for (int i = start; i < end; i++) {
+            final byte b = bytes[i];
+            if (b == '+') {
+                scratch[written++] = ' ';
+            } else if (b == '%' && i + 2 < end) {
+                final int high = hexValue(bytes[i + 1]);
+                final int low = hexValue(bytes[i + 2]);
+                if (high == -1 || low == -1) {
+                    // Malformed escape sequence, keep it as it is
+                    scratch[written++] = b;
+                } else {
+                    scratch[written++] = (byte) ((high << 4) | low);
+                    i += 2;
+                }
+            } else {
+                scratch[written++] = b;
+            }
+        }
+        return new String(scratch, 0, written, StandardCharsets.UTF_8);
+    }
+
+    private static int hexValue(final byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        } else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        } else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+
+}
@@ -27,6 +27,7 @@ import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.exceptions.QueryException;
 import xyz.kvantum.server.api.logging.Logger;
+import xyz.kvantum.server.api.response.Header;
 import xyz.kvantum.server.api.session.ISession;
 import xyz.kvantum.server.api.socket.SocketContext;
 import xyz.kvantum.server.api.util.AsciiString;
@@ -42,7 +43,6 @@ import java.util.Optional;
 @NoArgsConstructor(access = AccessLevel.PRIVATE) public final class Request
     extends AbstractRequest {
 
-    private static final AsciiString HEADER_AUTHORIZATION = AsciiString.of("Authorization");
     private boolean hasBeenRequested = false;
 
     public Request(final SocketContext socket) {
@@ -62,15 +62,16 @@ import java.util.Optional;
             Logger.debug("Reading cookies (from {})", this);
         }
         this.setCookies(CookieManager.getCookies(this));
-        if (this.getHeaders().containsKey(HEADER_AUTHORIZATION)) {
-            this.setAuthorization(new Authorization(this.getHeader(HEADER_AUTHORIZATION)));
+        final AsciiString authorization = this.getHeaders().get(Header.HEADER_AUTHORIZATION);
+        if (authorization != null) {
+            this.setAuthorization(new Authorization(authorization));
         }
     }
 
     @Override protected AbstractRequest newRequest(final String query) {
         final AbstractRequest request = new Request();
         request.setPostRequest(this.getPostRequest());
-        request.getHeaders().putAll(this.getHeaders());
+        request.getHeaders().addAll(this.getHeaders());
         request.setSocket(this.getSocket());
         // request.setQuery( new Query( HttpMethod.GET, this.getProtocolType(), query ) );
         request.setQuery(AbstractRequest.QueryCache.getInstance()
@@ -82,6 +83,11 @@ import java.util.Optional;
         return request;
     }
 
+    @Override public void recycle() {
+        super.recycle();
+        this.hasBeenRequested = false;
+    }
+
     @Override public void requestSession() {
         //
         // Make sure we only request sessions once
@@ -95,8 +101,10 @@ import java.util.Optional;
             ServerImplementation.getImplementation().getSessionManager().getSession(this);
         if (session.isPresent()) {
             setSession(session.get());
-            ServerImplementation.getImplementation().getSessionManager()
-                .setSessionLastActive((AsciiString) session.get().get("id"));
+            if (!session.get().isVirtual()) {
+                ServerImplementation.getImplementation().getSessionManager()
+                    .setSessionLastActive((AsciiString) session.get().get("id"));
+            }
         } else {
             Logger.warn("Could not initialize session!");
         }
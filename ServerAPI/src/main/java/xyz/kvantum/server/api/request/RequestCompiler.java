@@ -30,6 +30,7 @@ import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.exceptions.RequestException;
 import xyz.kvantum.server.api.request.AbstractRequest.QueryParameters;
+import xyz.kvantum.server.api.util.AsciiSlice;
 import xyz.kvantum.server.api.util.AsciiString;
 
 import java.util.Locale;
@@ -65,11 +66,49 @@ import java.util.regex.Pattern;
         if (!matcher.matches()) {
             return Optional.empty();
         }
-        final AsciiString key = AsciiString.of(matcher.group(KEY).toLowerCase(Locale.ENGLISH));
+        // Header names are client controlled, so they are only resolved against the interning
+        // pool (which contains the names of all registered header options) and never added to it
+        final AsciiString key =
+            AsciiString.of(matcher.group(KEY).toLowerCase(Locale.ENGLISH), false);
         final AsciiString value = AsciiString.of(matcher.group(VALUE), false);
         return Optional.of(new HeaderPair(key, value));
     }
 
+    /**
+     * Compile a header line directly from a byte slice, without going through any intermediate strings. The
+     * header name is lower cased (and resolved against the interning pool), and the value is copied out of the
+     * slice, so that neither outlives the buffer.
+     *
+     * @param line Header line, without the trailing line break
+     * @return The compiled header, if the line is a valid header line
+     */
+    public static Optional<HeaderPair> compileHeader(final AsciiSlice line) {
+        // Equivalent to PATTERN_HEADER
+        int nameEnd = 0;
+        while (nameEnd < line.length() && isHeaderNameCharacter(line.byteAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd == 0) {
+            return Optional.empty();
+        }
+        final int colon = line.indexOf(':', nameEnd);
+        if (colon == -1 || !line.slice(nameEnd, colon).trim().isEmpty()) {
+            return Optional.empty();
+        }
+        final AsciiSlice value = line.slice(colon + 1, line.length());
+        int valueStart = 0;
+        while (valueStart < value.length() && Character.isWhitespace(value.charAt(valueStart))) {
+            valueStart++;
+        }
+        return Optional.of(new HeaderPair(line.slice(0, nameEnd).toLowerCase(),
+            value.slice(valueStart, value.length()).toAsciiString()));
+    }
+
+    private static boolean isHeaderNameCharacter(final byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '-'
+            || b == '_';
+    }
+
     public static void compileQuery(final AbstractRequest request, final String line)
         throws IllegalArgumentException, RequestException {
         final Timer.Context timer = TIMER_COMPILE_QUERY.time();
@@ -0,0 +1,309 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.core.ServerImplementation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Decides whether or not a response should be compressed, and at what level. A response is compressed if:
+ * <ol>
+ * <li>The view does not override the policy (see {@link CompressionMode})</li>
+ * <li>The length is unknown, or at least {@link CoreConfig.Compression#minimumSize}</li>
+ * <li>The content type isn't denied, and is allowed (if there are allowed types)</li>
+ * </ol>
+ * When a content type matches both a denied and an allowed prefix, the most specific (longest) prefix wins, so that
+ * {@code image/svg+xml} can be allowed while {@code image/} is denied. Denial wins ties.
+ * The level depends on the system load: once the load exceeds the saturation load, the (faster) saturated level is
+ * used instead. The policy also keeps track of the compressed and uncompressed byte counts per content type.
+ */
+@SuppressWarnings("WeakerAccess") public final class CompressionPolicy {
+
+    private static final String OTHER = "other";
+    private static final int MAX_TRACKED_TYPES = 64;
+
+    private final int minimumSize;
+    private final List<String> allowedTypes;
+    private final List<String> deniedTypes;
+    @Getter private final int level;
+    @Getter private final int saturatedLevel;
+    private final double saturationLoad;
+    private final long loadSampleMillis;
+    private final DoubleSupplier loadSupplier;
+    private final Map<String, ContentTypeStatistics> statistics = new ConcurrentHashMap<>();
+
+    private volatile double sampledLoad = Double.NaN;
+    private volatile long sampledAt = 0L;
+
+    @Builder private CompressionPolicy(final int minimumSize, final Collection<String> allowedTypes,
+        final Collection<String> deniedTypes, final int level, final int saturatedLevel,
+        final double saturationLoad, final long loadSampleMillis, final DoubleSupplier loadSupplier) {
+        this.minimumSize = minimumSize;
+        this.allowedTypes = normalize(allowedTypes);
+        this.deniedTypes = normalize(deniedTypes);
+        this.level = level;
+        this.saturatedLevel = saturatedLevel;
+        this.saturationLoad = saturationLoad;
+        this.loadSampleMillis = loadSampleMillis;
+        this.loadSupplier = loadSupplier == null ? CompressionPolicy::systemLoad : loadSupplier;
+    }
+
+    /**
+     * Get the policy configured in {@link CoreConfig.Compression}
+     *
+     * @return Compression policy
+     */
+    public static CompressionPolicy getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private static List<String> normalize(final Collection<String> types) {
+        if (types == null || types.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> normalized = new ArrayList<>(types.size());
+        for (final String type : types) {
+            normalized.add(type.trim().toLowerCase(Locale.ENGLISH));
+        }
+        return Collections.unmodifiableList(normalized);
+    }
+
+    /**
+     * Get the media type of a content type header, without parameters, in lower case
+     *
+     * @param contentType Content type header, may be null
+     * @return Media type, or an empty string
+     */
+    static String mediaType(final CharSequence contentType) {
+        if (contentType == null) {
+            return "";
+        }
+        final String string = contentType.toString();
+        final int separator = string.indexOf(';');
+        return (separator == -1 ? string : string.substring(0, separator)).trim()
+            .toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Get the length of the longest prefix that matches the media type
+     *
+     * @param prefixes  Prefixes to match against
+     * @param mediaType Media type
+     * @return Length of the longest matching prefix, or -1 if no prefix matches
+     */
+    private static int longestMatch(final List<String> prefixes, final String mediaType) {
+        int longest = -1;
+        for (final String prefix : prefixes) {
+            if (prefix.length() > longest && mediaType.startsWith(prefix)) {
+                longest = prefix.length();
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Get the CPU load of the system, between 0 and 1. Where the CPU load isn't available, the load average divided
+     * by the number of processors is used instead
+     *
+     * @return System load, or -1 if it isn't available
+     */
+    private static double systemLoad() {
+        final OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+            final double cpuLoad = ((com.sun.management.OperatingSystemMXBean) bean).getSystemCpuLoad();
+            if (cpuLoad >= 0) {
+                return cpuLoad; // Negative if it hasn't been sampled yet
+            }
+        }
+        final double load = bean.getSystemLoadAverage();
+        if (load < 0) {
+            return -1; // Not available on this platform
+        }
+        return load / bean.getAvailableProcessors();
+    }
+
+    /**
+     * Determine whether or not a response should be compressed. This assumes that the client accepts compressed
+     * responses
+     *
+     * @param mode        View override
+     * @param contentType Response content type, may be null
+     * @param length      Response length, or -1 if the length isn't known
+     * @return True if the response should be compressed
+     */
+    public boolean shouldCompress(@NonNull final CompressionMode mode, final CharSequence contentType,
+        final long length) {
+        if (mode != CompressionMode.DEFAULT) {
+            return mode == CompressionMode.ALWAYS;
+        }
+        if (length != -1 && length < this.minimumSize) {
+            return false;
+        }
+        final String mediaType = mediaType(contentType);
+        final int denied = longestMatch(this.deniedTypes, mediaType);
+        if (this.allowedTypes.isEmpty()) {
+            return denied == -1;
+        }
+        final int allowed = longestMatch(this.allowedTypes, mediaType);
+        return allowed != -1 && allowed > denied;
+    }
+
+    /**
+     * Get the compression level to use, based on the current system load. The load is sampled at most once per
+     * {@link CoreConfig.Compression#loadSampleMillis}
+     *
+     * @return Compression level
+     */
+    public int selectLevel() {
+        final long now = System.currentTimeMillis();
+        if (Double.isNaN(this.sampledLoad) || now - this.sampledAt >= this.loadSampleMillis) {
+            this.sampledLoad = this.loadSupplier.getAsDouble();
+            this.sampledAt = now;
+        }
+        if (this.sampledLoad >= this.saturationLoad) {
+            return this.saturatedLevel;
+        }
+        return this.level;
+    }
+
+    /**
+     * Record the result of a compressed response
+     *
+     * @param contentType  Response content type, may be null
+     * @param uncompressed Uncompressed length
+     * @param compressed   Compressed length
+     */
+    public void record(final CharSequence contentType, final long uncompressed,
+        final long compressed) {
+        String mediaType = mediaType(contentType);
+        if (mediaType.isEmpty() || (!this.statistics.containsKey(mediaType)
+            && this.statistics.size() >= MAX_TRACKED_TYPES)) {
+            mediaType = OTHER;
+        }
+        ContentTypeStatistics contentTypeStatistics = this.statistics.get(mediaType);
+        if (contentTypeStatistics == null) {
+            final ContentTypeStatistics created = new ContentTypeStatistics();
+            contentTypeStatistics = this.statistics.putIfAbsent(mediaType, created);
+            if (contentTypeStatistics == null) {
+                contentTypeStatistics = created;
+                // Registration happens outside of the map, so that it can't block other media types
+                if (this == InstanceHolder.INSTANCE) {
+                    created.registerMetrics(mediaType);
+                }
+            }
+        }
+        contentTypeStatistics.responses.increment();
+        contentTypeStatistics.uncompressed.add(uncompressed);
+        contentTypeStatistics.compressed.add(compressed);
+    }
+
+    /**
+     * Get the recorded statistics, keyed by media type
+     *
+     * @return Unmodifiable view of the statistics
+     */
+    public Map<String, ContentTypeStatistics> getStatistics() {
+        return Collections.unmodifiableMap(this.statistics);
+    }
+
+    /**
+     * Creates the configured policy once {@link #getInstance()} is first called, at which point the configuration
+     * has been loaded. Class initialization guarantees that only one policy (and one set of metrics) is created
+     */
+    private static final class InstanceHolder {
+
+        private static final CompressionPolicy INSTANCE =
+            builder().minimumSize(CoreConfig.Compression.minimumSize)
+                .allowedTypes(CoreConfig.Compression.allowedTypes)
+                .deniedTypes(CoreConfig.Compression.deniedTypes).level(CoreConfig.Compression.level)
+                .saturatedLevel(CoreConfig.Compression.saturatedLevel)
+                .saturationLoad(CoreConfig.Compression.saturationLoad)
+                .loadSampleMillis(CoreConfig.Compression.loadSampleMillis).build();
+
+    }
+
+    /**
+     * Compression statistics for a single media type
+     */
+    public static final class ContentTypeStatistics {
+
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder uncompressed = new LongAdder();
+        private final LongAdder compressed = new LongAdder();
+
+        private ContentTypeStatistics() {
+        }
+
+        /**
+         * Register gauges for the byte counts. Gauges that already exist are kept
+         */
+        private void registerMetrics(final String mediaType) {
+            if (ServerImplementation.getImplementation() == null) {
+                return;
+            }
+            final MetricRegistry registry = ServerImplementation.getImplementation().getMetrics().getRegistry();
+            final String name = MetricRegistry.name(CompressionPolicy.class, mediaType);
+            registry.gauge(MetricRegistry.name(name, "uncompressed"), () -> (Gauge<Long>) this::getUncompressed);
+            registry.gauge(MetricRegistry.name(name, "compressed"), () -> (Gauge<Long>) this::getCompressed);
+        }
+
+        public long getResponses() {
+            return this.responses.sum();
+        }
+
+        public long getUncompressed() {
+            return this.uncompressed.sum();
+        }
+
+        public long getCompressed() {
+            return this.compressed.sum();
+        }
+
+        /**
+         * Get the compression ratio (compressed / uncompressed)
+         *
+         * @return Ratio, or 1 if nothing has been recorded
+         */
+        public double getRatio() {
+            final long uncompressed = this.getUncompressed();
+            return uncompressed == 0 ? 1D : (double) this.getCompressed() / uncompressed;
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import lombok.experimental.UtilityClass;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.util.TimeUtil;
+
+/**
+ * Evaluation of the conditional request headers {@code If-None-Match} and {@code If-Modified-Since}, as
+ * specified in RFC 7232
+ */
+@UtilityClass public final class ConditionalRequest {
+
+    /**
+     * Check whether the client already has the current representation, in which case a {@code 304 Not Modified}
+     * response should be sent instead. This is only called when there is a current representation. If
+     * {@code If-None-Match} is present, {@code If-Modified-Since} is ignored
+     *
+     * @param method          Request method, only GET and HEAD requests can be answered with 304
+     * @param ifNoneMatch     Value of the {@code If-None-Match} header, may be empty or null
+     * @param ifModifiedSince Value of the {@code If-Modified-Since} header, may be empty or null
+     * @param entityTag       Current entity tag, may be null
+     * @param lastModified    Last modification of the representation (in milliseconds), or -1 if unknown
+     * @return True if the representation hasn't been modified
+     */
+    public static boolean isNotModified(final HttpMethod method, final CharSequence ifNoneMatch,
+        final CharSequence ifModifiedSince, final EntityTag entityTag, final long lastModified) {
+        if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+            return false;
+        }
+        if (ifNoneMatch != null && ifNoneMatch.length() > 0) {
+            for (final EntityTag tag : EntityTag.parseList(ifNoneMatch)) {
+                // A wildcard matches any current representation, whether or not it has an entity tag
+                if (tag == EntityTag.ANY || (entityTag != null && tag.weakMatch(entityTag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (ifModifiedSince != null && ifModifiedSince.length() > 0 && lastModified >= 0) {
+            final long since = TimeUtil.parseHTTPTimeStamp(ifModifiedSince);
+            // HTTP dates only have second precision
+            return since != -1 && (lastModified / 1000L) <= (since / 1000L);
+        }
+        return false;
+    }
+
+}
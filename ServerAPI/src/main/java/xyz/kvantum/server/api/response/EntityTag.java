@@ -0,0 +1,161 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An entity tag (RFC 7232), used to validate cached representations. Strong tags change whenever the
+ * representation changes, weak tags only promise that the representations are semantically equivalent
+ */
+@Getter @EqualsAndHashCode public final class EntityTag {
+
+    /**
+     * Matches any current representation, only allowed in request headers
+     */
+    public static final EntityTag ANY = new EntityTag("*", false);
+
+    private final String value;
+    private final boolean weak;
+
+    private EntityTag(@NonNull final String value, final boolean weak) {
+        this.value = value;
+        this.weak = weak;
+    }
+
+    /**
+     * Create a strong entity tag
+     *
+     * @param value Opaque tag, without quotes
+     * @return Entity tag
+     */
+    public static EntityTag strong(@NonNull final String value) {
+        return new EntityTag(validate(value), false);
+    }
+
+    /**
+     * Create a weak entity tag
+     *
+     * @param value Opaque tag, without quotes
+     * @return Entity tag
+     */
+    public static EntityTag weak(@NonNull final String value) {
+        return new EntityTag(validate(value), true);
+    }
+
+    private static String validate(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c <= 0x20 || c == '"' || c == 0x7F) {
+                throw new IllegalArgumentException(
+                    String.format("Illegal character '%c' in entity tag \"%s\"", c, value));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Parse a comma separated list of entity tags, as sent in {@code If-None-Match} and {@code If-Match}. A
+     * wildcard is returned as {@link #ANY}. Parsing stops at the first malformed tag
+     *
+     * @param header Header value
+     * @return Parsed tags, may be empty
+     */
+    public static List<EntityTag> parseList(final CharSequence header) {
+        if (header == null || header.length() == 0) {
+            return Collections.emptyList();
+        }
+        final List<EntityTag> tags = new ArrayList<>(1);
+        final int length = header.length();
+        int i = 0;
+        while (i < length) {
+            final char c = header.charAt(i);
+            if (c == ' ' || c == '\t' || c == ',') {
+                i++;
+                continue;
+            }
+            if (c == '*') {
+                tags.add(ANY);
+                i++;
+                continue;
+            }
+            boolean weak = false;
+            if (c == 'W' && i + 1 < length && header.charAt(i + 1) == '/') {
+                weak = true;
+                i += 2;
+            }
+            if (i >= length || header.charAt(i) != '"') {
+                break;
+            }
+            final int end = indexOf(header, '"', i + 1);
+            if (end == -1) {
+                break;
+            }
+            tags.add(new EntityTag(header.subSequence(i + 1, end).toString(), weak));
+            i = end + 1;
+        }
+        return tags;
+    }
+
+    private static int indexOf(final CharSequence sequence, final char c, final int from) {
+        for (int i = from; i < sequence.length(); i++) {
+            if (sequence.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Weak comparison: the opaque tags are equal, regardless of whether the tags are weak
+     *
+     * @param other Other tag
+     * @return True if the tags match
+     */
+    public boolean weakMatch(@NonNull final EntityTag other) {
+        return this == ANY || other == ANY || this.value.equals(other.value);
+    }
+
+    /**
+     * Strong comparison: both tags are strong, and the opaque tags are equal
+     *
+     * @param other Other tag
+     * @return True if the tags match
+     */
+    public boolean strongMatch(@NonNull final EntityTag other) {
+        return !this.weak && !other.weak && this.weakMatch(other);
+    }
+
+    @Override public String toString() {
+        if (this == ANY) {
+            return "*";
+        }
+        return this.weak ? "W/\"" + this.value + '"' : '"' + this.value + '"';
+    }
+
+}
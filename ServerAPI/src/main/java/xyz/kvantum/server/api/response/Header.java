@@ -25,10 +25,8 @@ import lombok.Getter;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.util.AsciiString;
-import xyz.kvantum.server.api.util.ListMultiMap;
 import xyz.kvantum.server.api.util.TimeUtil;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Optional;
@@ -41,43 +39,43 @@ import java.util.Optional;
     /**
      * text/css; charset=utf-8
      */
-    public static final AsciiString CONTENT_TYPE_CSS = AsciiString.of("text/css; charset=utf-8");
+    public static final AsciiString CONTENT_TYPE_CSS = AsciiString.of("text/css; charset=utf-8", true);
     /**
      * application/octet-stream; charset=utf-8
      */
     public static final AsciiString CONTENT_TYPE_OCTET_STREAM =
-        AsciiString.of("application/octet-stream; charset=utf-8");
+        AsciiString.of("application/octet-stream; charset=utf-8", true);
     /**
      * text/html; charset=utf-8
      */
-    public static final AsciiString CONTENT_TYPE_HTML = AsciiString.of("text/html; charset=utf-8");
+    public static final AsciiString CONTENT_TYPE_HTML = AsciiString.of("text/html; charset=utf-8", true);
     /**
      * text/javascript; charset=utf-8
      */
     public static final AsciiString CONTENT_TYPE_JAVASCRIPT =
-        AsciiString.of("text/javascript; charset=utf-8");
+        AsciiString.of("text/javascript; charset=utf-8", true);
     /**
      * text/example; charset=utf-8
      */
     public static final AsciiString CONTENT_TYPE_TEXT_EXAMPLE =
-        AsciiString.of("text/example; charset=utf-8");
+        AsciiString.of("text/example; charset=utf-8", true);
     /**
      * text/json; charset=utf-8
      */
     public static final AsciiString CONTENT_TYPE_JSON =
-        AsciiString.of("application/json; charset=utf-8");
+        AsciiString.of("application/json; charset=utf-8", true);
     /**
      * text/xml; charset=utf-8
      */
-    public static final AsciiString CONTENT_TYPE_XML = AsciiString.of("text/xml; charset=utf-8");
+    public static final AsciiString CONTENT_TYPE_XML = AsciiString.of("text/xml; charset=utf-8", true);
     /**
      * no-cache
      */
-    public static final AsciiString CACHE_NO_CACHE = AsciiString.of("no-cache");
+    public static final AsciiString CACHE_NO_CACHE = AsciiString.of("no-cache", true);
     /**
      * Kvantum
      */
-    public static final AsciiString POWERED_BY = AsciiString.of("Kvantum");
+    public static final AsciiString POWERED_BY = AsciiString.of("Kvantum", true);
 
     //
     // 1xx Informational
@@ -86,16 +84,16 @@ import java.util.Optional;
     /**
      * 100
      */
-    public static final AsciiString STATUS_CONTINUE = AsciiString.of("100 Continue");
+    public static final AsciiString STATUS_CONTINUE = AsciiString.of("100 Continue", true);
     /**
      * 101
      */
     public static final AsciiString STATUS_SWITCHING_PROTOCOLS =
-        AsciiString.of("101 Switching Protocols");
+        AsciiString.of("101 Switching Protocols", true);
     /**
      * 102
      */
-    public static final AsciiString STATUS_PROCESSING = AsciiString.of("102 Processing");
+    public static final AsciiString STATUS_PROCESSING = AsciiString.of("102 Processing", true);
 
     //
     // 2xx Success
@@ -104,32 +102,32 @@ import java.util.Optional;
     /**
      * 200
      */
-    public static final AsciiString STATUS_OK = AsciiString.of("200 OK");
+    public static final AsciiString STATUS_OK = AsciiString.of("200 OK", true);
     /**
      * 201
      */
-    public static final AsciiString STATUS_CREATED = AsciiString.of("201 Created");
+    public static final AsciiString STATUS_CREATED = AsciiString.of("201 Created", true);
     /**
      * 203
      */
     public static final AsciiString STATUS_NON_AUTHORITATIVE_INFORMATION =
-        AsciiString.of("203 Non-Authoritative Information");
+        AsciiString.of("203 Non-Authoritative Information", true);
     /**
      * 202
      */
-    public static final AsciiString STATUS_ACCEPTED = AsciiString.of("202 Accepted");
+    public static final AsciiString STATUS_ACCEPTED = AsciiString.of("202 Accepted", true);
     /**
      * 204
      */
-    public static final AsciiString STATUS_NO_CONTENT = AsciiString.of("204 No Content");
+    public static final AsciiString STATUS_NO_CONTENT = AsciiString.of("204 No Content", true);
     /**
      * 205
      */
-    public static final AsciiString STATUS_RESET_CONTENT = AsciiString.of("205 Reset Content");
+    public static final AsciiString STATUS_RESET_CONTENT = AsciiString.of("205 Reset Content", true);
     /**
      * 206
      */
-    public static final AsciiString STATUS_PARTIAL_CONTENT = AsciiString.of("206 Partial Content");
+    public static final AsciiString STATUS_PARTIAL_CONTENT = AsciiString.of("206 Partial Content", true);
 
     //
     // 3xx Redirection
@@ -139,12 +137,16 @@ import java.util.Optional;
      * 301
      */
     public static final AsciiString STATUS_MOVED_PERMANENTLY =
-        AsciiString.of("301 Moved Permanently");
+        AsciiString.of("301 Moved Permanently", true);
+    /**
+     * 304
+     */
+    public static final AsciiString STATUS_NOT_MODIFIED = AsciiString.of("304 Not Modified", true);
     /**
      * 307
      */
     public static final AsciiString STATUS_TEMPORARY_REDIRECT =
-        AsciiString.of("307 Temporary Redirect");
+        AsciiString.of("307 Temporary Redirect", true);
 
     //
     // 4xx Client errors
@@ -153,46 +155,55 @@ import java.util.Optional;
     /**
      * 400
      */
-    public static final AsciiString STATUS_BAD_REQUEST = AsciiString.of("400 Bad Request");
+    public static final AsciiString STATUS_BAD_REQUEST = AsciiString.of("400 Bad Request", true);
     /**
      * 401
      */
-    public static final AsciiString STATUS_ACCESS_DENIED = AsciiString.of("401 Access Denied");
+    public static final AsciiString STATUS_ACCESS_DENIED = AsciiString.of("401 Access Denied", true);
     /**
      * 401
      */
-    public static final AsciiString STATUS_UNAUTHORIZED = AsciiString.of("401 Unauthorized status");
+    public static final AsciiString STATUS_UNAUTHORIZED = AsciiString.of("401 Unauthorized status", true);
     /**
      * 404
      */
-    public static final AsciiString STATUS_NOT_FOUND = AsciiString.of("404 Not Found");
+    public static final AsciiString STATUS_NOT_FOUND = AsciiString.of("404 Not Found", true);
     /**
      * 405
      */
-    public static final AsciiString STATUS_NOT_ALLOWED = AsciiString.of("405 Method not allowed");
+    public static final AsciiString STATUS_NOT_ALLOWED = AsciiString.of("405 Method not allowed", true);
     /**
      * 406
      */
-    public static final AsciiString STATUS_NOT_ACCEPTABLE = AsciiString.of("406 Not Acceptable");
+    public static final AsciiString STATUS_NOT_ACCEPTABLE = AsciiString.of("406 Not Acceptable", true);
     /**
      * 408
      */
-    public static final AsciiString STATUS_REQUEST_TIMEOUT = AsciiString.of("408 Request Timeout");
+    public static final AsciiString STATUS_REQUEST_TIMEOUT = AsciiString.of("408 Request Timeout", true);
     /**
      * 413
      */
     public static final AsciiString STATUS_PAYLOAD_TOO_LARGE =
-        AsciiString.of("413 Payload Too Large");
+        AsciiString.of("413 Payload Too Large", true);
     /**
      * 413
      */
     public static final AsciiString STATUS_ENTITY_TOO_LARGE =
-        AsciiString.of("413 Entity Too Large");
+        AsciiString.of("413 Entity Too Large", true);
+    /**
+     * 414
+     */
+    public static final AsciiString STATUS_URI_TOO_LONG = AsciiString.of("414 URI Too Long", true);
     /**
      * 429
      */
     public static final AsciiString STATUS_TOO_MANY_REQUESTS =
-        AsciiString.of("429 Too Many Requests");
+        AsciiString.of("429 Too Many Requests", true);
+    /**
+     * 431
+     */
+    public static final AsciiString STATUS_REQUEST_HEADER_FIELDS_TOO_LARGE =
+        AsciiString.of("431 Request Header Fields Too Large", true);
 
     //
     // 5xx Server errors
@@ -202,14 +213,19 @@ import java.util.Optional;
      * 500
      */
     public static final AsciiString STATUS_INTERNAL_ERROR =
-        AsciiString.of("500 Internal Server Error");
+        AsciiString.of("500 Internal Server Error", true);
+    /**
+     * 503
+     */
+    public static final AsciiString STATUS_SERVICE_UNAVAILABLE =
+        AsciiString.of("503 Service Unavailable", true);
     /**
      * 505
      */
     public static final AsciiString STATUS_HTTP_VERSION_NOT_SUPPORTED =
-        AsciiString.of("505 HTTP Version Not Supported");
+        AsciiString.of("505 HTTP Version Not Supported", true);
 
-    public static final AsciiString ALLOW_ALL = AsciiString.of("*");
+    public static final AsciiString ALLOW_ALL = AsciiString.of("*", true);
 
     /**
      * X-Content-Type-Options
@@ -369,8 +385,59 @@ import java.util.Optional;
      * period of time (in seconds) or a HTTP-date
      */
     public static final HeaderOption HEADER_RETRY_AFTER = HeaderOption.create("Retry-After");
-    private static final AsciiString DEFAULT_FORMAT = AsciiString.of("HTTP/1.1");
-    private final ListMultiMap<HeaderOption, AsciiString> headers = new ListMultiMap<>();
+
+    //
+    // Request headers. These are registered so that they get a fixed slot in
+    // request header maps
+    //
+
+    /**
+     * Media types that are acceptable for the response
+     */
+    public static final HeaderOption HEADER_ACCEPT = HeaderOption.create("Accept");
+    /**
+     * Acceptable content encodings, such as gzip
+     */
+    public static final HeaderOption HEADER_ACCEPT_ENCODING = HeaderOption.create("Accept-Encoding");
+    /**
+     * Acceptable human languages for the response
+     */
+    public static final HeaderOption HEADER_ACCEPT_LANGUAGE = HeaderOption.create("Accept-Language");
+    /**
+     * Authentication credentials for HTTP authentication
+     */
+    public static final HeaderOption HEADER_AUTHORIZATION = HeaderOption.create("Authorization");
+    /**
+     * Cookies previously sent by the server
+     */
+    public static final HeaderOption HEADER_COOKIE = HeaderOption.create("Cookie");
+    /**
+     * Indicates that particular server behaviors are required by the client
+     */
+    public static final HeaderOption HEADER_EXPECT = HeaderOption.create("Expect");
+    /**
+     * The domain name of the server, and optionally the port
+     */
+    public static final HeaderOption HEADER_HOST = HeaderOption.create("Host");
+    /**
+     * Entity tags of the representations that the client has cached
+     */
+    public static final HeaderOption HEADER_IF_NONE_MATCH = HeaderOption.create("If-None-Match");
+    /**
+     * Date at which the representation that the client has cached was last modified
+     */
+    public static final HeaderOption HEADER_IF_MODIFIED_SINCE = HeaderOption.create("If-Modified-Since");
+    /**
+     * The address of the previous web page from which a link to the requested page was followed
+     */
+    public static final HeaderOption HEADER_REFERER = HeaderOption.create("Referer");
+    /**
+     * The user agent string of the user agent
+     */
+    public static final HeaderOption HEADER_USER_AGENT = HeaderOption.create("User-Agent");
+
+    private static final AsciiString DEFAULT_FORMAT = AsciiString.of("HTTP/1.1", true);
+    private final HeaderMap headers = new HeaderMap();
     @Getter private AsciiString status;
     @Getter private AsciiString format;
 
@@ -455,7 +522,7 @@ import java.util.Optional;
             this.headers.remove(key);
         }
         if (value != null) {
-            this.headers.put(key, value);
+            this.headers.add(key, value);
         }
         return this;
     }
@@ -467,11 +534,7 @@ import java.util.Optional;
      * @return Collection with all stored values
      */
     public Collection<AsciiString> getMultiple(final HeaderOption key) {
-        final Collection<AsciiString> values = new ArrayList<>();
-        if (this.headers.containsKey(key)) {
-            values.addAll(this.headers.get(key));
-        }
-        return values;
+        return this.headers.getAll(key);
     }
 
     /**
@@ -481,10 +544,7 @@ import java.util.Optional;
      * @return Optional
      */
     public Optional<AsciiString> get(final HeaderOption key) {
-        if (this.headers.containsKey(key)) {
-            return Optional.of(this.headers.get(key).get(0));
-        }
-        return Optional.empty();
+        return Optional.ofNullable(this.headers.get(key));
     }
 
     /**
@@ -519,10 +579,9 @@ import java.util.Optional;
             Logger.debug("Cookie set! Key: {}, Value: {}, Full: {}", cookie.getCookie(),
                 cookie.getValue(), cookie.toString());
         }
-        if (this.headers.containsEntry(HEADER_SET_COOKIE, cookie.toAsciiString())) {
-            this.headers.remove(HEADER_SET_COOKIE, cookie.toAsciiString());
-        }
-        this.headers.put(HEADER_SET_COOKIE, cookie.toAsciiString());
+        final AsciiString value = cookie.toAsciiString();
+        this.headers.remove(HEADER_SET_COOKIE, value);
+        this.headers.add(HEADER_SET_COOKIE, value);
         return this;
     }
 
@@ -533,7 +592,7 @@ import java.util.Optional;
      */
     public void removeCookie(final AsciiString cookie) {
         final ResponseCookie responseCookie =
-            ResponseCookie.builder().cookie(cookie).value(AsciiString.of("deleted"))
+            ResponseCookie.builder().cookie(cookie).value(AsciiString.of("deleted", true))
                 .expires(new Date(0)).build();
         this.setCookie(responseCookie);
     }
@@ -552,16 +611,17 @@ import java.util.Optional;
      * @return True if it is stored
      */
     public boolean hasHeader(final HeaderOption headerOption) {
-        return this.headers.containsKey(headerOption);
+        return this.headers.contains(headerOption);
     }
 
     /**
-     * Get a copy of the stored header pairs
+     * Get a copy of the stored header pairs. The copy shares storage with the header until either is modified, so
+     * this is cheap to call.
      *
      * @return Copy of the internal map
      */
-    public ListMultiMap<HeaderOption, AsciiString> getHeaders() {
-        return this.headers.getCopy();
+    public HeaderMap getHeaders() {
+        return this.headers.copy();
     }
 
 }
@@ -0,0 +1,516 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Flat, array backed header storage. Headers that have been registered through {@link HeaderOption} are stored in a
+ * fixed slot (see {@link HeaderOption#getIndex()}), all other headers - as well as any additional values of
+ * multi-valued headers - are stored in an overflow list. Lookups are case insensitive and do not allocate.
+ * <p>
+ * Entries can be iterated without allocations using {@link #size()}, {@link #getName(int)} and {@link
+ * #getValue(int)}. Values of the same header are always iterated in insertion order.
+ * <p>
+ * Copies created using {@link #copy()} share the backing arrays with the original map, until either of them is
+ * modified. The map is not thread safe.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"}) public final class HeaderMap {
+
+    private static final int DEFAULT_OVERFLOW_CAPACITY = 4;
+
+    static {
+        // Make sure that the well-known headers have been registered before any map is
+        // populated, otherwise they would end up in the overflow list
+        Objects.requireNonNull(Header.HEADER_CONTENT_TYPE);
+    }
+
+    // Slot storage, indexed by HeaderOption#getIndex
+    private AsciiString[] slots;
+    // Options that occupy a slot, in insertion order
+    private HeaderOption[] order;
+    private int orderSize;
+
+    // Overflow storage. The option is null for headers that aren't registered
+    private HeaderOption[] overflowOptions;
+    private AsciiString[] overflowNames;
+    private AsciiString[] overflowValues;
+    private int overflowSize;
+
+    private boolean shared;
+
+    public HeaderMap() {
+        final int slotCount = Math.max(HeaderOption.getSlotCount(), 1);
+        this.slots = new AsciiString[slotCount];
+        this.order = new HeaderOption[Math.min(slotCount, 16)];
+        this.overflowOptions = new HeaderOption[DEFAULT_OVERFLOW_CAPACITY];
+        this.overflowNames = new AsciiString[DEFAULT_OVERFLOW_CAPACITY];
+        this.overflowValues = new AsciiString[DEFAULT_OVERFLOW_CAPACITY];
+    }
+
+    private HeaderMap(final HeaderMap other) {
+        this.slots = other.slots;
+        this.order = other.order;
+        this.orderSize = other.orderSize;
+        this.overflowOptions = other.overflowOptions;
+        this.overflowNames = other.overflowNames;
+        this.overflowValues = other.overflowValues;
+        this.overflowSize = other.overflowSize;
+        this.shared = true;
+    }
+
+    /**
+     * Create a copy of this map. The copy shares storage with this map until either map is modified.
+     *
+     * @return Copy
+     */
+    public HeaderMap copy() {
+        this.shared = true;
+        return new HeaderMap(this);
+    }
+
+    /**
+     * Add a header value, keeping any existing values for the header
+     *
+     * @param option Header key
+     * @param value  Header value
+     */
+    public void add(final HeaderOption option, final AsciiString value) {
+        this.prepareWrite();
+        final int index = option.getIndex();
+        this.ensureSlot(index);
+        if (this.slots[index] == null) {
+            this.slots[index] = value;
+            if (this.orderSize == this.order.length) {
+                this.order = Arrays.copyOf(this.order, this.order.length << 1);
+            }
+            this.order[this.orderSize++] = option;
+        } else {
+            this.addOverflow(option, option.getText(), value);
+        }
+    }
+
+    /**
+     * Add a header value, keeping any existing values for the header. If the name matches a registered {@link
+     * HeaderOption} the value will be stored in the slot of that option.
+     *
+     * @param name  Header name
+     * @param value Header value
+     */
+    public void add(final AsciiString name, final AsciiString value) {
+        final HeaderOption option = HeaderOption.lookup(name);
+        if (option != null) {
+            this.add(option, value);
+        } else {
+            this.prepareWrite();
+            this.addOverflow(null, name, value);
+        }
+    }
+
+    /**
+     * Add all entries from another map
+     *
+     * @param other Other map
+     */
+    public void addAll(final HeaderMap other) {
+        for (int i = 0; i < other.size(); i++) {
+            final HeaderOption option = other.getOption(i);
+            if (option != null) {
+                this.add(option, other.getValue(i));
+            } else {
+                this.add(other.getName(i), other.getValue(i));
+            }
+        }
+    }
+
+    /**
+     * Replace all values of a header. If the value is null, the header will be removed.
+     *
+     * @param option Header key
+     * @param value  Header value
+     */
+    public void set(final HeaderOption option, final AsciiString value) {
+        this.remove(option);
+        if (value != null) {
+            this.add(option, value);
+        }
+    }
+
+    /**
+     * Get the first value of a header
+     *
+     * @param option Header key
+     * @return The value, or null if the header isn't stored
+     */
+    public AsciiString get(final HeaderOption option) {
+        final int index = option.getIndex();
+        if (index >= this.slots.length) {
+            return null;
+        }
+        return this.slots[index];
+    }
+
+    /**
+     * Get the first value of a header, ignoring the case of the header name
+     *
+     * @param name Header name
+     * @return The value, or null if the header isn't stored
+     */
+    public AsciiString get(final CharSequence name) {
+        final HeaderOption option = HeaderOption.lookup(name);
+        if (option != null) {
+            return this.get(option);
+        }
+        for (int i = 0; i < this.overflowSize; i++) {
+            if (this.overflowOptions[i] == null && this.overflowNames[i].equalsIgnoreCase(name)) {
+                return this.overflowValues[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the first value of a header, or a default value if the header isn't stored
+     *
+     * @param name         Header name
+     * @param defaultValue Default value
+     * @return The value, or the default value
+     */
+    public AsciiString getOrDefault(final CharSequence name, final AsciiString defaultValue) {
+        final AsciiString value = this.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Get all values of a header, in insertion order
+     *
+     * @param option Header key
+     * @return List containing all values
+     */
+    public List<AsciiString> getAll(final HeaderOption option) {
+        final AsciiString first = this.get(option);
+        if (first == null) {
+            return Collections.emptyList();
+        }
+        final List<AsciiString> values = new ArrayList<>(1);
+        values.add(first);
+        for (int i = 0; i < this.overflowSize; i++) {
+            if (this.overflowOptions[i] == option) {
+                values.add(this.overflowValues[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Check whether a header is stored
+     *
+     * @param option Header key
+     * @return True if the header is stored
+     */
+    public boolean contains(final HeaderOption option) {
+        return this.get(option) != null;
+    }
+
+    /**
+     * Check whether a header is stored, ignoring the case of the header name
+     *
+     * @param name Header name
+     * @return True if the header is stored
+     */
+    public boolean contains(final CharSequence name) {
+        return this.get(name) != null;
+    }
+
+    /**
+     * Check whether a specific header value is stored
+     *
+     * @param option Header key
+     * @param value  Header value
+     * @return True if the value is stored
+     */
+    public boolean contains(final HeaderOption option, final AsciiString value) {
+        final AsciiString first = this.get(option);
+        if (first == null) {
+            return false;
+        }
+        if (first.equals(value)) {
+            return true;
+        }
+        return this.findOverflow(option, value) != -1;
+    }
+
+    /**
+     * Remove all values of a header
+     *
+     * @param option Header key
+     * @return True if anything was removed
+     */
+    public boolean remove(final HeaderOption option) {
+        if (!this.contains(option)) {
+            return false;
+        }
+        this.prepareWrite();
+        this.slots[option.getIndex()] = null;
+        this.removeOrder(option);
+        int size = 0;
+        for (int i = 0; i < this.overflowSize; i++) {
+            if (this.overflowOptions[i] != option) {
+                this.overflowOptions[size] = this.overflowOptions[i];
+                this.overflowNames[size] = this.overflowNames[i];
+                this.overflowValues[size++] = this.overflowValues[i];
+            }
+        }
+        this.truncateOverflow(size);
+        return true;
+    }
+
+    /**
+     * Remove a specific header value. The order of the remaining values is retained.
+     *
+     * @param option Header key
+     * @param value  Header value
+     * @return True if the value was removed
+     */
+    public boolean remove(final HeaderOption option, final AsciiString value) {
+        final AsciiString first = this.get(option);
+        if (first == null) {
+            return false;
+        }
+        if (first.equals(value)) {
+            this.prepareWrite();
+            // Promote the next value into the slot, to keep the value order intact
+            final int next = this.findOverflow(option, null);
+            if (next == -1) {
+                this.slots[option.getIndex()] = null;
+                this.removeOrder(option);
+            } else {
+                this.slots[option.getIndex()] = this.overflowValues[next];
+                this.removeOverflow(next);
+            }
+            return true;
+        }
+        final int position = this.findOverflow(option, value);
+        if (position == -1) {
+            return false;
+        }
+        this.prepareWrite();
+        this.removeOverflow(position);
+        return true;
+    }
+
+    /**
+     * Remove all headers
+     */
+    public void clear() {
+        if (this.shared) {
+            this.slots = new AsciiString[this.slots.length];
+            this.order = new HeaderOption[this.order.length];
+            this.overflowOptions = new HeaderOption[DEFAULT_OVERFLOW_CAPACITY];
+            this.overflowNames = new AsciiString[DEFAULT_OVERFLOW_CAPACITY];
+            this.overflowValues = new AsciiString[DEFAULT_OVERFLOW_CAPACITY];
+            this.shared = false;
+        } else {
+            for (int i = 0; i < this.orderSize; i++) {
+                this.slots[this.order[i].getIndex()] = null;
+                this.order[i] = null;
+            }
+            this.truncateOverflow(0);
+        }
+        this.orderSize = 0;
+        this.overflowSize = 0;
+    }
+
+    /**
+     * Get the number of stored header values
+     *
+     * @return Number of values
+     */
+    public int size() {
+        return this.orderSize + this.overflowSize;
+    }
+
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    /**
+     * Get the registered option of the entry at a position
+     *
+     * @param position Entry position, 0 &le; position &lt; {@link #size()}
+     * @return The option, or null if the header hasn't been registered
+     */
+    public HeaderOption getOption(final int position) {
+        if (position < this.orderSize) {
+            return this.order[position];
+        }
+        return this.overflowOptions[this.checkOverflowPosition(position)];
+    }
+
+    /**
+     * Get the header name of the entry at a position
+     *
+     * @param position Entry position, 0 &le; position &lt; {@link #size()}
+     * @return Header name
+     */
+    public AsciiString getName(final int position) {
+        if (position < this.orderSize) {
+            return this.order[position].getText();
+        }
+        return this.overflowNames[this.checkOverflowPosition(position)];
+    }
+
+    /**
+     * Get the header value of the entry at a position
+     *
+     * @param position Entry position, 0 &le; position &lt; {@link #size()}
+     * @return Header value
+     */
+    public AsciiString getValue(final int position) {
+        if (position < this.orderSize) {
+            return this.slots[this.order[position].getIndex()];
+        }
+        return this.overflowValues[this.checkOverflowPosition(position)];
+    }
+
+    /**
+     * Iterate over all stored entries
+     *
+     * @param consumer Consumer accepting the header name and value
+     */
+    public void forEach(final BiConsumer<AsciiString, AsciiString> consumer) {
+        for (int i = 0; i < this.size(); i++) {
+            consumer.accept(this.getName(i), this.getValue(i));
+        }
+    }
+
+    @Override public String toString() {
+        final StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < this.size(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(this.getName(i)).append('=').append(this.getValue(i));
+        }
+        return builder.append('}').toString();
+    }
+
+    private int checkOverflowPosition(final int position) {
+        final int overflowPosition = position - this.orderSize;
+        if (overflowPosition < 0 || overflowPosition >= this.overflowSize) {
+            throw new IndexOutOfBoundsException(
+                String.format("Position %d out of bounds for size %d", position, this.size()));
+        }
+        return overflowPosition;
+    }
+
+    /**
+     * Find the position of a value in the overflow list
+     *
+     * @param option Header key
+     * @param value  Value to search for, or null to find the first value of the header
+     * @return Overflow position, or -1
+     */
+    private int findOverflow(final HeaderOption option, final AsciiString value) {
+        for (int i = 0; i < this.overflowSize; i++) {
+            if (this.overflowOptions[i] == option && (value == null || value
+                .equals(this.overflowValues[i]))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void addOverflow(final HeaderOption option, final AsciiString name,
+        final AsciiString value) {
+        if (this.overflowSize == this.overflowValues.length) {
+            final int capacity = this.overflowValues.length << 1;
+            this.overflowOptions = Arrays.copyOf(this.overflowOptions, capacity);
+            this.overflowNames = Arrays.copyOf(this.overflowNames, capacity);
+            this.overflowValues = Arrays.copyOf(this.overflowValues, capacity);
+        }
+        this.overflowOptions[this.overflowSize] = option;
+        this.overflowNames[this.overflowSize] = name;
+        this.overflowValues[this.overflowSize++] = value;
+    }
+
+    private void removeOverflow(final int position) {
+        final int moved = this.overflowSize - position - 1;
+        if (moved > 0) {
+            System.arraycopy(this.overflowOptions, position + 1, this.overflowOptions, position,
+                moved);
+            System.arraycopy(this.overflowNames, position + 1, this.overflowNames, position, moved);
+            System
+                .arraycopy(this.overflowValues, position + 1, this.overflowValues, position, moved);
+        }
+        this.truncateOverflow(this.overflowSize - 1);
+    }
+
+    private void truncateOverflow(final int size) {
+        for (int i = size; i < this.overflowSize; i++) {
+            this.overflowOptions[i] = null;
+            this.overflowNames[i] = null;
+            this.overflowValues[i] = null;
+        }
+        this.overflowSize = size;
+    }
+
+    private void removeOrder(final HeaderOption option) {
+        for (int i = 0; i < this.orderSize; i++) {
+            if (this.order[i] == option) {
+                System.arraycopy(this.order, i + 1, this.order, i, this.orderSize - i - 1);
+                this.order[--this.orderSize] = null;
+                return;
+            }
+        }
+    }
+
+    private void ensureSlot(final int index) {
+        if (index >= this.slots.length) {
+            this.slots = Arrays
+                .copyOf(this.slots, Math.max(index + 1, HeaderOption.getSlotCount()));
+        }
+    }
+
+    /**
+     * Make sure that the backing arrays are owned by this instance, before they are modified
+     */
+    private void prepareWrite() {
+        if (!this.shared) {
+            return;
+        }
+        this.slots = this.slots.clone();
+        this.order = this.order.clone();
+        this.overflowOptions = this.overflowOptions.clone();
+        this.overflowNames = this.overflowNames.clone();
+        this.overflowValues = this.overflowValues.clone();
+        this.shared = false;
+    }
+
+}
@@ -21,49 +21,198 @@
  */
 package xyz.kvantum.server.api.response;
 
-import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.util.AsciiString;
 import xyz.kvantum.server.api.util.AsciiStringable;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
-@SuppressWarnings("unused") @EqualsAndHashCode(of = "text")
-@RequiredArgsConstructor(access = AccessLevel.PRIVATE) public final class HeaderOption
+/**
+ * A header key. Every created option is registered in a global registry, and assigned a unique slot index that is
+ * used by {@link HeaderMap} to store the option's value in a fixed position.
+ */
+@SuppressWarnings("unused") @EqualsAndHashCode(of = "text") public final class HeaderOption
     implements AsciiStringable {
 
-    private static Map<AsciiString, HeaderOption> headerOptionMap = new HashMap<>();
+    private static final Object registryLock = new Object();
+
+    /**
+     * Open addressing table, keyed by the case insensitive hash of the option text. The table is replaced
+     * (never modified) when new options are registered, so that lookups can be performed without locking
+     */
+    private static volatile HeaderOption[] lookupTable = new HeaderOption[128];
+    private static volatile HeaderOption[] slotTable = new HeaderOption[64];
+    private static volatile int registered = 0;
 
     @Getter private final AsciiString text;
+    @Getter private final int index;
     @Getter private boolean cacheApplicable = true;
 
+    private HeaderOption(final AsciiString text, final int index) {
+        this.text = text;
+        this.index = index;
+    }
+
     public static HeaderOption create(final String string) {
-        return create(AsciiString.of(string));
+        return create(AsciiString.of(string, true));
     }
 
     public static HeaderOption create(final AsciiString text) {
         return create(text, true);
     }
 
+    /**
+     * Create and register a header option. If an option with the exact same text has already been registered, that
+     * option (and its slot index) is returned instead, so that equal options always share a slot
+     *
+     * @param text            Header name
+     * @param cacheApplicable Whether the header may be cached. Ignored if the option already exists
+     * @return The registered option
+     */
     public static HeaderOption create(final AsciiString text, boolean cacheApplicable) {
-        final HeaderOption headerOption = new HeaderOption(text).cacheApplicable(cacheApplicable);
-        headerOptionMap.put(text.toLowerCase(), headerOption);
-        return headerOption;
+        synchronized (registryLock) {
+            final HeaderOption existing = findRegistered(text);
+            if (existing != null) {
+                return existing;
+            }
+            final HeaderOption headerOption =
+                new HeaderOption(text, registered).cacheApplicable(cacheApplicable);
+            register(headerOption);
+            // Request headers are compiled in lower case, intern that form too so they can be shared
+            AsciiString.getPool().intern(text.toLowerCase());
+            return headerOption;
+        }
     }
 
     public static HeaderOption getOrCreate(final AsciiString text) {
-        if (headerOptionMap.containsKey(text.toLowerCase())) {
-            return headerOptionMap.get(text.toLowerCase());
+        final HeaderOption option = lookup(text);
+        if (option != null) {
+            return option;
+        }
+        synchronized (registryLock) {
+            // Another thread may have registered the option while we waited for the lock
+            final HeaderOption registeredOption = lookup(text);
+            if (registeredOption != null) {
+                return registeredOption;
+            }
+            if (CoreConfig.debug) {
+                Logger.debug("View requested unknown header [{}] - Creating...", text);
+            }
+            return create(text);
+        }
+    }
+
+    /**
+     * Find a registered header option by its name, ignoring case. This does not allocate.
+     *
+     * @param name Header name
+     * @return The registered option, or null if no option with the name has been registered
+     */
+    public static HeaderOption lookup(final CharSequence name) {
+        final HeaderOption[] table = lookupTable;
+        final int mask = table.length - 1;
+        int position = spread(AsciiString.hashCodeIgnoreCase(name)) & mask;
+        HeaderOption option;
+        while ((option = table[position]) != null) {
+            if (option.text.equalsIgnoreCase(name)) {
+                return option;
+            }
+            position = (position + 1) & mask;
         }
-        if (CoreConfig.debug) {
-            Logger.debug("View requested unknown header [{}] - Creating...", text);
+        return null;
+    }
+
+    /**
+     * Get the option that occupies a slot index
+     *
+     * @param index Slot index
+     * @return The option, or null if no option is assigned to the index
+     */
+    public static HeaderOption getBySlot(final int index) {
+        final HeaderOption[] table = slotTable;
+        if (index < 0 || index >= table.length) {
+            return null;
         }
-        return create(text);
+        return table[index];
+    }
+
+    /**
+     * Get the number of slot indices that have been assigned
+     *
+     * @return Number of registered options
+     */
+    public static int getSlotCount() {
+        return registered;
+    }
+
+    /**
+     * Find a registered option whose text is equal to the given text. Must be called while holding the registry
+     * lock
+     */
+    private static HeaderOption findRegistered(final AsciiString text) {
+        final HeaderOption option = lookup(text);
+        if (option == null) {
+            return null;
+        }
+        if (option.text.equals(text)) {
+            return option;
+        }
+        // The lookup table only holds the latest option for every case insensitive name
+        final HeaderOption[] slots = slotTable;
+        for (int i = 0; i < registered; i++) {
+            if (slots[i].text.equals(text)) {
+                return slots[i];
+            }
+        }
+        return null;
+    }
+
+    private static void register(final HeaderOption option) {
+        final HeaderOption[] slots;
+        if (option.index >= slotTable.length) {
+            slots = Arrays.copyOf(slotTable, slotTable.length << 1);
+        } else {
+            slots = slotTable.clone();
+        }
+        slots[option.index] = option;
+
+        final HeaderOption[] table;
+        if ((registered + 1) * 2 > lookupTable.length) {
+            table = new HeaderOption[lookupTable.length << 1];
+            for (int i = 0; i < option.index; i++) {
+                insert(table, slots[i]);
+            }
+        } else {
+            table = lookupTable.clone();
+        }
+        insert(table, option);
+
+        registered++;
+        slotTable = slots;
+        lookupTable = table;
+    }
+
+    /**
+     * Insert an option into a lookup table. Options with the same (case insensitive) text as an existing entry replace
+     * that entry in lookups, but keep their own slot
+     */
+    private static void insert(final HeaderOption[] table, final HeaderOption option) {
+        final int mask = table.length - 1;
+        int position = spread(AsciiString.hashCodeIgnoreCase(option.text)) & mask;
+        while (table[position] != null) {
+            if (table[position].text.equalsIgnoreCase(option.text)) {
+                break;
+            }
+            position = (position + 1) & mask;
+        }
+        table[position] = option;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
     }
 
     private HeaderOption cacheApplicable(final boolean b) {
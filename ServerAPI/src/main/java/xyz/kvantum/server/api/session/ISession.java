@@ -46,6 +46,25 @@ import java.util.function.Function;
      */
     void setSessionKey(AsciiString sessionKey);
 
+    /**
+     * Check if the session is virtual. Clients without a session are given a virtual session, that is only
+     * created and stored once a value is written to it, or it is {@link #start() started}
+     *
+     * @return True if the session hasn't been created yet
+     */
+    default boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * Make sure that the session is created, and sent to the client, even if nothing is written to it
+     *
+     * @return This instance
+     */
+    default ISession start() {
+        return this;
+    }
+
     /**
      * Mark that the session is deleted
      */
@@ -62,6 +62,51 @@ public interface ISessionDatabase {
         return sessionLoad;
     }
 
+    /**
+     * Check if a session is valid, using both session cookies. Stateless databases verify the session key here,
+     * other databases only look up the session ID
+     *
+     * @param session    Session ID
+     * @param sessionKey Session key provided by the client
+     * @return the session load for the given session if valid, else null
+     */
+    default SessionLoad isValid(final AsciiString session, final AsciiString sessionKey) {
+        return isValid(session);
+    }
+
+    /**
+     * Check if the database is stateless, that is, if the session is kept in the session key (the client
+     * cookie) rather than in the database. Stateless sessions are re-issued by {@link
+     * #issueSessionKey(ISession)} whenever they change
+     *
+     * @return True if the database is stateless
+     */
+    default boolean isStateless() {
+        return false;
+    }
+
+    /**
+     * Check if a session has been revoked. This is checked for every request, including requests for sessions that
+     * are cached by the {@link SessionManager}, so it must not query an external database
+     *
+     * @param session Session ID
+     * @return True if the session has been revoked
+     */
+    default boolean isRevoked(final AsciiString session) {
+        return false;
+    }
+
+    /**
+     * Issue a new session key, if the current session key no longer represents the session. This is only
+     * used by {@link #isStateless() stateless} databases
+     *
+     * @param session Session
+     * @return New session key, or null if the current key is still up to date
+     */
+    default AsciiString issueSessionKey(final ISession session) {
+        return null; // Nullable
+    }
+
     /**
      * Store a session in the database
      *
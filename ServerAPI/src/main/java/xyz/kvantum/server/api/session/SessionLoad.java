@@ -21,12 +21,22 @@
  */
 package xyz.kvantum.server.api.session;
 
+import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
+import lombok.NonNull;
 
-@Getter @RequiredArgsConstructor public final class SessionLoad {
+import java.util.Collections;
+import java.util.Map;
+
+@Getter @AllArgsConstructor public final class SessionLoad {
 
     private final String sessionKey;
     private final long lastActive;
+    // Session values restored by stateless session databases
+    @NonNull private final Map<String, Object> attributes;
+
+    public SessionLoad(final String sessionKey, final long lastActive) {
+        this(sessionKey, lastActive, Collections.emptyMap());
+    }
 
 }
@@ -21,11 +21,13 @@
  */
 package xyz.kvantum.server.api.session;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 import lombok.AllArgsConstructor;
-import lombok.Synchronized;
+import lombok.RequiredArgsConstructor;
 import lombok.val;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.config.Message;
@@ -39,6 +41,10 @@ import xyz.kvantum.server.api.util.Assert;
 import xyz.kvantum.server.api.util.ProviderFactory;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -57,19 +63,131 @@ import java.util.concurrent.TimeUnit;
         Caffeine.newBuilder().maximumSize(CoreConfig.Cache.cachedSessionsMaxItems)
             .removalListener(this::saveSession)
             .expireAfterAccess(CoreConfig.Sessions.sessionTimeout, TimeUnit.SECONDS).build();
+    // Sessions that are being loaded from the session database
+    private final ConcurrentMap<AsciiString, PendingLoad> pendingLoads = new ConcurrentHashMap<>();
+    private final Counter virtualSessions = counter("virtualSessions");
+    private final Counter materializedSessions = counter("materializedSessions");
+    private final Counter databaseLoads = counter("databaseLoads");
+    private final Counter coalescedLoads = counter("coalescedLoads");
+
+    /**
+     * Create a counter for this manager. Once a server is running, the counts are also added to a counter in the
+     * metrics registry, that is shared by all managers
+     */
+    private static Counter counter(final String name) {
+        if (!ServerImplementation.hasImplementation()) {
+            return new Counter();
+        }
+        final Counter shared = ServerImplementation.getImplementation().getMetrics().getRegistry()
+            .counter(MetricRegistry.name(SessionManager.class, name));
+        return new Counter() {
+            @Override public void inc(final long n) {
+                super.inc(n);
+                shared.inc(n);
+            }
+        };
+    }
 
     private ISession createSession(final AbstractRequest r) {
         Assert.isValid(r);
+        this.virtualSessions.inc();
+        return new VirtualSession(this);
+    }
 
+    /**
+     * Create the session behind a {@link VirtualSession}. The session is cached, but it is not stored, and no
+     * cookies are sent, until {@link #finalizeSession(AbstractRequest)} is called
+     *
+     * @return Created session
+     */
+    ISession materializeSession() {
         final AsciiString sessionID = AsciiString.randomUUIDAsciiString();
         if (CoreConfig.debug) {
             Message.SESSION_SET.log(SESSION_KEY, sessionID);
         }
-        final ISession session = createSession(sessionID);
-        saveCookies(r, session, sessionID);
+        final ISession session = sessionCreator.createSession().set("id", sessionID)
+            .set("last_active", System.currentTimeMillis());
+        this.sessions.put(sessionID, session);
+        this.materializedSessions.inc();
         return session;
     }
 
+    /**
+     * Store the session of a request, and send the session cookies, if the session was created during the
+     * request. Sessions from {@link ISessionDatabase#isStateless() stateless} databases are re-issued if they
+     * changed. This is called once the response is finalized. Requests that never wrote to their session don't
+     * cause any database access
+     *
+     * @param r Request
+     */
+    public void finalizeSession(final AbstractRequest r) {
+        final Optional<ISession> requested = r.getRequestedSession();
+        if (!requested.isPresent()) {
+            return;
+        }
+        ISession session = requested.get();
+        boolean sendCookies = false;
+        if (session instanceof VirtualSession) {
+            final VirtualSession virtualSession = (VirtualSession) session;
+            if ((session = virtualSession.getMaterialized()) == null || session.isDeleted()) {
+                return;
+            }
+            if (virtualSession.markPersisted()) {
+                this.sessionDatabase.storeSession(session);
+                sendCookies = true;
+            }
+        } else if (session.isDeleted()) {
+            return;
+        }
+        if (this.sessionDatabase.isStateless()) {
+            final AsciiString sessionKey = this.sessionDatabase.issueSessionKey(session);
+            if (sessionKey != null) {
+                session.setSessionKey(sessionKey);
+                sendCookies = true;
+            }
+        }
+        if (sendCookies) {
+            saveCookies(r, session, (AsciiString) session.get("id"));
+        }
+    }
+
+    /**
+     * Get the number of virtual sessions that have been handed out, to clients without a session
+     *
+     * @return Virtual session count
+     */
+    public long getVirtualSessions() {
+        return this.virtualSessions.getCount();
+    }
+
+    /**
+     * Get the number of virtual sessions that have been materialized, because they were written to
+     *
+     * @return Materialized session count
+     */
+    public long getMaterializedSessions() {
+        return this.materializedSessions.getCount();
+    }
+
+    /**
+     * Get the number of times that a session has been looked up in the session database
+     *
+     * @return Session database lookup count
+     */
+    public long getDatabaseLoads() {
+        return this.databaseLoads.getCount();
+    }
+
+    /**
+     * Get the number of session loads that waited for a concurrent load of the same session, instead of
+     * accessing the session database
+     *
+     * @return Coalesced load count
+     */
+    public long getCoalescedLoads() {
+        return this.coalescedLoads.getCount();
+    }
+
     private void saveSession(final AsciiString key, final ISession value,
         final RemovalCause cause) {
         if (cause != RemovalCause.EXPLICIT) {
@@ -91,8 +209,59 @@ import java.util.concurrent.TimeUnit;
         r.getCookies().put(SESSION_PASS, new Cookie(SESSION_PASS, session.getSessionKey()));
     }
 
-    @Synchronized private ISession createSession(final AsciiString sessionID) {
-        final ISession session = sessionCreator.createSession().set("id", sessionID);
+    /**
+     * Load a session from the session database. Concurrent loads of the same session (with the same session key)
+     * are coalesced, so that only one of the threads accesses the database, and the others wait for its result
+     *
+     * @param sessionID  Session ID
+     * @param sessionKey Session key provided by the client
+     * @return Loaded session, or null if the session is invalid
+     */
+    private ISession loadSession(final AsciiString sessionID, final AsciiString sessionKey) {
+        final PendingLoad pending = new PendingLoad(sessionKey);
+        final PendingLoad existing = this.pendingLoads.putIfAbsent(sessionID, pending);
+        if (existing != null) {
+            if (!existing.sessionKey.equals(sessionKey)) {
+                return this.createSession(sessionID, sessionKey); // The result can't be shared
+            }
+            this.coalescedLoads.inc();
+            try {
+                return existing.future.join();
+            } catch (final CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            // The session may have been loaded between the cache lookup and the registration of this load
+            ISession session = this.sessions.getIfPresent(sessionID);
+            if (session == null || this.sessionDatabase.isRevoked(sessionID) || (this.sessionDatabase.isStateless()
+                && !session.getSessionKey().equals(sessionKey))) {
+                session = this.createSession(sessionID, sessionKey);
+            }
+            pending.future.complete(session);
+            return session;
+        } catch (final RuntimeException | Error e) {
+            // Waiting threads fail as well
+            pending.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.pendingLoads.remove(sessionID, pending);
+        }
+    }
+
+    private ISession createSession(final AsciiString sessionID, final AsciiString sessionKey) {
+        this.databaseLoads.inc();
+        final SessionLoad sessionLoad = this.sessionDatabase.isValid(sessionID, sessionKey);
+        if (sessionLoad == null) {
+            return null; // Nullable
+        }
+        final ISession session = sessionCreator.createSession().set("id", sessionID)
+            .set("last_active", System.currentTimeMillis());
+        session.setSessionKey(AsciiString.of(sessionLoad.getSessionKey(), false));
+        sessionLoad.getAttributes().forEach(session::set);
         this.sessions.put(sessionID, session);
         this.sessionDatabase.storeSession(session);
         return session;
@@ -108,7 +277,7 @@ import java.util.concurrent.TimeUnit;
      * @param r Request to query from
      * @return (Optional) session
      */
-    @Synchronized public Optional<ISession> getSession(final AbstractRequest r) {
+    public Optional<ISession> getSession(final AbstractRequest r) {
         Assert.isValid(r);
 
         ISession session = null;
@@ -137,6 +306,7 @@ import java.util.concurrent.TimeUnit;
             //
             // Check the session cache
             //
+            boolean load = false;
             if ((session = this.sessions.getIfPresent(sessionCookie)) != null) {
                 if (CoreConfig.debug) {
                     Message.SESSION_FOUND.log(session, sessionCookie, r);
@@ -154,15 +324,37 @@ import java.util.concurrent.TimeUnit;
                     this.sessions.invalidate(sessionCookie);
                     this.sessionDatabase.deleteSession(sessionCookie);
                     session = null;
+                } else if (this.sessionDatabase.isRevoked(sessionCookie)) {
+                    //
+                    // The session was revoked after it was cached
+                    //
+                    if (CoreConfig.debug) {
+                        Message.SESSION_DELETED_OTHER.log(session, "Session revoked");
+                    }
+                    session.setDeleted();
+                    this.sessions.invalidate(sessionCookie);
+                    session = null;
+                } else if (this.sessionDatabase.isStateless() && !session.getSessionKey()
+                    .equals(sessionPassCookie)) {
+                    //
+                    // The client has another token than the cached session, which may have been issued
+                    // by another server instance. The token is what counts, so the session is restored
+                    // from it (if it is valid)
+                    //
+                    this.sessions.invalidate(sessionCookie);
+                    session = null;
+                    load = true;
                 }
             } else {
+                load = true;
+            }
+
+            if (load) {
                 //
                 // If it cannot be found, try to load it from the database
                 //
-                final SessionLoad load = sessionDatabase.isValid(sessionCookie);
-                if (load != null) {
-                    session = createSession(sessionCookie);
-                    session.setSessionKey(AsciiString.of(load.getSessionKey(), false));
+                session = loadSession(sessionCookie, sessionPassCookie);
+                if (session != null) {
                     return Optional.of(session);
                 } else {
                     // Session isn't valid, remove old cookie
@@ -188,7 +380,7 @@ import java.util.concurrent.TimeUnit;
         }
 
         //
-        // STEP 2 (2): Create a new session
+        // STEP 2 (2): Hand out a virtual session, that is only created once it is written to
         //
         if (session == null) {
             session = createSession(r);
@@ -213,6 +405,9 @@ import java.util.concurrent.TimeUnit;
      * @param sessionID Session ID to update information for
      */
     public void setSessionLastActive(final AsciiString sessionID) {
+        if (sessionID == null) {
+            return; // Virtual session
+        }
         final Optional<ISession> session = getSession(sessionID);
         session.ifPresent(iSession -> iSession.set("last_active", System.currentTimeMillis()));
     }
@@ -225,4 +420,10 @@ import java.util.concurrent.TimeUnit;
         return "session";
     }
 
+    @RequiredArgsConstructor private static final class PendingLoad {
+
+        private final AsciiString sessionKey;
+        private final CompletableFuture<ISession> future = new CompletableFuture<>();
+    }
+
 }
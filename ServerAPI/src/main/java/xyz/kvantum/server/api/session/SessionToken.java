@@ -0,0 +1,51 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.session;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Decoded session token, as issued by a {@link SessionTokenCodec}
+ */
+@Getter @ToString(of = {"sessionId", "keyId", "issuedAt", "expiresAt"}) public final class SessionToken {
+
+    private final String sessionId;
+    private final int keyId;
+    private final long issuedAt;
+    private final long expiresAt;
+    private final Map<String, Object> attributes;
+
+    SessionToken(@NonNull final String sessionId, final int keyId, final long issuedAt,
+        final long expiresAt, @NonNull final Map<String, Object> attributes) {
+        this.sessionId = sessionId;
+        this.keyId = keyId;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+        this.attributes = Collections.unmodifiableMap(attributes);
+    }
+
+}
@@ -0,0 +1,398 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.session;
+
+import lombok.Getter;
+import lombok.NonNull;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes sessions into self contained, HMAC-SHA256 signed tokens that can be stored in a cookie. The payload can
+ * also be encrypted (AES-GCM), so that the attributes can't be read by the client.
+ * <p>
+ * Keys are rotated by adding a new secret to the front of the secret list: tokens are always signed with the
+ * first secret, but tokens signed with any of the other secrets are still accepted until they expire. Every
+ * token carries the id of the key it was signed with, so verification never has to try more than one key.
+ * <p>
+ * Only attributes of the types {@link String}, {@link Integer}, {@link Long}, {@link Boolean} and {@link
+ * Double} are encoded. Other attributes are left out of the token
+ */
+@SuppressWarnings({"unused", "WeakerAccess"}) public final class SessionTokenCodec {
+
+    private static final byte VERSION = 1;
+    private static final byte FLAG_ENCRYPTED = 1;
+    private static final int HEADER_LENGTH = 6;
+    private static final int MAC_LENGTH = 32;
+    private static final int IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_INTEGER = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_BOOLEAN = 3;
+    private static final byte TYPE_DOUBLE = 4;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecureRandom random = new SecureRandom();
+    private final List<Key> keys;
+    private final Map<Integer, Key> keysById = new HashMap<>();
+    @Getter private final boolean encrypt;
+    @Getter private final int maxTokenSize;
+
+    /**
+     * @param secrets      Secrets, the first one is used to sign new tokens. At least 16 bytes each
+     * @param encrypt      Whether or not to encrypt the token payload
+     * @param maxTokenSize Maximum length of an encoded token
+     */
+    public SessionTokenCodec(@NonNull final List<byte[]> secrets, final boolean encrypt,
+        final int maxTokenSize) {
+        if (secrets.isEmpty()) {
+            throw new IllegalArgumentException("At least one secret is required");
+        }
+        this.keys = new ArrayList<>(secrets.size());
+        for (final byte[] secret : secrets) {
+            if (secret.length < 16) {
+                throw new IllegalArgumentException("Session secrets must be at least 16 bytes long");
+            }
+            final Key key = new Key(secret);
+            if (this.keysById.putIfAbsent(key.id, key) != null) {
+                throw new IllegalArgumentException("Duplicate session secret");
+            }
+            this.keys.add(key);
+        }
+        this.encrypt = encrypt;
+        this.maxTokenSize = maxTokenSize;
+    }
+
+    /**
+     * Generate a random secret
+     *
+     * @return 32 byte secret
+     */
+    public static byte[] generateSecret() {
+        final byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+
+    private static byte[] derive(final byte[] secret, final String purpose) {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            return mac.doFinal(purpose.getBytes(StandardCharsets.US_ASCII));
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encode and sign a session token
+     *
+     * @param sessionId  Session ID
+     * @param issuedAt   Issue timestamp (milliseconds)
+     * @param expiresAt  Expiry timestamp (milliseconds)
+     * @param attributes Session attributes. Values of unsupported types are skipped
+     * @return Encoded token
+     * @throws IllegalStateException If the encoded token is longer than the max token size
+     */
+    public AsciiString encode(@NonNull final String sessionId, final long issuedAt, final long expiresAt,
+        @NonNull final Map<String, Object> attributes) {
+        final Key key = this.keys.get(0);
+        final byte[] payload = writePayload(sessionId, issuedAt, expiresAt, attributes);
+        final ByteArrayOutputStream token = new ByteArrayOutputStream(payload.length + 64);
+        token.write(VERSION);
+        writeInt(token, key.id);
+        token.write(this.encrypt ? FLAG_ENCRYPTED : 0);
+        if (this.encrypt) {
+            final byte[] iv = new byte[IV_LENGTH];
+            this.random.nextBytes(iv);
+            token.write(iv, 0, iv.length);
+            final byte[] encrypted = key.cipher(Cipher.ENCRYPT_MODE, iv, payload);
+            token.write(encrypted, 0, encrypted.length);
+        } else {
+            token.write(payload, 0, payload.length);
+        }
+        final byte[] signed = token.toByteArray();
+        final byte[] mac = key.sign(signed, signed.length);
+        token.write(mac, 0, mac.length);
+        final byte[] encoded = ENCODER.encode(token.toByteArray());
+        if (encoded.length > this.maxTokenSize) {
+            throw new IllegalStateException(String
+                .format("Session token is %d bytes long, the limit is %d bytes", encoded.length,
+                    this.maxTokenSize));
+        }
+        return AsciiString.of(encoded);
+    }
+
+    /**
+     * Verify and decode a token. Tokens that are malformed, signed with an unknown key, tampered with or
+     * expired are rejected
+     *
+     * @param token Encoded token
+     * @param now   Current time (milliseconds)
+     * @return Decoded token, or null if the token is invalid
+     */
+    public SessionToken decode(final CharSequence token, final long now) {
+        if (token == null || token.length() == 0 || token.length() > this.maxTokenSize) {
+            return null; // Nullable
+        }
+        final byte[] bytes;
+        try {
+            bytes = DECODER.decode(token.toString());
+        } catch (final IllegalArgumentException e) {
+            return null; // Nullable
+        }
+        if (bytes.length < HEADER_LENGTH + MAC_LENGTH || bytes[0] != VERSION) {
+            return null; // Nullable
+        }
+        final int keyId = ((bytes[1] & 0xFF) << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 8)
+            | (bytes[4] & 0xFF);
+        final Key key = this.keysById.get(keyId);
+        if (key == null) {
+            return null; // Nullable
+        }
+        final int signedLength = bytes.length - MAC_LENGTH;
+        final byte[] expected = key.sign(bytes, signedLength);
+        final byte[] actual = new byte[MAC_LENGTH];
+        System.arraycopy(bytes, signedLength, actual, 0, MAC_LENGTH);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return null; // Nullable
+        }
+        byte[] payload;
+        if ((bytes[5] & FLAG_ENCRYPTED) != 0) {
+            if (signedLength < HEADER_LENGTH + IV_LENGTH) {
+                return null; // Nullable
+            }
+            final byte[] iv = new byte[IV_LENGTH];
+            System.arraycopy(bytes, HEADER_LENGTH, iv, 0, IV_LENGTH);
+            final byte[] encrypted = new byte[signedLength - HEADER_LENGTH - IV_LENGTH];
+            System.arraycopy(bytes, HEADER_LENGTH + IV_LENGTH, encrypted, 0, encrypted.length);
+            try {
+                payload = key.cipher(Cipher.DECRYPT_MODE, iv, encrypted);
+            } catch (final IllegalStateException e) {
+                return null; // Nullable
+            }
+        } else {
+            payload = new byte[signedLength - HEADER_LENGTH];
+            System.arraycopy(bytes, HEADER_LENGTH, payload, 0, payload.length);
+        }
+        final SessionToken decoded;
+        try {
+            decoded = readPayload(keyId, payload);
+        } catch (final IOException e) {
+            return null; // Nullable
+        }
+        if (decoded.getExpiresAt() <= now) {
+            return null; // Nullable
+        }
+        return decoded;
+    }
+
+    /**
+     * Check whether or not a token was signed with the current (first) key
+     *
+     * @param token Decoded token
+     * @return True if the token was signed with the current key
+     */
+    public boolean isCurrentKey(@NonNull final SessionToken token) {
+        return token.getKeyId() == this.keys.get(0).id;
+    }
+
+    /**
+     * Get the attributes of a map that would be encoded into a token
+     *
+     * @param attributes Attributes
+     * @return Encodable attributes
+     */
+    public static Map<String, Object> encodable(@NonNull final Map<String, Object> attributes) {
+        final Map<String, Object> encodable = new HashMap<>();
+        attributes.forEach((key, value) -> {
+            if (typeOf(value) != -1) {
+                encodable.put(key, value);
+            }
+        });
+        return encodable;
+    }
+
+    private static int typeOf(final Object value) {
+        if (value instanceof String) {
+            return TYPE_STRING;
+        } else if (value instanceof Integer) {
+            return TYPE_INTEGER;
+        } else if (value instanceof Long) {
+            return TYPE_LONG;
+        } else if (value instanceof Boolean) {
+            return TYPE_BOOLEAN;
+        } else if (value instanceof Double) {
+            return TYPE_DOUBLE;
+        }
+        return -1;
+    }
+
+    private static byte[] writePayload(final String sessionId, final long issuedAt, final long expiresAt,
+        final Map<String, Object> attributes) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(sessionId);
+            out.writeLong(issuedAt);
+            out.writeLong(expiresAt);
+            final Map<String, Object> encodable = encodable(attributes);
+            out.writeShort(encodable.size());
+            for (final Map.Entry<String, Object> entry : encodable.entrySet()) {
+                out.writeUTF(entry.getKey());
+                final Object value = entry.getValue();
+                final int type = typeOf(value);
+                out.writeByte(type);
+                switch (type) {
+                    case TYPE_STRING:
+                        out.writeUTF((String) value);
+                        break;
+                    case TYPE_INTEGER:
+                        out.writeInt((Integer) value);
+                        break;
+                    case TYPE_LONG:
+                        out.writeLong((Long) value);
+                        break;
+                    case TYPE_BOOLEAN:
+                        out.writeBoolean((Boolean) value);
+                        break;
+                    default:
+                        out.writeDouble((Double) value);
+                        break;
+                }
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static SessionToken readPayload(final int keyId, final byte[] payload) throws IOException {
+        try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            final String sessionId = in.readUTF();
+            final long issuedAt = in.readLong();
+            final long expiresAt = in.readLong();
+            final int size = in.readUnsignedShort();
+            final Map<String, Object> attributes = new LinkedHashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                final String key = in.readUTF();
+                final byte type = in.readByte();
+                switch (type) {
+                    case TYPE_STRING:
+                        attributes.put(key, in.readUTF());
+                        break;
+                    case TYPE_INTEGER:
+                        attributes.put(key, in.readInt());
+                        break;
+                    case TYPE_LONG:
+                        attributes.put(key, in.readLong());
+                        break;
+                    case TYPE_BOOLEAN:
+                        attributes.put(key, in.readBoolean());
+                        break;
+                    case TYPE_DOUBLE:
+                        attributes.put(key, in.readDouble());
+                        break;
+                    default:
+                        throw new IOException("Unknown attribute type: " + type);
+                }
+            }
+            if (in.available() != 0) {
+                throw new IOException("Trailing bytes in session token");
+            }
+            return new SessionToken(sessionId, keyId, issuedAt, expiresAt, attributes);
+        }
+    }
+
+    private static void writeInt(final ByteArrayOutputStream out, final int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static final class Key {
+
+        private final int id;
+        private final Mac mac;
+        private final SecretKeySpec encryptionKey;
+
+        private Key(final byte[] secret) {
+            final byte[] identifier = derive(secret, "kvantum-session-id");
+            this.id = ((identifier[0] & 0xFF) << 24) | ((identifier[1] & 0xFF) << 16) | (
+                (identifier[2] & 0xFF) << 8) | (identifier[3] & 0xFF);
+            try {
+                this.mac = Mac.getInstance("HmacSHA256");
+                this.mac.init(new SecretKeySpec(derive(secret, "kvantum-session-signing"), "HmacSHA256"));
+            } catch (final GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            this.encryptionKey =
+                new SecretKeySpec(derive(secret, "kvantum-session-encryption"), 0, 16, "AES");
+        }
+
+        private byte[] sign(final byte[] bytes, final int length) {
+            final Mac mac;
+            try {
+                // The initialized prototype is cloned, so that the key schedule is only computed once
+                mac = (Mac) this.mac.clone();
+            } catch (final CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+            mac.update(bytes, 0, length);
+            return mac.doFinal();
+        }
+
+        private byte[] cipher(final int mode, final byte[] iv, final byte[] input) {
+            try {
+                final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(mode, this.encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+                return cipher.doFinal(input);
+            } catch (final GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+}
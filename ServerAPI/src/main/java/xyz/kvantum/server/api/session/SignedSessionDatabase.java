@@ -0,0 +1,191 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.session;
+
+import lombok.Getter;
+import lombok.NonNull;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.logging.Logger;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stateless {@link ISessionDatabase} that keeps the session in the session key cookie, as a signed (and optionally
+ * encrypted) {@link SessionTokenCodec token}. Validating a session never requires a lookup, so any server instance
+ * that shares the secrets can serve any client.
+ * <p>
+ * Tokens are re-issued when the session values change, when half of their lifetime has passed and when they were
+ * signed with a key that is no longer the current key. Sessions can be revoked before they expire using {@link
+ * #deleteSession(AsciiString)}; revoked session IDs are kept in a local deny-list until their tokens would have
+ * expired. The deny-list is not shared between server instances
+ */
+@SuppressWarnings({"unused", "WeakerAccess"}) public final class SignedSessionDatabase
+    implements ISessionDatabase {
+
+    private static final String KEY_ID = "id";
+    private static final String KEY_LAST_ACTIVE = "last_active";
+
+    @Getter private final SessionTokenCodec codec;
+    private final long lifetime;
+    // Fingerprint of revoked session IDs -> time at which their tokens expire
+    private final Map<Long, Long> denyList = new ConcurrentHashMap<>();
+    private volatile long nextPurge;
+
+    /**
+     * @param codec    Token codec
+     * @param lifetime Token lifetime (milliseconds)
+     */
+    public SignedSessionDatabase(@NonNull final SessionTokenCodec codec, final long lifetime) {
+        if (lifetime <= 0) {
+            throw new IllegalArgumentException("The token lifetime must be positive");
+        }
+        this.codec = codec;
+        this.lifetime = lifetime;
+    }
+
+    /**
+     * Create a database using the secrets and limits from {@link CoreConfig.Sessions}
+     *
+     * @return Database
+     */
+    public static SignedSessionDatabase fromConfig() {
+        final List<byte[]> secrets = new ArrayList<>();
+        for (final String key : CoreConfig.Sessions.signingKeys) {
+            secrets.add(Base64.getDecoder().decode(key.trim()));
+        }
+        if (secrets.isEmpty()) {
+            Logger.warn("No session signing keys are configured, a temporary key will be used."
+                + " Sessions will not survive restarts, nor be shared between instances");
+            secrets.add(SessionTokenCodec.generateSecret());
+        }
+        return new SignedSessionDatabase(
+            new SessionTokenCodec(secrets, CoreConfig.Sessions.encryptTokens,
+                CoreConfig.Sessions.maxTokenSize),
+            TimeUnit.SECONDS.toMillis(CoreConfig.Sessions.sessionTimeout));
+    }
+
+    private static long fingerprint(final CharSequence sessionID) {
+        // FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sessionID.length(); i++) {
+            hash ^= sessionID.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override public void setup() {
+    }
+
+    @Override public boolean isStateless() {
+        return true;
+    }
+
+    @Override public SessionLoad getSessionLoad(final AsciiString sessionID) {
+        return null; // Sessions can't be loaded without their token
+    }
+
+    @Override public SessionLoad isValid(final AsciiString session) {
+        return null; // Nullable
+    }
+
+    @Override public SessionLoad isValid(final AsciiString session, final AsciiString sessionKey) {
+        final long now = System.currentTimeMillis();
+        final SessionToken token = this.codec.decode(sessionKey, now);
+        if (token == null || !token.getSessionId().contentEquals(session) || isRevoked(session)) {
+            return null; // Nullable
+        }
+        return new SessionLoad(sessionKey.toString(), now, token.getAttributes());
+    }
+
+    @Override public AsciiString issueSessionKey(@NonNull final ISession session) {
+        final Object id = session.get(KEY_ID);
+        if (id == null) {
+            return null; // Nullable
+        }
+        final String sessionId = id.toString();
+        final Map<String, Object> attributes = new HashMap<>(SessionTokenCodec.encodable(session.getAll()));
+        attributes.remove(KEY_ID);
+        attributes.remove(KEY_LAST_ACTIVE);
+        final long now = System.currentTimeMillis();
+        final SessionToken current = this.codec.decode(session.getSessionKey(), now);
+        if (current != null && current.getSessionId().equals(sessionId) && this.codec.isCurrentKey(current)
+            && now - current.getIssuedAt() < this.lifetime / 2 && current.getAttributes()
+            .equals(attributes)) {
+            return null; // Nullable
+        }
+        try {
+            return this.codec.encode(sessionId, now, now + this.lifetime, attributes);
+        } catch (final IllegalStateException e) {
+            Logger.warn("Failed to issue session token for session {}: {}", sessionId, e.getMessage());
+            return null; // Nullable
+        }
+    }
+
+    @Override public void storeSession(final ISession session) {
+    }
+
+    @Override public void updateSession(final AsciiString session) {
+    }
+
+    /**
+     * Revoke a session. Its tokens will be rejected by this server instance until they expire
+     *
+     * @param session Session ID to revoke
+     */
+    @Override public void deleteSession(@NonNull final AsciiString session) {
+        final long now = System.currentTimeMillis();
+        this.denyList.put(fingerprint(session), now + this.lifetime);
+        if (now >= this.nextPurge) {
+            this.nextPurge = now + this.lifetime / 16;
+            this.denyList.values().removeIf(expiry -> expiry <= now);
+        }
+    }
+
+    /**
+     * Check if a session has been revoked
+     *
+     * @param session Session ID
+     * @return True if the session has been revoked, and its tokens may not have expired yet
+     */
+    @Override public boolean isRevoked(@NonNull final AsciiString session) {
+        final Long expiry = this.denyList.get(fingerprint(session));
+        return expiry != null && expiry > System.currentTimeMillis();
+    }
+
+    /**
+     * Get the number of entries in the deny-list
+     *
+     * @return Deny-list size
+     */
+    public int getDenyListSize() {
+        return this.denyList.size();
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.session;
+
+import lombok.NonNull;
+import xyz.kvantum.server.api.pojo.KvantumPojo;
+import xyz.kvantum.server.api.pojo.KvantumPojoFactory;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Session handle given to clients that don't have a session yet. Reads are answered without creating a session,
+ * and the session is only created ({@link SessionManager#materializeSession()}) once a value is written or the
+ * session is {@link #start() started}. Storing the session and sending the session cookies is done by {@link
+ * SessionManager#finalizeSession(xyz.kvantum.server.api.request.AbstractRequest)}
+ */
+final class VirtualSession implements ISession {
+
+    private static final KvantumPojoFactory<ISession> kvantumPojoFactory =
+        KvantumPojoFactory.forClass(ISession.class);
+
+    private final SessionManager sessionManager;
+    private volatile ISession session;
+    private volatile boolean deleted;
+    private boolean persisted;
+
+    VirtualSession(@NonNull final SessionManager sessionManager) {
+        this.sessionManager = sessionManager;
+    }
+
+    /**
+     * Get the materialized session
+     *
+     * @return Session, or null if the session is still virtual
+     */
+    ISession getMaterialized() {
+        return this.session;
+    }
+
+    /**
+     * Mark the materialized session as persisted
+     *
+     * @return True if the session hadn't been persisted before
+     */
+    synchronized boolean markPersisted() {
+        if (this.persisted || this.session == null) {
+            return false;
+        }
+        return this.persisted = true;
+    }
+
+    private synchronized ISession materialize() {
+        if (this.session == null) {
+            this.session = this.sessionManager.materializeSession();
+        }
+        return this.session;
+    }
+
+    @Override public boolean isVirtual() {
+        return this.session == null;
+    }
+
+    @Override public ISession start() {
+        this.materialize();
+        return this;
+    }
+
+    @Override public AsciiString getSessionKey() {
+        final ISession session = this.session;
+        return session == null ? null : session.getSessionKey();
+    }
+
+    @Override public void setSessionKey(final AsciiString sessionKey) {
+        this.materialize().setSessionKey(sessionKey);
+    }
+
+    @Override public void setDeleted() {
+        final ISession session = this.session;
+        if (session != null) {
+            session.setDeleted();
+        }
+        this.deleted = true;
+    }
+
+    @Override public boolean isDeleted() {
+        final ISession session = this.session;
+        return session == null ? this.deleted : session.isDeleted();
+    }
+
+    @Override public ISession set(final String key, final Object value) {
+        if (value == null && this.session == null) {
+            return this; // Nothing to remove
+        }
+        this.materialize().set(key, value);
+        return this;
+    }
+
+    @Override public KvantumPojo<ISession> toKvantumPojo() {
+        final ISession session = this.session;
+        return session == null ? kvantumPojoFactory.of(this) : session.toKvantumPojo();
+    }
+
+    @Override public <T> T getOrCompute(final String key, final Function<String, ? extends T> function) {
+        final ISession session = this.session;
+        if (session != null) {
+            return session.getOrCompute(key, function);
+        }
+        final T value = function.apply(key);
+        if (value != null) {
+            return this.materialize().getOrCompute(key, ignored -> value);
+        }
+        return null;
+    }
+
+    @Override public boolean contains(final String variable) {
+        final ISession session = this.session;
+        return session != null && session.contains(variable);
+    }
+
+    @Override public Object get(final String variable) {
+        final ISession session = this.session;
+        return session == null ? null : session.get(variable);
+    }
+
+    @Override public Map<String, Object> getAll() {
+        final ISession session = this.session;
+        return session == null ? Collections.emptyMap() : session.getAll();
+    }
+
+    @Override public String toString() {
+        final ISession session = this.session;
+        return session == null ? "VirtualSession" : session.toString();
+    }
+
+}
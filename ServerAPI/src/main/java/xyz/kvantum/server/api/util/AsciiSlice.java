@@ -0,0 +1,435 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import java.util.Arrays;
+
+/**
+ * US-ASCII string view of a range in a {@link SharedBuffer}. Slices are cheap to create, as they never copy
+ * the underlying bytes, and all operations (comparisons, hashing, searching and numeric parsing) are performed
+ * directly on the buffer.
+ * <p>
+ * A slice is only readable for as long as its buffer hasn't been released. Values that need to outlive the
+ * buffer (i.e. values that escape the request lifecycle) must be converted using {@link #toAsciiString()},
+ * which lazily creates an owned copy. Once that copy exists, the slice reads from it instead of the buffer.
+ * </p>
+ * <p>
+ * Slices are not thread safe, and are meant to be confined to the thread that owns the buffer.
+ * </p>
+ */
+@SuppressWarnings({"unused", "WeakerAccess"}) public final class AsciiSlice
+    implements CharSequence, AsciiStringable, Comparable<CharSequence> {
+
+    private final SharedBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    private AsciiString owned;
+    private int hashCode;
+
+    AsciiSlice(final SharedBuffer buffer, final int offset, final int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    private static int toLowerCase(final int character) {
+        if (character >= 65 && character <= 90) { // uppercase A-Z
+            return character + 32;
+        }
+        return character;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Get the bytes that back this slice. The slice starts at {@link #base()} in the returned array
+     */
+    private byte[] bytes() {
+        if (this.owned != null) {
+            return this.owned.getValue();
+        }
+        return this.buffer.array();
+    }
+
+    private int base() {
+        return this.owned != null ? 0 : this.offset;
+    }
+
+    /**
+     * Check whether the slice can still be read, either because its buffer hasn't been released, or because
+     * an owned copy has been created
+     *
+     * @return True if the slice is readable
+     */
+    public boolean isReadable() {
+        return this.owned != null || !this.buffer.isReleased();
+    }
+
+    /**
+     * Check whether an owned copy of the slice has been created
+     *
+     * @return True if the slice has been materialized
+     */
+    public boolean isMaterialized() {
+        return this.owned != null;
+    }
+
+    @Override public int length() {
+        return this.length;
+    }
+
+    public boolean isEmpty() {
+        return this.length == 0;
+    }
+
+    /**
+     * Get the byte at an index
+     *
+     * @param index Index, relative to the start of the slice
+     * @return Byte
+     */
+    public byte byteAt(final int index) {
+        if (index < 0 || index >= this.length) {
+            throw new IndexOutOfBoundsException(
+                String.format("Index %d out of bounds for length %d", index, this.length));
+        }
+        return this.bytes()[this.base() + index];
+    }
+
+    @Override public char charAt(final int index) {
+        return (char) this.byteAt(index);
+    }
+
+    /**
+     * Create a slice of this slice, sharing the same buffer
+     *
+     * @param start Start index (inclusive)
+     * @param end   End index (exclusive)
+     * @return New slice
+     */
+    public AsciiSlice slice(final int start, final int end) {
+        if (start < 0 || end > this.length || start > end) {
+            throw new IndexOutOfBoundsException(
+                String.format("Range [%d, %d) out of bounds for length %d", start, end, this.length));
+        }
+        if (this.owned != null) {
+            final AsciiSlice slice = new AsciiSlice(this.buffer, this.offset + start, end - start);
+            slice.owned = AsciiString.of(Arrays.copyOfRange(this.owned.getValue(), start, end));
+            return slice;
+        }
+        this.buffer.array(); // Fail fast
+        return new AsciiSlice(this.buffer, this.offset + start, end - start);
+    }
+
+    @Override public CharSequence subSequence(final int start, final int end) {
+        return this.slice(start, end);
+    }
+
+    /**
+     * Create a slice without any leading or trailing spaces or tabs
+     *
+     * @return Trimmed slice, or this slice if there was nothing to trim
+     */
+    public AsciiSlice trim() {
+        final byte[] bytes = this.bytes();
+        final int base = this.base();
+        int start = 0;
+        int end = this.length;
+        while (start < end && isWhitespace(bytes[base + start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(bytes[base + end - 1])) {
+            end--;
+        }
+        if (start == 0 && end == this.length) {
+            return this;
+        }
+        return this.slice(start, end);
+    }
+
+    /**
+     * Find the first occurrence of a character
+     *
+     * @param character Character
+     * @param fromIndex Index to start searching from
+     * @return Index of the character, or -1 if it wasn't found
+     */
+    public int indexOf(final char character, final int fromIndex) {
+        final byte[] bytes = this.bytes();
+        final int base = this.base();
+        for (int i = Math.max(0, fromIndex); i < this.length; i++) {
+            if (bytes[base + i] == character) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first occurrence of a character sequence
+     *
+     * @param sequence  Sequence to search for
+     * @param fromIndex Index to start searching from
+     * @return Index of the start of the sequence, or -1 if it wasn't found
+     */
+    public int indexOf(final CharSequence sequence, final int fromIndex) {
+        final byte[] bytes = this.bytes();
+        final int base = this.base();
+        final int sequenceLength = sequence.length();
+        outer:
+        for (int i = Math.max(0, fromIndex); i <= this.length - sequenceLength; i++) {
+            for (int j = 0; j < sequenceLength; j++) {
+                if (bytes[base + i + j] != sequence.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    public boolean startsWith(final CharSequence sequence) {
+        if (sequence.length() > this.length) {
+            return false;
+        }
+        final byte[] bytes = this.bytes();
+        final int base = this.base();
+        for (int i = 0; i < sequence.length(); i++) {
+            if (bytes[base + i] != sequence.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compare this slice to another character sequence, ignoring differences in (ASCII) case
+     *
+     * @param other Other sequence
+     * @return True if the sequences are equal, ignoring case
+     */
+    public boolean equalsIgnoreCase(final CharSequence other) {
+        if (other == null || other.length() != this.length) {
+            return false;
+        }
+        final byte[] bytes = this.bytes();
+        final int base = this.base();
+        for (int i = 0; i < this.length; i++) {
+            if (toLowerCase(bytes[base + i]) != toLowerCase(other.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculate the case insensitive hash code of the slice. This is identical to
+     * {@link AsciiString#hashCodeIgnoreCase(CharSequence)}
+     *
+     * @return Case insensitive hash code
+     */
+    public int hashCodeIgnoreCase() {
+        final byte[] bytes = this.bytes();
+        final int base = this.base();
+        int hash = 0;
+        for (int i = 0; i < this.length; i++) {
+            hash = 31 * hash + toLowerCase(bytes[base + i]);
+        }
+        return hash;
+    }
+
+    /**
+     * Identical to {@link AsciiString#hashCode()}, so that slices and strings with the same contents
+     * have the same hash code
+     */
+    @Override public int hashCode() {
+        if (this.hashCode == 0) {
+            final byte[] bytes = this.bytes();
+            final int base = this.base();
+            int hash = 0;
+            for (int i = 0; i < this.length; i++) {
+                hash = 31 * hash + bytes[base + i];
+            }
+            this.hashCode = hash;
+        }
+        return this.hashCode;
+    }
+
+    @Override public boolean equals(final Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof CharSequence)) {
+            return false;
+        }
+        final CharSequence other = (CharSequence) object;
+        if (other.length() != this.length) {
+            return false;
+        }
+        final byte[] bytes = this.bytes();
+        final int base = this.base();
+        for (int i = 0; i < this.length; i++) {
+            if ((char) bytes[base + i] != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override public int compareTo(final CharSequence sequence) {
+        final byte[] bytes = this.bytes();
+        final int base = this.base();
+        final int limit = Math.min(this.length, sequence.length());
+        for (int i = 0; i < limit; i++) {
+            final int difference = (char) bytes[base + i] - sequence.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return this.length - sequence.length();
+    }
+
+    /**
+     * Check whether the slice contains a (possibly negative) decimal integer
+     *
+     * @return True if the slice can be parsed using {@link #toLong()}
+     */
+    public boolean isInteger() {
+        final byte[] bytes = this.bytes();
+        final int base = this.base();
+        final int start = this.length > 0 && bytes[base] == '-' ? 1 : 0;
+        if (start == this.length) {
+            return false;
+        }
+        for (int i = start; i < this.length; i++) {
+            final byte b = bytes[base + i];
+            if (b < '0' || b > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse the slice as a decimal long
+     *
+     * @return Parsed value
+     * @throws NumberFormatException If the slice does not contain a valid long
+     */
+    public long toLong() {
+        final byte[] bytes = this.bytes();
+        final int base = this.base();
+        final boolean negative = this.length > 0 && bytes[base] == '-';
+        int index = negative ? 1 : 0;
+        if (index == this.length) {
+            throw new NumberFormatException("Not a number: \"" + this + "\"");
+        }
+        // Accumulate negatively, so that Long.MIN_VALUE can be represented
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long value = 0;
+        for (; index < this.length; index++) {
+            final int digit = bytes[base + index] - '0';
+            if (digit < 0 || digit > 9 || value < limit / 10) {
+                throw new NumberFormatException("Not a number: \"" + this + "\"");
+            }
+            value *= 10;
+            if (value < limit + digit) {
+                throw new NumberFormatException("Not a number: \"" + this + "\"");
+            }
+            value -= digit;
+        }
+        return negative ? value : -value;
+    }
+
+    /**
+     * Parse the slice as a decimal integer
+     *
+     * @return Parsed value
+     * @throws NumberFormatException If the slice does not contain a valid integer
+     */
+    public int toInteger() {
+        final long value = this.toLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Not an integer: \"" + this + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Get an owned copy of the slice. The copy is created the first time this is called, after which the
+     * slice will remain readable even if the buffer is released.
+     *
+     * @return Owned copy
+     */
+    @Override public AsciiString toAsciiString() {
+        if (this.owned == null) {
+            final byte[] copy = new byte[this.length];
+            System.arraycopy(this.buffer.array(), this.offset, copy, 0, this.length);
+            this.owned = AsciiString.of(copy);
+        }
+        return this.owned;
+    }
+
+    /**
+     * Get a lower case copy of the slice. If an equal string has been interned, the interned instance
+     * is returned instead. This never adds anything to the interning pool.
+     *
+     * @return Lower case string
+     */
+    public AsciiString toLowerCase() {
+        final byte[] bytes = this.bytes();
+        final int base = this.base();
+        boolean lowercase = true;
+        for (int i = 0; i < this.length && lowercase; i++) {
+            lowercase = toLowerCase(bytes[base + i]) == bytes[base + i];
+        }
+        final AsciiStringPool pool = AsciiString.getPool();
+        if (lowercase) {
+            final AsciiString interned = pool.lookup(bytes, base, this.length);
+            return interned != null ? interned : this.toAsciiString();
+        }
+        final byte[] copy = new byte[this.length];
+        for (int i = 0; i < this.length; i++) {
+            copy[i] = (byte) toLowerCase(bytes[base + i]);
+        }
+        final AsciiString interned = pool.lookup(copy, 0, copy.length);
+        return interned != null ? interned : AsciiString.of(copy);
+    }
+
+    /**
+     * Intern the slice, using {@link AsciiString#getPool()}. If the slice has already been interned, this
+     * does not allocate. Only use this for values of known low cardinality.
+     *
+     * @return Interned string
+     */
+    public AsciiString intern() {
+        return AsciiString.getPool().intern(this.bytes(), this.base(), this.length);
+    }
+
+    @Override public String toString() {
+        return this.toAsciiString().toString();
+    }
+
+}
@@ -25,10 +25,7 @@ import lombok.RequiredArgsConstructor;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -45,7 +42,11 @@ import java.util.stream.Collectors;
         new char[] {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
     private static final CacheEntry[] cachedStrings = new CacheEntry[128];
     private static final Object cachedStringsLock = new Object();
-    private static final Map<String, AsciiString> map = new HashMap<>();
+    /**
+     * Interning pool used by {@link #of(String, boolean)}. The budget is fixed, so that user controlled values can never
+     * make the pool grow without bound
+     */
+    private static final AsciiStringPool pool = new AsciiStringPool(4096, 128 * 1024, 256);
     private static final AsciiString HEX_ZERO_PREFIXED = of("0x0");
     private static final AsciiString HEX_ZERO = of("0");
     public static final AsciiString empty = of("");
@@ -121,35 +122,54 @@ import java.util.stream.Collectors;
     }
 
     /**
-     * Create a new (cached) ascii string or retrieve the object from the cache
+     * Create a new ascii string. If an equal string has already been interned, the interned instance will be
+     * returned, but the string is never added to the interning pool. Use {@link #of(String, boolean)} to
+     * intern values of known low cardinality, such as header names, methods and content types.
      *
      * @param string String value
-     * @return Created (or retrieved from cache) string
+     * @return Created (or retrieved from the pool) string
+     * @see #getPool()
      */
     public static AsciiString of(final String string) {
-        return of(string, true);
+        return of(string, false);
     }
 
     public static AsciiString of(final Number number) {
         return of(number.toString(), false);
     }
 
+    /**
+     * Create a new ascii string. If an equal string has already been interned, the interned instance will be
+     * returned.
+     *
+     * @param string String value
+     * @param cache  Whether or not the string should be interned, if it isn't already
+     * @return Created (or retrieved from the pool) string
+     */
     public static AsciiString of(final String string, final boolean cache) {
-        AsciiString asciiString = map.get(string);
+        if (cache) {
+            return pool.intern(string);
+        }
+        final AsciiString asciiString = pool.peek(string);
         if (asciiString != null) {
             return asciiString;
         }
-        asciiString = new AsciiString(string);
-        if (cache) {
-            map.put(string, asciiString);
-        }
-        return asciiString;
+        return new AsciiString(string);
     }
 
     public static AsciiString of(final byte[] string) {
         return new AsciiString(string);
     }
 
+    /**
+     * Get the pool that is used to intern strings
+     *
+     * @return Interning pool
+     */
+    public static AsciiStringPool getPool() {
+        return pool;
+    }
+
     public boolean isEmpty() {
         return this.length() == 0;
     }
@@ -210,12 +230,15 @@ import java.util.stream.Collectors;
     }
 
     @Override public int hashCode() {
-        if (this.hashCode == 0) {
-            for (byte b : value) {
-                this.hashCode = 31 * this.hashCode + b;
+        // Interned strings are shared between threads, so the hash is only published once it is complete
+        int hash = this.hashCode;
+        if (hash == 0) {
+            for (final byte b : this.value) {
+                hash = 31 * hash + b;
             }
+            this.hashCode = hash;
         }
-        return this.hashCode;
+        return hash;
     }
 
     @Override public boolean equals(final Object object) {
@@ -265,16 +288,49 @@ import java.util.stream.Collectors;
         return Arrays.equals(this.value, other.value);
     }
 
-    @SuppressWarnings("ALL") public boolean equalsIgnoreCase(final CharSequence other) {
+    /**
+     * Compare this string to another character sequence, ignoring differences in (ASCII) case. This does not allocate
+     * any intermediate strings.
+     *
+     * @param other Other sequence
+     * @return True if the sequences are equal, ignoring case
+     */
+    public boolean equalsIgnoreCase(final CharSequence other) {
         if (this == other) {
             return true;
-        } else if (isLowercase()) {
-            return equals(other.toString().toLowerCase(Locale.ENGLISH));
-        } else if (isUppercase()) {
-            return equals(other.toString().toUpperCase(Locale.ENGLISH));
-        } else {
-            return toLowerCase().equals(other.toString().toLowerCase(Locale.ENGLISH));
         }
+        if (other == null || other.length() != this.value.length) {
+            return false;
+        }
+        for (int i = 0; i < this.value.length; i++) {
+            if (toLowerCase(this.value[i]) != toLowerCase(other.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculate a hash code of a character sequence, in which ASCII upper case characters are treated as their lower
+     * case counterparts. Two sequences that are {@link #equalsIgnoreCase(CharSequence) equal ignoring case} will
+     * always have the same case insensitive hash code.
+     *
+     * @param sequence Sequence
+     * @return Case insensitive hash code
+     */
+    public static int hashCodeIgnoreCase(final CharSequence sequence) {
+        int hash = 0;
+        for (int i = 0; i < sequence.length(); i++) {
+            hash = 31 * hash + toLowerCase(sequence.charAt(i));
+        }
+        return hash;
+    }
+
+    private static int toLowerCase(final int character) {
+        if (character >= 65 && character <= 90) { // uppercase A-Z
+            return character + 32;
+        }
+        return character;
     }
 
     /**
@@ -0,0 +1,382 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe interning pool for {@link AsciiString ascii strings}, with a fixed memory budget. Entries are never
+ * removed, so the pool should only be used for values of known low cardinality (header names, request methods,
+ * content types, status lines, etc). Once either the entry limit or the byte budget has been reached, strings are
+ * no longer interned, but are instead returned as new (unshared) instances. The budget is never exceeded, which
+ * means that concurrent insertions close to the limit may be rejected conservatively.
+ * <p>
+ * Lookups are lock free, and lookups by byte range do not allocate, which allows parsers to resolve known
+ * values directly from a request buffer.
+ */
+@SuppressWarnings("WeakerAccess") public final class AsciiStringPool {
+
+    /**
+     * Open addressing table (linear probing). Slots go from null to non-null exactly once, so readers never
+     * need to lock
+     */
+    private final AtomicReferenceArray<AsciiString> table;
+    private final int mask;
+
+    @Getter private final int maxEntries;
+    @Getter private final long maxBytes;
+    @Getter private final int maxLength;
+
+    /**
+     * Upper 32 bits hold the entry count, lower 32 bits the used byte count. Both are reserved in a single
+     * CAS so that the budget can never be exceeded
+     */
+    private final AtomicLong usage = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * @param maxEntries Maximum number of interned strings
+     * @param maxBytes   Maximum number of bytes (string contents) held by the pool
+     * @param maxLength  Maximum length of a single interned string. Longer strings are never interned
+     */
+    public AsciiStringPool(final int maxEntries, final int maxBytes, final int maxLength) {
+        if (maxEntries <= 0 || maxEntries > (1 << 28)) {
+            throw new IllegalArgumentException("maxEntries must be in range (0, 2^28]");
+        }
+        if (maxBytes < 0 || maxLength < 0) {
+            throw new IllegalArgumentException("maxBytes and maxLength must be non-negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxLength = maxLength;
+        // Keep the load factor at or below 0.5
+        final int capacity = Integer.highestOneBit(maxEntries - 1 | 1) << 2;
+        this.table = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(final byte[] bytes, final int offset, final int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash;
+    }
+
+    private static boolean matches(final AsciiString entry, final byte[] bytes, final int offset,
+        final int length) {
+        final byte[] value = entry.getValue();
+        if (value.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value[i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(final AsciiString entry, final CharSequence string) {
+        final byte[] value = entry.getValue();
+        if (value.length != string.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (value[i] != string.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find an interned string by a range in a byte array. This never allocates, and never inserts anything
+     * into the pool.
+     *
+     * @param bytes  Byte array
+     * @param offset Offset of the first byte
+     * @param length Number of bytes
+     * @return The interned string, or null if no such string has been interned
+     */
+    public AsciiString lookup(@NonNull final byte[] bytes, final int offset, final int length) {
+        return record(find(bytes, offset, length));
+    }
+
+    private AsciiString find(final byte[] bytes, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length > maxLength) {
+            return null;
+        }
+        int position = spread(hash(bytes, offset, length)) & mask;
+        AsciiString entry;
+        while ((entry = table.get(position)) != null) {
+            if (matches(entry, bytes, offset, length)) {
+                return entry;
+            }
+            position = (position + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Find an interned string. This never allocates, and never inserts anything into the pool.
+     *
+     * @param string String
+     * @return The interned string, or null if no such string has been interned
+     */
+    public AsciiString lookup(@NonNull final CharSequence string) {
+        return record(find(string));
+    }
+
+    /**
+     * Find an interned string without counting the lookup as a hit or a miss. This is used for values that
+     * are only looked up in case they happen to be interned, so that they don't distort the hit rate
+     *
+     * @param string String
+     * @return The interned string, or null if no such string has been interned
+     */
+    AsciiString peek(@NonNull final CharSequence string) {
+        return find(string);
+    }
+
+    private AsciiString find(final CharSequence string) {
+        if (string.length() > maxLength) {
+            return null;
+        }
+        int hash = 0;
+        for (int i = 0; i < string.length(); i++) {
+            final char character = string.charAt(i);
+            if (character > 127) { // Non-ascii strings are never interned
+                return null;
+            }
+            hash = 31 * hash + character;
+        }
+        int position = spread(hash) & mask;
+        AsciiString entry;
+        while ((entry = table.get(position)) != null) {
+            if (matches(entry, string)) {
+                return entry;
+            }
+            position = (position + 1) & mask;
+        }
+        return null;
+    }
+
+    private AsciiString record(final AsciiString entry) {
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Count an intern operation. Strings that were already interned (also by a racing thread) are hits,
+     * strings that had to be inserted, or that were rejected, are misses
+     */
+    private AsciiString recordIntern(final AsciiString result, final AsciiString created) {
+        if (result == created) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Intern a range in a byte array. If the pool is full, a new (non interned) string is returned.
+     *
+     * @param bytes  Byte array
+     * @param offset Offset of the first byte
+     * @param length Number of bytes
+     * @return Interned string, or a new string if the pool budget has been exhausted
+     */
+    public AsciiString intern(@NonNull final byte[] bytes, final int offset, final int length) {
+        final AsciiString interned = find(bytes, offset, length);
+        if (interned != null) {
+            hits.increment();
+            return interned;
+        }
+        final byte[] copy = new byte[length];
+        System.arraycopy(bytes, offset, copy, 0, length);
+        final AsciiString created = AsciiString.of(copy);
+        return recordIntern(insert(created), created);
+    }
+
+    /**
+     * Intern a string. If the pool is full, or if the string contains non-ascii characters, a new
+     * (non interned) string is returned.
+     *
+     * @param string String
+     * @return Interned string, or a new string if the pool budget has been exhausted
+     */
+    public AsciiString intern(@NonNull final String string) {
+        final AsciiString interned = find(string);
+        if (interned != null) {
+            hits.increment();
+            return interned;
+        }
+        final AsciiString created = AsciiString.of(string.getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) > 127) {
+                rejections.increment();
+                misses.increment();
+                return created;
+            }
+        }
+        return recordIntern(insert(created), created);
+    }
+
+    /**
+     * Intern an existing string instance. If an equal string has already been interned, that instance is
+     * returned instead.
+     *
+     * @param string String
+     * @return Interned string, or the string itself if the pool budget has been exhausted
+     */
+    public AsciiString intern(@NonNull final AsciiString string) {
+        final byte[] value = string.getValue();
+        final AsciiString interned = find(value, 0, value.length);
+        if (interned != null) {
+            hits.increment();
+            return interned;
+        }
+        return recordIntern(insert(string), string);
+    }
+
+    private AsciiString insert(final AsciiString string) {
+        final int length = string.length();
+        if (length > maxLength) {
+            rejections.increment();
+            return string;
+        }
+        final byte[] value = string.getValue();
+        int position = spread(string.hashCode()) & mask;
+        while (true) {
+            final AsciiString entry = table.get(position);
+            if (entry == null) {
+                // The budget is only reserved once a free slot has been found, so that threads racing
+                // to intern the same string don't exhaust it
+                if (!reserve(length)) {
+                    rejections.increment();
+                    return string;
+                }
+                if (table.compareAndSet(position, null, string)) {
+                    return string;
+                }
+                // Another thread claimed the slot, re-read it
+                release(length);
+                continue;
+            }
+            if (matches(entry, value, 0, length)) {
+                // Another thread interned the same string first
+                return entry;
+            }
+            position = (position + 1) & mask;
+        }
+    }
+
+    private boolean reserve(final int length) {
+        long current;
+        long updated;
+        do {
+            current = usage.get();
+            final long entries = (current >>> 32) + 1;
+            final long bytes = (current & 0xFFFFFFFFL) + length;
+            if (entries > maxEntries || bytes > maxBytes) {
+                return false;
+            }
+            updated = (entries << 32) | bytes;
+        } while (!usage.compareAndSet(current, updated));
+        return true;
+    }
+
+    private void release(final int length) {
+        usage.addAndGet(-((1L << 32) + length));
+    }
+
+    /**
+     * Get the number of interned strings
+     *
+     * @return Number of entries
+     */
+    public int size() {
+        return (int) (usage.get() >>> 32);
+    }
+
+    /**
+     * Get the number of bytes used by the interned strings
+     *
+     * @return Used bytes
+     */
+    public long getUsedBytes() {
+        return usage.get() & 0xFFFFFFFFL;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of strings that could not be interned, because the pool budget was exhausted
+     * or because the string was not eligible for interning
+     *
+     * @return Number of rejected strings
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Get the ratio of lookups that resolved to an interned string. Strings created through {@link
+     * AsciiString#of(String)} are not counted, as they are not expected to be interned
+     *
+     * @return Hit rate, in the range [0, 1]
+     */
+    public double getHitRate() {
+        final long hits = this.hits.sum();
+        final long total = hits + this.misses.sum();
+        return total == 0 ? 0D : (double) hits / total;
+    }
+
+}
@@ -40,9 +40,7 @@ package xyz.kvantum.server.api.util;
      * @throws AssertionError If not passing the test
      */
     public static String notEmpty(final String s) {
-        try {
-            equals(s == null || s.isEmpty(), false);
-        } catch (final AssertionError a) {
+        if (s == null || s.isEmpty()) {
             throw new AssertionError(s, "was empty");
         }
         return s;
@@ -108,10 +106,8 @@ package xyz.kvantum.server.api.util;
      * @throws AssertionError If not passing the test
      */
     public static <T> T notNull(final T t) {
-        try {
-            equals(t == null, false);
-        } catch (final AssertionError a) {
-            throw new AssertionError(t, "was null");
+        if (t == null) {
+            throw new AssertionError(null, "was null");
         }
         return t;
     }
@@ -125,9 +121,7 @@ package xyz.kvantum.server.api.util;
      */
     public static <T extends Validatable> T isValid(final T t) {
         notNull(t);
-        try {
-            equals(t.isValid(), true);
-        } catch (final AssertionError a) {
+        if (!t.isValid()) {
             throw new AssertionError(t, "was invalid");
         }
         return t;
@@ -175,7 +169,10 @@ package xyz.kvantum.server.api.util;
      * @throws AssertionError If not passing the test
      */
     public static void equals(final boolean a, final boolean b) {
-        equals(a, b, new AssertionError(a, "a != b"));
+        // The error is only created on failure, as it captures a stack trace
+        if (a != b) {
+            throw new AssertionError(a, "a != b");
+        }
     }
 
     /**
@@ -185,7 +182,9 @@ package xyz.kvantum.server.api.util;
      * @param b Integer B
      */
     public static void equals(final int a, final int b) {
-        equals(a == b, true, new AssertionError(a, a + " != " + b));
+        if (a != b) {
+            throw new AssertionError(a, a + " != " + b);
+        }
     }
 
     /**
@@ -197,7 +196,9 @@ package xyz.kvantum.server.api.util;
      * @throws AssertionError If not passing the test
      */
     public static void equals(final boolean a, final boolean b, String message) {
-        equals(a, b, new AssertionError(a, message));
+        if (a != b) {
+            throw new AssertionError(a, message);
+        }
     }
 
     /**
@@ -72,7 +72,7 @@ import java.util.regex.Pattern;
             // Match the cookie to a regex (to extract the parts)
             final Matcher matcher = PATTERN_COOKIE.matcher(cookieString);
             if (matcher.matches()) {
-                final AsciiString key = AsciiString.of(matcher.group(CONST_KEY));
+                final AsciiString key = AsciiString.of(matcher.group(CONST_KEY), false);
                 // Cookies don't necessarily have values
                 final AsciiString value = matcher.groupCount() < 2 ?
                     AsciiString.empty :
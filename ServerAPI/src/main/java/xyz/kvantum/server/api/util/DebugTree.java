@@ -24,6 +24,7 @@ package xyz.kvantum.server.api.util;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Singular;
+import xyz.kvantum.server.api.response.HeaderMap;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -69,6 +70,18 @@ import java.util.Map;
                     builder.append(e.getKey()).append(", Value: ").append(e.getValue())
                         .append(NEW_LINE);
                 }
+            } else if (entry.getValue() instanceof HeaderMap) {
+                builder.append("├── ").append(entry.getKey()).append(NEW_LINE);
+                final HeaderMap map = (HeaderMap) entry.getValue();
+                for (int i = 0; i < map.size(); i++) {
+                    if (i + 1 < map.size()) {
+                        builder.append("|\t├── Key: ");
+                    } else {
+                        builder.append("|\t└── Key: ");
+                    }
+                    builder.append(map.getName(i)).append(", Value: ").append(map.getValue(i))
+                        .append(NEW_LINE);
+                }
             } else {
                 builder.append("├── ").append(entry.getKey()).append(": ").append(entry.getValue())
                     .append(NEW_LINE);
@@ -36,11 +36,11 @@ import java.util.Optional;
 @SuppressWarnings("unused") public enum FileExtension {CSS(new String[] {"css",},
     Header.CONTENT_TYPE_CSS, "/* {cmt} */"), HTML(new String[] {"html", "xhtml", "htm", "vm"},
     Header.CONTENT_TYPE_HTML, "<!-- {cmt} -->"), PNG(new String[] {"png"},
-    AsciiString.of("image/png; charset=utf-8"), "png", ReadType.BYTES, ""), ICO(
-    new String[] {"ico"}, AsciiString.of("image/x-icon; charset=utf-8"), "x-icon", ReadType.BYTES,
-    ""), GIF(new String[] {"gif"}, AsciiString.of("image/gif; charset=utf-8"), "gif",
+    AsciiString.of("image/png; charset=utf-8", true), "png", ReadType.BYTES, ""), ICO(
+    new String[] {"ico"}, AsciiString.of("image/x-icon; charset=utf-8", true), "x-icon", ReadType.BYTES,
+    ""), GIF(new String[] {"gif"}, AsciiString.of("image/gif; charset=utf-8", true), "gif",
     ReadType.BYTES, ""), JPEG(new String[] {"jpg", "jpeg"},
-    AsciiString.of("image/jpeg; charset=utf-8"), "jpeg", ReadType.BYTES, ""), ZIP(
+    AsciiString.of("image/jpeg; charset=utf-8", true), "jpeg", ReadType.BYTES, ""), ZIP(
     new String[] {"zip"}, Header.CONTENT_TYPE_OCTET_STREAM, "zip", ReadType.BYTES, ""), TXT(
     new String[] {"txt"}, Header.CONTENT_TYPE_OCTET_STREAM, "txt", ReadType.BYTES, ""), PDF(
     new String[] {"pdf"}, Header.CONTENT_TYPE_OCTET_STREAM, "pdf", ReadType.BYTES, ""), JAVASCRIPT(
@@ -22,7 +22,6 @@
 package xyz.kvantum.server.api.util;
 
 import com.google.gson.JsonPrimitive;
-import lombok.Getter;
 import lombok.experimental.UtilityClass;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -40,9 +39,19 @@ import java.util.Objects;
  */
 @UtilityClass public class KvantumJsonFactory {
 
-    @Getter private static final JSONParser PARSER = new JSONParser();
     private static final JSONObject EMPTY_OBJECT = new JSONObject();
 
+    /**
+     * Get a json-simple parser
+     *
+     * @return New parser instance
+     * @deprecated json-simple parsers are not thread safe, use {@link KvantumJsonParser#parse(String)}
+     * instead
+     */
+    @Deprecated public static JSONParser getPARSER() {
+        return new JSONParser();
+    }
+
     /**
      * Attempt to parse a string into a json object, if it fails for some reason an empty JSON object will be returned
      * instead
@@ -55,7 +64,7 @@ import java.util.Objects;
             return EMPTY_OBJECT;
         }
         try {
-            final Object object = PARSER.parse(in);
+            final Object object = KvantumJsonParser.parse(in);
             if (object instanceof JSONObject) {
                 return (JSONObject) object;
             }
@@ -0,0 +1,291 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Single pass JSON parser producing the same types as json-simple: {@link JSONObject}, {@link JSONArray},
+ * {@link String}, {@link Long} (or {@link Double} for decimals and integers that don't fit in a long),
+ * {@link Boolean} and null. Unlike json-simple's {@link org.json.simple.parser.JSONParser}, the parser keeps
+ * no state between calls, so it can be used from any number of threads at once. Objects and arrays may be nested
+ * at most {@link #MAX_DEPTH} levels deep, so that deeply nested input can't exhaust the stack
+ */
+public final class KvantumJsonParser {
+
+    /**
+     * Maximum number of nested objects and arrays
+     */
+    public static final int MAX_DEPTH = 512;
+
+    private final String input;
+    private int position;
+    private int depth;
+
+    private KvantumJsonParser(final String input) {
+        this.input = input;
+    }
+
+    /**
+     * Parse a JSON value
+     *
+     * @param input JSON string
+     * @return Parsed value
+     * @throws ParseException If the input isn't valid JSON
+     */
+    public static Object parse(final String input) throws ParseException {
+        final KvantumJsonParser parser = new KvantumJsonParser(input);
+        parser.skipWhitespace();
+        final Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.position != input.length()) {
+            throw parser.unexpected();
+        }
+        return value;
+    }
+
+    private Object readValue() throws ParseException {
+        if (this.position >= this.input.length()) {
+            throw this.unexpected();
+        }
+        final char c = this.input.charAt(this.position);
+        switch (c) {
+            case '{':
+                return this.readObject();
+            case '[':
+                return this.readArray();
+            case '"':
+                return this.readString();
+            case 't':
+                return this.readLiteral("true", Boolean.TRUE);
+            case 'f':
+                return this.readLiteral("false", Boolean.FALSE);
+            case 'n':
+                return this.readLiteral("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return this.readNumber();
+                }
+                throw this.unexpected();
+        }
+    }
+
+    @SuppressWarnings("unchecked") private JSONObject readObject() throws ParseException {
+        final JSONObject object = new JSONObject();
+        this.enter();
+        this.skipWhitespace();
+        if (this.consume('}')) {
+            this.depth--;
+            return object;
+        }
+        do {
+            this.skipWhitespace();
+            if (this.position >= this.input.length() || this.input.charAt(this.position) != '"') {
+                throw this.unexpected();
+            }
+            final String key = this.readString();
+            this.skipWhitespace();
+            if (!this.consume(':')) {
+                throw this.unexpected();
+            }
+            this.skipWhitespace();
+            object.put(key, this.readValue());
+            this.skipWhitespace();
+        } while (this.consume(','));
+        if (!this.consume('}')) {
+            throw this.unexpected();
+        }
+        this.depth--;
+        return object;
+    }
+
+    @SuppressWarnings("unchecked") private JSONArray readArray() throws ParseException {
+        final JSONArray array = new JSONArray();
+        this.enter();
+        this.skipWhitespace();
+        if (this.consume(']')) {
+            this.depth--;
+            return array;
+        }
+        do {
+            this.skipWhitespace();
+            array.add(this.readValue());
+            this.skipWhitespace();
+        } while (this.consume(','));
+        if (!this.consume(']')) {
+            throw this.unexpected();
+        }
+        this.depth--;
+        return array;
+    }
+
+    private String readString() throws ParseException {
+        final int start = ++this.position;
+        //
+        // Most strings don't contain any escape sequences, in which case they can be
+        // extracted directly from the input
+        //
+        for (int i = start; i < this.input.length(); i++) {
+            final char c = this.input.charAt(i);
+            if (c == '"') {
+                this.position = i + 1;
+                return this.input.substring(start, i);
+            } else if (c == '\\') {
+                break;
+            }
+        }
+        final StringBuilder builder = new StringBuilder();
+        while (this.position < this.input.length()) {
+            final char c = this.input.charAt(this.position++);
+            if (c == '"') {
+                return builder.toString();
+            } else if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (this.position >= this.input.length()) {
+                break;
+            }
+            final char escaped = this.input.charAt(this.position++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    builder.append(escaped);
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (this.position + 4 > this.input.length()) {
+                        throw this.unexpected();
+                    }
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        final int digit = Character.digit(this.input.charAt(this.position++), 16);
+                        if (digit == -1) {
+                            this.position--;
+                            throw this.unexpected();
+                        }
+                        value = (value << 4) | digit;
+                    }
+                    builder.append((char) value);
+                    break;
+                default:
+                    this.position--;
+                    throw this.unexpected();
+            }
+        }
+        // Unterminated string
+        throw this.unexpected();
+    }
+
+    private Object readNumber() throws ParseException {
+        final int start = this.position;
+        boolean decimal = false;
+        while (this.position < this.input.length()) {
+            final char c = this.input.charAt(this.position);
+            if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            this.position++;
+        }
+        final String number = this.input.substring(start, this.position);
+        try {
+            if (!decimal) {
+                try {
+                    return Long.valueOf(number);
+                } catch (final NumberFormatException ignored) {
+                    // Falls back to a double if the number is too large
+                }
+            }
+            return Double.valueOf(number);
+        } catch (final NumberFormatException e) {
+            this.position = start;
+            throw this.unexpected();
+        }
+    }
+
+    private Object readLiteral(final String literal, final Object value) throws ParseException {
+        if (!this.input.startsWith(literal, this.position)) {
+            throw this.unexpected();
+        }
+        this.position += literal.length();
+        return value;
+    }
+
+    /**
+     * Enter the object or array that starts at the current position
+     *
+     * @throws ParseException If the object or array is nested too deeply
+     */
+    private void enter() throws ParseException {
+        if (++this.depth > MAX_DEPTH) {
+            throw new ParseException(this.position, ParseException.ERROR_UNEXPECTED_EXCEPTION,
+                "Nesting depth exceeds " + MAX_DEPTH);
+        }
+        this.position++;
+    }
+
+    private boolean consume(final char c) {
+        if (this.position < this.input.length() && this.input.charAt(this.position) == c) {
+            this.position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (this.position < this.input.length()) {
+            final char c = this.input.charAt(this.position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '\f') {
+                return;
+            }
+            this.position++;
+        }
+    }
+
+    private ParseException unexpected() {
+        if (this.position >= this.input.length()) {
+            return new ParseException(this.position, ParseException.ERROR_UNEXPECTED_TOKEN, null);
+        }
+        return new ParseException(this.position, ParseException.ERROR_UNEXPECTED_CHAR,
+            this.input.charAt(this.position));
+    }
+
+}
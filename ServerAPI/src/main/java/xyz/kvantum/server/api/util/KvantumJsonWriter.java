@@ -0,0 +1,407 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import org.json.simple.JSONAware;
+import org.json.simple.JSONStreamAware;
+import xyz.kvantum.server.api.io.SimpleOutputStream;
+import xyz.kvantum.server.api.pojo.ImmutableKvantumPojo;
+import xyz.kvantum.server.api.pojo.KvantumPojo;
+import xyz.kvantum.server.api.pojo.KvantumPojoFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Streaming JSON writer that encodes values directly as UTF-8 bytes, without building an intermediate
+ * JSON tree or string. The output is identical to that of json-simple ({@link
+ * org.json.simple.JSONValue#toJSONString(Object)}) with the following exceptions:
+ * <ul>
+ * <li>{@link KvantumPojo} and {@link ImmutableKvantumPojo} instances are written using the getters of the
+ * {@link KvantumPojoFactory} of the POJO class, in the order of the getters</li>
+ * <li>Collections that aren't lists, and arrays, are written as JSON arrays (json-simple would write the
+ * result of {@link Object#toString()})</li>
+ * </ul>
+ * Instances are not thread safe, but may be reused using {@link #reset()}
+ */
+@SuppressWarnings({"unused", "WeakerAccess"}) public final class KvantumJsonWriter {
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG =
+        Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer;
+    private int length;
+
+    public KvantumJsonWriter() {
+        this(256);
+    }
+
+    /**
+     * @param capacity Initial buffer capacity
+     */
+    public KvantumJsonWriter(final int capacity) {
+        this.buffer = new byte[Math.max(16, capacity)];
+    }
+
+    /**
+     * Serialize a value
+     *
+     * @param value Value
+     * @return UTF-8 encoded JSON
+     */
+    public static byte[] toBytes(final Object value) {
+        return new KvantumJsonWriter().write(value).toByteArray();
+    }
+
+    /**
+     * Serialize a value
+     *
+     * @param value Value
+     * @return JSON string
+     */
+    public static String toString(final Object value) {
+        return new KvantumJsonWriter().write(value).toString();
+    }
+
+    /**
+     * Write a JSON value
+     *
+     * @param value Value
+     * @return this writer
+     */
+    @SuppressWarnings("unchecked") public KvantumJsonWriter write(final Object value) {
+        if (value == null) {
+            this.writeRaw(NULL);
+        } else if (value instanceof String) {
+            this.writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+            || value instanceof Byte) {
+            this.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            final double number = (Double) value;
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                this.writeRaw(NULL);
+            } else {
+                this.writeAscii(value.toString());
+            }
+        } else if (value instanceof Float) {
+            final float number = (Float) value;
+            if (Float.isNaN(number) || Float.isInfinite(number)) {
+                this.writeRaw(NULL);
+            } else {
+                this.writeAscii(value.toString());
+            }
+        } else if (value instanceof Boolean) {
+            this.writeRaw((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof KvantumPojo) {
+            final KvantumPojo<?> pojo = (KvantumPojo<?>) value;
+            this.writePojo(pojo.getFactory(), pojo::get);
+        } else if (value instanceof ImmutableKvantumPojo) {
+            final ImmutableKvantumPojo<?> pojo = (ImmutableKvantumPojo<?>) value;
+            this.writePojo(pojo.getFactory(), pojo::get);
+        } else if (value instanceof Map) {
+            this.writeMap((Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            this.writeCollection((Collection<?>) value);
+        } else if (value instanceof JSONAware) {
+            this.writeUtf8(((JSONAware) value).toJSONString());
+        } else if (value instanceof JSONStreamAware) {
+            final StringWriter writer = new StringWriter();
+            try {
+                ((JSONStreamAware) value).writeJSONString(writer);
+            } catch (final IOException e) {
+                throw new IllegalStateException("Failed to write JSON", e);
+            }
+            this.writeUtf8(writer.toString());
+        } else if (value instanceof Object[]) {
+            this.writeCollection(Arrays.asList((Object[]) value));
+        } else if (value.getClass().isArray()) {
+            final int arrayLength = Array.getLength(value);
+            this.writeByte('[');
+            for (int i = 0; i < arrayLength; i++) {
+                if (i != 0) {
+                    this.writeByte(',');
+                }
+                this.write(Array.get(value, i));
+            }
+            this.writeByte(']');
+        } else if (value instanceof Number) {
+            this.writeAscii(value.toString());
+        } else {
+            this.writeUtf8(value.toString());
+        }
+        return this;
+    }
+
+    private void writePojo(final KvantumPojoFactory<?> factory, final IndexedGetter getter) {
+        this.writeByte('{');
+        for (int i = 0; i < factory.getGetterCount(); i++) {
+            if (i != 0) {
+                this.writeByte(',');
+            }
+            this.writeString(factory.getGetterName(i));
+            this.writeByte(':');
+            this.write(getter.get(i));
+        }
+        this.writeByte('}');
+    }
+
+    private void writeMap(final Map<?, ?> map) {
+        this.writeByte('{');
+        boolean first = true;
+        for (final Map.Entry<?, ?> entry : map.entrySet()) {
+            if (first) {
+                first = false;
+            } else {
+                this.writeByte(',');
+            }
+            this.writeString(String.valueOf(entry.getKey()));
+            this.writeByte(':');
+            this.write(entry.getValue());
+        }
+        this.writeByte('}');
+    }
+
+    private void writeCollection(final Collection<?> collection) {
+        this.writeByte('[');
+        boolean first = true;
+        for (final Object object : collection) {
+            if (first) {
+                first = false;
+            } else {
+                this.writeByte(',');
+            }
+            this.write(object);
+        }
+        this.writeByte(']');
+    }
+
+    /**
+     * Write a quoted and escaped JSON string. Characters are escaped the way json-simple escapes them
+     *
+     * @param string String
+     */
+    private void writeString(final String string) {
+        final int stringLength = string.length();
+        // Most strings are ASCII without escapes, so this is usually enough
+        this.ensureCapacity(stringLength + 2);
+        this.buffer[this.length++] = '"';
+        for (int i = 0; i < stringLength; i++) {
+            final char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    this.writeEscape('"');
+                    break;
+                case '\\':
+                    this.writeEscape('\\');
+                    break;
+                case '/':
+                    this.writeEscape('/');
+                    break;
+                case '\b':
+                    this.writeEscape('b');
+                    break;
+                case '\f':
+                    this.writeEscape('f');
+                    break;
+                case '\n':
+                    this.writeEscape('n');
+                    break;
+                case '\r':
+                    this.writeEscape('r');
+                    break;
+                case '\t':
+                    this.writeEscape('t');
+                    break;
+                default:
+                    if (c <= '\u001F' || (c >= '\u007F' && c <= '\u009F') || (c >= '\u2000'
+                        && c <= '\u20FF')) {
+                        this.ensureCapacity(6);
+                        this.buffer[this.length++] = '\\';
+                        this.buffer[this.length++] = 'u';
+                        this.buffer[this.length++] = HEX[(c >> 12) & 0xF];
+                        this.buffer[this.length++] = HEX[(c >> 8) & 0xF];
+                        this.buffer[this.length++] = HEX[(c >> 4) & 0xF];
+                        this.buffer[this.length++] = HEX[c & 0xF];
+                    } else if (c < 0x80) {
+                        this.writeByte(c);
+                    } else {
+                        i = this.writeUtf8Char(string, i, c);
+                    }
+            }
+        }
+        this.writeByte('"');
+    }
+
+    private void writeEscape(final char escaped) {
+        this.ensureCapacity(2);
+        this.buffer[this.length++] = '\\';
+        this.buffer[this.length++] = (byte) escaped;
+    }
+
+    /**
+     * Write a non-ASCII character as UTF-8
+     *
+     * @return Index of the last character that was consumed
+     */
+    private int writeUtf8Char(final String string, final int index, final char c) {
+        this.ensureCapacity(4);
+        if (c < 0x800) {
+            this.buffer[this.length++] = (byte) (0xC0 | (c >> 6));
+            this.buffer[this.length++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && index + 1 < string.length() && Character
+            .isLowSurrogate(string.charAt(index + 1))) {
+            final int codePoint = Character.toCodePoint(c, string.charAt(index + 1));
+            this.buffer[this.length++] = (byte) (0xF0 | (codePoint >> 18));
+            this.buffer[this.length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            this.buffer[this.length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            this.buffer[this.length++] = (byte) (0x80 | (codePoint & 0x3F));
+            return index + 1;
+        } else if (Character.isSurrogate(c)) {
+            // Malformed, replaced the same way as String#getBytes does
+            this.buffer[this.length++] = '?';
+        } else {
+            this.buffer[this.length++] = (byte) (0xE0 | (c >> 12));
+            this.buffer[this.length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            this.buffer[this.length++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return index;
+    }
+
+    private void writeLong(final long value) {
+        if (value == Long.MIN_VALUE) {
+            this.writeRaw(MIN_LONG);
+            return;
+        }
+        this.ensureCapacity(20);
+        long remaining = value;
+        if (remaining < 0) {
+            this.buffer[this.length++] = '-';
+            remaining = -remaining;
+        }
+        int digits = 1;
+        for (long limit = 10; digits < 19 && remaining >= limit; limit *= 10) {
+            digits++;
+        }
+        for (int i = this.length + digits - 1; i >= this.length; i--) {
+            this.buffer[i] = (byte) ('0' + (remaining % 10));
+            remaining /= 10;
+        }
+        this.length += digits;
+    }
+
+    private void writeAscii(final String string) {
+        final int stringLength = string.length();
+        this.ensureCapacity(stringLength);
+        for (int i = 0; i < stringLength; i++) {
+            this.buffer[this.length++] = (byte) string.charAt(i);
+        }
+    }
+
+    private void writeUtf8(final String string) {
+        this.writeRaw(string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeRaw(final byte[] bytes) {
+        this.ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, this.buffer, this.length, bytes.length);
+        this.length += bytes.length;
+    }
+
+    private void writeByte(final int b) {
+        this.ensureCapacity(1);
+        this.buffer[this.length++] = (byte) b;
+    }
+
+    private void ensureCapacity(final int additional) {
+        if (this.length + additional > this.buffer.length) {
+            this.buffer =
+                Arrays.copyOf(this.buffer, Math.max(this.buffer.length << 1, this.length + additional));
+        }
+    }
+
+    /**
+     * Get the number of bytes that have been written
+     *
+     * @return Number of bytes
+     */
+    public int size() {
+        return this.length;
+    }
+
+    /**
+     * Discard everything that has been written, keeping the buffer
+     */
+    public void reset() {
+        this.length = 0;
+    }
+
+    /**
+     * Copy the written bytes into a new array
+     *
+     * @return Written bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(this.buffer, this.length);
+    }
+
+    /**
+     * Write everything that has been written to an output stream
+     *
+     * @param outputStream Output stream
+     * @throws IOException If the stream cannot be written to
+     */
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        outputStream.write(this.buffer, 0, this.length);
+    }
+
+    /**
+     * Get a response stream that reads the written JSON directly from the buffer of this writer, without
+     * copying it. The writer must not be written to, or reset, after this
+     *
+     * @return Response stream
+     */
+    public SimpleOutputStream toOutputStream() {
+        return SimpleOutputStream.wrap(this.buffer, this.length);
+    }
+
+    @Override public String toString() {
+        return new String(this.buffer, 0, this.length, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface private interface IndexedGetter {
+
+        Object get(int index);
+
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import lombok.Builder;
+import lombok.NonNull;
+
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A non-blocking pool of objects. Borrowing never blocks: objects are taken from (in order) a per-thread slot, a
+ * shared lock-free stack, or created using the supplier. Returned objects are validated, and then put back into the
+ * per-thread slot or onto the shared stack. Objects that fail validation, or that don't fit in the shared stack, are
+ * disposed of. The number of idle objects is thereby bounded by the stack capacity plus one per thread.
+ * <p>
+ * Once the pool is {@link #close() closed}, all idle objects (including those in the per-thread slots) are
+ * disposed of, as are objects that are returned afterwards.
+ *
+ * @param <T> Pooled object type
+ */
+public final class ObjectPool<T> {
+
+    private final Provider<T> supplier;
+    private final Predicate<T> validator;
+    private final Consumer<T> disposer;
+    private final int capacity;
+
+    private final ThreadLocal<Slot<T>> slots = ThreadLocal.withInitial(this::createSlot);
+    /**
+     * The slots of all threads, so that they can be emptied when the pool is closed. The references are weak, so
+     * that the slots of terminated threads can be collected
+     */
+    private final Queue<WeakReference<Slot<T>>> slotReferences = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Node<T>> head = new AtomicReference<>();
+    private final AtomicInteger idle = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder disposed = new LongAdder();
+
+    /**
+     * @param capacity  Maximum number of idle objects in the shared stack
+     * @param supplier  Supplier of new objects
+     * @param validator Validates (and possibly resets) returned objects. Objects are disposed of if it returns false.
+     *                  May be null
+     * @param disposer  Invoked for objects that are dropped by the pool. May be null
+     */
+    @Builder private ObjectPool(final int capacity, @NonNull final Provider<T> supplier,
+        final Predicate<T> validator, final Consumer<T> disposer) {
+        this.capacity = Math.max(0, capacity);
+        this.supplier = supplier;
+        this.validator = validator == null ? object -> true : validator;
+        this.disposer = disposer == null ? object -> {
+        } : disposer;
+    }
+
+    /**
+     * Create a pool without validation or disposal
+     *
+     * @param capacity Maximum number of idle objects in the shared stack
+     * @param supplier Supplier of new objects
+     */
+    public ObjectPool(final int capacity, final Provider<T> supplier) {
+        this(capacity, supplier, null, null);
+    }
+
+    /**
+     * Borrow an object. This never blocks: if no object is available a new one is created
+     *
+     * @return Object, that should be returned using {@link #release(Object)}
+     */
+    public T acquire() {
+        T object = this.slots.get().object.getAndSet(null);
+        if (object != null) {
+            this.reused.increment();
+            return object;
+        }
+        if ((object = this.pop()) != null) {
+            this.reused.increment();
+            return object;
+        }
+        this.created.increment();
+        return this.supplier.provide();
+    }
+
+    /**
+     * Return an object to the pool. The object must not be used after this call. Objects that are returned to a
+     * closed pool are disposed of
+     *
+     * @param object Object that was borrowed from this pool
+     */
+    public void release(@NonNull final T object) {
+        if (this.closed || !this.validator.test(object)) {
+            this.dispose(object);
+            return;
+        }
+        if (!this.slots.get().object.compareAndSet(null, object) && !this.push(object)) {
+            this.dispose(object);
+            return;
+        }
+        //
+        // The pool may have been closed while the object was being returned, in
+        // which case it has to be disposed of here
+        //
+        if (this.closed) {
+            this.disposeIdle();
+        }
+    }
+
+    /**
+     * Close the pool, and dispose of all idle objects, including those in the per-thread slots. Borrowed objects
+     * are disposed of once they're returned. Objects may still be borrowed from a closed pool, but they will be
+     * newly created
+     */
+    public void close() {
+        this.closed = true;
+        this.disposeIdle();
+    }
+
+    private void disposeIdle() {
+        T object;
+        while ((object = this.pop()) != null) {
+            this.dispose(object);
+        }
+        for (final WeakReference<Slot<T>> reference : this.slotReferences) {
+            final Slot<T> slot = reference.get();
+            if (slot != null && (object = slot.object.getAndSet(null)) != null) {
+                this.dispose(object);
+            }
+        }
+    }
+
+    private Slot<T> createSlot() {
+        final Slot<T> slot = new Slot<>();
+        // This only happens once per thread, so it's a good time to forget terminated threads
+        this.slotReferences.removeIf(reference -> reference.get() == null);
+        this.slotReferences.add(new WeakReference<>(slot));
+        return slot;
+    }
+
+    private void dispose(final T object) {
+        this.disposed.increment();
+        this.disposer.accept(object);
+    }
+
+    private boolean push(final T object) {
+        if (this.idle.incrementAndGet() > this.capacity) {
+            this.idle.decrementAndGet();
+            return false;
+        }
+        final Node<T> node = new Node<>(object);
+        Node<T> current;
+        do {
+            current = this.head.get();
+            node.next = current;
+        } while (!this.head.compareAndSet(current, node));
+        return true;
+    }
+
+    private T pop() {
+        Node<T> current;
+        do {
+            current = this.head.get();
+            if (current == null) {
+                return null;
+            }
+        } while (!this.head.compareAndSet(current, current.next));
+        this.idle.decrementAndGet();
+        return current.object;
+    }
+
+    /**
+     * Get the number of idle objects in the shared stack. This does not include the per-thread slots
+     *
+     * @return Shared idle objects
+     */
+    public int getIdle() {
+        return Math.max(0, this.idle.get());
+    }
+
+    public long getCreated() {
+        return this.created.sum();
+    }
+
+    public long getReused() {
+        return this.reused.sum();
+    }
+
+    public long getDisposed() {
+        return this.disposed.sum();
+    }
+
+    /**
+     * Slot that holds the object of a single thread. It is only accessed by other threads when the pool is closed
+     */
+    private static final class Slot<T> {
+
+        private final AtomicReference<T> object = new AtomicReference<>();
+    }
+
+
+    private static final class Node<T> {
+
+        private final T object;
+        private Node<T> next;
+
+        private Node(final T object) {
+            this.object = object;
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import xyz.kvantum.server.api.config.CoreConfig;
+
+/**
+ * Object that is reused rather than reallocated, such as the per-connection request state. The contract is:
+ * <ul>
+ * <li>{@link #recycle()} is called once the object is no longer in use. It must clear all state that belongs to
+ * the previous use, and release (or return) any buffers that should not be held on to. Internal buffers may be
+ * retained, as long as they don't expose any old data</li>
+ * <li>{@link #reuse()} is called right before the object is used again. After this call, the object must be
+ * indistinguishable from a newly constructed instance</li>
+ * </ul>
+ * If {@link CoreConfig.Pools#poisonRecycled} is enabled, recycled objects should be poisoned, so that any access
+ * between {@link #recycle()} and {@link #reuse()} fails with an {@link IllegalStateException}. This is meant to
+ * be used during development, to catch objects that are used after they've been recycled.
+ */
+public interface Recyclable {
+
+    /**
+     * Clear the state of the object, and poison it if {@link CoreConfig.Pools#poisonRecycled} is enabled
+     */
+    void recycle();
+
+    /**
+     * Prepare the object for reuse. This removes the poison
+     */
+    void reuse();
+
+    /**
+     * Utility method that throws if the object has been poisoned
+     *
+     * @param poisoned Whether or not the object is poisoned
+     * @param object   The object, used in the exception message
+     * @throws IllegalStateException If the object is poisoned
+     */
+    static void checkPoison(final boolean poisoned, final Object object) {
+        if (poisoned) {
+            throw new IllegalStateException(String
+                .format("%s was used after it was recycled", object.getClass().getSimpleName()));
+        }
+    }
+
+}
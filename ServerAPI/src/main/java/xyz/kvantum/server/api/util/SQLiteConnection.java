@@ -0,0 +1,119 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A connection owned by a {@link SQLiteManager}, with a cache of prepared statements. Connections are only ever
+ * used by one thread at a time, and are handed out by {@link SQLiteManager#read(SQLiteManager.SQLFunction)} and
+ * {@link SQLiteManager#write(SQLiteManager.SQLFunction)}.
+ * <p>
+ * Statements returned by {@link #prepare(String)} belong to the connection: they must not be closed, and they
+ * must not be used after the function that received the connection has returned. Result sets should be closed
+ * as usual.
+ */
+public final class SQLiteConnection {
+
+    @Getter private final Connection connection;
+    private final int statementCacheSize;
+    private final Map<String, PreparedStatement> statements;
+
+    SQLiteConnection(@NonNull final Connection connection, final int statementCacheSize) {
+        this.connection = connection;
+        this.statementCacheSize = Math.max(1, statementCacheSize);
+        this.statements = new LinkedHashMap<>(16, 0.75f, true /* Least recently used first */);
+    }
+
+    /**
+     * Get a prepared statement for the given SQL. The statement is prepared the first time the SQL is
+     * used on this connection, and is then re-used with its parameters cleared
+     *
+     * @param sql SQL statement
+     * @return Prepared statement, owned by the connection
+     * @throws SQLException If the statement cannot be prepared
+     */
+    public PreparedStatement prepare(@NonNull final String sql) throws SQLException {
+        PreparedStatement statement = this.statements.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            statement.clearParameters();
+            return statement;
+        }
+        if (this.statements.size() >= this.statementCacheSize) {
+            final Iterator<PreparedStatement> iterator = this.statements.values().iterator();
+            final PreparedStatement eldest = iterator.next();
+            iterator.remove();
+            eldest.close();
+        }
+        statement = this.connection.prepareStatement(sql);
+        this.statements.put(sql, statement);
+        return statement;
+    }
+
+    /**
+     * Execute a statement that is not worth caching, such as DDL
+     *
+     * @param sql SQL statement
+     * @return Number of changed rows
+     * @throws SQLException If the statement fails
+     */
+    public int executeUpdate(@NonNull final String sql) throws SQLException {
+        try (final Statement statement = this.connection.createStatement()) {
+            return statement.executeUpdate(sql);
+        }
+    }
+
+    /**
+     * Get the number of statements that are currently cached
+     *
+     * @return Cached statement count
+     */
+    public int getCachedStatements() {
+        return this.statements.size();
+    }
+
+    void close() throws SQLException {
+        SQLException exception = null;
+        for (final PreparedStatement statement : this.statements.values()) {
+            try {
+                statement.close();
+            } catch (final SQLException e) {
+                exception = e;
+            }
+        }
+        this.statements.clear();
+        this.connection.close();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+}
@@ -21,7 +21,11 @@
  */
 package xyz.kvantum.server.api.util;
 
+import lombok.Builder;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.exceptions.KvantumException;
 
@@ -33,54 +37,327 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Utility class for dealing with common SQLite operations
+ * Pooled access to a SQLite database. The database is opened in WAL mode, which lets readers run
+ * concurrently with the writer. Reads are spread over a small pool of read only connections, and all writes
+ * go through a single writer connection (SQLite only ever allows one writer). Every connection keeps a cache
+ * of prepared statements, see {@link SQLiteConnection}.
+ * <p>
+ * Reads made by a thread that is currently writing use the writer connection, so that they see the
+ * uncommitted changes of the write.
  */
 @SuppressWarnings("unused") @EqualsAndHashCode(of = "name", callSuper = false)
 public class SQLiteManager extends AutoCloseable {
 
-    private final Connection connection;
-    private final String name;
+    private static final String[] SYNCHRONOUS_MODES = {"OFF", "NORMAL", "FULL", "EXTRA"};
 
-    public SQLiteManager(final String name)
-        throws IOException, SQLException, ClassNotFoundException {
+    @Getter private final String name;
+    private final SQLiteConnection writer;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final BlockingQueue<SQLiteConnection> readers;
+    /**
+     * All read connections, including those that are in use
+     */
+    private final Collection<SQLiteConnection> readerConnections = new ArrayList<>();
+    private final ThreadLocal<SQLiteConnection> currentReader = new ThreadLocal<>();
+    private final int busyTimeout;
+    private volatile boolean closed = false;
+
+    /**
+     * Open (or create) the database "{name}.db" in the storage folder, using the settings from
+     * {@link CoreConfig.SQLite}
+     *
+     * @param name Database name
+     */
+    public SQLiteManager(final String name) throws IOException, SQLException, ClassNotFoundException {
+        this(createFile(name + ".db"), CoreConfig.SQLite.readConnections, CoreConfig.SQLite.synchronous,
+            CoreConfig.SQLite.mmapSize, CoreConfig.SQLite.busyTimeout, CoreConfig.SQLite.statementCacheSize);
+    }
+
+    /**
+     * Open (or create) a database file
+     *
+     * @param file               Database file
+     * @param readConnections    Number of read connections, at least one
+     * @param synchronous        Value of PRAGMA synchronous (OFF, NORMAL, FULL or EXTRA). Defaults to NORMAL
+     * @param mmapSize           Maximum number of bytes that are memory mapped, 0 disables memory mapping
+     * @param busyTimeout        Milliseconds to wait for a locked database, or for a free read connection
+     * @param statementCacheSize Number of prepared statements cached per connection
+     */
+    @Builder private SQLiteManager(@NonNull final File file, final int readConnections,
+        final String synchronous, final long mmapSize, final int busyTimeout, final int statementCacheSize)
+        throws SQLException, ClassNotFoundException {
         Class.forName("org.sqlite.JDBC");
-        this.name = name + ".db";
+        this.name = file.getName();
+        this.busyTimeout = Math.max(0, busyTimeout);
+        final String synchronousMode = synchronousMode(synchronous);
+        final String url = "jdbc:sqlite:" + file.getAbsolutePath();
+
+        // The journal mode is persistent, and has to be set before the readers connect
+        this.writer = openConnection(url, statementCacheSize, "journal_mode=WAL",
+            "synchronous=" + synchronousMode, "busy_timeout=" + this.busyTimeout, "mmap_size=" + mmapSize);
+        final int readerCount = Math.max(1, readConnections);
+        this.readers = new ArrayBlockingQueue<>(readerCount);
+        try {
+            for (int i = 0; i < readerCount; i++) {
+                final SQLiteConnection reader = openConnection(url, statementCacheSize, "query_only=1",
+                    "busy_timeout=" + this.busyTimeout, "mmap_size=" + mmapSize);
+                this.readerConnections.add(reader);
+                this.readers.add(reader);
+            }
+        } catch (final SQLException e) {
+            this.handleClose();
+            throw e;
+        }
+    }
+
+    private static File createFile(final String name) throws IOException {
         final File file =
             new File(new File(ServerImplementation.getImplementation().getCoreFolder(), "storage"),
-                this.name);
+                name);
         if (!file.exists() && (!(file.getParentFile().exists() || file.getParentFile().mkdir())
             || !file.createNewFile())) {
-            throw new KvantumException("Couldn't create: " + this.name);
+            throw new KvantumException("Couldn't create: " + name);
         }
-        this.connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        return file;
     }
 
-    public void executeUpdate(final String sql) throws SQLException {
-        try (final Statement statement = this.connection.createStatement()) {
-            statement.executeUpdate(sql);
+    private static String synchronousMode(final String synchronous) {
+        if (synchronous == null) {
+            return "NORMAL";
+        }
+        final String mode = synchronous.trim().toUpperCase(Locale.ENGLISH);
+        for (final String validMode : SYNCHRONOUS_MODES) {
+            if (validMode.equals(mode)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown synchronous mode: " + synchronous);
+    }
+
+    private static SQLiteConnection openConnection(final String url, final int statementCacheSize,
+        final String... pragmas) throws SQLException {
+        final Connection connection = DriverManager.getConnection(url);
+        try (final Statement statement = connection.createStatement()) {
+            for (final String pragma : pragmas) {
+                statement.execute("PRAGMA " + pragma);
+            }
+        } catch (final SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return new SQLiteConnection(connection, statementCacheSize);
+    }
+
+    /**
+     * Run a function using a read connection. The function should only read from the database, the read
+     * connections are opened in query only mode. If all read connections are in use, this waits for one to be
+     * returned
+     *
+     * @param function Function to run
+     * @param <T>      Result type
+     * @return Value returned by the function
+     * @throws SQLException If the function fails, if no connection became available in time, or if the manager
+     *                      has been closed
+     */
+    public <T> T read(@NonNull final SQLFunction<T> function) throws SQLException {
+        if (this.writeLock.isHeldByCurrentThread()) {
+            return function.apply(this.writer);
+        }
+        final SQLiteConnection current = this.currentReader.get();
+        if (current != null) {
+            return function.apply(current);
+        }
+        if (this.closed) {
+            throw new SQLException(this.name + " has been closed");
+        }
+        final SQLiteConnection connection;
+        try {
+            connection = this.readers.poll(this.busyTimeout, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection", e);
+        }
+        if (connection == null) {
+            throw new SQLException("Timed out waiting for a read connection to " + this.name);
+        }
+        this.currentReader.set(connection);
+        try {
+            return function.apply(connection);
+        } finally {
+            this.currentReader.remove();
+            this.readers.add(connection);
+        }
+    }
+
+    /**
+     * Run a function using the writer connection. Writes are serialized, but they do not block readers
+     *
+     * @param function Function to run
+     * @param <T>      Result type
+     * @return Value returned by the function
+     * @throws SQLException If the function fails
+     */
+    public <T> T write(@NonNull final SQLFunction<T> function) throws SQLException {
+        this.writeLock.lock();
+        try {
+            return function.apply(this.writer);
+        } finally {
+            this.writeLock.unlock();
         }
     }
 
-    public PreparedStatement prepareStatement(final String statement) throws SQLException {
-        return connection.prepareStatement(statement);
+    /**
+     * Run a function in a single transaction on the writer connection. The transaction is committed if the
+     * function returns, and rolled back if it throws. Nested transactions become part of the outer
+     * transaction
+     *
+     * @param function Function to run
+     * @param <T>      Result type
+     * @return Value returned by the function
+     * @throws SQLException If the function fails, or if the transaction cannot be committed
+     */
+    public <T> T transaction(@NonNull final SQLFunction<T> function) throws SQLException {
+        this.writeLock.lock();
+        try {
+            final Connection connection = this.writer.getConnection();
+            if (!connection.getAutoCommit()) {
+                return function.apply(this.writer);
+            }
+            connection.setAutoCommit(false);
+            try {
+                final T result = function.apply(this.writer);
+                connection.commit();
+                return result;
+            } catch (final Throwable throwable) {
+                connection.rollback();
+                throw throwable;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Execute a statement once per item, as a single batch in a single transaction
+     *
+     * @param sql    SQL statement
+     * @param items  Items to bind
+     * @param binder Binds an item to the statement parameters
+     * @param <T>    Item type
+     * @return Update counts, one per item
+     * @throws SQLException If any of the statements fail, in which case none of them are applied
+     */
+    public <T> int[] batch(@NonNull final String sql, @NonNull final Collection<? extends T> items,
+        @NonNull final SQLBinder<T> binder) throws SQLException {
+        if (items.isEmpty()) {
+            return new int[0];
+        }
+        return this.transaction(connection -> {
+            final PreparedStatement statement = connection.prepare(sql);
+            for (final T item : items) {
+                binder.bind(statement, item);
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        });
+    }
+
+    public void executeUpdate(final String sql) throws SQLException {
+        this.write(connection -> connection.executeUpdate(sql));
+    }
+
+    /**
+     * Prepare a statement on the writer connection. The statement isn't cached, and must be closed by the
+     * caller
+     *
+     * @param statement SQL statement
+     * @return Prepared statement
+     * @throws SQLException If the statement cannot be prepared
+     * @deprecated The statement is used outside of the write lock, use {@link #read(SQLFunction)} or {@link
+     * #write(SQLFunction)} instead
+     */
+    @Deprecated public PreparedStatement prepareStatement(final String statement) throws SQLException {
+        return this.writer.getConnection().prepareStatement(statement);
     }
 
     public Blob createBlob() {
         try {
-            return connection.createBlob();
+            return this.writer.getConnection().createBlob();
         } catch (SQLException e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
         return null; // Nullable
     }
 
+    /**
+     * Get the number of read connections that are currently not in use
+     *
+     * @return Idle read connections
+     */
+    public int getIdleReadConnections() {
+        return this.readers.size();
+    }
+
     @Override public void handleClose() {
+        if (this.writer == null) {
+            return; // The constructor failed
+        }
+        this.closed = true;
+        if (this.readers != null) {
+            //
+            // Wait for the read connections that are in use to be returned. Connections
+            // that aren't returned within the busy timeout are closed while in use
+            //
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.busyTimeout);
+            try {
+                for (int returned = 0; returned < this.readerConnections.size(); returned++) {
+                    if (this.readers.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) == null) {
+                        break;
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (final SQLiteConnection connection : this.readerConnections) {
+                this.closeConnection(connection);
+            }
+        }
+        this.writeLock.lock();
+        try {
+            this.closeConnection(this.writer);
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private void closeConnection(final SQLiteConnection connection) {
         try {
             connection.close();
-        } catch (SQLException e) {
+        } catch (final SQLException e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
         }
     }
+
+    /**
+     * Function that is given a connection by the manager
+     *
+     * @param <T> Result type
+     */
+    @FunctionalInterface public interface SQLFunction<T> {
+
+        T apply(SQLiteConnection connection) throws SQLException;
+
+    }
+
 }
@@ -0,0 +1,158 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted byte buffer that can be shared between multiple {@link AsciiSlice slices}. The buffer
+ * starts out with a reference count of one. Once the count reaches zero, the buffer is considered released,
+ * and any attempt to read it (or any slice that hasn't been {@link AsciiSlice#toAsciiString() materialized})
+ * will throw an {@link IllegalStateException}. This makes it safe to reuse the underlying array once it has
+ * been released.
+ */
+@SuppressWarnings("WeakerAccess") public final class SharedBuffer {
+
+    private final byte[] bytes;
+    @Getter private final int offset;
+    @Getter private final int length;
+    private final Runnable releaseHandler;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * @param bytes          Backing array
+     * @param offset         Offset of the first readable byte
+     * @param length         Number of readable bytes
+     * @param releaseHandler Handler invoked once the buffer has been released, may be null
+     */
+    public SharedBuffer(@NonNull final byte[] bytes, final int offset, final int length,
+        final Runnable releaseHandler) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException(
+                String.format("Range [%d, %d) out of bounds for length %d", offset, offset + length,
+                    bytes.length));
+        }
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.releaseHandler = releaseHandler;
+    }
+
+    public SharedBuffer(@NonNull final byte[] bytes, final int offset, final int length) {
+        this(bytes, offset, length, null);
+    }
+
+    public static SharedBuffer wrap(@NonNull final byte[] bytes) {
+        return new SharedBuffer(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Increment the reference count
+     *
+     * @return this buffer
+     * @throws IllegalStateException If the buffer has already been released
+     */
+    public SharedBuffer retain() {
+        int current;
+        do {
+            current = this.references.get();
+            if (current <= 0) {
+                throw new IllegalStateException("Cannot retain a released buffer");
+            }
+        } while (!this.references.compareAndSet(current, current + 1));
+        return this;
+    }
+
+    /**
+     * Decrement the reference count. The buffer is released once the count reaches zero
+     *
+     * @return True if the buffer was released by this call
+     * @throws IllegalStateException If the buffer has already been released
+     */
+    public boolean release() {
+        final int remaining = this.references.decrementAndGet();
+        if (remaining < 0) {
+            this.references.incrementAndGet();
+            throw new IllegalStateException("Buffer has already been released");
+        }
+        if (remaining == 0) {
+            if (this.releaseHandler != null) {
+                this.releaseHandler.run();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public int refCount() {
+        return Math.max(0, this.references.get());
+    }
+
+    public boolean isReleased() {
+        return this.references.get() <= 0;
+    }
+
+    /**
+     * Get the backing array. Indices are absolute, see {@link #getOffset()}
+     *
+     * @return Backing array
+     * @throws IllegalStateException If the buffer has been released
+     */
+    byte[] array() {
+        if (this.references.get() <= 0) {
+            throw new IllegalStateException("Attempted to read a released buffer");
+        }
+        return this.bytes;
+    }
+
+    /**
+     * Create a slice of the entire buffer
+     *
+     * @return Slice
+     */
+    public AsciiSlice slice() {
+        return this.slice(0, this.length);
+    }
+
+    /**
+     * Create a slice of the buffer. The slice does not hold a reference to the buffer, and so it is only
+     * readable for as long as the buffer is. Use {@link AsciiSlice#toAsciiString()} to get a copy that outlives
+     * the buffer.
+     *
+     * @param offset Offset, relative to the start of the buffer
+     * @param length Slice length
+     * @return Slice
+     */
+    public AsciiSlice slice(final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset + length > this.length) {
+            throw new IndexOutOfBoundsException(
+                String.format("Range [%d, %d) out of bounds for length %d", offset, offset + length,
+                    this.length));
+        }
+        this.array(); // Fail fast
+        return new AsciiSlice(this, this.offset + offset, length);
+    }
+
+}
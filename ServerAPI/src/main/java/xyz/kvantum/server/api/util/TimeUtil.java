@@ -24,9 +24,12 @@ package xyz.kvantum.server.api.util;
 import lombok.experimental.UtilityClass;
 
 import java.text.SimpleDateFormat;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.Locale;
+import java.util.TimeZone;
 
 /**
  * Utility class providing methods for dealing with timestamps
@@ -38,7 +41,8 @@ import java.util.Locale;
     public static final SimpleDateFormat accessLogFormat;
 
     static {
-        httpFormat = new SimpleDateFormat("EEE, dd MMM yyyy kk:mm:ss 'GMT'", Locale.ENGLISH);
+        httpFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH);
+        httpFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
         logFileFormat = new SimpleDateFormat("dd MMM yyyy kk-mm-ss", Locale.ENGLISH);
         accessLogFormat = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
     }
@@ -66,6 +70,21 @@ import java.util.Locale;
         return getTimeStamp(httpFormat, new Date());
     }
 
+    /**
+     * Parse a timestamp formatted with the HTTP-date format as defined by RFC 7231
+     *
+     * @param timeStamp RFC 7231 formatted timestamp
+     * @return Time in milliseconds, or -1 if the timestamp is invalid
+     */
+    public static long parseHTTPTimeStamp(final CharSequence timeStamp) {
+        try {
+            return ZonedDateTime.parse(timeStamp, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+                .toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            return -1L;
+        }
+    }
+
     public static String getTimeStamp(final SimpleDateFormat format, final Date date) {
         return format.format(date);
     }
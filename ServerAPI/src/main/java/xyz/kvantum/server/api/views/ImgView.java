@@ -23,6 +23,7 @@ package xyz.kvantum.server.api.views;
 
 import xyz.kvantum.server.api.cache.CacheApplicable;
 import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.CompressionMode;
 import xyz.kvantum.server.api.util.FileExtension;
 import xyz.kvantum.server.api.util.IgnoreSyntax;
 
@@ -36,6 +37,8 @@ public class ImgView extends StaticFileView implements CacheApplicable, IgnoreSy
     public ImgView(final String filter, final Map<String, Object> options) {
         super(filter, options, "img", FileExtension.IMAGE);
         super.relatedFolderPath = "/assets/img";
+        // Images are already compressed
+        this.setCompression(CompressionMode.NEVER);
     }
 
     @Override public boolean isApplicable(final AbstractRequest r) {
@@ -25,10 +25,13 @@ import com.esotericsoftware.reflectasm.MethodAccess;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.exceptions.KvantumException;
 import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.CompressionMode;
 import xyz.kvantum.server.api.response.Response;
 import xyz.kvantum.server.api.util.Assert;
 import xyz.kvantum.server.api.util.ProviderFactory;
@@ -44,6 +47,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Predicate;
 
 /**
  * The lowest-level class in the request handling chain. Allows for responses to be generated from incoming requests.
@@ -73,6 +79,12 @@ public abstract class RequestHandler {
 
     @Getter private long matchCount = 0L;
 
+    /**
+     * Override of the {@link xyz.kvantum.server.api.response.CompressionPolicy} for responses generated by this
+     * handler
+     */
+    @Getter @Setter @NonNull private CompressionMode compression = CompressionMode.DEFAULT;
+
     /**
      * Register an alternate outcome, which can be triggered using Middleware, by using {@link
      * AbstractRequest#useAlternateOutcome(String)}, where the parameter is the identifier given to this method.
@@ -159,41 +171,116 @@ public abstract class RequestHandler {
         //
         // Allow middleware to act on the request
         //
-        final MiddlewareQueue middlewareQueue = middlewareQueuePopulator.generateQueue();
-        middlewareQueue.handle(request);
-        if (!middlewareQueue.finished()) {
-            ServerImplementation.getImplementation()
-                .log("Skipping request as a middleware broke the chain!");
+        if (!this.applyMiddleware(request)) {
             return null; // Nullable
         }
 
-        final Response response;
-
         //
         // If the middleware requested that an alternative
         // handling method should be used, we do that here
         //
         if (request.hasMeta(AbstractRequest.ALTERNATE_OUTCOME)) {
-            //noinspection ConstantConditions
-            final Optional<MethodHandle> method = getAlternateOutcomeMethod(
-                request.getMeta(AbstractRequest.ALTERNATE_OUTCOME).toString());
-            if (method.isPresent()) {
-                final MethodHandle methodHandle = method.get();
-                response = new Response(this);
-                methodHandle.methodAccess.invoke(this, methodHandle.nameIndex, request, response);
-            } else {
-                throw new KvantumException(
-                    "Trying to access an internal redirect which isn't registered for type " + this
-                        .getName() + ", identified by " + request
-                        .getMeta(AbstractRequest.ALTERNATE_OUTCOME));
+            return this.decorate(this.generateAlternateOutcome(request));
+        }
+
+        //
+        // Here we attempt to generate a response
+        //
+        return this.decorate(generate(request));
+    }
+
+    /**
+     * Attempt to serve a request asynchronously. Middleware and alternate outcomes are applied
+     * synchronously, before the response is generated using {@link #generateAsync(AbstractRequest)}.
+     * Cancelling the returned stage cancels the stage returned by {@link #generateAsync(AbstractRequest)}
+     *
+     * @param request Requested to serve
+     * @return Stage that completes with the generated response, or with null if a middleware broke the chain
+     */
+    public final CompletionStage<Response> handleAsync(final AbstractRequest request) {
+        return this.handleAsync(request, null);
+    }
+
+    /**
+     * Attempt to serve a request asynchronously, see {@link #handleAsync(AbstractRequest)}. The caller may answer
+     * the request itself, once the middleware has accepted it. This is used to answer conditional requests without
+     * generating the response, which must never happen before the middleware (such as authentication) has run
+     *
+     * @param request  Requested to serve
+     * @param answered Invoked after the middleware, unless the middleware requested an alternate outcome, before
+     *                 the response is generated. If it returns true, the request has been answered by the caller,
+     *                 and no response is generated. May be null
+     * @return Stage that completes with the generated response, or with null if a middleware broke the chain, or
+     * if the request was answered by the caller
+     */
+    public final CompletionStage<Response> handleAsync(final AbstractRequest request,
+        final Predicate<AbstractRequest> answered) {
+        Assert.isValid(request);
+
+        if (!this.applyMiddleware(request)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        //
+        // An alternate outcome replaces the response, so the caller may only answer
+        // requests that are served by this handler
+        //
+        if (request.hasMeta(AbstractRequest.ALTERNATE_OUTCOME)) {
+            return CompletableFuture.completedFuture(this.decorate(this.generateAlternateOutcome(request)));
+        }
+
+        if (answered != null && answered.test(request)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final CompletionStage<Response> generated = generateAsync(request);
+        if (generated == null) {
+            throw new KvantumException(
+                "ResponseHandler (" + this.getName() + ") generated a null response stage");
+        }
+        final CompletableFuture<Response> response = generated.thenApply(this::decorate).toCompletableFuture();
+        //
+        // If the response is cancelled (or times out), the generation is cancelled as well
+        //
+        response.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                generated.toCompletableFuture().cancel(true);
             }
-        } else {
-            //
-            // Here we attempt to generate a response
-            //
-            response = generate(request);
+        });
+        return response;
+    }
+
+    private boolean applyMiddleware(final AbstractRequest request) {
+        if (middlewareQueuePopulator.isEmpty()) {
+            return true;
         }
+        final MiddlewareQueue middlewareQueue = middlewareQueuePopulator.generateQueue();
+        middlewareQueue.handle(request);
+        if (!middlewareQueue.finished()) {
+            ServerImplementation.getImplementation()
+                .log("Skipping request as a middleware broke the chain!");
+            return false;
+        }
+        return true;
+    }
+
+    private Response generateAlternateOutcome(final AbstractRequest request) {
+        //noinspection ConstantConditions
+        final Optional<MethodHandle> method = getAlternateOutcomeMethod(
+            request.getMeta(AbstractRequest.ALTERNATE_OUTCOME).toString());
+        if (method.isPresent()) {
+            final MethodHandle methodHandle = method.get();
+            final Response response = new Response(this);
+            methodHandle.methodAccess.invoke(this, methodHandle.nameIndex, request, response);
+            return response;
+        }
+        throw new KvantumException(
+            "Trying to access an internal redirect which isn't registered for type " + this
+                .getName() + ", identified by " + request
+                .getMeta(AbstractRequest.ALTERNATE_OUTCOME));
+    }
 
+    private Response decorate(final Response response) {
         //
         // If a null response is returned, panic
         //
@@ -223,6 +310,18 @@ public abstract class RequestHandler {
      */
     abstract public Response generate(final AbstractRequest request);
 
+    /**
+     * Generate a response for the incoming request, without blocking the calling thread. Handlers that wait for
+     * I/O (such as database calls) should override this, and return a stage that completes once the response is
+     * available. The default implementation completes immediately, using {@link #generate(AbstractRequest)}
+     *
+     * @param request The incoming request
+     * @return Stage that completes with the generated response
+     */
+    public CompletionStage<Response> generateAsync(final AbstractRequest request) {
+        return CompletableFuture.completedFuture(generate(request));
+    }
+
     /**
      * Get the view specific factory (if it exists)
      *
@@ -21,13 +21,27 @@
  */
 package xyz.kvantum.server.api.views.annotatedviews;
 
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.Response;
 import xyz.kvantum.server.api.views.requesthandler.SimpleRequestHandler;
 
+import java.util.concurrent.CompletionStage;
+
 final class AnnotatedView<C> extends SimpleRequestHandler {
 
+    private final ResponseMethod<?, C> method;
+
     AnnotatedView(final ViewDeclaration declaration, final ResponseMethod<?, C> method) {
         super(declaration.getFilter(), method, declaration.isForceHttps(),
             declaration.getHttpMethod());
+        this.method = method;
+    }
+
+    @Override public CompletionStage<Response> generateAsync(final AbstractRequest request) {
+        if (this.method.isAsync()) {
+            return this.method.handleAsync(request);
+        }
+        return super.generateAsync(request);
     }
 
 }
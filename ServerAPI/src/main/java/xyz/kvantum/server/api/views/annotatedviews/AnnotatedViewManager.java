@@ -40,6 +40,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 
 public final class AnnotatedViewManager {
 
@@ -61,11 +62,12 @@ public final class AnnotatedViewManager {
             final Method m = annotatedMethod.getMethod();
             final boolean usesAlternate =
                 Arrays.equals(m.getParameterTypes(), alternativeParameters);
+            final boolean async = CompletionStage.class.isAssignableFrom(m.getReturnType());
             final ViewMatcher matcher = annotatedMethod.getAnnotation();
             final ViewDeclaration declaration = new ViewDeclaration();
 
-            if (!usesAlternate && !Response.class.equals(m.getReturnType()) && matcher.outputType()
-                .isEmpty()) {
+            if (!usesAlternate && !async && !Response.class.equals(m.getReturnType()) && matcher
+                .outputType().isEmpty()) {
                 ServerImplementation.getImplementation().getErrorDigest()
                     .digest(new IllegalArgumentException(m.getName() + " doesn't return response"));
             } else {
@@ -78,11 +80,13 @@ public final class AnnotatedViewManager {
                     declaration.setMiddleware(matcher.middlewares());
                     declaration.setForceHttps(matcher.forceHTTPS());
                     declaration.setHttpMethod(matcher.httpMethod());
+                    declaration.setCompression(matcher.compression());
                     if (!matcher.outputType().isEmpty() && converters
                         .containsKey(matcher.outputType().toLowerCase(Locale.ENGLISH))) {
                         final OutputConverter outputConverter =
                             converters.get(matcher.outputType().toLowerCase(Locale.ENGLISH));
-                        if (!outputConverter.getClasses().contains(m.getReturnType())) {
+                        // The output of asynchronous methods can only be checked once it is available
+                        if (!async && !outputConverter.getClasses().contains(m.getReturnType())) {
                             ServerImplementation.getImplementation().getErrorDigest().
                                 digest(new IllegalArgumentException(m.getName() + " should return one of " +
                                     CollectionUtil.smartJoin(outputConverter.getClasses(), Class::getSimpleName, ", ")));
@@ -120,6 +124,8 @@ public final class AnnotatedViewManager {
                         return;
                     }
 
+                    view.setCompression(declaration.getCompression());
+
                     for (final Class<? extends Middleware> middleware : matcher.middlewares()) {
                         view.getMiddlewareQueuePopulator().add(middleware);
                     }
@@ -23,14 +23,27 @@ package xyz.kvantum.server.api.views.annotatedviews;
 
 import xyz.kvantum.server.api.cache.CacheApplicable;
 import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.Response;
 import xyz.kvantum.server.api.views.View;
 
+import java.util.concurrent.CompletionStage;
+
 final class CachedAnnotatedView<C> extends View implements CacheApplicable {
 
+    private final ResponseMethod<?, C> method;
+
     CachedAnnotatedView(final ViewDeclaration viewDeclaration, final ResponseMethod<?, C> method) {
         super(viewDeclaration.getFilter(), viewDeclaration.getName(), null, method,
             viewDeclaration.getHttpMethod());
         this.forceHTTPS = viewDeclaration.isForceHttps();
+        this.method = method;
+    }
+
+    @Override public CompletionStage<Response> generateAsync(final AbstractRequest request) {
+        if (this.method.isAsync()) {
+            return this.method.handleAsync(request);
+        }
+        return super.generateAsync(request);
     }
 
     @Override public boolean passes(final AbstractRequest request) {
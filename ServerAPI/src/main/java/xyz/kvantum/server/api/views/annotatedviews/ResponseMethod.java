@@ -28,6 +28,8 @@ import xyz.kvantum.server.api.util.Assert;
 import xyz.kvantum.server.api.views.ViewReturn;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.function.BiConsumer;
 
 final public class ResponseMethod<T, C>
@@ -37,6 +39,7 @@ final public class ResponseMethod<T, C>
     private final int nameIndex;
     private final C instance;
     private final boolean passResponse;
+    private final boolean async;
     private final OutputConverter outputConverter;
 
     ResponseMethod(final Method method, final C instance, final OutputConverter outputConverter)
@@ -47,12 +50,32 @@ final public class ResponseMethod<T, C>
         this.nameIndex = methodAccess.getIndex(method.getName());
         this.instance = instance;
         this.passResponse = method.getReturnType() == Void.TYPE;
+        this.async = CompletionStage.class.isAssignableFrom(method.getReturnType());
         this.outputConverter = outputConverter;
     }
 
+    /**
+     * Check whether the method returns a {@link CompletionStage}
+     *
+     * @return True if the method is asynchronous
+     */
+    public boolean isAsync() {
+        return this.async;
+    }
+
+    /**
+     * Invoke the method. If the method is asynchronous, this blocks until the response is available. Use {@link
+     * #handleAsync(AbstractRequest)} to avoid blocking
+     *
+     * @param r Request
+     * @return Generated response
+     */
     public Response handle(final AbstractRequest r) {
         Assert.notNull(r);
 
+        if (async) {
+            return this.handleAsync(r).toCompletableFuture().join();
+        }
         if (passResponse) {
             final Response response = new Response();
             this.methodAccess.invoke(instance, nameIndex, r, response);
@@ -65,6 +88,29 @@ final public class ResponseMethod<T, C>
         return (Response) output;
     }
 
+    /**
+     * Invoke the method, without waiting for asynchronous methods to complete. Synchronous methods are invoked
+     * using {@link #handle(AbstractRequest)}
+     *
+     * @param r Request
+     * @return Stage that completes with the generated response
+     */
+    public CompletionStage<Response> handleAsync(final AbstractRequest r) {
+        Assert.notNull(r);
+
+        if (!async) {
+            return CompletableFuture.completedFuture(this.handle(r));
+        }
+        final CompletionStage<?> output = (CompletionStage<?>) this.methodAccess.invoke(instance, nameIndex, r);
+        if (output == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (outputConverter != null) {
+            return output.thenApply(outputConverter::generateResponse);
+        }
+        return output.thenApply(Response.class::cast);
+    }
+
     @Override public void accept(final AbstractRequest request, final Response response) {
         response.copyFrom(handle(request));
     }
@@ -23,6 +23,7 @@ package xyz.kvantum.server.api.views.annotatedviews;
 
 import lombok.Data;
 import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.response.CompressionMode;
 import xyz.kvantum.server.api.views.requesthandler.Middleware;
 
 @Data final class ViewDeclaration {
@@ -34,5 +35,6 @@ import xyz.kvantum.server.api.views.requesthandler.Middleware;
     private boolean forceHttps = true;
     private HttpMethod httpMethod = HttpMethod.ALL;
     private OutputConverter outputConverter = null;
+    private CompressionMode compression = CompressionMode.DEFAULT;
 
 }
@@ -22,6 +22,7 @@
 package xyz.kvantum.server.api.views.annotatedviews;
 
 import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.response.CompressionMode;
 import xyz.kvantum.server.api.views.requesthandler.Middleware;
 
 import java.lang.annotation.ElementType;
@@ -45,4 +46,6 @@ import java.lang.annotation.Target;
 
     String outputType() default "";
 
+    CompressionMode compression() default CompressionMode.DEFAULT;
+
 }
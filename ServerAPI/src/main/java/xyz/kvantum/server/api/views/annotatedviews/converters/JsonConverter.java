@@ -21,16 +21,28 @@
  */
 package xyz.kvantum.server.api.views.annotatedviews.converters;
 
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import xyz.kvantum.server.api.pojo.KvantumPojo;
 import xyz.kvantum.server.api.response.Header;
 import xyz.kvantum.server.api.response.Response;
+import xyz.kvantum.server.api.util.KvantumJsonWriter;
 import xyz.kvantum.server.api.views.annotatedviews.AnnotatedViewManager;
 import xyz.kvantum.server.api.views.annotatedviews.OutputConverter;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts view output to JSON. Strings are assumed to already be JSON, any other value is
+ * serialized using a {@link KvantumJsonWriter}, and sent directly from its buffer
+ */
 final class JsonConverter extends OutputConverter {
 
     JsonConverter(final AnnotatedViewManager annotatedViewManager) {
-        super("json", JSONObject.class, String.class);
+        super("json", JSONObject.class, String.class, JSONArray.class, Map.class, List.class,
+            Collection.class, KvantumPojo.class);
         annotatedViewManager.registerConverter(this);
     }
 
@@ -40,7 +52,11 @@ final class JsonConverter extends OutputConverter {
         response.getHeader().set(Header.X_CONTENT_TYPE_OPTIONS, "nosniff");
         response.getHeader().set(Header.X_FRAME_OPTIONS, "deny");
         response.getHeader().set(Header.CONTENT_SECURITY_POLICY, "default-src 'none'");
-        response.setResponse(input.toString());
+        if (input instanceof String) {
+            response.setResponse((String) input);
+        } else {
+            response.setResponse(new KvantumJsonWriter().write(input).toOutputStream());
+        }
         return response;
     }
 }
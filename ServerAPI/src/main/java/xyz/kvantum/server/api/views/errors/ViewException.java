@@ -76,8 +76,10 @@ public class ViewException extends View {
     @Override public Response generate(AbstractRequest request) {
         StringWriter sw = new StringWriter();
         in.printStackTrace(new PrintWriter(sw)); // Should not use ErrorDigest
+        // The request line may not have been read, if the request was rejected while it was being read
+        final String path = request.getQuery() == null ? "" : request.getQuery().getResource();
         return new Response().setResponse(
-            template.replace("{{path}}", request.getQuery().getResource())
+            template.replace("{{path}}", path)
                 .replace("{{exception}}", in.toString()).replace("{{cause}}",
                 sw.toString().replace(System.getProperty("line.separator"), "<br/>\n"))
                 .replace("{{message}}", in.getMessage() != null ? in.getMessage() : ""));
@@ -23,7 +23,7 @@ package xyz.kvantum.server.api.views.requesthandler;
 
 import xyz.kvantum.server.api.request.AbstractRequest;
 
-public final class DebugMiddleware extends Middleware {
+@Stateless public final class DebugMiddleware extends Middleware {
 
     @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
         request.useAlternateOutcome("debug");
@@ -31,8 +31,12 @@ import xyz.kvantum.server.api.views.annotatedviews.ViewMatcher;
  * the database (and much, much more) </p> <p> Middleware is lined up in a sort of chain, by using a special queue. If a
  * middleware breaks the queue, the request will not be served by the view. ( Middleware can redirect requests to other
  * views without continuing the chain ) </p> <p> <h1>Creation</h1></br> You just have to extend {@link Middleware}. Your
- * class must have a public no-args constructor </br>
+ * class must have a public no-args constructor. Middleware without fields should be annotated with {@link Stateless},
+ * so that a single instance can be shared by all requests. Other middleware is instantiated for every request, unless
+ * it overrides {@link #reset()}, in which case its instances are pooled
+ * </br>
  * <pre>
+ * {@literal @}Stateless
  * public class ExampleMiddleware extends Middleware
  * {
  *     {@literal @}Override
@@ -97,4 +101,15 @@ public abstract class Middleware {
 
     public abstract void handle(final AbstractRequest request, final MiddlewareQueue queue);
 
+    /**
+     * Reset the state of this instance, once a request has passed it. Middleware that isn't {@link Stateless} is
+     * instantiated for every request, unless it overrides this method, in which case instances are pooled and reset
+     * before they are reused
+     *
+     * @return True if the instance can be reused, false if it should be discarded
+     */
+    public boolean reset() {
+        return false;
+    }
+
 }
@@ -21,30 +21,66 @@
  */
 package xyz.kvantum.server.api.views.requesthandler;
 
+import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.request.AbstractRequest;
 import xyz.kvantum.server.api.util.Assert;
 
-import java.util.ArrayDeque;
-import java.util.Queue;
+import java.util.Arrays;
 
+/**
+ * Cursor over a compiled middleware pipeline. A new queue is used for every request, but the pipeline itself
+ * is shared, see {@link MiddlewareQueuePopulator#generateQueue()}
+ */
 public final class MiddlewareQueue {
 
-    private final Queue<Middleware> queue = new ArrayDeque<>();
+    private static final MiddlewareStage[] EMPTY = new MiddlewareStage[0];
+
+    private MiddlewareStage[] stages;
+    private int index = 0;
 
     private boolean finished = false;
 
+    public MiddlewareQueue() {
+        this(EMPTY);
+    }
+
+    MiddlewareQueue(final MiddlewareStage[] stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * Add a middleware instance to the end of this queue. The instance is only used by this queue
+     *
+     * @param middleware Middleware instance
+     */
     public void add(final Middleware middleware) {
-        this.queue.add(middleware);
+        // The stages may be shared with other queues, so they're copied rather than modified
+        final MiddlewareStage[] stages = Arrays.copyOf(this.stages, this.stages.length + 1);
+        stages[this.stages.length] = MiddlewareStage.of(middleware);
+        this.stages = stages;
     }
 
     public void handle(final AbstractRequest request) {
         Assert.isValid(request);
 
-        final Middleware next = this.queue.poll();
-        if (next != null) {
-            next.handle(request, this);
-        } else {
+        if (this.index >= this.stages.length) {
             finished = true;
+            return;
+        }
+        final MiddlewareStage stage = this.stages[this.index++];
+        final Middleware next;
+        try {
+            next = stage.acquire();
+        } catch (final Exception e) {
+            ServerImplementation.getImplementation().getErrorDigest().digest(e);
+            // Middleware that cannot be instantiated is skipped
+            this.handle(request);
+            return;
+        }
+        try {
+            next.handle(request, this);
+        } finally {
+            stage.release(next);
         }
     }
 
@@ -24,35 +24,51 @@ package xyz.kvantum.server.api.views.requesthandler;
 import xyz.kvantum.server.api.core.ServerImplementation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 
+/**
+ * Compiles registered middleware into an immutable pipeline. The pipeline is rebuilt whenever middleware is
+ * added, and is shared by all queues generated by the populator
+ */
 public final class MiddlewareQueuePopulator {
 
     private final Collection<Class<? extends Middleware>> middleware = new ArrayList<>();
+    private volatile MiddlewareStage[] pipeline = new MiddlewareStage[0];
 
-    public void add(final Class<? extends Middleware> middleware) {
+    public synchronized void add(final Class<? extends Middleware> middleware) {
         if (Middleware.class == middleware) {
             return;
         }
+        final MiddlewareStage stage;
         try {
-            middleware.getConstructor();
+            stage = MiddlewareStage.compile(middleware);
         } catch (final Exception e) {
             ServerImplementation.getImplementation().getErrorDigest().digest(e);
             return;
         }
         this.middleware.add(middleware);
+        final MiddlewareStage[] pipeline = Arrays.copyOf(this.pipeline, this.pipeline.length + 1);
+        pipeline[this.pipeline.length] = stage;
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Get the registered middleware classes, in the order that they are applied
+     *
+     * @return Unmodifiable collection of middleware classes
+     */
+    public synchronized Collection<Class<? extends Middleware>> getMiddleware() {
+        return Collections.unmodifiableList(new ArrayList<>(this.middleware));
+    }
+
+    public boolean isEmpty() {
+        return this.pipeline.length == 0;
     }
 
     public MiddlewareQueue generateQueue() {
-        final MiddlewareQueue queue = new MiddlewareQueue();
-        middleware.forEach(clazz -> {
-            try {
-                queue.add(clazz.newInstance());
-            } catch (final Exception e) {
-                ServerImplementation.getImplementation().getErrorDigest().digest(e);
-            }
-        });
-        return queue;
+        return new MiddlewareQueue(this.pipeline);
     }
 
 }
@@ -0,0 +1,115 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.views.requesthandler;
+
+import lombok.NonNull;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.exceptions.KvantumException;
+import xyz.kvantum.server.api.util.ObjectPool;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * A compiled stage of a middleware pipeline. Stateless middleware is instantiated once and shared. Middleware that
+ * can {@link Middleware#reset() reset} its state is pooled, and reset once a request has passed it. Other middleware
+ * is instantiated for every request, using the constructor that was resolved when the stage was compiled, as it may
+ * keep state in its fields
+ */
+final class MiddlewareStage {
+
+    private final Middleware shared;
+    private final Constructor<? extends Middleware> constructor;
+    private final ObjectPool<Middleware> pool;
+
+    private MiddlewareStage(final Middleware shared, final Constructor<? extends Middleware> constructor,
+        final boolean pooled) {
+        this.shared = shared;
+        this.constructor = constructor;
+        this.pool = pooled ? ObjectPool.<Middleware>builder().capacity(CoreConfig.Pools.middlewareInstances)
+            .supplier(this::create).validator(Middleware::reset).build() : null;
+    }
+
+    /**
+     * Compile a middleware class
+     *
+     * @param type Middleware class, which must have a public no-args constructor
+     * @return Compiled stage
+     * @throws ReflectiveOperationException If the class cannot be instantiated
+     */
+    static MiddlewareStage compile(@NonNull final Class<? extends Middleware> type)
+        throws ReflectiveOperationException {
+        final Constructor<? extends Middleware> constructor = type.getConstructor();
+        if (type.isAnnotationPresent(Stateless.class)) {
+            return new MiddlewareStage(constructor.newInstance(), null, false);
+        }
+        final boolean resettable = type.getMethod("reset").getDeclaringClass() != Middleware.class;
+        return new MiddlewareStage(null, constructor, resettable);
+    }
+
+    /**
+     * Create a stage that always uses the given instance
+     *
+     * @param middleware Middleware instance
+     * @return Stage
+     */
+    static MiddlewareStage of(@NonNull final Middleware middleware) {
+        return new MiddlewareStage(middleware, null, false);
+    }
+
+    private Middleware create() {
+        try {
+            return this.constructor.newInstance();
+        } catch (final ReflectiveOperationException e) {
+            throw new KvantumException("Failed to instantiate " + this.constructor.getDeclaringClass(), e);
+        }
+    }
+
+    /**
+     * Get an instance for the current request: the shared instance of stateless middleware, a pooled instance,
+     * or a new instance. The instance must be returned using {@link #release(Middleware)}
+     *
+     * @return Middleware instance
+     * @throws ReflectiveOperationException If a new instance cannot be created
+     */
+    Middleware acquire() throws ReflectiveOperationException {
+        if (this.shared != null) {
+            return this.shared;
+        }
+        if (this.pool != null) {
+            return this.pool.acquire();
+        }
+        return this.constructor.newInstance();
+    }
+
+    /**
+     * Return an instance once the request has passed it. Pooled instances are reset, and reused if the reset
+     * succeeds
+     *
+     * @param middleware Instance returned by {@link #acquire()}
+     */
+    void release(@NonNull final Middleware middleware) {
+        if (this.pool != null) {
+            this.pool.release(middleware);
+        }
+    }
+
+}
@@ -23,20 +23,36 @@ package xyz.kvantum.server.api.orm;
 
 import net.sf.oval.constraint.MinLength;
 import net.sf.oval.constraint.NotEmpty;
+import net.sf.oval.constraint.NotNull;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import xyz.kvantum.server.api.mocking.MockRequest;
 import xyz.kvantum.server.api.orm.annotations.KvantumConstructor;
 import xyz.kvantum.server.api.orm.annotations.KvantumField;
+import xyz.kvantum.server.api.orm.annotations.KvantumInsert;
 import xyz.kvantum.server.api.orm.annotations.KvantumObject;
 import xyz.kvantum.server.api.request.AbstractRequest;
 import xyz.kvantum.server.api.request.AbstractRequest.QueryParameters;
 import xyz.kvantum.server.api.request.HttpMethod;
 import xyz.kvantum.server.api.util.ParameterScope;
+import xyz.kvantum.server.api.util.Parsers;
 import xyz.kvantum.server.api.util.ProtocolType;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.Map;
+
 class KvantumObjectFactoryTest {
 
+    private static final String ALL_TYPES =
+        "/?int=-12&byte=7&char=k&short=300&long=9000000000&float=1.5&double=-2.25&boolean=true&string=value";
+
+    private static MockRequest request(final String query) {
+        return new MockRequest(AbstractRequest.QueryCache.getInstance()
+            .getQuery(new QueryParameters(HttpMethod.GET, ProtocolType.HTTP, query)));
+    }
+
     @Test void from() {
         //
         // Make sure that the request is parsed successfully
@@ -72,6 +88,178 @@ class KvantumObjectFactoryTest {
         Assertions.assertEquals(1, validationFailed.getViolations().size());
     }
 
+    @Test void validatesInheritedConstraints() {
+        final KvantumObjectParserResult<Labelled> result = KvantumObjectFactory.from(Labelled.class)
+            .build(ParameterScope.GET).parseRequest(request("/?value=1"));
+        Assertions.assertFalse(result.isSuccess());
+        Assertions.assertTrue(
+            result.getError() instanceof KvantumObjectParserResult.KvantumObjectParserValidationFailed);
+    }
+
+    @Test void bindsAllFieldTypes() {
+        final KvantumObjectParserResult<FieldTypes> result = KvantumObjectFactory.from(FieldTypes.class)
+            .build(ParameterScope.GET).parseRequest(request(ALL_TYPES));
+        Assertions.assertTrue(result.isSuccess());
+        final FieldTypes object = result.getParsedObject();
+        Assertions.assertEquals(-12, object.intValue);
+        Assertions.assertEquals((byte) 7, object.byteValue);
+        Assertions.assertEquals('k', object.charValue);
+        Assertions.assertEquals((short) 300, object.shortValue);
+        Assertions.assertEquals(9_000_000_000L, object.longValue);
+        Assertions.assertEquals(1.5F, object.floatValue);
+        Assertions.assertEquals(-2.25D, object.doubleValue);
+        Assertions.assertTrue(object.booleanValue);
+        Assertions.assertEquals("value", object.stringValue);
+    }
+
+    @Test void bindsAllConstructorParameterTypes() {
+        final KvantumObjectFactory<ConstructorTypes> factory = KvantumObjectFactory.from(ConstructorTypes.class);
+        KvantumObjectParserResult<ConstructorTypes> result =
+            factory.build(ParameterScope.GET).parseRequest(request(ALL_TYPES));
+        Assertions.assertTrue(result.isSuccess());
+        ConstructorTypes object = result.getParsedObject();
+        Assertions.assertEquals(-12, object.intValue);
+        Assertions.assertEquals((byte) 7, object.byteValue);
+        Assertions.assertEquals('k', object.charValue);
+        Assertions.assertEquals((short) 300, object.shortValue);
+        Assertions.assertEquals(9_000_000_000L, object.longValue);
+        Assertions.assertEquals(1.5F, object.floatValue);
+        Assertions.assertEquals(-2.25D, object.doubleValue);
+        Assertions.assertTrue(object.booleanValue);
+        Assertions.assertEquals("value", object.stringValue);
+
+        //
+        // Missing parameters use the defaults of the constructor parameters
+        //
+        result = factory.build(ParameterScope.GET).parseRequest(request("/?int=1"));
+        Assertions.assertTrue(result.isSuccess());
+        object = result.getParsedObject();
+        Assertions.assertEquals(1, object.intValue);
+        Assertions.assertEquals((byte) 1, object.byteValue);
+        Assertions.assertEquals('c', object.charValue);
+        Assertions.assertEquals((short) 2, object.shortValue);
+        Assertions.assertEquals(3L, object.longValue);
+        Assertions.assertEquals(4.5F, object.floatValue);
+        Assertions.assertEquals(5.5D, object.doubleValue);
+        Assertions.assertFalse(object.booleanValue);
+        Assertions.assertEquals("default", object.stringValue);
+    }
+
+    @Test void reportsParsingErrors() {
+        final KvantumObjectFactory<FieldTypes> factory = KvantumObjectFactory.from(FieldTypes.class);
+        KvantumObjectParserResult<FieldTypes> result =
+            factory.build(ParameterScope.GET).parseRequest(request("/?int=twelve"));
+        Assertions.assertFalse(result.isSuccess());
+        Assertions.assertTrue(
+            result.getError() instanceof KvantumObjectParserResult.KvantumObjectParserCouldNotParse);
+        result = factory.build(ParameterScope.GET).parseRequest(request("/?byte=1"));
+        Assertions.assertFalse(result.isSuccess());
+        Assertions.assertTrue(
+            result.getError() instanceof KvantumObjectParserResult.KvantumObjectParserMissingParameter);
+        // A required primitive constructor parameter without a value cannot be constructed
+        final KvantumObjectParserResult<ConstructorTypes> constructed =
+            KvantumObjectFactory.from(ConstructorTypes.class).build(ParameterScope.GET)
+                .parseRequest(request("/?string=value"));
+        Assertions.assertFalse(constructed.isSuccess());
+        Assertions.assertTrue(constructed
+            .getError() instanceof KvantumObjectParserResult.KvantumObjectParserInitializedFailed);
+    }
+
+    /**
+     * Compares the generated binder with binding using {@link Constructor#newInstance(Object...)} and {@link
+     * Field#set(Object, Object)}
+     */
+    @Tag("benchmark") @Test void benchmarkAgainstReflection() throws Exception {
+        final int iterations = 200_000;
+        final KvantumObjectFactory<FieldTypes> factory = KvantumObjectFactory.from(FieldTypes.class);
+        final MockRequest request = request(ALL_TYPES);
+        final Map<String, String> parameters = request.getQuery().getParameters();
+        final Constructor<FieldTypes> constructor = FieldTypes.class.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        final Field[] fields = FieldTypes.class.getDeclaredFields();
+        for (final Field field : fields) {
+            field.setAccessible(true);
+        }
+
+        long generated = 0L, reflective = 0L;
+        for (int round = 0; round < 2; round++) { // The first round is a warm-up
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Assertions.assertTrue(factory.build(ParameterScope.GET).parseRequest(request).isSuccess());
+            }
+            generated = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                final FieldTypes instance = constructor.newInstance();
+                for (final Field field : fields) {
+                    final KvantumField kvantumField = field.getAnnotation(KvantumField.class);
+                    final String value = parameters.get(kvantumField.kvantumName());
+                    if (value != null) {
+                        field.set(instance, Parsers.getPrimitiveParser(field).get()
+                            .parse(value).getResult());
+                    }
+                }
+            }
+            reflective = System.nanoTime() - start;
+        }
+        Assertions.assertTrue(generated < reflective, String
+            .format("Expected the generated binder (%d ns/op) to be faster than reflection (%d ns/op)",
+                generated / iterations, reflective / iterations));
+    }
+
+    @KvantumObject private static class FieldTypes {
+
+        @KvantumField(kvantumName = "int", isRequired = true) private int intValue;
+        @KvantumField(kvantumName = "byte") private byte byteValue;
+        @KvantumField(kvantumName = "char") private char charValue;
+        @KvantumField(kvantumName = "short") private short shortValue;
+        @KvantumField(kvantumName = "long") private long longValue;
+        @KvantumField(kvantumName = "float") private float floatValue;
+        @KvantumField(kvantumName = "double") private double doubleValue;
+        @KvantumField(kvantumName = "boolean") private boolean booleanValue;
+        @KvantumField(kvantumName = "string") private String stringValue;
+
+        @KvantumConstructor private FieldTypes() {
+        }
+
+    }
+
+
+    @KvantumObject private static class ConstructorTypes {
+
+        @KvantumField(kvantumName = "int") private final int intValue;
+        @KvantumField(kvantumName = "byte") private final byte byteValue;
+        @KvantumField(kvantumName = "char") private final char charValue;
+        @KvantumField(kvantumName = "short") private final short shortValue;
+        @KvantumField(kvantumName = "long") private final long longValue;
+        @KvantumField(kvantumName = "float") private final float floatValue;
+        @KvantumField(kvantumName = "double") private final double doubleValue;
+        @KvantumField(kvantumName = "boolean") private final boolean booleanValue;
+        @KvantumField(kvantumName = "string") private final String stringValue;
+
+        @KvantumConstructor private ConstructorTypes(@KvantumInsert("int") final int intValue,
+            @KvantumInsert(value = "byte", defaultValue = "1") final byte byteValue,
+            @KvantumInsert(value = "char", defaultValue = "c") final char charValue,
+            @KvantumInsert(value = "short", defaultValue = "2") final short shortValue,
+            @KvantumInsert(value = "long", defaultValue = "3") final long longValue,
+            @KvantumInsert(value = "float", defaultValue = "4.5") final float floatValue,
+            @KvantumInsert(value = "double", defaultValue = "5.5") final double doubleValue,
+            @KvantumInsert(value = "boolean", defaultValue = "false") final boolean booleanValue,
+            @KvantumInsert(value = "string", defaultValue = "default") final String stringValue) {
+            this.intValue = intValue;
+            this.byteValue = byteValue;
+            this.charValue = charValue;
+            this.shortValue = shortValue;
+            this.longValue = longValue;
+            this.floatValue = floatValue;
+            this.doubleValue = doubleValue;
+            this.booleanValue = booleanValue;
+            this.stringValue = stringValue;
+        }
+
+    }
+
+
     @KvantumObject(checkValidity = true) private static class MockObject {
 
         @MinLength(2) @NotEmpty @KvantumField(kvantumName = "koala") private String string1;
@@ -83,4 +271,21 @@ class KvantumObjectFactoryTest {
 
     }
 
+
+    private static class Label {
+
+        @NotNull protected String label;
+
+    }
+
+
+    @KvantumObject(checkValidity = true) private static class Labelled extends Label {
+
+        @KvantumField(kvantumName = "value") private int value;
+
+        @KvantumConstructor private Labelled() {
+        }
+
+    }
+
 }
@@ -24,6 +24,9 @@ package xyz.kvantum.server.api.pojo;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 class KvantumPojoTest {
 
     @Test void testPojo() {
@@ -45,6 +48,57 @@ class KvantumPojoTest {
         Assertions.assertEquals(kvantumPojo, kvantumPojoFactory.of(person));
     }
 
+    @Test void factoriesAreShared() {
+        Assertions.assertSame(KvantumPojoFactory.forClass(Person.class), KvantumPojoFactory.forClass(Person.class));
+    }
+
+    @Test void indexedGetters() {
+        final KvantumPojoFactory<Person> factory = KvantumPojoFactory.forClass(Person.class);
+        Assertions.assertEquals(2, factory.getGetterCount());
+        final int name = factory.getGetterIndex("name");
+        final int age = factory.getGetterIndex("age");
+        Assertions.assertEquals(-1, factory.getGetterIndex("missing"));
+        Assertions.assertEquals("name", factory.getGetterName(name));
+        Assertions.assertEquals(String.class, factory.getGetterType(name));
+        Assertions.assertEquals(int.class, factory.getGetterType(age));
+        final KvantumPojo<Person> pojo = factory.of(new Person("Olof", 32));
+        Assertions.assertEquals("Olof", pojo.get(name));
+        Assertions.assertEquals(32, pojo.get(age));
+        Assertions.assertEquals(32, pojo.toImmutable().get(age));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> pojo.get(2));
+    }
+
+    @Test void valuesAreReadLazily() {
+        final CountingPerson person = new CountingPerson();
+        final Map<String, Object> values = KvantumPojoFactory.forClass(CountingPerson.class).of(person).getAll();
+        Assertions.assertEquals(2, values.size());
+        Assertions.assertTrue(values.containsKey("name"));
+        Assertions.assertEquals(0, person.reads.get());
+        Assertions.assertEquals("counted", values.get("name"));
+        Assertions.assertEquals("counted", values.get("name"));
+        Assertions.assertEquals(1, person.reads.get());
+        Assertions.assertNull(values.get("missing"));
+        Assertions.assertEquals(Map.of("name", "counted", "length", 7), values);
+        Assertions.assertEquals(2, person.reads.get());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> values.put("name", "other"));
+    }
+
+    private static final class CountingPerson {
+
+        private final AtomicInteger reads = new AtomicInteger();
+
+        public String getName() {
+            reads.incrementAndGet();
+            return "counted";
+        }
+
+        public int getLength() {
+            reads.incrementAndGet();
+            return 7;
+        }
+    }
+
+
     private static final class Person {
 
         private String name;
@@ -0,0 +1,172 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.repository;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.pojo.KvantumPojo;
+import xyz.kvantum.server.api.pojo.KvantumPojoFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FieldComparatorTest {
+
+    private static final int OBJECTS = 1_000_000;
+
+    @Test void matchesAllFields() {
+        final FieldComparator<User, User> comparator = new FieldComparator<>(new User("admin", 1), false, false);
+        assertTrue(comparator.matches(new User("admin", 1)));
+        assertFalse(comparator.matches(new User("admin", 2)));
+        assertFalse(comparator.matches(new User("user", 1)));
+    }
+
+    @Test void matchesFirstAssignedField() {
+        final FieldComparator<User, User> comparator = new FieldComparator<>(new User(null, 1), true, true);
+        assertTrue(comparator.matches(new User("admin", 1)));
+        assertTrue(comparator.matches(new User(null, 1)));
+        assertFalse(comparator.matches(new User("admin", 2)));
+    }
+
+    /**
+     * A shared comparator is used for values of different classes, with different getters, from several threads
+     */
+    @Test void sharedBetweenThreads() throws Exception {
+        final FieldComparator<User, Object> comparator = new FieldComparator<>(new User("admin", 1), true, false);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        assertTrue(comparator.matches(new User("admin", 1)));
+                        assertTrue(comparator.matches(new Named("admin")));
+                        assertFalse(comparator.matches(new Named("user")));
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Matches one million objects using the comparator, and using a copy of every object's values,
+     * looked up by name (which is what the comparator used to do)
+     */
+    @Tag("benchmark") @Test void benchmark() {
+        final List<User> users = new ArrayList<>(OBJECTS);
+        for (int i = 0; i < OBJECTS; i++) {
+            users.add(new User("user" + (i % 1000), i % 100));
+        }
+        final User query = new User("user7", 7);
+        final FieldComparator<User, User> comparator = new FieldComparator<>(query, true, false);
+        final KvantumPojoFactory<User> factory = KvantumPojoFactory.forClass(User.class);
+        final KvantumPojo<User> queryPojo = factory.of(query);
+
+        long indexed = 0L, copied = 0L;
+        int indexedMatches = 0, copiedMatches = 0;
+        for (int round = 0; round < 2; round++) { // The first round is a warm-up
+            indexedMatches = copiedMatches = 0;
+            long start = System.nanoTime();
+            for (final User user : users) {
+                if (comparator.matches(user)) {
+                    indexedMatches++;
+                }
+            }
+            indexed = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (final User user : users) {
+                if (matchesCopy(queryPojo, factory.of(user))) {
+                    copiedMatches++;
+                }
+            }
+            copied = System.nanoTime() - start;
+        }
+        assertEquals(copiedMatches, indexedMatches);
+        assertEquals(OBJECTS / 1000, indexedMatches);
+        assertTrue(indexed < copied, String
+            .format("Expected the comparator (%d ms) to be faster than copying (%d ms) over %d objects",
+                indexed / 1_000_000L, copied / 1_000_000L, OBJECTS));
+    }
+
+    private static boolean matchesCopy(final KvantumPojo<User> queryPojo, final KvantumPojo<User> valuePojo) {
+        final Map<String, Object> values = new HashMap<>(valuePojo.getAll());
+        for (final Map.Entry<String, Object> entry : values.entrySet()) {
+            final Object entryValue = entry.getValue();
+            final Object queryValue = queryPojo.get(entry.getKey());
+            if (entryValue == null || queryValue == null) {
+                continue;
+            }
+            if (!entryValue.equals(queryValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class User {
+
+        private final String name;
+        private final Integer group;
+
+        private User(final String name, final Integer group) {
+            this.name = name;
+            this.group = group;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public Integer getGroup() {
+            return this.group;
+        }
+    }
+
+    private static final class Named {
+
+        private final String name;
+
+        private Named(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+    }
+
+}
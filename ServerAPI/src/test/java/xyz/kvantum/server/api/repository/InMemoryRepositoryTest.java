@@ -0,0 +1,280 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.repository;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryRepositoryTest {
+
+    private static final int OBJECTS = 200_000;
+    private static final int QUERIES = 1_000;
+
+    private static InMemoryRepository<User, Integer> repository() {
+        return new InMemoryRepository<>(User.class, User::getId).hashIndex("country")
+            .sortedIndex("age");
+    }
+
+    private static List<Integer> ids(final Collection<? extends User> users) {
+        return users.stream().map(User::getId).sorted().collect(Collectors.toList());
+    }
+
+    private static RSQLMatcher<User> rsql(final String query) {
+        return new RSQLMatcherFactory<User>().createMatcher(query);
+    }
+
+    @Test void indexesAreMaintained() {
+        final InMemoryRepository<User, Integer> repository = repository();
+        final User alice = new User(1, "alice", "se", 30);
+        final User bob = new User(2, "bob", "se", 40);
+        final User carol = new User(3, "carol", "no", 50);
+        repository.save(Arrays.asList(alice, bob, carol));
+        final FieldComparator<User, User> swedes =
+            new FieldComparator<>(new User(null, null, "se", null), true, false);
+        assertEquals(Arrays.asList(1, 2), ids(repository.findAllByQuery(swedes)));
+        assertEquals(2, repository.plan(swedes).getCandidates());
+
+        // Update: the item is modified in place and saved again, the old value must leave the index
+        bob.setCountry("no");
+        bob.setAge(20);
+        repository.save(Collections.singleton(bob));
+        assertEquals(Collections.singletonList(1), ids(repository.findAllByQuery(swedes)));
+        assertEquals(1, repository.plan(swedes).getCandidates());
+        assertEquals(2, repository.plan(rsql("country==no")).getCandidates());
+        assertEquals(Collections.singletonList(2), ids(repository.findAllByQuery(rsql("age=lt=25"))));
+
+        // Modified but not saved: the index still holds the saved value, and the candidate is rejected
+        alice.setCountry("dk");
+        assertEquals(1, repository.plan(swedes).getCandidates());
+        assertTrue(repository.findAllByQuery(swedes).isEmpty());
+
+        // Delete
+        repository.delete(carol);
+        assertEquals(Collections.singletonList(2), ids(repository.findAllByQuery(rsql("country==no"))));
+        assertEquals(1, repository.plan(rsql("country==no")).getCandidates());
+        assertEquals(0, repository.plan(rsql("age=ge=50")).getCandidates());
+        repository.delete(alice); // Indexed under "se", even though the item now says "dk"
+        assertEquals(0, repository.plan(swedes).getCandidates());
+        assertEquals(1, repository.size());
+    }
+
+    @Test void unassignedValues() {
+        final InMemoryRepository<User, Integer> repository = repository();
+        repository.save(Arrays.asList(new User(1, "alice", null, null), new User(2, "bob", "se", 40)));
+        // Unassigned values are ignored by the comparator, so they are candidates as well
+        final FieldComparator<User, User> swedes =
+            new FieldComparator<>(new User(null, null, "se", null), true, false);
+        assertEquals(Arrays.asList(1, 2), ids(repository.findAllByQuery(swedes)));
+        assertEquals(Collections.singletonList(2), ids(repository.findAllByQuery(rsql("age=gt=0"))));
+        repository.delete(Collections.singleton(new User(1, null, null, null)));
+        assertEquals(Collections.singletonList(2), ids(repository.findAllByQuery(swedes)));
+    }
+
+    @Test void indexesCanBeAddedLater() {
+        final InMemoryRepository<User, Integer> repository =
+            new InMemoryRepository<>(User.class, User::getId);
+        repository.save(Arrays.asList(new User(1, "alice", "se", 30), new User(2, "bob", "no", 40)));
+        assertEquals(QueryPlan.Type.SCAN, repository.plan(rsql("name==bob")).getType());
+        repository.hashIndex("name");
+        final QueryPlan plan = repository.plan(rsql("name==bob"));
+        assertEquals(QueryPlan.Type.HASH_INDEX, plan.getType());
+        assertEquals("name", plan.getField());
+        assertEquals(1, plan.getCandidates());
+        assertThrows(IllegalArgumentException.class, () -> repository.hashIndex("name"));
+        assertThrows(IllegalArgumentException.class, () -> repository.hashIndex("missing"));
+        assertThrows(IllegalArgumentException.class, () -> repository.sortedIndex("address"));
+    }
+
+    @Test void planner() {
+        final InMemoryRepository<User, Integer> repository = repository();
+        final List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            users.add(new User(i, "user" + i, "c" + (i % 10), i % 100));
+        }
+        repository.save(users);
+        // Equality lookups are preferred, and the smallest bucket wins
+        assertPlan(repository, "country==c1;age==11", "age", QueryPlan.Type.SORTED_INDEX, 10);
+        assertPlan(repository, "age=ge=10;country==c1", "country", QueryPlan.Type.HASH_INDEX, 100);
+        assertPlan(repository, "age=lt=5", "age", QueryPlan.Type.SORTED_INDEX, 50);
+        assertPlan(repository, "country=in=(c1,'c2')", "country", QueryPlan.Type.HASH_INDEX, 200);
+        // Disjunctions, negations, wildcards, unindexed fields, escaped and unparsable values are scanned
+        assertPlan(repository, "country==c1,age==11", null, QueryPlan.Type.SCAN, 1000);
+        assertPlan(repository, "country!=c1", null, QueryPlan.Type.SCAN, 1000);
+        assertPlan(repository, "country==c*", null, QueryPlan.Type.SCAN, 1000);
+        assertPlan(repository, "country=='c*'", null, QueryPlan.Type.SCAN, 1000);
+        assertPlan(repository, "country=in=(c1,\"c*\")", null, QueryPlan.Type.SCAN, 1000);
+        assertPlan(repository, "name==user1", null, QueryPlan.Type.SCAN, 1000);
+        assertPlan(repository, "age==old", null, QueryPlan.Type.SCAN, 1000);
+        assertPlan(repository, "country=='c\\'1'", null, QueryPlan.Type.SCAN, 1000);
+        assertPlan(repository, "(age==1;country==c1)", null, QueryPlan.Type.SCAN, 1000);
+        // Comparators that match any field can't use an index
+        assertNull(repository.plan(new FieldComparator<>(new User(null, null, "c1", null), true, true))
+            .getField());
+        assertEquals(10, repository.findAllByQuery(rsql("country==c1;age==11")).size());
+    }
+
+    /**
+     * Escaped quotes are unescaped by the matcher, so the index must not be asked for the escaped value
+     */
+    @Test void escapedValuesMatchAScan() {
+        final InMemoryRepository<User, Integer> indexed = repository();
+        final InMemoryRepository<User, Integer> scanned = new InMemoryRepository<>(User.class, User::getId);
+        final List<User> users = Arrays.asList(new User(1, "alice", "a'b'c", 30), new User(2, "bob", "a\"b", 40),
+            new User(3, "carol", "a';b", 50), new User(4, "dave", "se", 60));
+        indexed.save(users);
+        scanned.save(users);
+        for (final String query : Arrays.asList("country=='a\\'b\\'c'", "country==\"a\\\"b\"",
+            "country=='a\\';b'", "country=in=('a\\'b\\'c',se)", "country=='a\\'b\\'c';age=ge=10")) {
+            final List<Integer> expected = ids(scanned.findAllByQuery(rsql(query)));
+            assertFalse(expected.isEmpty(), query);
+            assertEquals(expected, ids(indexed.findAllByQuery(rsql(query))), query);
+        }
+    }
+
+    /**
+     * Indexes group their items by value, but matches must be returned in the order of a scan
+     */
+    @Test void indexedResultsKeepTheSaveOrder() {
+        final InMemoryRepository<User, Integer> indexed = repository();
+        final InMemoryRepository<User, Integer> scanned = new InMemoryRepository<>(User.class, User::getId);
+        final List<User> users = Arrays.asList(new User(5, "eve", "no", 50), new User(1, "alice", null, 30),
+            new User(4, "dave", "se", 40), new User(2, "bob", "no", 20), new User(3, "carol", "se", null));
+        indexed.save(users);
+        scanned.save(users);
+        // Saving an item again moves it to the end
+        indexed.save(Collections.singleton(users.get(0)));
+        scanned.save(Collections.singleton(users.get(0)));
+        final List<Matcher<?, ? super User>> queries = Arrays.asList(rsql("age=gt=10"), rsql("age=le=40"),
+            rsql("country=in=(se,no)"), new FieldComparator<>(new User(null, null, "no", null), true, false));
+        for (final Matcher<?, ? super User> query : queries) {
+            assertNotNull(indexed.plan(query).getField(), String.valueOf(query.getQueryObject()));
+            final List<Integer> expected = scanned.findAllByQuery(query).stream().map(User::getId)
+                .collect(Collectors.toList());
+            assertEquals(expected, indexed.findAllByQuery(query).stream().map(User::getId)
+                .collect(Collectors.toList()), String.valueOf(query.getQueryObject()));
+        }
+    }
+
+    private static void assertPlan(final InMemoryRepository<User, Integer> repository, final String query,
+        final String field, final QueryPlan.Type type, final int candidates) {
+        final QueryPlan plan = repository.plan(rsql(query));
+        assertEquals(field, plan.getField(), query);
+        assertEquals(type, plan.getType(), query);
+        assertEquals(candidates, plan.getCandidates(), query);
+    }
+
+    /**
+     * Answers the same queries using a hash index and by scanning every object
+     */
+    @Tag("benchmark") @Test void indexedQueriesAreFaster() {
+        final InMemoryRepository<User, Integer> indexed = repository();
+        final InMemoryRepository<User, Integer> scanned =
+            new InMemoryRepository<>(User.class, User::getId);
+        final List<User> users = new ArrayList<>(OBJECTS);
+        for (int i = 0; i < OBJECTS; i++) {
+            users.add(new User(i, "user" + i, "c" + (i % 10_000), i % 100));
+        }
+        indexed.save(users);
+        scanned.save(users);
+
+        long indexedTime = 0L, scannedTime = 0L;
+        int indexedMatches = 0, scannedMatches = 0;
+        for (int round = 0; round < 2; round++) { // The first round is a warm-up
+            indexedMatches = scannedMatches = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                indexedMatches += indexed.findAllByQuery(
+                    new FieldComparator<>(new User(null, null, "c" + i, null), true, false)).size();
+            }
+            indexedTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES / 100; i++) {
+                scannedMatches += scanned.findAllByQuery(
+                    new FieldComparator<>(new User(null, null, "c" + i, null), true, false)).size();
+            }
+            scannedTime = (System.nanoTime() - start) * 100;
+        }
+        assertEquals(QUERIES * OBJECTS / 10_000, indexedMatches);
+        assertEquals(indexedMatches, scannedMatches * 100);
+        assertTrue(indexedTime < scannedTime, String
+            .format("%d queries over %d objects: %d ms indexed, %d ms scanned (extrapolated)", QUERIES, OBJECTS,
+                indexedTime / 1_000_000L, scannedTime / 1_000_000L));
+    }
+
+    private static final class User {
+
+        private final Integer id;
+        private String name;
+        private String country;
+        private Integer age;
+
+        private User(final Integer id, final String name, final String country, final Integer age) {
+            this.id = id;
+            this.name = name;
+            this.country = country;
+            this.age = age;
+        }
+
+        public Integer getId() {
+            return this.id;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getCountry() {
+            return this.country;
+        }
+
+        public void setCountry(final String country) {
+            this.country = country;
+        }
+
+        public Integer getAge() {
+            return this.age;
+        }
+
+        public void setAge(final Integer age) {
+            this.age = age;
+        }
+
+        public Object getAddress() {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RSQLPredicateCacheTest {
+
+    @Test void normalize() {
+        assertEquals("name==bob;age=gt=20", RSQLPredicateCache.normalize(" name==bob;age=gt=20\n"));
+        assertEquals("name == bob ; age =gt= 20", RSQLPredicateCache.normalize("name  ==\tbob ;  age =gt= 20"));
+        assertEquals("name=in=( bob , 'ali  ce' )", RSQLPredicateCache.normalize("name=in=(  bob , 'ali  ce' )"));
+        assertEquals("name==bob and age>20", RSQLPredicateCache.normalize("name==bob   and\tage>20"));
+        assertEquals("name== \"  bob  \"", RSQLPredicateCache.normalize("name==  \"  bob  \""));
+        assertEquals("", RSQLPredicateCache.normalize("  "));
+    }
+
+    @Test void keywordsStaySeparatedFromParentheses() {
+        assertEquals("a==1 and (b==2)", RSQLPredicateCache.normalize("a==1 and (b==2)"));
+        assertEquals("a==1 and (b==2)", RSQLPredicateCache.normalize("a==1  and\t (b==2)"));
+        assertEquals("(a==1) and b==2", RSQLPredicateCache.normalize("(a==1) and b==2"));
+        assertEquals("(a==1) or (b==2)", RSQLPredicateCache.normalize(" (a==1)\n or  (b==2) "));
+    }
+
+    @Test void escapedQuotesDontEndArguments() {
+        assertEquals("name=='it\\'s  two'", RSQLPredicateCache.normalize("name=='it\\'s  two'"));
+        assertEquals("name==\"a\\\"  b\" ; x==1", RSQLPredicateCache.normalize("name==\"a\\\"  b\"  ;  x==1"));
+        // The query is compiled with the whitespace in the argument
+        final RSQLPredicateCache cache =
+            new RSQLPredicateCache(16, (query, type) -> (Predicate<Object>) value -> query.equals(value));
+        assertTrue(cache.getPredicate("name=='it\\'s  two'", String.class).test("name=='it\\'s  two'"));
+        assertNotSame(cache.getPredicate("name=='it\\'s  two'", String.class),
+            cache.getPredicate("name=='it\\'s two'", String.class));
+    }
+
+    @Test void predicatesAreShared() {
+        final AtomicInteger compilations = new AtomicInteger();
+        final RSQLPredicateCache cache = new RSQLPredicateCache(1024, (query, type) -> {
+            compilations.incrementAndGet();
+            return (Predicate<Object>) value -> query.equals(value);
+        });
+        final Predicate<String> predicate = cache.getPredicate("name==bob", String.class);
+        assertSame(predicate, cache.getPredicate(" name==bob\t", String.class));
+        assertEquals(1, compilations.get());
+        // Predicates are compiled per class
+        cache.getPredicate("name==bob", Integer.class);
+        assertEquals(2, compilations.get());
+        assertEquals(1, cache.getStats().hitCount());
+        assertEquals(2, cache.getStats().missCount());
+        assertEquals(2, cache.getCompileTimer().getCount());
+        cache.invalidateAll();
+        cache.getPredicate("name==bob", String.class);
+        assertEquals(3, compilations.get());
+    }
+
+}
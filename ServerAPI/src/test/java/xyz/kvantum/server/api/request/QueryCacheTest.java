@@ -0,0 +1,66 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.request;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.request.AbstractRequest.Query;
+import xyz.kvantum.server.api.request.AbstractRequest.QueryCache;
+import xyz.kvantum.server.api.request.AbstractRequest.QueryParameters;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryCacheTest {
+
+    private static Query query(final String resource) {
+        return QueryCache.getInstance()
+            .getQuery(new QueryParameters(HttpMethod.GET, ProtocolType.HTTP, resource));
+    }
+
+    @Test void pathLevelEntries() {
+        final Query plain = query("/cache-test/path");
+        assertSame(plain, query("/cache-test/path"));
+        assertTrue(plain.getParameters().isEmpty());
+        assertEquals("/cache-test/path", plain.getResource());
+        // A trailing question mark does not create a new entry
+        assertSame(plain, query("/cache-test/path?"));
+
+        final Query withParameters = query("/cache-test/path?a=1&b=2");
+        assertEquals("/cache-test/path", withParameters.getResource());
+        assertEquals(HttpMethod.GET, withParameters.getMethod());
+        assertEquals("1", withParameters.getParameters().get("a"));
+        assertEquals("2", withParameters.getParameters().get("b"));
+        assertEquals("/cache-test/path?a=1&b=2", withParameters.getFullRequest());
+    }
+
+    @Test void parametersAreCachedSeparately() {
+        final long hits = QueryCache.getInstance().getParameterStats().hitCount();
+        final Query first = query("/cache-test/first?shared=value");
+        final Query second = query("/cache-test/second?shared=value");
+        assertEquals("/cache-test/second", second.getResource());
+        assertSame(first.getParameters(), second.getParameters());
+        assertEquals(hits + 1, QueryCache.getInstance().getParameterStats().hitCount());
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.request;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryParameterParserTest {
+
+    @Test void parse() {
+        final Map<String, String> parameters =
+            QueryParameterParser.parse("a=1&b=&c&&d=x=y&a=2&e=hello+world");
+        assertEquals(5, parameters.size());
+        assertEquals("2", parameters.get("a"));
+        assertEquals("", parameters.get("b"));
+        assertEquals("", parameters.get("c"));
+        assertEquals("x=y", parameters.get("d"));
+        assertEquals("hello world", parameters.get("e"));
+        assertThrows(UnsupportedOperationException.class, () -> parameters.put("f", "g"));
+        assertTrue(QueryParameterParser.parse("").isEmpty());
+    }
+
+    @Test void decode() {
+        final Map<String, String> parameters =
+            QueryParameterParser.parse("name=%C3%A5sa&sep=a%26b%3Dc&bad=%zz%4&k%20ey=v");
+        assertEquals("åsa", parameters.get("name"));
+        assertEquals("a&b=c", parameters.get("sep"));
+        assertEquals("%zz%4", parameters.get("bad"));
+        assertEquals("v", parameters.get("k ey"));
+    }
+
+    @Test void parseByteRange() {
+        final byte[] bytes = "GET /path?x=1&y=2 HTTP/1.1".getBytes(StandardCharsets.US_ASCII);
+        final Map<String, String> parameters = QueryParameterParser.parse(bytes, 10, 7);
+        assertEquals(2, parameters.size());
+        assertEquals("1", parameters.get("x"));
+        assertEquals("2", parameters.get("y"));
+    }
+
+}
@@ -24,7 +24,9 @@ package xyz.kvantum.server.api.request;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import xyz.kvantum.server.api.request.RequestCompiler.HeaderPair;
+import xyz.kvantum.server.api.util.SharedBuffer;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 class RequestCompilerTest {
@@ -38,4 +40,19 @@ class RequestCompilerTest {
         Assertions.assertEquals("random-header", headerPair.getKey().toString());
         Assertions.assertEquals("value", headerPair.getValue().toString());
     }
+
+    @Test void compileHeaderSlice() {
+        final SharedBuffer buffer =
+            SharedBuffer.wrap("Random-Header :  value ".getBytes(StandardCharsets.US_ASCII));
+        final Optional<HeaderPair> headerPairOptional =
+            RequestCompiler.compileHeader(buffer.slice());
+        buffer.release();
+        Assertions.assertTrue(headerPairOptional.isPresent());
+        final HeaderPair headerPair = headerPairOptional.get();
+        Assertions.assertEquals("random-header", headerPair.getKey().toString());
+        Assertions.assertEquals("value ", headerPair.getValue().toString());
+        Assertions.assertFalse(RequestCompiler.compileHeader(
+            SharedBuffer.wrap("Invalid Header: value".getBytes(StandardCharsets.US_ASCII)).slice())
+            .isPresent());
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.request;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.mocking.MockRequest;
+import xyz.kvantum.server.api.request.AbstractRequest.Query;
+import xyz.kvantum.server.api.request.AbstractRequest.QueryCache;
+import xyz.kvantum.server.api.request.AbstractRequest.QueryParameters;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestRecyclingTest {
+
+    private static final AsciiString HOST = AsciiString.of("host");
+    private static final AsciiString LOCALHOST = AsciiString.of("localhost");
+    private static final AsciiString CONNECTION = AsciiString.of("connection");
+    private static final AsciiString KEEP_ALIVE = AsciiString.of("keep-alive");
+    private static final Object META = new Object();
+
+    private static Query query() {
+        return QueryCache.getInstance()
+            .getQuery(new QueryParameters(HttpMethod.GET, ProtocolType.HTTP, "/recycling?a=b"));
+    }
+
+    /**
+     * Simulate what the request reader does for a single request
+     */
+    private static void exchange(final AbstractRequest request, final Query query) {
+        request.setQuery(query);
+        request.getHeaders().add(HOST, LOCALHOST);
+        request.getHeaders().add(CONNECTION, KEEP_ALIVE);
+        request.addMeta("meta", META);
+    }
+
+    @AfterEach void disablePoison() {
+        CoreConfig.Pools.poisonRecycled = false;
+    }
+
+    @Test void recycleClearsState() {
+        final Query query = query();
+        final AbstractRequest request = new MockRequest(query);
+        exchange(request, query);
+        request.setValid(false);
+        request.recycle();
+        request.reuse();
+        assertNull(request.getQuery());
+        assertTrue(request.getHeaders().isEmpty());
+        assertEquals(0, request.getCookies().getFullSize());
+        assertFalse(request.hasMeta("meta"));
+        assertNull(request.getPostRequest());
+        assertFalse(request.getAuthorization().isPresent());
+        assertTrue(request.isValid());
+        exchange(request, query);
+        assertSame(query, request.getQuery());
+        assertEquals(KEEP_ALIVE, request.getHeader("Connection"));
+    }
+
+    @Test void poisonedRequestFails() {
+        CoreConfig.Pools.poisonRecycled = true;
+        final Query query = query();
+        final AbstractRequest request = new MockRequest(query);
+        exchange(request, query);
+        request.recycle();
+        assertThrows(IllegalStateException.class, request::getHeaders);
+        assertThrows(IllegalStateException.class, request::getQuery);
+        assertThrows(IllegalStateException.class, () -> request.getHeader("host"));
+        assertThrows(IllegalStateException.class, () -> request.getMeta("meta"));
+        request.reuse();
+        exchange(request, query);
+        assertEquals(LOCALHOST, request.getHeader("host"));
+    }
+
+}
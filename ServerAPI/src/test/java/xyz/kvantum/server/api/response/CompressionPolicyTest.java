@@ -0,0 +1,134 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionPolicyTest {
+
+    private static CompressionPolicy.CompressionPolicyBuilder builder() {
+        return CompressionPolicy.builder().minimumSize(100)
+            .allowedTypes(Arrays.asList("text/", "application/json"))
+            .deniedTypes(Arrays.asList("text/event-stream", "image/")).level(6).saturatedLevel(1)
+            .saturationLoad(0.8).loadSampleMillis(0).loadSupplier(() -> 0.1);
+    }
+
+    @Test void viewOverrides() {
+        final CompressionPolicy policy = builder().build();
+        assertTrue(policy.shouldCompress(CompressionMode.ALWAYS, "image/png", 10));
+        assertFalse(policy.shouldCompress(CompressionMode.NEVER, "text/html", 10_000));
+    }
+
+    @Test void minimumSize() {
+        final CompressionPolicy policy = builder().build();
+        assertFalse(policy.shouldCompress(CompressionMode.DEFAULT, "application/json", 40));
+        assertTrue(policy.shouldCompress(CompressionMode.DEFAULT, "application/json", 100));
+        // Unknown length
+        assertTrue(policy.shouldCompress(CompressionMode.DEFAULT, "application/json", -1));
+    }
+
+    @Test void contentTypes() {
+        final CompressionPolicy policy = builder().build();
+        assertTrue(policy.shouldCompress(CompressionMode.DEFAULT, "Text/HTML; charset=utf-8", 1000));
+        // Denied types take precedence over allowed types
+        assertFalse(policy.shouldCompress(CompressionMode.DEFAULT, "text/event-stream", 1000));
+        assertFalse(policy.shouldCompress(CompressionMode.DEFAULT, "image/jpeg", 1000));
+        // Not allowed
+        assertFalse(policy.shouldCompress(CompressionMode.DEFAULT, "application/pdf", 1000));
+        assertFalse(policy.shouldCompress(CompressionMode.DEFAULT, null, 1000));
+    }
+
+    @Test void mostSpecificPrefixWins() {
+        final CompressionPolicy policy =
+            builder().allowedTypes(Arrays.asList("text/", "image/svg+xml")).build();
+        assertTrue(policy.shouldCompress(CompressionMode.DEFAULT, "image/svg+xml", 1000));
+        assertFalse(policy.shouldCompress(CompressionMode.DEFAULT, "image/png", 1000));
+        // Equally specific prefixes are denied
+        final CompressionPolicy tie = builder().allowedTypes(Collections.singletonList("image/")).build();
+        assertFalse(tie.shouldCompress(CompressionMode.DEFAULT, "image/png", 1000));
+    }
+
+    @Test void defaultTypes() {
+        final CompressionPolicy policy = CompressionPolicy.builder().minimumSize(0)
+            .allowedTypes(CoreConfig.Compression.allowedTypes)
+            .deniedTypes(CoreConfig.Compression.deniedTypes).level(6).saturatedLevel(1)
+            .saturationLoad(0.8).loadSupplier(() -> 0.1).build();
+        assertTrue(policy.shouldCompress(CompressionMode.DEFAULT, "image/svg+xml", 1000));
+        assertFalse(policy.shouldCompress(CompressionMode.DEFAULT, "image/png", 1000));
+        assertTrue(policy.shouldCompress(CompressionMode.DEFAULT, "text/html; charset=utf-8", 1000));
+        assertFalse(policy.shouldCompress(CompressionMode.DEFAULT, "application/octet-stream", 1000));
+    }
+
+    @Test void emptyAllowListAllowsAll() {
+        final CompressionPolicy policy = builder().allowedTypes(Collections.emptyList()).build();
+        assertTrue(policy.shouldCompress(CompressionMode.DEFAULT, "application/pdf", 1000));
+        assertTrue(policy.shouldCompress(CompressionMode.DEFAULT, null, 1000));
+        assertFalse(policy.shouldCompress(CompressionMode.DEFAULT, "image/png", 1000));
+    }
+
+    @Test void levelFollowsLoad() {
+        final AtomicReference<Double> load = new AtomicReference<>(0.5);
+        final CompressionPolicy policy = builder().loadSupplier(load::get).build();
+        assertEquals(6, policy.selectLevel());
+        load.set(0.9);
+        assertEquals(1, policy.selectLevel());
+        // Load isn't available
+        load.set(-1D);
+        assertEquals(6, policy.selectLevel());
+    }
+
+    @Test void loadIsSampled() {
+        final AtomicReference<Double> load = new AtomicReference<>(0.9);
+        final CompressionPolicy policy =
+            builder().loadSampleMillis(60_000).loadSupplier(load::get).build();
+        assertEquals(1, policy.selectLevel());
+        load.set(0.1);
+        assertEquals(1, policy.selectLevel());
+    }
+
+    @Test void statistics() {
+        final CompressionPolicy policy = builder().build();
+        policy.record("text/html; charset=utf-8", 1000, 250);
+        policy.record("TEXT/HTML", 1000, 150);
+        policy.record(null, 10, 5);
+        final CompressionPolicy.ContentTypeStatistics html = policy.getStatistics().get("text/html");
+        assertEquals(2, html.getResponses());
+        assertEquals(2000, html.getUncompressed());
+        assertEquals(400, html.getCompressed());
+        assertEquals(0.2, html.getRatio(), 0.0001);
+        assertEquals(1, policy.getStatistics().get("other").getResponses());
+        for (int i = 0; i < 100; i++) {
+            policy.record("application/x-type-" + i, 10, 5);
+        }
+        assertEquals(64, policy.getStatistics().size());
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.util.TimeUtil;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConditionalRequestTest {
+
+    private static final EntityTag TAG = EntityTag.strong("5a-16c3b0f1a00-abc");
+    // Sun, 06 Nov 1994 08:49:37 GMT
+    private static final long MODIFIED = 784111777000L;
+
+    private static boolean notModified(final String ifNoneMatch, final String ifModifiedSince) {
+        return ConditionalRequest.isNotModified(HttpMethod.GET, ifNoneMatch, ifModifiedSince, TAG, MODIFIED);
+    }
+
+    @Test void parseList() {
+        assertEquals(Arrays.asList(EntityTag.strong("a"), EntityTag.weak("b,c"), EntityTag.ANY),
+            EntityTag.parseList("\"a\", W/\"b,c\" ,*"));
+        // Parsing stops at the first malformed tag
+        assertEquals(Arrays.asList(EntityTag.strong("a")), EntityTag.parseList("\"a\", b, \"c\""));
+        assertTrue(EntityTag.parseList("").isEmpty());
+        assertTrue(EntityTag.parseList("\"unterminated").isEmpty());
+        assertEquals("W/\"b\"", EntityTag.weak("b").toString());
+        assertEquals("\"a\"", EntityTag.strong("a").toString());
+        assertThrows(IllegalArgumentException.class, () -> EntityTag.strong("a\"b"));
+    }
+
+    @Test void comparison() {
+        assertTrue(EntityTag.strong("a").strongMatch(EntityTag.strong("a")));
+        assertFalse(EntityTag.weak("a").strongMatch(EntityTag.strong("a")));
+        assertTrue(EntityTag.weak("a").weakMatch(EntityTag.strong("a")));
+        assertFalse(EntityTag.weak("a").weakMatch(EntityTag.weak("b")));
+    }
+
+    @Test void ifNoneMatchList() {
+        assertTrue(notModified("\"5a-16c3b0f1a00-abc\"", null));
+        assertTrue(notModified("\"other\", \"5a-16c3b0f1a00-abc\"", null));
+        // Weak comparison is used, so a weakened tag (compressed representation) matches
+        assertTrue(notModified("W/\"5a-16c3b0f1a00-abc\"", null));
+        assertFalse(notModified("\"other\", W/\"another\"", null));
+        assertFalse(notModified("5a-16c3b0f1a00-abc", null));
+        // There is nothing to match against
+        assertFalse(ConditionalRequest.isNotModified(HttpMethod.GET, "\"a\"", null, null, MODIFIED));
+    }
+
+    @Test void wildcard() {
+        assertTrue(notModified("*", null));
+        assertTrue(notModified("\"other\", *", null));
+        // A representation without validators is still a current representation
+        assertTrue(ConditionalRequest.isNotModified(HttpMethod.GET, "*", null, null, -1L));
+    }
+
+    @Test void datePrecedence() {
+        final String modified = TimeUtil.getHTTPTimeStamp(new Date(MODIFIED));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", modified);
+        assertEquals(MODIFIED, TimeUtil.parseHTTPTimeStamp(modified));
+        assertTrue(notModified(null, modified));
+        assertTrue(notModified("", "Mon, 07 Nov 1994 00:00:00 GMT"));
+        assertFalse(notModified(null, "Sat, 05 Nov 1994 08:49:37 GMT"));
+        // Sub-second modifications are invisible to clients
+        assertTrue(ConditionalRequest.isNotModified(HttpMethod.GET, null, modified, TAG, MODIFIED + 999));
+        // If-None-Match takes precedence over If-Modified-Since
+        assertFalse(notModified("\"other\"", modified));
+        assertTrue(notModified("\"5a-16c3b0f1a00-abc\"", "Sat, 05 Nov 1994 08:49:37 GMT"));
+        // Invalid dates are ignored, as are unknown modification times
+        assertFalse(notModified(null, "yesterday"));
+        assertFalse(ConditionalRequest.isNotModified(HttpMethod.GET, null, modified, TAG, -1L));
+        assertEquals(-1L, TimeUtil.parseHTTPTimeStamp("06/11/1994"));
+    }
+
+    @Test void onlySafeMethods() {
+        assertTrue(ConditionalRequest.isNotModified(HttpMethod.HEAD, "*", null, TAG, MODIFIED));
+        assertFalse(ConditionalRequest.isNotModified(HttpMethod.POST, "*", null, TAG, MODIFIED));
+        assertSame(EntityTag.ANY, EntityTag.parseList("*").get(0));
+    }
+
+}
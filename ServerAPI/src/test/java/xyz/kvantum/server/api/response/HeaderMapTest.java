@@ -0,0 +1,159 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeaderMapTest {
+
+    private static AsciiString ascii(final String string) {
+        return AsciiString.of(string, false);
+    }
+
+    private static List<String> values(final HeaderMap map, final HeaderOption option) {
+        final List<String> values = new ArrayList<>();
+        map.getAll(option).forEach(value -> values.add(value.toString()));
+        return values;
+    }
+
+    @Test void registeredHeadersHaveSlots() {
+        assertTrue(Header.HEADER_CONTENT_TYPE.getIndex() >= 0);
+        assertSame(Header.HEADER_CONTENT_TYPE,
+            HeaderOption.getBySlot(Header.HEADER_CONTENT_TYPE.getIndex()));
+        assertSame(Header.HEADER_CONTENT_TYPE, HeaderOption.lookup("content-TYPE"));
+        assertNull(HeaderOption.lookup("X-Not-Registered-Header"));
+    }
+
+    @Test void equalOptionsShareSlots() {
+        final HeaderOption first = HeaderOption.create("X-Shared-Slot-Header");
+        final int slotCount = HeaderOption.getSlotCount();
+        final HeaderOption second = HeaderOption.create(ascii("X-Shared-Slot-Header"));
+        assertSame(first, second);
+        assertSame(Header.HEADER_CONTENT_TYPE, HeaderOption.create(Header.HEADER_CONTENT_TYPE.getText()));
+        assertEquals(slotCount, HeaderOption.getSlotCount());
+    }
+
+    @Test void caseInsensitiveLookup() {
+        final HeaderMap map = new HeaderMap();
+        map.add(ascii("content-length"), ascii("10"));
+        map.add(ascii("x-custom-header"), ascii("custom"));
+        assertEquals("10", map.get(Header.HEADER_CONTENT_LENGTH).toString());
+        assertEquals("10", map.get("Content-Length").toString());
+        assertEquals("custom", map.get("X-Custom-Header").toString());
+        assertTrue(map.contains("X-CUSTOM-HEADER"));
+        assertNull(map.get("x-missing"));
+        assertEquals("fallback", map.getOrDefault("x-missing", ascii("fallback")).toString());
+    }
+
+    @Test void multiValuedHeaders() {
+        final HeaderMap map = new HeaderMap();
+        map.add(Header.HEADER_LINK, ascii("a"));
+        map.add(Header.HEADER_CONTENT_TYPE, ascii("text/plain"));
+        map.add(Header.HEADER_LINK, ascii("b"));
+        map.add(Header.HEADER_LINK, ascii("c"));
+        assertEquals(4, map.size());
+        assertEquals("a", map.get(Header.HEADER_LINK).toString());
+        assertEquals(Arrays.asList("a", "b", "c"), values(map, Header.HEADER_LINK));
+
+        assertTrue(map.remove(Header.HEADER_LINK, ascii("a")));
+        assertEquals(Arrays.asList("b", "c"), values(map, Header.HEADER_LINK));
+        assertTrue(map.contains(Header.HEADER_LINK, ascii("c")));
+        assertFalse(map.contains(Header.HEADER_LINK, ascii("a")));
+
+        map.set(Header.HEADER_LINK, ascii("d"));
+        assertEquals(Arrays.asList("d"), values(map, Header.HEADER_LINK));
+        assertEquals(2, map.size());
+
+        assertTrue(map.remove(Header.HEADER_LINK));
+        assertFalse(map.contains(Header.HEADER_LINK));
+        assertTrue(map.getAll(Header.HEADER_LINK).isEmpty());
+        assertEquals(1, map.size());
+    }
+
+    @Test void setCookieOrdering() {
+        CoreConfig.debug = false; // Prevent logging
+
+        final Header header = new Header(Header.STATUS_OK);
+        for (final String name : new String[] {"first", "second", "third"}) {
+            header.setCookie(
+                ResponseCookie.builder().cookie(ascii(name)).value(ascii("value")).build());
+        }
+        assertEquals(
+            Arrays.asList("first=value; Path=/", "second=value; Path=/", "third=value; Path=/"),
+            values(header.getHeaders(), Header.HEADER_SET_COOKIE));
+        // Setting an identical cookie moves it to the end
+        header.setCookie(
+            ResponseCookie.builder().cookie(ascii("first")).value(ascii("value")).build());
+        assertEquals(
+            Arrays.asList("second=value; Path=/", "third=value; Path=/", "first=value; Path=/"),
+            values(header.getHeaders(), Header.HEADER_SET_COOKIE));
+    }
+
+    @Test void iterationOrder() {
+        final HeaderMap map = new HeaderMap();
+        map.add(Header.HEADER_SET_COOKIE, ascii("a=1"));
+        map.add(Header.HEADER_CONTENT_TYPE, ascii("text/html"));
+        map.add(ascii("x-unknown"), ascii("unknown"));
+        map.add(Header.HEADER_SET_COOKIE, ascii("b=2"));
+        final List<String> cookies = new ArrayList<>();
+        for (int i = 0; i < map.size(); i++) {
+            assertNotNull(map.getName(i));
+            if (map.getName(i).equalsIgnoreCase("set-cookie")) {
+                assertSame(Header.HEADER_SET_COOKIE, map.getOption(i));
+                cookies.add(map.getValue(i).toString());
+            } else if (map.getName(i).equalsIgnoreCase("x-unknown")) {
+                assertNull(map.getOption(i));
+            }
+        }
+        assertEquals(Arrays.asList("a=1", "b=2"), cookies);
+    }
+
+    @Test void copyOnWrite() {
+        final HeaderMap original = new HeaderMap();
+        original.add(Header.HEADER_CONTENT_TYPE, ascii("text/html"));
+        final HeaderMap copy = original.copy();
+        copy.set(Header.HEADER_CONTENT_TYPE, ascii("text/plain"));
+        copy.add(Header.HEADER_SET_COOKIE, ascii("a=1"));
+        original.add(Header.HEADER_LINK, ascii("link"));
+        assertEquals("text/html", original.get(Header.HEADER_CONTENT_TYPE).toString());
+        assertFalse(original.contains(Header.HEADER_SET_COOKIE));
+        assertEquals("text/plain", copy.get(Header.HEADER_CONTENT_TYPE).toString());
+        assertFalse(copy.contains(Header.HEADER_LINK));
+        original.clear();
+        assertTrue(original.isEmpty());
+        assertEquals(2, copy.size());
+    }
+
+}
@@ -0,0 +1,344 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.session;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.mocking.MockRequest;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.request.AbstractRequest.QueryCache;
+import xyz.kvantum.server.api.request.AbstractRequest.QueryParameters;
+import xyz.kvantum.server.api.request.Cookie;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.response.ResponseCookie;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionManagerTest {
+
+    private static final int THREADS = 32;
+    private static final int LOOKUPS = 20_000;
+
+    private static final AsciiString SESSION_KEY = AsciiString.of("intellectual_session");
+    private static final AsciiString SESSION_PASS = AsciiString.of("intellectual_key");
+
+    private final CountingSessionDatabase database = new CountingSessionDatabase();
+    private final SessionManager sessionManager = new SessionManager(TestSession::new, database);
+
+    @BeforeAll static void setup() {
+        CoreConfig.debug = false; // Prevent logging
+    }
+
+    private static AbstractRequest request() {
+        return new MockRequest(QueryCache.getInstance()
+            .getQuery(new QueryParameters(HttpMethod.GET, ProtocolType.HTTP, "/session")));
+    }
+
+    private static AbstractRequest request(final AsciiString sessionID, final AsciiString sessionKey) {
+        final AbstractRequest request = request();
+        request.getCookies().put(SESSION_KEY, new Cookie(SESSION_KEY, sessionID));
+        request.getCookies().put(SESSION_PASS, new Cookie(SESSION_PASS, sessionKey));
+        return request;
+    }
+
+    private static SignedSessionDatabase signedSessionDatabase() {
+        return new SignedSessionDatabase(new SessionTokenCodec(
+            List.of("shared-secret-0123456789".getBytes(StandardCharsets.US_ASCII)), true, 4000), 60_000L);
+    }
+
+    private static AbstractRequest withCookies(final Collection<ResponseCookie> cookies) {
+        final AbstractRequest request = request();
+        for (final ResponseCookie cookie : cookies) {
+            request.getCookies().put(cookie.getCookie(), new Cookie(cookie.getCookie(), cookie.getValue()));
+        }
+        return request;
+    }
+
+    private ISession requestSession(final AbstractRequest request) {
+        final ISession session = this.sessionManager.getSession(request).orElseThrow();
+        request.setSession(session);
+        return session;
+    }
+
+    @Test void readsOnVirtualSessionsDontTouchTheDatabase() {
+        final AbstractRequest request = request();
+        final ISession session = requestSession(request);
+        assertTrue(session.isVirtual());
+        assertNull(session.get("id"));
+        assertFalse(session.contains("user"));
+        assertTrue(session.getAll().isEmpty());
+        assertNull(session.getSessionKey());
+        assertNull(session.getOrCompute("user", key -> null));
+        session.set("user", null);
+        assertTrue(session.isVirtual());
+        this.sessionManager.finalizeSession(request);
+        assertEquals(0, this.database.calls.get());
+        assertTrue(request.postponedCookies.isEmpty());
+        assertEquals(1, this.sessionManager.getVirtualSessions());
+        assertEquals(0, this.sessionManager.getMaterializedSessions());
+    }
+
+    @Test void writesMaterializeTheSession() {
+        final AbstractRequest request = request();
+        final ISession session = requestSession(request);
+        session.set("user", "kvantum");
+        assertFalse(session.isVirtual());
+        assertEquals("kvantum", session.get("user"));
+        // The session is only stored once the response is finalized
+        assertEquals(0, this.database.calls.get());
+        this.sessionManager.finalizeSession(request);
+        this.sessionManager.finalizeSession(request);
+        assertEquals(1, this.database.stored.size());
+        assertEquals(1, this.database.calls.get());
+        assertEquals(2, request.postponedCookies.size());
+        assertEquals(1, this.sessionManager.getMaterializedSessions());
+
+        // The next request uses the cookies, and finds the cached session
+        final AbstractRequest next = request();
+        for (final ResponseCookie cookie : request.postponedCookies) {
+            next.getCookies().put(cookie.getCookie(), new Cookie(cookie.getCookie(), cookie.getValue()));
+        }
+        final ISession found = requestSession(next);
+        assertFalse(found.isVirtual());
+        assertSame(this.database.stored.values().iterator().next(), found);
+        assertEquals("kvantum", found.get("user"));
+        this.sessionManager.finalizeSession(next);
+        assertEquals(1, this.database.calls.get());
+        assertTrue(next.postponedCookies.isEmpty());
+    }
+
+    @Test void startedSessionsAreStored() {
+        final AbstractRequest request = request();
+        final ISession session = requestSession(request).start();
+        assertFalse(session.isVirtual());
+        this.sessionManager.finalizeSession(request);
+        assertEquals(1, this.database.stored.size());
+        assertTrue(request.getCookies().containsKey(SESSION_KEY));
+        assertTrue(request.getCookies().containsKey(SESSION_PASS));
+    }
+
+    @Test void signedSessionsAreSharedBetweenInstances() {
+        // Every instance has its own database, that only shares the secret with the others
+        final SessionManager first = new SessionManager(TestSession::new, signedSessionDatabase());
+        final SessionManager second = new SessionManager(TestSession::new, signedSessionDatabase());
+
+        final AbstractRequest request = request();
+        final ISession session = first.getSession(request).orElseThrow();
+        request.setSession(session);
+        session.set("__user_id__", 42);
+        first.finalizeSession(request);
+        assertEquals(2, request.postponedCookies.size());
+
+        // Another instance restores the session from the token alone
+        final AbstractRequest next = request();
+        for (final ResponseCookie cookie : request.postponedCookies) {
+            next.getCookies().put(cookie.getCookie(), new Cookie(cookie.getCookie(), cookie.getValue()));
+        }
+        final ISession restored = second.getSession(next).orElseThrow();
+        next.setSession(restored);
+        assertFalse(restored.isVirtual());
+        assertEquals(42, restored.get("__user_id__"));
+        assertEquals(session.get("id"), restored.get("id"));
+        // Unchanged sessions aren't re-issued
+        second.finalizeSession(next);
+        assertTrue(next.postponedCookies.isEmpty());
+    }
+
+    @Test void revokedCachedSessionsAreRejected() {
+        final SignedSessionDatabase database = signedSessionDatabase();
+        final SessionManager manager = new SessionManager(TestSession::new, database);
+
+        final AbstractRequest request = request();
+        final ISession session = manager.getSession(request).orElseThrow();
+        request.setSession(session);
+        session.set("__user_id__", 42);
+        manager.finalizeSession(request);
+        final AsciiString sessionID = (AsciiString) session.get("id");
+        assertSame(session, manager.getSession(withCookies(request.postponedCookies)).orElseThrow());
+
+        // The session is cached, so the deny-list has to be checked for every request
+        database.deleteSession(sessionID);
+        final ISession rejected = manager.getSession(withCookies(request.postponedCookies)).orElseThrow();
+        assertNotSame(session, rejected);
+        assertTrue(rejected.isVirtual());
+        assertFalse(rejected.contains("__user_id__"));
+        assertFalse(manager.getSession(sessionID).isPresent());
+    }
+
+    @Test void concurrentMissesLoadOnce() throws Exception {
+        final ISession stored = new TestSession().set("id", AsciiString.of("stored-session", false));
+        this.database.stored.put((AsciiString) stored.get("id"), stored);
+        this.database.gate = new CountDownLatch(1);
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<ISession>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> this.sessionManager
+                .getSession(request((AsciiString) stored.get("id"), stored.getSessionKey())).orElseThrow()));
+        }
+        // Wait until all but one thread are waiting for the load of the first thread
+        final long deadline = System.currentTimeMillis() + 10_000L;
+        while (this.sessionManager.getCoalescedLoads() < threads - 1
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+        this.database.gate.countDown();
+        final ISession session = futures.get(0).get(10, TimeUnit.SECONDS);
+        for (final Future<ISession> future : futures) {
+            assertSame(session, future.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(threads - 1, this.sessionManager.getCoalescedLoads());
+        assertEquals(1, this.sessionManager.getDatabaseLoads());
+        // One lookup, and the session is stored again once it is loaded
+        assertEquals(2, this.database.calls.get());
+        // Later requests are served from the cache
+        assertSame(session, this.sessionManager
+            .getSession(request((AsciiString) stored.get("id"), stored.getSessionKey())).orElseThrow());
+        assertEquals(1, this.sessionManager.getDatabaseLoads());
+    }
+
+    /**
+     * Run {@link #LOOKUPS} lookups of a cached session on each of {@link #THREADS} threads
+     *
+     * @return Elapsed time, in nanoseconds
+     */
+    private static long runContended(final ISession stored, final Function<AbstractRequest, Optional<ISession>> lookup)
+        throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final CountDownLatch ready = new CountDownLatch(THREADS);
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    final AbstractRequest request =
+                        request((AsciiString) stored.get("id"), stored.getSessionKey());
+                    ready.countDown();
+                    start.await();
+                    for (int j = 0; j < LOOKUPS; j++) {
+                        lookup.apply(request).orElseThrow();
+                    }
+                    return null;
+                }));
+            }
+            ready.await();
+            final long startTime = System.nanoTime();
+            start.countDown();
+            for (final Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            return System.nanoTime() - startTime;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Compares cache hits from many threads with the same lookups behind a single lock, which is how sessions
+     * were looked up before
+     */
+    @Tag("benchmark") @Test void cacheHitContention() throws Exception {
+        final ISession stored = new TestSession().set("id", AsciiString.of("contended-session", false));
+        this.database.stored.put((AsciiString) stored.get("id"), stored);
+        final Object lock = new Object();
+        long lockFree = 0L, locked = 0L;
+        for (int round = 0; round < 2; round++) { // The first round is a warm-up
+            lockFree = runContended(stored, this.sessionManager::getSession);
+            locked = runContended(stored, request -> {
+                synchronized (lock) {
+                    return this.sessionManager.getSession(request);
+                }
+            });
+        }
+        assertEquals(1, this.sessionManager.getDatabaseLoads());
+        assertEquals(0, this.sessionManager.getVirtualSessions());
+        final long lookups = (long) THREADS * LOOKUPS;
+        assertTrue(lockFree < locked, String
+            .format("Expected lock free lookups (%d/ms) to be faster than locked lookups (%d/ms)",
+                lookups * 1_000_000L / lockFree, lookups * 1_000_000L / locked));
+    }
+
+    private static final class CountingSessionDatabase implements ISessionDatabase {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private final Map<AsciiString, ISession> stored = new ConcurrentHashMap<>();
+        private volatile CountDownLatch gate;
+
+        @Override public void setup() {
+        }
+
+        @Override public SessionLoad getSessionLoad(final AsciiString sessionID) {
+            this.calls.incrementAndGet();
+            if (this.gate != null) {
+                try {
+                    this.gate.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final ISession session = this.stored.get(sessionID);
+            return session == null ?
+                null :
+                new SessionLoad(session.getSessionKey().toString(), System.currentTimeMillis());
+        }
+
+        @Override public void storeSession(final ISession session) {
+            this.calls.incrementAndGet();
+            this.stored.put((AsciiString) session.get("id"), session);
+        }
+
+        @Override public void updateSession(final AsciiString session) {
+            this.calls.incrementAndGet();
+        }
+
+        @Override public void deleteSession(final AsciiString session) {
+            this.calls.incrementAndGet();
+            this.stored.remove(session);
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.session;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SignedSessionDatabaseTest {
+
+    private static final byte[] OLD_SECRET = "old-secret-0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEW_SECRET = "new-secret-0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final long LIFETIME = TimeUnit.HOURS.toMillis(1);
+    private static final AsciiString SESSION_ID = AsciiString.of("b0c7d3b4-session", false);
+
+    private static SessionTokenCodec codec(final boolean encrypt, final byte[]... secrets) {
+        return new SessionTokenCodec(List.of(secrets), encrypt, 4000);
+    }
+
+    private static Map<String, Object> attributes() {
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put("__user_id__", 42);
+        attributes.put("name", "kvantum");
+        attributes.put("admin", true);
+        attributes.put("visits", 3L);
+        attributes.put("score", 0.5D);
+        return attributes;
+    }
+
+    private static ISession session() {
+        return new TestSession().set("id", SESSION_ID).set("last_active", System.currentTimeMillis())
+            .set("__user_id__", 42);
+    }
+
+    @Test void roundTrip() {
+        for (final boolean encrypt : new boolean[] {false, true}) {
+            final SessionTokenCodec codec = codec(encrypt, NEW_SECRET);
+            final Map<String, Object> attributes = attributes();
+            attributes.put("unsupported", new Object());
+            final AsciiString token = codec.encode(SESSION_ID.toString(), 1000L, 5000L, attributes);
+            final SessionToken decoded = codec.decode(token, 4999L);
+            assertNotNull(decoded);
+            assertEquals(SESSION_ID.toString(), decoded.getSessionId());
+            assertEquals(1000L, decoded.getIssuedAt());
+            assertEquals(5000L, decoded.getExpiresAt());
+            assertEquals(attributes(), decoded.getAttributes());
+            final String raw =
+                new String(Base64.getUrlDecoder().decode(token.toString()), StandardCharsets.ISO_8859_1);
+            assertEquals(!encrypt, raw.contains("kvantum"));
+        }
+    }
+
+    @Test void tamperedTokensAreRejected() {
+        for (final boolean encrypt : new boolean[] {false, true}) {
+            final SessionTokenCodec codec = codec(encrypt, NEW_SECRET);
+            final long now = System.currentTimeMillis();
+            final AsciiString token =
+                codec.encode(SESSION_ID.toString(), now, now + LIFETIME, attributes());
+            final byte[] bytes = Base64.getUrlDecoder().decode(token.toString());
+            for (int i = 0; i < bytes.length; i++) {
+                final byte[] tampered = bytes.clone();
+                tampered[i] ^= 1;
+                assertNull(codec.decode(Base64.getUrlEncoder().withoutPadding().encodeToString(tampered), now),
+                    "Byte " + i + " was modified");
+            }
+            final String string = token.toString();
+            assertNull(codec.decode(string.substring(0, string.length() - 1), now));
+            assertNull(codec.decode(string + "A", now));
+            assertNull(codec.decode("not a token", now));
+            assertNull(codec.decode("", now));
+            assertNull(codec.decode(null, now));
+            // Signed with an unknown secret
+            assertNull(codec(encrypt, OLD_SECRET).decode(token, now));
+        }
+    }
+
+    @Test void expiredTokensAreRejected() {
+        final SessionTokenCodec codec = codec(false, NEW_SECRET);
+        final AsciiString token =
+            codec.encode(SESSION_ID.toString(), 0L, 1000L, Collections.emptyMap());
+        assertNotNull(codec.decode(token, 999L));
+        assertNull(codec.decode(token, 1000L));
+
+        final SignedSessionDatabase database = new SignedSessionDatabase(codec, LIFETIME);
+        final long now = System.currentTimeMillis();
+        final AsciiString expired =
+            codec.encode(SESSION_ID.toString(), now - LIFETIME, now - 1, Collections.emptyMap());
+        assertNull(database.isValid(SESSION_ID, expired));
+    }
+
+    @Test void oversizedTokensAreRefused() {
+        final SessionTokenCodec codec = new SessionTokenCodec(List.of(NEW_SECRET), false, 256);
+        final Map<String, Object> attributes =
+            Collections.singletonMap("large", String.join("", Collections.nCopies(512, "x")));
+        assertThrows(IllegalStateException.class,
+            () -> codec.encode(SESSION_ID.toString(), 0L, 1000L, attributes));
+        assertThrows(IllegalArgumentException.class, () -> codec(false, "short".getBytes()));
+        assertThrows(IllegalArgumentException.class, () -> codec(false, NEW_SECRET, NEW_SECRET));
+    }
+
+    @Test void keyRotation() {
+        final SignedSessionDatabase before = new SignedSessionDatabase(codec(true, OLD_SECRET), LIFETIME);
+        final SignedSessionDatabase after =
+            new SignedSessionDatabase(codec(true, NEW_SECRET, OLD_SECRET), LIFETIME);
+        final SignedSessionDatabase retired = new SignedSessionDatabase(codec(true, NEW_SECRET), LIFETIME);
+
+        final ISession session = session();
+        final AsciiString oldToken = before.issueSessionKey(session);
+        assertNotNull(oldToken);
+        session.setSessionKey(oldToken);
+        assertNull(before.issueSessionKey(session));
+
+        // Tokens signed with the previous key are still accepted, but replaced
+        final SessionLoad load = after.isValid(SESSION_ID, oldToken);
+        assertNotNull(load);
+        assertEquals(42, load.getAttributes().get("__user_id__"));
+        final AsciiString newToken = after.issueSessionKey(session);
+        assertNotNull(newToken);
+        assertNotEquals(oldToken, newToken);
+        session.setSessionKey(newToken);
+        assertNull(after.issueSessionKey(session));
+
+        // Once the old secret is removed, only the new tokens are accepted
+        assertNull(retired.isValid(SESSION_ID, oldToken));
+        assertNotNull(retired.isValid(SESSION_ID, newToken));
+        // Servers that don't know the new secret yet reject the new tokens
+        assertNull(before.isValid(SESSION_ID, newToken));
+    }
+
+    @Test void changedSessionsAreReissued() {
+        final SignedSessionDatabase database = new SignedSessionDatabase(codec(false, NEW_SECRET), LIFETIME);
+        final ISession session = session();
+        session.setSessionKey(database.issueSessionKey(session));
+        // Changing the last active time doesn't require a new token
+        session.set("last_active", System.currentTimeMillis() + 1000L);
+        assertNull(database.issueSessionKey(session));
+        session.set("__user_id__", null);
+        final AsciiString token = database.issueSessionKey(session);
+        assertNotNull(token);
+        assertTrue(database.isValid(SESSION_ID, token).getAttributes().isEmpty());
+        // Tokens are bound to their session ID
+        assertNull(database.isValid(AsciiString.of("another-session", false), token));
+    }
+
+    @Test void revokedSessionsAreRejected() {
+        final SignedSessionDatabase database = new SignedSessionDatabase(codec(false, NEW_SECRET), LIFETIME);
+        final ISession session = session();
+        final AsciiString token = database.issueSessionKey(session);
+        assertNotNull(database.isValid(SESSION_ID, token));
+        assertFalse(database.isRevoked(SESSION_ID));
+        database.deleteSession(SESSION_ID);
+        assertTrue(database.isRevoked(SESSION_ID));
+        assertNull(database.isValid(SESSION_ID, token));
+        assertEquals(1, database.getDenyListSize());
+
+        final ISession other = new TestSession().set("id", AsciiString.of("other-session", false));
+        assertNotNull(database.isValid(AsciiString.of("other-session", false), database.issueSessionKey(other)));
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.session;
+
+import xyz.kvantum.server.api.pojo.KvantumPojo;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Map backed session
+ */
+final class TestSession implements ISession {
+
+    private final Map<String, Object> storage = new ConcurrentHashMap<>();
+    private AsciiString sessionKey = AsciiString.randomUUIDAsciiString();
+    private boolean deleted;
+
+    @Override public AsciiString getSessionKey() {
+        return this.sessionKey;
+    }
+
+    @Override public void setSessionKey(final AsciiString sessionKey) {
+        this.sessionKey = sessionKey;
+    }
+
+    @Override public void setDeleted() {
+        this.deleted = true;
+    }
+
+    @Override public boolean isDeleted() {
+        return this.deleted;
+    }
+
+    @Override public ISession set(final String key, final Object value) {
+        if (value == null) {
+            this.storage.remove(key);
+        } else {
+            this.storage.put(key, value);
+        }
+        return this;
+    }
+
+    @Override public KvantumPojo<ISession> toKvantumPojo() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override @SuppressWarnings("unchecked")
+    public <T> T getOrCompute(final String key, final Function<String, ? extends T> function) {
+        return (T) this.storage.computeIfAbsent(key, function);
+    }
+
+    @Override public boolean contains(final String variable) {
+        return this.storage.containsKey(variable);
+    }
+
+    @Override public Object get(final String variable) {
+        return this.storage.get(variable);
+    }
+
+    @Override public Map<String, Object> getAll() {
+        return new HashMap<>(this.storage);
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Measures the memory allocated by the current thread, for benchmarks that compare the allocation rate of two
+ * implementations
+ */
+public final class Allocations {
+
+    private Allocations() {
+    }
+
+    /**
+     * Skip the calling test if the JVM can't measure per-thread allocations. Tests that measure on another thread
+     * should call this first, as assumptions that fail on other threads are reported as errors
+     */
+    public static void assumeSupported() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean,
+            "The JVM doesn't expose per-thread allocations");
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled(),
+            "Per-thread allocation measurement is disabled");
+    }
+
+    /**
+     * Run a task and get the number of bytes that the current thread allocated while it ran. Tasks should be run
+     * once before they are measured, so that class loading and JIT compilation aren't counted
+     *
+     * @param task Task to measure
+     * @return Allocated bytes
+     */
+    public static long allocatedBytes(final Runnable task) {
+        assumeSupported();
+        final com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final long start = bean.getThreadAllocatedBytes(thread);
+        task.run();
+        return bean.getThreadAllocatedBytes(thread) - start;
+    }
+
+}
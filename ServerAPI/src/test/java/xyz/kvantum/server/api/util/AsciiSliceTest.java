@@ -0,0 +1,115 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsciiSliceTest {
+
+    private static SharedBuffer buffer(final String string) {
+        return SharedBuffer.wrap(string.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test void operationsOnBytes() {
+        final SharedBuffer buffer = buffer("xxContent-Length:  1234 ");
+        final AsciiSlice line = buffer.slice(2, buffer.getLength() - 2);
+        final int colon = line.indexOf(':', 0);
+        assertEquals(14, colon);
+        final AsciiSlice name = line.slice(0, colon);
+        assertTrue(name.equalsIgnoreCase("content-length"));
+        assertEquals(AsciiString.hashCodeIgnoreCase("CONTENT-LENGTH"), name.hashCodeIgnoreCase());
+        assertEquals(AsciiString.of("Content-Length", false).hashCode(), name.hashCode());
+        assertEquals(name, AsciiString.of("Content-Length", false));
+        assertEquals(8, line.indexOf("Length", 0));
+        assertEquals(-1, line.indexOf("length", 0));
+        final AsciiSlice value = line.slice(colon + 1, line.length()).trim();
+        assertTrue(value.isInteger());
+        assertEquals(1234, value.toInteger());
+        assertEquals("content-length", name.toLowerCase().toString());
+        assertFalse(name.isMaterialized());
+        assertEquals("Content-Length:  1234 ", line.toString());
+        assertTrue(line.isMaterialized());
+    }
+
+    @Test void numericParsing() {
+        assertEquals(-42L, buffer("-42").slice().toLong());
+        assertEquals(Long.MIN_VALUE, buffer(Long.toString(Long.MIN_VALUE)).slice().toLong());
+        assertThrows(NumberFormatException.class, () -> buffer("9223372036854775808").slice().toLong());
+        assertThrows(NumberFormatException.class, () -> buffer("2147483648").slice().toInteger());
+        assertThrows(NumberFormatException.class, () -> buffer("12a").slice().toLong());
+        assertThrows(NumberFormatException.class, () -> buffer("-").slice().toLong());
+        assertFalse(buffer("").slice().isInteger());
+    }
+
+    @Test void readAfterReleaseFails() {
+        final AtomicBoolean released = new AtomicBoolean(false);
+        final byte[] bytes = "keep-alive".getBytes(StandardCharsets.US_ASCII);
+        final SharedBuffer buffer = new SharedBuffer(bytes, 0, bytes.length, () -> released.set(true));
+        final AsciiSlice slice = buffer.slice(0, 4);
+        buffer.retain();
+        assertFalse(buffer.release());
+        assertTrue(slice.isReadable());
+        assertTrue(buffer.release());
+        assertTrue(released.get());
+        assertFalse(slice.isReadable());
+        assertThrows(IllegalStateException.class, () -> slice.charAt(0));
+        assertThrows(IllegalStateException.class, slice::hashCode);
+        assertThrows(IllegalStateException.class, slice::toAsciiString);
+        assertThrows(IllegalStateException.class, () -> slice.equalsIgnoreCase("keep"));
+        assertThrows(IllegalStateException.class, () -> buffer.slice(0, 1));
+        assertThrows(IllegalStateException.class, buffer::retain);
+        assertThrows(IllegalStateException.class, buffer::release);
+    }
+
+    @Test void materializedSliceOutlivesBuffer() {
+        final byte[] bytes = "text/html; charset=UTF-8".getBytes(StandardCharsets.US_ASCII);
+        final SharedBuffer buffer = new SharedBuffer(bytes, 0, bytes.length);
+        final AsciiSlice slice = buffer.slice(0, 9);
+        final AsciiString owned = slice.toAsciiString();
+        assertSame(owned, slice.toAsciiString());
+        buffer.release();
+        // Simulate reuse of the array
+        bytes[0] = 'X';
+        assertTrue(slice.isReadable());
+        assertEquals("text/html", slice.toString());
+        assertEquals('t', slice.charAt(0));
+        assertEquals("html", slice.slice(5, 9).toString());
+        assertEquals("text/html", owned.toString());
+    }
+
+    @Test void interning() {
+        final AsciiString interned = AsciiString.of("x-slice-interned", true);
+        final SharedBuffer buffer = buffer("X-Slice-Interned");
+        assertSame(interned, buffer.slice().toLowerCase());
+        assertSame(interned, buffer("x-slice-interned").slice().intern());
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsciiStringPoolTest {
+
+    @Test void byteRangeLookup() {
+        final AsciiStringPool pool = new AsciiStringPool(16, 1024, 64);
+        final AsciiString interned = pool.intern("content-type");
+        final byte[] buffer = "xxcontent-type: text/html".getBytes(StandardCharsets.US_ASCII);
+        assertSame(interned, pool.lookup(buffer, 2, 12));
+        assertSame(interned, pool.lookup("content-type"));
+        assertSame(interned, pool.intern(buffer, 2, 12));
+        assertNull(pool.lookup(buffer, 2, 11));
+        assertEquals(1, pool.size());
+        assertEquals(12, pool.getUsedBytes());
+        // The first intern is the only miss, apart from the failed lookup
+        assertEquals(3, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        assertTrue(pool.getHitRate() > 0D);
+    }
+
+    @Test void internIsOptIn() {
+        final AsciiString value = AsciiString.of("x-never-interned-value");
+        assertNull(AsciiString.getPool().lookup("x-never-interned-value"));
+        final AsciiString interned = AsciiString.of("x-interned-value", true);
+        assertSame(interned, AsciiString.of("x-interned-value"));
+        assertEquals("x-never-interned-value", value.toString());
+    }
+
+    @Test void oneOffValuesArentCounted() {
+        final AsciiStringPool pool = AsciiString.getPool();
+        final AsciiString interned = AsciiString.of("x-counted-value", true);
+        final long hits = pool.getHits();
+        final long misses = pool.getMisses();
+        AsciiString.of("x-one-off-value");
+        assertSame(interned, AsciiString.of("x-counted-value"));
+        assertEquals(hits, pool.getHits());
+        assertEquals(misses, pool.getMisses());
+    }
+
+    @Test void budgetIsRespected() {
+        final AsciiStringPool pool = new AsciiStringPool(4, 10, 8);
+        assertSame(pool.intern("abcd"), pool.intern("abcd"));
+        assertSame(pool.intern("efgh"), pool.intern("efgh"));
+        // Exceeds the byte budget
+        final AsciiString rejected = pool.intern("ijkl");
+        assertNotSame(rejected, pool.intern("ijkl"));
+        assertEquals("ijkl", rejected.toString());
+        // Exceeds the maximum length
+        assertNull(pool.lookup(pool.intern("123456789")));
+        // Non-ascii strings are never interned
+        assertNull(pool.lookup(pool.intern("å")));
+        assertEquals(2, pool.size());
+        assertEquals(8, pool.getUsedBytes());
+        assertEquals(4, pool.getRejections());
+    }
+
+    private static List<AsciiString[]> internConcurrently(final AsciiStringPool pool, final int values)
+        throws Exception {
+        final int threads = 8;
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Future<AsciiString[]>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            final int offset = thread;
+            futures.add(executorService.submit(() -> {
+                final AsciiString[] interned = new AsciiString[values];
+                latch.await();
+                // Every thread interns all values, in different orders, to maximize contention
+                for (int i = 0; i < values; i++) {
+                    final int value = (i * 31 + offset * 7) % values;
+                    interned[value] = pool.intern("value-" + value);
+                }
+                return interned;
+            }));
+        }
+        latch.countDown();
+        final List<AsciiString[]> results = new ArrayList<>();
+        for (final Future<AsciiString[]> future : futures) {
+            results.add(future.get(30, TimeUnit.SECONDS));
+        }
+        executorService.shutdown();
+        return results;
+    }
+
+    @Test void concurrentInterning() throws Exception {
+        final int values = 512;
+        final AsciiStringPool pool = new AsciiStringPool(values * 2, values * 32, 32);
+        final List<AsciiString[]> results = internConcurrently(pool, values);
+        final AsciiString[] first = results.get(0);
+        for (final AsciiString[] interned : results) {
+            for (int i = 0; i < values; i++) {
+                assertEquals("value-" + i, interned[i].toString());
+                assertSame(first[i], interned[i]);
+            }
+        }
+        assertEquals(values, pool.size());
+        assertEquals(0, pool.getRejections());
+        for (int i = 0; i < values; i++) {
+            assertSame(first[i], pool.lookup("value-" + i));
+        }
+    }
+
+    @Test void concurrentInterningWithinBudget() throws Exception {
+        final int values = 512;
+        final AsciiStringPool pool = new AsciiStringPool(100, 600, 32);
+        final List<AsciiString[]> results = internConcurrently(pool, values);
+        for (final AsciiString[] interned : results) {
+            for (int i = 0; i < values; i++) {
+                assertEquals("value-" + i, interned[i].toString());
+            }
+        }
+        assertTrue(pool.size() <= 100);
+        assertTrue(pool.getUsedBytes() <= 600);
+        assertTrue(pool.getRejections() > 0);
+        for (int i = 0; i < values; i++) {
+            final AsciiString interned = pool.lookup("value-" + i);
+            if (interned != null) {
+                assertEquals("value-" + i, interned.toString());
+            }
+        }
+    }
+
+}
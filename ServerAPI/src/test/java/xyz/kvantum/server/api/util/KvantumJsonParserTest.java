@@ -0,0 +1,128 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KvantumJsonParserTest {
+
+    private static final String[] DOCUMENTS =
+        {"{}", "[]", "null", "true", " false ", "0", "-12", "1.5", "-2e3", "1E-2", "\"\"", "\"text\"",
+            "\"esc\\\"aped\\\\ \\/ \\b\\f\\n\\r\\t \\u00e5\\u20AC\"",
+            "{\"name\":\"Olof\",\"age\":32,\"tags\":[\"a\",\"b\"],\"nested\":{\"empty\":{},\"list\":[[]]}}",
+            " [ 1 , { \"a\" : null } , true , \"x\" ] "};
+
+    @Test void parsesLikeJsonSimple() throws Exception {
+        for (final String document : DOCUMENTS) {
+            assertEquals(new JSONParser().parse(document), KvantumJsonParser.parse(document), document);
+        }
+        assertTrue(KvantumJsonParser.parse("{\"a\":[1]}") instanceof JSONObject);
+        assertTrue(((JSONObject) KvantumJsonParser.parse("{\"a\":[1]}")).get("a") instanceof JSONArray);
+        assertEquals(1L, ((JSONArray) KvantumJsonParser.parse("[1]")).get(0));
+        assertNull(KvantumJsonParser.parse("null"));
+        // json-simple fails with a NumberFormatException
+        assertEquals(1e20D, KvantumJsonParser.parse("100000000000000000000"));
+    }
+
+    @Test void rejectsInvalidDocuments() {
+        for (final String document : new String[] {"", "{", "[1,]", "{\"a\" 1}", "{a:1}", "tru", "\"open",
+            "1.2.3", "[1] 2", "\"\\x\"", "\"\\u12\""}) {
+            assertThrows(ParseException.class, () -> KvantumJsonParser.parse(document), document);
+        }
+    }
+
+    private static String nested(final int depth, final String open, final String value, final String close) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append(open);
+        }
+        builder.append(value);
+        for (int i = 0; i < depth; i++) {
+            builder.append(close);
+        }
+        return builder.toString();
+    }
+
+    @Test void limitsNestingDepth() throws Exception {
+        final int depth = KvantumJsonParser.MAX_DEPTH;
+        Object value = KvantumJsonParser.parse(nested(depth, "[", "", "]"));
+        for (int i = 1; i < depth; i++) {
+            value = ((JSONArray) value).get(0);
+        }
+        assertEquals(new JSONArray(), value);
+        // Siblings are at the same depth
+        final String array = nested(depth - 1, "[", "", "]");
+        assertEquals(2, ((JSONArray) KvantumJsonParser.parse("[" + array + "," + array + "]")).size());
+        assertTrue(KvantumJsonParser.parse(nested(depth, "{\"a\":", "1", "}")) instanceof JSONObject);
+
+        for (final String document : new String[] {nested(depth + 1, "[", "", "]"),
+            nested(depth + 1, "{\"a\":", "1", "}"), nested(depth / 2 + 1, "[{\"a\":", "1", "}]"),
+            nested(100_000, "[", "", "]")}) {
+            assertThrows(ParseException.class, () -> KvantumJsonParser.parse(document));
+        }
+    }
+
+    @Test void factoryFallsBackToEmptyObject() {
+        assertEquals(new JSONObject(), KvantumJsonFactory.parseJSONObject("[1, 2]"));
+        assertEquals(new JSONObject(), KvantumJsonFactory.parseJSONObject(null));
+        assertEquals(32L, KvantumJsonFactory.parseJSONObject("{\"age\":32}").get("age"));
+    }
+
+    @Test void concurrentParsing() throws Exception {
+        final String document = DOCUMENTS[13];
+        final Object expected = new JSONParser().parse(document);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<CompletableFuture<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return KvantumJsonParser.parse(document);
+                    } catch (final ParseException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, executor));
+            }
+            for (final CompletableFuture<Object> future : futures) {
+                assertEquals(expected, future.join());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.io.SimpleOutputStream;
+import xyz.kvantum.server.api.pojo.KvantumPojo;
+import xyz.kvantum.server.api.pojo.KvantumPojoFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KvantumJsonWriterTest {
+
+    private static final int ITERATIONS = 2_000;
+
+    private static void assertCompatible(final Object value) {
+        assertArrayEquals(JSONValue.toJSONString(value).getBytes(StandardCharsets.UTF_8),
+            KvantumJsonWriter.toBytes(value));
+    }
+
+    @Test void primitivesAreCompatible() {
+        for (final Object value : Arrays
+            .asList(null, true, false, 0, -1, 42L, Long.MIN_VALUE, Long.MAX_VALUE, Integer.MIN_VALUE,
+                (short) 12, (byte) -3, 1.5D, -0.0D, 1e20D, 2.5F, Double.NaN, Double.POSITIVE_INFINITY,
+                Float.NaN, "", "plain", 'c', new StringBuilder("builder"))) {
+            assertCompatible(value);
+        }
+    }
+
+    @Test void stringsAreEscapedCompatibly() {
+        final StringBuilder builder = new StringBuilder();
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            if (!Character.isSurrogate(c)) {
+                builder.append(c);
+            }
+        }
+        builder.append("😀 done");
+        assertCompatible(builder.toString());
+        assertCompatible("a/b\"c\\d\b\f\n\r\t");
+        // Malformed surrogates are replaced in the same way as String#getBytes does
+        assertCompatible("\ud83d lone \ude00");
+    }
+
+    @SuppressWarnings("unchecked") @Test void treesAreCompatible() {
+        final JSONObject object = new JSONObject();
+        object.put("name", "Olof");
+        object.put("age", 32);
+        object.put("nothing", null);
+        final JSONArray array = new JSONArray();
+        array.add(1);
+        array.add("two");
+        array.add(new JSONArray());
+        array.add(new JSONObject());
+        object.put("array", array);
+        final Map<Object, Object> map = new LinkedHashMap<>();
+        map.put(1, "number key");
+        map.put(null, "null key");
+        object.put("map", map);
+        assertCompatible(object);
+        assertCompatible(array);
+        assertCompatible(Arrays.asList(object, map, "x"));
+    }
+
+    @Test void collectionsAndArraysAreArrays() {
+        assertEquals("[\"a\",\"b\"]", KvantumJsonWriter.toString(new LinkedHashSet<>(Arrays.asList("a", "b"))));
+        assertEquals("[1,2,3]", KvantumJsonWriter.toString(new int[] {1, 2, 3}));
+        assertEquals("[\"a\",null]", KvantumJsonWriter.toString(new Object[] {"a", null}));
+    }
+
+    @Test void pojosAreWrittenUsingGetters() throws Exception {
+        final KvantumPojoFactory<Person> factory = KvantumPojoFactory.forClass(Person.class);
+        final KvantumPojo<Person> pojo = factory.of(new Person("Olof", 32));
+        final String json = KvantumJsonWriter.toString(pojo);
+        assertEquals(KvantumJsonParser.parse(pojo.toJson().toJSONString()), KvantumJsonParser.parse(json));
+        assertEquals(json, KvantumJsonWriter.toString(pojo.toImmutable()));
+        assertEquals(json, factory.getJsonFactory().toJsonString(pojo.getPojo()));
+        assertEquals("[" + json + "]", KvantumJsonWriter.toString(factory.getPojoCollection(List.of(pojo.getPojo()))));
+    }
+
+    @Test void writerCanBeReused() {
+        final KvantumJsonWriter writer = new KvantumJsonWriter(1);
+        writer.write(Arrays.asList("a long string that has to grow the buffer", 1, 2));
+        assertEquals("[\"a long string that has to grow the buffer\",1,2]", writer.toString());
+        writer.reset();
+        assertEquals(0, writer.size());
+        writer.write("b");
+        assertEquals("\"b\"", writer.toString());
+    }
+
+    @Test void outputStreamReadsFromTheBuffer() {
+        final KvantumJsonWriter writer = new KvantumJsonWriter(64);
+        writer.write(Arrays.asList("value", 1));
+        final byte[] expected = writer.toByteArray();
+        final SimpleOutputStream stream = writer.toOutputStream();
+        assertEquals(expected.length, stream.getLength());
+        final byte[] buffer = new byte[64];
+        assertEquals(expected.length, stream.read(buffer));
+        assertTrue(stream.isFinished());
+        assertArrayEquals(expected, Arrays.copyOf(buffer, expected.length));
+        assertArrayEquals(expected, stream.getAll());
+    }
+
+    private static List<KvantumPojo<Person>> people() {
+        final KvantumPojoFactory<Person> factory = KvantumPojoFactory.forClass(Person.class);
+        final List<KvantumPojo<Person>> people = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            people.add(factory.of(new Person("Person " + i, i)));
+        }
+        return people;
+    }
+
+    /**
+     * The previous behaviour: build the string with json-simple, and encode it
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeWithJsonSimple(final List<KvantumPojo<Person>> people) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            final JSONArray array = new JSONArray();
+            for (final KvantumPojo<Person> person : people) {
+                array.add(person.toJson());
+            }
+            array.toJSONString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void writeWithWriter(final KvantumJsonWriter writer, final List<KvantumPojo<Person>> people) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            writer.reset();
+            writer.write(people);
+        }
+    }
+
+    /**
+     * Compares the allocations of the writer with building the string with json-simple and encoding it
+     */
+    @Tag("benchmark") @Test void allocatesLessThanJsonSimple() {
+        final List<KvantumPojo<Person>> people = people();
+        final KvantumJsonWriter writer = new KvantumJsonWriter();
+        long simpleBytes = 0L, writerBytes = 0L;
+        for (int round = 0; round < 2; round++) { // The first round is a warm-up
+            simpleBytes = Allocations.allocatedBytes(() -> writeWithJsonSimple(people));
+            writerBytes = Allocations.allocatedBytes(() -> writeWithWriter(writer, people));
+        }
+        assertTrue(writerBytes < simpleBytes, String
+            .format("Expected the writer (%d bytes/op) to allocate less than json-simple (%d bytes/op)",
+                writerBytes / ITERATIONS, simpleBytes / ITERATIONS));
+    }
+
+    /**
+     * Compares the throughput of the writer with building the string with json-simple and encoding it
+     */
+    @Tag("benchmark") @Test void fasterThanJsonSimple() {
+        final List<KvantumPojo<Person>> people = people();
+        final KvantumJsonWriter writer = new KvantumJsonWriter();
+        long simpleTime = 0L, writerTime = 0L;
+        for (int round = 0; round < 2; round++) { // The first round is a warm-up
+            long start = System.nanoTime();
+            writeWithJsonSimple(people);
+            simpleTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            writeWithWriter(writer, people);
+            writerTime = System.nanoTime() - start;
+        }
+        assertTrue(writerTime < simpleTime, String
+            .format("Expected the writer (%d us/op) to be faster than json-simple (%d us/op)",
+                writerTime / ITERATIONS / 1000, simpleTime / ITERATIONS / 1000));
+    }
+
+    private static final class Person {
+
+        private final String name;
+        private final int age;
+
+        private Person(final String name, final int age) {
+            this.name = name;
+            this.age = age;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public int getAge() {
+            return this.age;
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObjectPoolTest {
+
+    private static final int THREADS = 16;
+    private static final int OPERATIONS = 100_000;
+
+    private static final class Pooled {
+
+        private final AtomicBoolean inUse = new AtomicBoolean(false);
+        private boolean broken = false;
+    }
+
+    @Test void perThreadSlot() {
+        final ObjectPool<Pooled> pool = new ObjectPool<>(4, Pooled::new);
+        final Pooled first = pool.acquire();
+        pool.release(first);
+        assertSame(first, pool.acquire());
+        assertNotSame(first, pool.acquire());
+        assertEquals(2, pool.getCreated());
+        assertEquals(1, pool.getReused());
+    }
+
+    @Test void idleObjectsAreBounded() {
+        final AtomicInteger disposed = new AtomicInteger();
+        final ObjectPool<Pooled> pool = ObjectPool.<Pooled>builder().capacity(2).supplier(Pooled::new)
+            .disposer(pooled -> disposed.incrementAndGet()).build();
+        final List<Pooled> borrowed = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            borrowed.add(pool.acquire());
+        }
+        borrowed.forEach(pool::release);
+        // One in the thread slot, two in the shared stack
+        assertEquals(2, pool.getIdle());
+        assertEquals(2, disposed.get());
+        assertEquals(2, pool.getDisposed());
+    }
+
+    @Test void invalidObjectsAreDisposed() {
+        final AtomicInteger disposed = new AtomicInteger();
+        final ObjectPool<Pooled> pool = ObjectPool.<Pooled>builder().capacity(2).supplier(Pooled::new)
+            .validator(pooled -> !pooled.broken).disposer(pooled -> disposed.incrementAndGet()).build();
+        final Pooled pooled = pool.acquire();
+        pooled.broken = true;
+        pool.release(pooled);
+        assertEquals(1, disposed.get());
+        assertNotSame(pooled, pool.acquire());
+    }
+
+    @Test void sharedBetweenThreads() throws Exception {
+        final ObjectPool<Pooled> pool = new ObjectPool<>(4, Pooled::new);
+        final Pooled first = pool.acquire();
+        final Pooled second = pool.acquire();
+        pool.release(first);
+        pool.release(second); // The slot is occupied, so this goes onto the shared stack
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            assertSame(second, executorService.submit(pool::acquire).get(10, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test void closeDisposesEveryThreadSlot() throws Exception {
+        final List<Pooled> disposed = new ArrayList<>();
+        final ObjectPool<Pooled> pool = ObjectPool.<Pooled>builder().capacity(1).supplier(Pooled::new)
+            .disposer(pooled -> {
+                synchronized (disposed) {
+                    disposed.add(pooled);
+                }
+            }).build();
+        final Pooled local = pool.acquire();
+        final Pooled shared = pool.acquire();
+        final Pooled borrowed = pool.acquire();
+        pool.release(local);
+        pool.release(shared);
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final Pooled remote;
+        try {
+            remote = executorService.submit(() -> {
+                final Pooled pooled = new Pooled();
+                pool.release(pooled);
+                return pooled;
+            }).get(10, TimeUnit.SECONDS);
+            pool.close();
+            assertEquals(3, disposed.size());
+            assertTrue(disposed.containsAll(Arrays.asList(local, shared, remote)));
+            // The slot of the other thread has been emptied
+            assertNotSame(remote, executorService.submit(pool::acquire).get(10, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdown();
+        }
+        // Objects that are returned after the pool has been closed are disposed of
+        pool.release(borrowed);
+        assertEquals(4, disposed.size());
+        assertSame(borrowed, disposed.get(3));
+        assertEquals(0, pool.getIdle());
+    }
+
+    /**
+     * Borrows and returns objects from many threads at once, and makes sure that no object is borrowed twice
+     */
+    @Test void contention() throws Exception {
+        final ObjectPool<Pooled> pool = ObjectPool.<Pooled>builder()
+            .capacity(THREADS).supplier(Pooled::new).build();
+        final Operation poolOperation = () -> {
+            final Pooled pooled = pool.acquire();
+            use(pooled);
+            pool.release(pooled);
+        };
+        run(poolOperation);
+        assertTrue(pool.getCreated() <= THREADS * 2);
+        assertEquals((long) THREADS * OPERATIONS, pool.getCreated() + pool.getReused());
+    }
+
+    private static void use(final Pooled pooled) {
+        if (!pooled.inUse.compareAndSet(false, true)) {
+            throw new IllegalStateException("Object was borrowed twice");
+        }
+        pooled.inUse.set(false);
+    }
+
+    private static void run(final Operation operation) throws Exception {
+        final ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            futures.add(executorService.submit(() -> {
+                latch.await();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    operation.run();
+                }
+                return null;
+            }));
+        }
+        latch.countDown();
+        for (final Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+    }
+
+    @FunctionalInterface private interface Operation {
+
+        void run() throws Exception;
+    }
+
+}
@@ -0,0 +1,343 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SQLiteManagerTest {
+
+    private static final int KEYS = 1000;
+    private static final int READERS = 4;
+    private static final int READS = 2_000;
+    private static final int WRITES = 500;
+
+    private File directory;
+    private SQLiteManager manager;
+
+    @BeforeEach void openDatabase() throws Exception {
+        this.directory = Files.createTempDirectory("kvantum-sqlite").toFile();
+        this.manager = open(new File(this.directory, "test.db"));
+        this.manager.executeUpdate(
+            "CREATE TABLE entries (id INTEGER PRIMARY KEY, `key` VARCHAR(64), `value` INTEGER)");
+    }
+
+    @AfterEach void closeDatabase() {
+        this.manager.close();
+        final File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.delete();
+    }
+
+    private static SQLiteManager open(final File file) throws Exception {
+        return SQLiteManager.builder().file(file).readConnections(4).synchronous("normal")
+            .mmapSize(16 * 1024 * 1024).busyTimeout(5000).statementCacheSize(4).build();
+    }
+
+    private int count() throws SQLException {
+        return this.manager.read(connection -> {
+            try (final ResultSet resultSet = connection.prepare("SELECT COUNT(*) FROM entries")
+                .executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        });
+    }
+
+    private static void insert(final SQLiteConnection connection, final String key, final int value)
+        throws SQLException {
+        final PreparedStatement statement =
+            connection.prepare("INSERT INTO entries (`key`, `value`) VALUES (?, ?)");
+        statement.setString(1, key);
+        statement.setInt(2, value);
+        statement.executeUpdate();
+    }
+
+    @Test void connectionsUseConfiguredPragmas() throws Exception {
+        assertEquals("wal", this.manager.read(connection -> {
+            try (final ResultSet resultSet = connection.prepare("PRAGMA journal_mode").executeQuery()) {
+                resultSet.next();
+                return resultSet.getString(1);
+            }
+        }));
+        assertEquals(1 /* NORMAL */, (int) this.manager.write(connection -> {
+            try (final ResultSet resultSet = connection.prepare("PRAGMA synchronous").executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        }));
+        // Read connections are query only
+        assertThrows(SQLException.class, () -> this.manager.read(connection -> {
+            insert(connection, "read", 1);
+            return null;
+        }));
+        assertThrows(IllegalArgumentException.class,
+            () -> SQLiteManager.builder().file(new File(this.directory, "other.db")).synchronous("sometimes")
+                .build());
+    }
+
+    @Test void statementsAreCachedPerConnection() throws Exception {
+        this.manager.write(connection -> {
+            final PreparedStatement statement = connection.prepare("SELECT 1");
+            assertSame(statement, connection.prepare("SELECT 1"));
+            for (int i = 2; i <= 5; i++) {
+                connection.prepare("SELECT " + i);
+            }
+            // The cache holds four statements, so the least recently used statement has been closed
+            assertEquals(4, connection.getCachedStatements());
+            assertNotSame(statement, connection.prepare("SELECT 1"));
+            return null;
+        });
+    }
+
+    @Test void transactionsAreRolledBack() throws Exception {
+        assertThrows(SQLException.class, () -> this.manager.transaction(connection -> {
+            insert(connection, "first", 1);
+            this.manager.transaction(nested -> {
+                insert(nested, "second", 2);
+                return null;
+            });
+            // Reads made by the writing thread see the uncommitted rows
+            assertEquals(2, this.count());
+            throw new SQLException("Abort");
+        }));
+        assertEquals(0, this.count());
+        this.manager.transaction(connection -> {
+            insert(connection, "first", 1);
+            return null;
+        });
+        assertEquals(1, this.count());
+    }
+
+    @Test void batchesAreAtomic() throws Exception {
+        final List<Integer> values = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+        final int[] updates = this.manager.batch("INSERT INTO entries (`key`, `value`) VALUES (?, ?)", values,
+            (statement, value) -> {
+                statement.setString(1, "key" + value);
+                statement.setInt(2, value);
+            });
+        assertEquals(1000, updates.length);
+        assertEquals(1000, this.count());
+        assertThrows(SQLException.class, () -> this.manager
+            .batch("INSERT INTO entries (id, `key`, `value`) VALUES (?, ?, ?)", List.of(5000, 5000),
+                (statement, value) -> {
+                    statement.setInt(1, value);
+                    statement.setString(2, "duplicate");
+                    statement.setInt(3, value);
+                }));
+        assertEquals(1000, this.count());
+    }
+
+    @FunctionalInterface private interface Operation {
+
+        void run(int index) throws Exception;
+    }
+
+    /**
+     * Run {@link #WRITES} writes on one thread, while {@link #READERS} threads run {@link #READS} reads each
+     *
+     * @return Elapsed time, in nanoseconds
+     */
+    private static long runConcurrently(final Operation write, final Operation read) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            final long start = System.nanoTime();
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < WRITES; i++) {
+                    write.run(i);
+                }
+                return null;
+            }));
+            for (int reader = 0; reader < READERS; reader++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < READS; i++) {
+                        read.run(i);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void insertKeys() throws SQLException {
+        this.manager.batch("INSERT INTO entries (`key`, `value`) VALUES (?, ?)",
+            IntStream.range(0, KEYS).boxed().collect(Collectors.toList()), (statement, value) -> {
+                statement.setString(1, "key" + value);
+                statement.setInt(2, value);
+            });
+    }
+
+    private long runOnManager() throws Exception {
+        return runConcurrently(value -> this.manager.write(connection -> {
+            insert(connection, "written", value);
+            return null;
+        }), index -> this.manager.read(connection -> {
+            final int key = index % KEYS;
+            final PreparedStatement statement =
+                connection.prepare("SELECT `value` FROM entries WHERE `key` = ?");
+            statement.setString(1, "key" + key);
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                assertEquals(key, resultSet.next() ? resultSet.getInt(1) : -1);
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * The previous behaviour: every thread shares one connection, in the default journal mode
+     */
+    private static long runOnSharedConnection(final Connection connection) throws Exception {
+        return runConcurrently(value -> {
+            synchronized (connection) {
+                try (final PreparedStatement statement = connection
+                    .prepareStatement("INSERT INTO entries (`key`, `value`) VALUES (?, ?)")) {
+                    statement.setString(1, "written");
+                    statement.setInt(2, value);
+                    statement.executeUpdate();
+                }
+            }
+        }, index -> {
+            synchronized (connection) {
+                try (final PreparedStatement statement = connection
+                    .prepareStatement("SELECT `value` FROM entries WHERE `key` = ?")) {
+                    statement.setString(1, "key" + (index % KEYS));
+                    try (final ResultSet resultSet = statement.executeQuery()) {
+                        resultSet.next();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs concurrent readers while a single thread writes
+     */
+    @Test void concurrentReadsAndWrites() throws Exception {
+        this.insertKeys();
+        this.runOnManager();
+        assertEquals(KEYS + WRITES, this.count());
+        assertEquals(4, this.manager.getIdleReadConnections());
+    }
+
+    /**
+     * Runs the same concurrent reads and writes through the manager, and through a single shared connection (as
+     * the manager did before it was pooled)
+     */
+    @Tag("benchmark") @Test void fasterThanSingleConnection() throws Exception {
+        this.insertKeys();
+        try (final Connection connection = DriverManager
+            .getConnection("jdbc:sqlite:" + new File(this.directory, "shared.db").getAbsolutePath())) {
+            try (final Statement statement = connection.createStatement()) {
+                statement.executeUpdate(
+                    "CREATE TABLE entries (id INTEGER PRIMARY KEY, `key` VARCHAR(64), `value` INTEGER)");
+                for (int i = 0; i < KEYS; i++) {
+                    statement.addBatch("INSERT INTO entries (`key`, `value`) VALUES ('key" + i + "', " + i + ")");
+                }
+                statement.executeBatch();
+            }
+            long pooled = 0L, shared = 0L;
+            for (int round = 0; round < 2; round++) { // The first round is a warm-up
+                pooled = this.runOnManager();
+                shared = runOnSharedConnection(connection);
+            }
+            final long operations = READERS * READS + WRITES;
+            assertTrue(pooled < shared, String
+                .format("Expected the manager (%d ops/s) to be faster than a shared connection (%d ops/s)",
+                    operations * 1_000_000_000L / pooled, operations * 1_000_000_000L / shared));
+        }
+    }
+
+    @Test void closeWaitsForReadConnectionsInUse() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Connection> reader = executor.submit(() -> this.manager.read(connection -> {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    throw new SQLException(e);
+                }
+                return connection.getConnection();
+            }));
+            reading.await();
+            final Future<?> close = executor.submit(this.manager::close);
+            Thread.sleep(100L);
+            assertFalse(close.isDone());
+            release.countDown();
+            close.get(5, TimeUnit.SECONDS);
+            assertTrue(reader.get().isClosed());
+            assertThrows(SQLException.class, this::count);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings("deprecation") @Test void preparedStatementsUseTheWriter() throws Exception {
+        try (final PreparedStatement statement = this.manager
+            .prepareStatement("INSERT INTO entries (`key`, `value`) VALUES (?, ?)")) {
+            statement.setString(1, "key");
+            statement.setInt(2, 1);
+            assertEquals(1, statement.executeUpdate());
+        }
+        assertEquals(1, this.count());
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.views;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.mocking.MockRequest;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.request.AbstractRequest.QueryCache;
+import xyz.kvantum.server.api.request.AbstractRequest.QueryParameters;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.response.Response;
+import xyz.kvantum.server.api.util.ProtocolType;
+import xyz.kvantum.server.api.views.requesthandler.Middleware;
+import xyz.kvantum.server.api.views.requesthandler.MiddlewareQueue;
+import xyz.kvantum.server.api.views.requesthandler.Stateless;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncRequestHandlerTest {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor();
+
+    @Stateless public static final class Tagging extends Middleware {
+
+        @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
+            request.addMeta("tagged", true);
+            queue.handle(request);
+        }
+    }
+
+
+    @Stateless public static final class Denying extends Middleware {
+
+        @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
+            request.useAlternateOutcome("denied");
+            queue.handle(request);
+        }
+    }
+
+
+    /**
+     * Handler that completes its responses after a delay, without holding on to a thread
+     */
+    private static class DelayedHandler extends RequestHandler {
+
+        private final long delay;
+        private final AtomicInteger generated = new AtomicInteger();
+        private volatile CompletableFuture<Response> last;
+        private volatile Object tagged;
+
+        private DelayedHandler(final long delay) {
+            this.delay = delay;
+        }
+
+        @Override public boolean matches(final AbstractRequest request) {
+            return true;
+        }
+
+        @Override public Response generate(final AbstractRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public CompletionStage<Response> generateAsync(final AbstractRequest request) {
+            final CompletableFuture<Response> future = new CompletableFuture<>();
+            this.last = future;
+            SCHEDULER.schedule(() -> {
+                this.tagged = request.getMeta("tagged");
+                final Response response = new Response(this);
+                generated.incrementAndGet();
+                future.complete(response);
+            }, delay, TimeUnit.MILLISECONDS);
+            return future;
+        }
+
+        @Override public String getName() {
+            return "delayed";
+        }
+
+        @Override public boolean forceHTTPS() {
+            return false;
+        }
+    }
+
+    public static final class OutcomeHandler extends DelayedHandler {
+
+        private volatile boolean outcome;
+
+        private OutcomeHandler() throws Throwable {
+            super(0L);
+            this.registerAlternateOutcome("denied", "denied");
+        }
+
+        public void denied(final AbstractRequest request, final Response response) {
+            this.outcome = true;
+        }
+    }
+
+    private static AbstractRequest request() {
+        return new MockRequest(QueryCache.getInstance()
+            .getQuery(new QueryParameters(HttpMethod.GET, ProtocolType.HTTP, "/async")));
+    }
+
+    @AfterAll static void shutdown() {
+        SCHEDULER.shutdownNow();
+    }
+
+    @Test void completesAfterDelay() {
+        final DelayedHandler handler = new DelayedHandler(50L);
+        handler.getMiddlewareQueuePopulator().add(Tagging.class);
+        handler.addResponseDecorator(response -> response.getHeader()
+            .set(Header.HEADER_CACHE_CONTROL, "no-cache"));
+        final CompletableFuture<Response> future = handler.handleAsync(request()).toCompletableFuture();
+        // Middleware runs before the response is generated
+        assertFalse(future.isDone());
+        final Response response = future.join();
+        assertEquals(true, handler.tagged);
+        assertEquals("no-cache", response.getHeader().get(Header.HEADER_CACHE_CONTROL).get().toString());
+    }
+
+    @Test void synchronousHandlersCompleteImmediately() {
+        final RequestHandler handler = new DelayedHandler(0L) {
+            @Override public CompletionStage<Response> generateAsync(final AbstractRequest request) {
+                return CompletableFuture.completedFuture(new Response(this));
+            }
+        };
+        assertTrue(handler.handleAsync(request()).toCompletableFuture().isDone());
+    }
+
+    @Test void callerAnswersAfterMiddleware() {
+        final DelayedHandler handler = new DelayedHandler(0L);
+        handler.getMiddlewareQueuePopulator().add(Tagging.class);
+        final AtomicReference<Object> tagged = new AtomicReference<>();
+        final Response response = handler.handleAsync(request(), request -> {
+            tagged.set(request.getMeta("tagged"));
+            return true;
+        }).toCompletableFuture().join();
+        assertEquals(true, tagged.get());
+        assertNull(response);
+        assertEquals(0, handler.generated.get());
+    }
+
+    @Test void callerDoesntAnswerAlternateOutcomes() throws Throwable {
+        final AtomicInteger answered = new AtomicInteger();
+        final Predicate<AbstractRequest> answer = request -> answered.incrementAndGet() > 0;
+        final OutcomeHandler denied = new OutcomeHandler();
+        denied.getMiddlewareQueuePopulator().add(Denying.class);
+        assertNotNull(denied.handleAsync(request(), answer).toCompletableFuture().join());
+        assertTrue(denied.outcome);
+        assertEquals(0, answered.get());
+    }
+
+    @Test void cancellationIsPropagated() {
+        final DelayedHandler handler = new DelayedHandler(10_000L);
+        final CompletableFuture<Response> future = handler.handleAsync(request()).toCompletableFuture();
+        future.cancel(false);
+        assertTrue(handler.last.isCancelled());
+        assertEquals(0, handler.generated.get());
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.views.requesthandler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.mocking.MockRequest;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.request.AbstractRequest.QueryCache;
+import xyz.kvantum.server.api.request.AbstractRequest.QueryParameters;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.util.Allocations;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MiddlewareQueueTest {
+
+    private static final int REQUESTS = 100_000;
+    private static final List<String> TRACE = new ArrayList<>();
+    private static final AtomicInteger STATEFUL_INSTANCES = new AtomicInteger();
+    private static final AtomicInteger STATELESS_INSTANCES = new AtomicInteger();
+    private static final AtomicInteger RESETTABLE_INSTANCES = new AtomicInteger();
+
+    @Stateless public static final class First extends Middleware {
+
+        public First() {
+            STATELESS_INSTANCES.incrementAndGet();
+        }
+
+        @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
+            TRACE.add("first");
+            queue.handle(request);
+        }
+    }
+
+
+    public static final class Stateful extends Middleware {
+
+        private AbstractRequest current;
+
+        public Stateful() {
+            STATEFUL_INSTANCES.incrementAndGet();
+        }
+
+        @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
+            // Instances are never reused, so the state of an earlier request is never visible
+            assertNull(this.current);
+            this.current = request;
+            TRACE.add("stateful");
+            queue.handle(request);
+        }
+    }
+
+
+    public static final class Resettable extends Middleware {
+
+        private AbstractRequest current;
+
+        public Resettable() {
+            RESETTABLE_INSTANCES.incrementAndGet();
+        }
+
+        @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
+            // Instances are reset before they are reused
+            assertNull(this.current);
+            this.current = request;
+            TRACE.add("resettable");
+            queue.handle(request);
+        }
+
+        @Override public boolean reset() {
+            this.current = null;
+            return true;
+        }
+    }
+
+
+    @Stateless public static final class Breaking extends Middleware {
+
+        @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
+            TRACE.add("breaking");
+        }
+    }
+
+
+    private static AbstractRequest request() {
+        return new MockRequest(QueryCache.getInstance()
+            .getQuery(new QueryParameters(HttpMethod.GET, ProtocolType.HTTP, "/middleware")));
+    }
+
+    @BeforeEach void reset() {
+        TRACE.clear();
+        STATEFUL_INSTANCES.set(0);
+        STATELESS_INSTANCES.set(0);
+        RESETTABLE_INSTANCES.set(0);
+    }
+
+    @Test void chainOrder() {
+        final MiddlewareQueuePopulator populator = new MiddlewareQueuePopulator();
+        assertTrue(populator.isEmpty());
+        populator.add(First.class);
+        populator.add(Stateful.class);
+        populator.add(DebugMiddleware.class);
+        final AbstractRequest request = request();
+        final MiddlewareQueue queue = populator.generateQueue();
+        queue.handle(request);
+        assertTrue(queue.finished());
+        assertEquals(Arrays.asList("first", "stateful"), TRACE);
+        assertEquals("debug", request.getMeta(AbstractRequest.ALTERNATE_OUTCOME));
+        assertEquals(Arrays.asList(First.class, Stateful.class, DebugMiddleware.class), populator.getMiddleware());
+    }
+
+    @Test void breakingTheChain() {
+        final MiddlewareQueuePopulator populator = new MiddlewareQueuePopulator();
+        populator.add(Breaking.class);
+        populator.add(First.class);
+        final MiddlewareQueue queue = populator.generateQueue();
+        queue.handle(request());
+        assertFalse(queue.finished());
+        assertEquals(Arrays.asList("breaking"), TRACE);
+    }
+
+    @Test void statelessInstancesAreShared() {
+        final MiddlewareQueuePopulator populator = new MiddlewareQueuePopulator();
+        populator.add(First.class);
+        populator.add(Stateful.class);
+        // The stateless middleware is created when it is added
+        assertEquals(1, STATELESS_INSTANCES.get());
+        assertEquals(0, STATEFUL_INSTANCES.get());
+        for (int i = 0; i < 100; i++) {
+            populator.generateQueue().handle(request());
+        }
+        assertEquals(1, STATELESS_INSTANCES.get());
+        assertEquals(100, STATEFUL_INSTANCES.get());
+        // Nested requests get their own instances as well
+        final Middleware nested = new Middleware() {
+            @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
+                populator.generateQueue().handle(request);
+                queue.handle(request);
+            }
+        };
+        final MiddlewareQueue queue = populator.generateQueue();
+        queue.add(nested);
+        queue.handle(request());
+        assertTrue(queue.finished());
+        assertEquals(102, STATEFUL_INSTANCES.get());
+        assertEquals(1, STATELESS_INSTANCES.get());
+    }
+
+    @Test void resettableInstancesArePooled() {
+        final MiddlewareQueuePopulator populator = new MiddlewareQueuePopulator();
+        populator.add(Resettable.class);
+        for (int i = 0; i < 100; i++) {
+            populator.generateQueue().handle(request());
+        }
+        assertEquals(1, RESETTABLE_INSTANCES.get());
+        // An instance is in use until the request has passed it, so nested requests need their own instance
+        final Middleware nested = new Middleware() {
+            @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
+                populator.generateQueue().handle(request);
+                queue.handle(request);
+            }
+        };
+        final MiddlewareQueue queue = populator.generateQueue();
+        queue.add(nested);
+        queue.handle(request());
+        assertTrue(queue.finished());
+        assertEquals(2, RESETTABLE_INSTANCES.get());
+        TRACE.clear();
+        populator.generateQueue().handle(request());
+        assertEquals(Arrays.asList("resettable"), TRACE);
+        assertEquals(2, RESETTABLE_INSTANCES.get());
+    }
+
+    @Test void pipelineIsRebuiltWhenMiddlewareIsAdded() {
+        final MiddlewareQueuePopulator populator = new MiddlewareQueuePopulator();
+        populator.add(First.class);
+        final MiddlewareQueue before = populator.generateQueue();
+        populator.add(Breaking.class);
+        // The base class is ignored
+        populator.add(Middleware.class);
+        before.handle(request());
+        assertTrue(before.finished());
+        final MiddlewareQueue after = populator.generateQueue();
+        after.handle(request());
+        assertFalse(after.finished());
+        assertEquals(Arrays.asList("first", "first", "breaking"), TRACE);
+        assertEquals(2, populator.getMiddleware().size());
+        // Instances added to a queue don't affect the shared pipeline
+        populator.generateQueue().add(new First());
+        TRACE.clear();
+        populator.generateQueue().handle(request());
+        assertEquals(Arrays.asList("first", "breaking"), TRACE);
+    }
+
+    /**
+     * Compares the allocations of the compiled pipeline with reflective instantiation of every middleware, for
+     * every request. The compiled pipeline shares the stateless middleware, and only creates the stateful one
+     */
+    @Tag("benchmark") @Test void compiledPipelineReducesAllocations() {
+        final List<Class<? extends Middleware>> classes =
+            Arrays.asList(PassThrough.class, PassThrough.class, DebugMiddleware.class, Stateful.class);
+        final MiddlewareQueuePopulator populator = new MiddlewareQueuePopulator();
+        classes.forEach(populator::add);
+        final AbstractRequest request = request();
+
+        long reflective = 0L, compiled = 0L;
+        for (int round = 0; round < 2; round++) { // The first round is a warm-up
+            reflective = Allocations.allocatedBytes(() -> runReflective(classes, request));
+            compiled = Allocations.allocatedBytes(() -> runCompiled(populator, request));
+        }
+
+        assertTrue(compiled < reflective / 2,
+            String.format("Expected the compiled pipeline to allocate less (reflective=%d, compiled=%d)",
+                reflective, compiled));
+    }
+
+    @Stateless public static final class PassThrough extends Middleware {
+
+        @Override public void handle(final AbstractRequest request, final MiddlewareQueue queue) {
+            queue.handle(request);
+        }
+    }
+
+    /**
+     * The previous behaviour: a new instance of every middleware class, for every request
+     */
+    private static void runReflective(final List<Class<? extends Middleware>> classes,
+        final AbstractRequest request) {
+        for (int i = 0; i < REQUESTS; i++) {
+            final MiddlewareStage[] stages = new MiddlewareStage[classes.size()];
+            for (int j = 0; j < stages.length; j++) {
+                try {
+                    stages[j] = MiddlewareStage.of(classes.get(j).getConstructor().newInstance());
+                } catch (final ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            new MiddlewareQueue(stages).handle(request);
+            TRACE.clear();
+        }
+    }
+
+    private static void runCompiled(final MiddlewareQueuePopulator populator, final AbstractRequest request) {
+        for (int i = 0; i < REQUESTS; i++) {
+            populator.generateQueue().handle(request);
+            TRACE.clear();
+        }
+    }
+
+}